@@ -1,5 +1,6 @@
 package juancraft;
 
+import java.util.Collections;
 import java.util.List;
 import org.lwjgl.util.vector.Vector3f;
 import entities.Entity;
@@ -14,6 +15,9 @@ public class Chunck {
     // List of entities that make up the blocks within this chunk.
     private List<Entity> blocks;
 
+    // Entities of the translucent blocks, drawn after every opaque block.
+    private List<Entity> translucentBlocks = Collections.emptyList();
+
     // The origin position of the chunk in 3D space (x, y, z).
     private Vector3f origin;
 
@@ -46,6 +50,25 @@ public class Chunck {
         this.blocks = blocks;
     }
 
+    /**
+     * Gets the entities of the translucent blocks within this chunk, which are
+     * drawn blended, after the opaque blocks.
+     *
+     * @return A list of Entity objects, possibly empty.
+     */
+    public List<Entity> getTranslucentBlocks() {
+        return translucentBlocks;
+    }
+
+    /**
+     * Sets the entities of the translucent blocks within this chunk.
+     *
+     * @param translucentBlocks A list of Entity objects.
+     */
+    public void setTranslucentBlocks(List<Entity> translucentBlocks) {
+        this.translucentBlocks = translucentBlocks;
+    }
+
     /**
      * Gets the origin position of this chunk in the game world.
      *
@@ -0,0 +1,387 @@
+package juancraft;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import entities.Entity;
+import models.RawModel;
+import models.TexturedModel;
+import render_engine.Loader;
+import textures.Modeltexture;
+import toolbox.Instrumentation;
+import toolbox.TimingStats;
+import toolbox.Workers;
+import world.ChunkMesher;
+import world.ChunkRegistry;
+import world.ChunkSection;
+import world.Material;
+import world.MeshCache;
+import world.MeshData;
+import world.MeshKey;
+import world.World;
+
+/**
+ * The ChunkMeshUploader class keeps the rendered chunks in step with the
+ * sections of the world. Sections that need a new mesh are meshed on the worker
+ * pool; the render thread then uploads the finished meshes within a time
+ * budget per frame, so a burst of new sections never stalls a frame.
+ *
+ * Each uploaded section becomes a Chunck whose entities are the section's
+ * meshes, one per material, placed at the section origin.
+ *
+ * Identical sections share their meshes: the workers reuse recently built
+ * meshes through a MeshCache, and the render thread uploads each distinct mesh
+ * once, counting the sections drawing it, so repetitive terrain costs one set
+ * of VAOs per distinct section rather than per section.
+ *
+ * Translucent materials are the exception: their faces are drawn back to
+ * front, in an order that depends on where the section is, so each section
+ * uploads its own translucent meshes and a TranslucentSorter keeps their
+ * faces ordered as the camera moves.
+ */
+public class ChunkMeshUploader {
+
+	// The world the sections belong to.
+	private final World world;
+
+	// Loader creating the VAOs of the meshes.
+	private final Loader loader;
+
+	// Texture of each material.
+	private final Modeltexture[] materialTextures;
+
+	// The rendered chunks, shared with the simulation.
+	private final LoadedChunks chunks;
+
+	// Chunks created during the current call to uploadPending, published together.
+	private final List<Chunck> added = new ArrayList<Chunck>();
+
+	// Keys of the sections waiting for a worker, so each is queued once.
+	private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+
+	// Meshes built by the workers, waiting for the render thread.
+	private final ConcurrentLinkedQueue<Result> finished = new ConcurrentLinkedQueue<Result>();
+
+	// Orders the meshes, so an older mesh finishing late never replaces a newer one.
+	private final AtomicLong sequence = new AtomicLong();
+
+	// Number of recently built meshes kept for identical sections.
+	private static final int MESH_CACHE_SIZE = 1024;
+
+	// Recently built meshes, shared by the workers' meshers.
+	private final MeshCache meshCache = new MeshCache(MESH_CACHE_SIZE);
+
+	// One mesher per worker thread.
+	private final ThreadLocal<ChunkMesher> meshers = ThreadLocal.withInitial(() -> new ChunkMesher(meshCache));
+
+	// Whether the meshes built from now on are shaded with ambient occlusion.
+	private volatile boolean ambientOcclusion = true;
+
+	// The uploaded sections by key; only used by the render thread.
+	private final Map<Long, Uploaded> uploaded = new HashMap<Long, Uploaded>();
+
+	// The uploaded meshes by content, shared by identical sections; only used by
+	// the render thread.
+	private final Map<MeshKey, SharedMesh> sharedMeshes = new HashMap<MeshKey, SharedMesh>();
+
+	// Keeps the faces of the translucent meshes ordered back to front.
+	private final TranslucentSorter translucentSorter = new TranslucentSorter(Workers.POOL);
+
+	// Uploads the faces sorted by the translucent sorter.
+	private final BiConsumer<RawModel, int[]> indexUpload;
+
+	// Number of meshes uploaded, and of meshes reusing an uploaded one.
+	private long uploads, sharedUploads;
+
+	// Durations of meshing and uploading.
+	private final TimingStats meshTime = Instrumentation.timing("mesh.build");
+	private final TimingStats uploadTime = Instrumentation.timing("mesh.upload");
+
+	/**
+	 * Creates an uploader.
+	 *
+	 * @param world            The world the sections belong to.
+	 * @param loader           The loader creating the VAOs.
+	 * @param materialTextures The texture of each material.
+	 * @param chunks           The rendered chunks, shared with the simulation.
+	 */
+	public ChunkMeshUploader(World world, Loader loader, Modeltexture[] materialTextures, LoadedChunks chunks) {
+		this.world = world;
+		this.loader = loader;
+		this.materialTextures = materialTextures;
+		this.chunks = chunks;
+		this.indexUpload = loader::updateIndices;
+	}
+
+	/**
+	 * Schedules a section to be meshed again. Safe to call from any thread;
+	 * requests for a section already waiting are merged.
+	 *
+	 * @param section The section to mesh.
+	 */
+	public void requestMesh(ChunkSection section) {
+		Long key = ChunkRegistry.key(section.getSectionX(), section.getSectionY(), section.getSectionZ());
+		if (queued.add(key)) {
+			Workers.POOL.execute(() -> {
+				// Leave the queue first, so changes made while meshing request a new mesh.
+				queued.remove(key);
+				long order = sequence.incrementAndGet();
+				long start = System.nanoTime();
+				ChunkMesher mesher = meshers.get();
+				mesher.setAmbientOcclusion(ambientOcclusion);
+				MeshData mesh = mesher.mesh(world, section);
+				meshTime.record(System.nanoTime() - start);
+				finished.add(new Result(key, order, mesh));
+			});
+		}
+	}
+
+	/**
+	 * Uploads finished meshes until the budget is used up. Must be called on the
+	 * render thread.
+	 *
+	 * @param budgetNanos The time the uploads may take.
+	 * @return The number of meshes uploaded.
+	 */
+	public int uploadPending(long budgetNanos) {
+		long start = System.nanoTime();
+		int count = 0;
+		Result result;
+		while (System.nanoTime() - start < budgetNanos && (result = finished.poll()) != null) {
+			long uploadStart = System.nanoTime();
+			upload(result);
+			uploadTime.record(System.nanoTime() - uploadStart);
+			count++;
+		}
+
+		// Publish the new chunks in one snapshot.
+		chunks.addAll(added);
+		added.clear();
+		return count;
+	}
+
+	/**
+	 * Sets whether the meshes built from now on are shaded with ambient
+	 * occlusion. Meshes already built keep their shading until their section is
+	 * meshed again.
+	 *
+	 * @param ambientOcclusion true to shade with ambient occlusion.
+	 */
+	public void setAmbientOcclusion(boolean ambientOcclusion) {
+		this.ambientOcclusion = ambientOcclusion;
+	}
+
+	/**
+	 * Reorders the faces of the translucent meshes near the camera once it has
+	 * moved far enough, uploading the orders the workers finished. Must be called
+	 * on the render thread, once per frame.
+	 *
+	 * @param eye The position of the camera.
+	 */
+	public void sortTranslucent(Vector3f eye) {
+		translucentSorter.update(eye.x, eye.y, eye.z, indexUpload);
+	}
+
+	/**
+	 * Gets the sorter keeping the faces of the translucent meshes ordered.
+	 *
+	 * @return The translucent sorter.
+	 */
+	public TranslucentSorter getTranslucentSorter() {
+		return translucentSorter;
+	}
+
+	/**
+	 * Gets the number of meshes built but not uploaded yet.
+	 *
+	 * @return The upload backlog.
+	 */
+	public int getBacklog() {
+		return finished.size();
+	}
+
+	/**
+	 * Gets the cache through which the workers reuse the meshes of identical
+	 * sections.
+	 *
+	 * @return The mesh cache.
+	 */
+	public MeshCache getMeshCache() {
+		return meshCache;
+	}
+
+	/**
+	 * Gets the number of meshes uploaded so far, including those that reused the
+	 * VAOs of an identical section.
+	 *
+	 * @return The number of uploads.
+	 */
+	public long getUploads() {
+		return uploads;
+	}
+
+	/**
+	 * Gets the number of uploads that reused the VAOs of an identical section.
+	 *
+	 * @return The number of shared uploads.
+	 */
+	public long getSharedUploads() {
+		return sharedUploads;
+	}
+
+	/**
+	 * Replaces the meshes of a section with a finished mesh.
+	 */
+	private void upload(Result result) {
+		Uploaded section = uploaded.get(result.key);
+		if (section != null && section.order > result.order) {
+			return; // A newer mesh of the section is already uploaded
+		}
+
+		MeshData mesh = result.mesh;
+		SharedMesh shared = acquire(mesh);
+		Vector3f origin = new Vector3f(mesh.getSectionX() * ChunkSection.SIZE, mesh.getSectionY() * ChunkSection.SIZE,
+				mesh.getSectionZ() * ChunkSection.SIZE);
+		List<Entity> entities = new ArrayList<Entity>();
+		for (TexturedModel model : shared.models) {
+			if (model != null) {
+				entities.add(new Entity(model, origin, 0, 0, 0, 1));
+			}
+		}
+
+		// Each section has its own translucent meshes, sorted for its position.
+		List<Entity> translucentEntities = new ArrayList<Entity>();
+		List<TranslucentSorter.Section> translucent = new ArrayList<TranslucentSorter.Section>();
+		for (int material = 0; material < Material.COUNT; material++) {
+			MeshData.Part part = mesh.getPart(material);
+			if (part != null && Material.isTranslucent(material)) {
+				RawModel model = loader.loadToVao(part.positions, part.indices, part.textureCoords, part.light);
+				TexturedModel textured = new TexturedModel(model, materialTextures[material]);
+				translucentEntities.add(new Entity(textured, origin, 0, 0, 0, 1));
+				translucent.add(translucentSorter.add(part, model, origin.x, origin.y, origin.z));
+			}
+		}
+
+		if (section == null) {
+			Chunck chunk = new Chunck(entities, origin);
+			chunk.setTranslucentBlocks(translucentEntities);
+			uploaded.put(result.key, new Uploaded(chunk, result.order, shared, translucent));
+			added.add(chunk);
+		} else {
+			SharedMesh old = section.mesh;
+			List<TranslucentSorter.Section> oldTranslucent = section.translucent;
+			section.chunk.setBlocks(entities);
+			section.chunk.setTranslucentBlocks(translucentEntities);
+			section.order = result.order;
+			section.mesh = shared;
+			section.translucent = translucent;
+			release(old);
+			for (TranslucentSorter.Section sorted : oldTranslucent) {
+				translucentSorter.remove(sorted);
+				loader.unloadModel(sorted.model);
+			}
+		}
+	}
+
+	/**
+	 * Gets the uploaded opaque models of a mesh, uploading them unless an
+	 * identical section already did.
+	 */
+	private SharedMesh acquire(MeshData mesh) {
+		uploads++;
+		MeshKey key = mesh.getKey();
+		SharedMesh shared = key == null ? null : sharedMeshes.get(key);
+		if (shared != null) {
+			sharedUploads++;
+		} else {
+			TexturedModel[] models = new TexturedModel[Material.COUNT];
+			for (int material = 0; material < Material.COUNT; material++) {
+				MeshData.Part part = mesh.getPart(material);
+				if (part != null && !Material.isTranslucent(material)) {
+					RawModel model = loader.loadToVao(part.positions, part.indices, part.textureCoords, part.light);
+					models[material] = new TexturedModel(model, materialTextures[material]);
+				}
+			}
+			shared = new SharedMesh(key, models);
+			if (key != null) {
+				sharedMeshes.put(key, shared);
+			}
+		}
+		shared.references++;
+		return shared;
+	}
+
+	/**
+	 * Stops a section drawing a mesh, deleting the mesh's VAOs once no section
+	 * draws it.
+	 */
+	private void release(SharedMesh shared) {
+		if (--shared.references > 0) {
+			return;
+		}
+		if (shared.key != null) {
+			sharedMeshes.remove(shared.key);
+		}
+		for (TexturedModel model : shared.models) {
+			if (model != null) {
+				loader.unloadModel(model.getModel());
+			}
+		}
+	}
+
+	/**
+	 * A mesh built by a worker.
+	 */
+	private static final class Result {
+		final Long key;
+		final long order;
+		final MeshData mesh;
+
+		Result(Long key, long order, MeshData mesh) {
+			this.key = key;
+			this.order = order;
+			this.mesh = mesh;
+		}
+	}
+
+	/**
+	 * The rendered chunk of a section, and the order and models of its current
+	 * mesh.
+	 */
+	private static final class Uploaded {
+		final Chunck chunk;
+		long order;
+		SharedMesh mesh;
+		List<TranslucentSorter.Section> translucent;
+
+		Uploaded(Chunck chunk, long order, SharedMesh mesh, List<TranslucentSorter.Section> translucent) {
+			this.chunk = chunk;
+			this.order = order;
+			this.mesh = mesh;
+			this.translucent = translucent;
+		}
+	}
+
+	/**
+	 * The uploaded models of a mesh, and the number of sections drawing them.
+	 */
+	private static final class SharedMesh {
+		final MeshKey key;
+		final TexturedModel[] models;
+		int references;
+
+		SharedMesh(MeshKey key, TexturedModel[] models) {
+			this.key = key;
+			this.models = models;
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package juancraft;
+
+import java.util.Arrays;
+
+import entities.CameraState;
+import toolbox.LongIntHashMap;
+import world.ChunkRegistry;
+import world.ChunkSection;
+
+/**
+ * The ChunkScheduler class decides which chunk column the generator builds
+ * next. Rather than scanning the square around the camera in a fixed order,
+ * it predicts where the camera is heading from its velocity and ranks the
+ * missing columns by their distance to the path the camera will follow over
+ * the next moments, with columns outside the view cone ranked further back.
+ * Columns the camera flies towards and looks at are generated first, and so
+ * are lit, meshed and shown first.
+ *
+ * The ranking is rebuilt whenever the camera moves; queued columns that fall
+ * out of range are dropped (cancelled) before any work is spent on them.
+ *
+ * Not thread-safe; used by the generator thread only.
+ */
+public class ChunkScheduler {
+
+	// How far ahead the camera's path is predicted, in seconds.
+	private static final float LOOKAHEAD_SECONDS = 1.5f;
+
+	// Half-angle of the view cone columns are ranked by, a little wider than
+	// the horizontal field of view on a widescreen display.
+	private static final double VIEW_HALF_ANGLE = Math.toRadians(60);
+
+	// Factor applied to the rank of columns outside the view cone.
+	private static final float OUTSIDE_VIEW_PENALTY = 3f;
+
+	// Distance around the camera within which columns are generated, in blocks.
+	private int range;
+
+	// Columns already handed out, keyed by ChunkRegistry.key(x, 0, z).
+	private final LongIntHashMap generated = new LongIntHashMap(1024, 0);
+
+	// The queue: columns in rank order, and the position of the next one.
+	private int[] queueX = new int[64], queueZ = new int[64];
+	private int queueSize, queueNext;
+
+	// Scratch: packed (rank bits << 32 | candidate index), sorted to rank the candidates.
+	private long[] ranks = new long[64];
+	private int[] candidateX = new int[64], candidateZ = new int[64];
+
+	// Number of queued columns dropped for falling out of range.
+	private long cancelled;
+
+	/**
+	 * Creates a scheduler.
+	 *
+	 * @param range The distance around the camera within which columns are
+	 *              generated, in blocks.
+	 */
+	public ChunkScheduler(int range) {
+		this.range = range;
+	}
+
+	/**
+	 * Ranks the missing columns again from the camera states of the last two
+	 * simulation ticks.
+	 *
+	 * @param previous The camera state of the previous tick.
+	 * @param current  The camera state of the current tick.
+	 */
+	public void update(CameraState previous, CameraState current) {
+		double yaw = Math.toRadians(current.rotY);
+		update(current.x, current.z, (current.x - previous.x) * Simulation.TICK_RATE,
+				(current.z - previous.z) * Simulation.TICK_RATE, (float) Math.sin(yaw), (float) -Math.cos(yaw));
+	}
+
+	/**
+	 * Ranks the missing columns again.
+	 *
+	 * @param x         The X coordinate of the camera.
+	 * @param z         The Z coordinate of the camera.
+	 * @param velocityX The X velocity of the camera, in blocks per second.
+	 * @param velocityZ The Z velocity of the camera, in blocks per second.
+	 * @param viewX     The X component of the camera's horizontal view direction.
+	 * @param viewZ     The Z component of the camera's horizontal view direction.
+	 */
+	public void update(float x, float z, float velocityX, float velocityZ, float viewX, float viewZ) {
+		int minX = Math.floorDiv((int) Math.floor(x) - range, ChunkSection.SIZE);
+		int maxX = Math.floorDiv((int) Math.floor(x) + range, ChunkSection.SIZE);
+		int minZ = Math.floorDiv((int) Math.floor(z) - range, ChunkSection.SIZE);
+		int maxZ = Math.floorDiv((int) Math.floor(z) + range, ChunkSection.SIZE);
+
+		// Queued columns now out of range are cancelled.
+		for (int i = queueNext; i < queueSize; i++) {
+			if (queueX[i] < minX || queueX[i] > maxX || queueZ[i] < minZ || queueZ[i] > maxZ) {
+				cancelled++;
+			}
+		}
+
+		// The path the camera is predicted to follow.
+		float endX = x + velocityX * LOOKAHEAD_SECONDS, endZ = z + velocityZ * LOOKAHEAD_SECONDS;
+		float viewLength = (float) Math.sqrt(viewX * viewX + viewZ * viewZ);
+		double cosHalfAngle = Math.cos(VIEW_HALF_ANGLE);
+
+		int count = 0;
+		for (int cx = minX; cx <= maxX; cx++) {
+			for (int cz = minZ; cz <= maxZ; cz++) {
+				if (generated.containsKey(ChunkRegistry.key(cx, 0, cz))) {
+					continue;
+				}
+				float centreX = cx * ChunkSection.SIZE + ChunkSection.SIZE / 2f;
+				float centreZ = cz * ChunkSection.SIZE + ChunkSection.SIZE / 2f;
+				float rank = distanceToSegment(centreX, centreZ, x, z, endX, endZ);
+
+				// Columns away from the view direction, beyond the one under the camera, wait longer.
+				float toX = centreX - x, toZ = centreZ - z;
+				float toLength = (float) Math.sqrt(toX * toX + toZ * toZ);
+				if (toLength > ChunkSection.SIZE && viewLength > 0
+						&& (toX * viewX + toZ * viewZ) < cosHalfAngle * toLength * viewLength) {
+					rank *= OUTSIDE_VIEW_PENALTY;
+				}
+
+				if (count == ranks.length) {
+					ranks = Arrays.copyOf(ranks, count * 2);
+					candidateX = Arrays.copyOf(candidateX, count * 2);
+					candidateZ = Arrays.copyOf(candidateZ, count * 2);
+				}
+				// Ranks are positive, so their float bits sort like the ranks.
+				ranks[count] = (long) Float.floatToIntBits(rank) << 32 | count;
+				candidateX[count] = cx;
+				candidateZ[count] = cz;
+				count++;
+			}
+		}
+		Arrays.sort(ranks, 0, count);
+
+		if (queueX.length < count) {
+			queueX = new int[ranks.length];
+			queueZ = new int[ranks.length];
+		}
+		for (int i = 0; i < count; i++) {
+			int candidate = (int) ranks[i];
+			queueX[i] = candidateX[candidate];
+			queueZ[i] = candidateZ[candidate];
+		}
+		queueSize = count;
+		queueNext = 0;
+	}
+
+	/**
+	 * Takes the best ranked column still missing, marking it as generated.
+	 *
+	 * @param column Receives the X and Z chunk coordinates of the column.
+	 * @return true if a column was taken, false if every column in range is
+	 *         generated.
+	 */
+	public boolean next(int[] column) {
+		if (queueNext == queueSize) {
+			return false;
+		}
+		column[0] = queueX[queueNext];
+		column[1] = queueZ[queueNext];
+		queueNext++;
+		generated.put(ChunkRegistry.key(column[0], 0, column[1]), 1);
+		return true;
+	}
+
+	/**
+	 * Changes the distance around the camera within which columns are
+	 * generated. Takes effect at the next update; columns already generated
+	 * stay generated.
+	 *
+	 * @param range The distance, in blocks.
+	 */
+	public void setRange(int range) {
+		this.range = range;
+	}
+
+	/**
+	 * Gets the distance around the camera within which columns are generated.
+	 *
+	 * @return The distance, in blocks.
+	 */
+	public int getRange() {
+		return range;
+	}
+
+	/**
+	 * Gets the number of queued columns dropped because the camera moved away
+	 * before they were generated.
+	 *
+	 * @return The number of cancelled columns.
+	 */
+	public long getCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Gets the distance from a point to a segment.
+	 */
+	private static float distanceToSegment(float px, float pz, float ax, float az, float bx, float bz) {
+		float abX = bx - ax, abZ = bz - az;
+		float lengthSquared = abX * abX + abZ * abZ;
+		float t = lengthSquared == 0 ? 0 : ((px - ax) * abX + (pz - az) * abZ) / lengthSquared;
+		t = Math.max(0, Math.min(1, t));
+		float dx = px - (ax + t * abX), dz = pz - (az + t * abZ);
+		return (float) Math.sqrt(dx * dx + dz * dz);
+	}
+}
@@ -0,0 +1,118 @@
+package juancraft;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The LoadedChunks class holds the chunks that are ready to be rendered and
+ * publishes them as immutable, versioned snapshots. Writers build a new array
+ * with their changes and swap it in atomically; readers such as the simulation
+ * and the render thread take the current snapshot and iterate its array
+ * without any locking, never seeing a half-applied change.
+ *
+ * Copying the array on every change costs time proportional to the number of
+ * chunks, so writers should batch their changes, as the mesh uploader does
+ * once per frame.
+ */
+public class LoadedChunks {
+
+	// The current snapshot.
+	private final AtomicReference<Snapshot> current = new AtomicReference<Snapshot>(new Snapshot(0, new Chunck[0]));
+
+	/**
+	 * Gets the current snapshot. It never changes; later changes publish a new
+	 * one.
+	 *
+	 * @return The current snapshot.
+	 */
+	public Snapshot getSnapshot() {
+		return current.get();
+	}
+
+	/**
+	 * Adds chunks, publishing them in a single new snapshot.
+	 *
+	 * @param added The chunks to add.
+	 */
+	public void addAll(Collection<Chunck> added) {
+		if (added.isEmpty()) {
+			return;
+		}
+		Snapshot snapshot, next;
+		do {
+			snapshot = current.get();
+			Chunck[] chunks = new Chunck[snapshot.chunks.length + added.size()];
+			System.arraycopy(snapshot.chunks, 0, chunks, 0, snapshot.chunks.length);
+			int i = snapshot.chunks.length;
+			for (Chunck chunk : added) {
+				chunks[i++] = chunk;
+			}
+			next = new Snapshot(snapshot.version + 1, chunks);
+		} while (!current.compareAndSet(snapshot, next));
+	}
+
+	/**
+	 * Removes chunks, publishing the rest in a single new snapshot.
+	 *
+	 * @param removed The chunks to remove.
+	 */
+	public void removeAll(Collection<Chunck> removed) {
+		if (removed.isEmpty()) {
+			return;
+		}
+		Set<Chunck> removedSet = Collections.newSetFromMap(new IdentityHashMap<Chunck, Boolean>());
+		removedSet.addAll(removed);
+		Snapshot snapshot, next;
+		do {
+			snapshot = current.get();
+			List<Chunck> kept = new ArrayList<Chunck>(snapshot.chunks.length);
+			for (Chunck chunk : snapshot.chunks) {
+				if (!removedSet.contains(chunk)) {
+					kept.add(chunk);
+				}
+			}
+			next = new Snapshot(snapshot.version + 1, kept.toArray(new Chunck[kept.size()]));
+		} while (!current.compareAndSet(snapshot, next));
+	}
+
+	/**
+	 * An immutable view of the loaded chunks at one point in time.
+	 */
+	public static final class Snapshot {
+
+		// Incremented by every change.
+		private final long version;
+
+		// The chunks; the array is never modified.
+		private final Chunck[] chunks;
+
+		Snapshot(long version, Chunck[] chunks) {
+			this.version = version;
+			this.chunks = chunks;
+		}
+
+		/**
+		 * Gets the version of the snapshot; a later snapshot has a higher version.
+		 *
+		 * @return The version.
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * Gets the chunks of the snapshot. The returned array is shared and must
+		 * not be modified.
+		 *
+		 * @return The loaded chunks.
+		 */
+		public Chunck[] getChunks() {
+			return chunks;
+		}
+	}
+}
@@ -1,22 +1,43 @@
 package juancraft;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
 
 import org.lwjgl.opengl.Display;
 import org.lwjgl.util.vector.Vector3f;
 
 import entities.Camera;
+import entities.CameraInput;
+import entities.CameraInputSource;
+import entities.CameraPath;
+import entities.CameraState;
 import entities.Entity;
-import models.AtlasCubeModel;
-import models.RawModel;
-import models.TexturedModel;
+import render_engine.AssetLoader;
 import render_engine.DisplayManager;
 import render_engine.Loader;
 import render_engine.MasterRenderer;
+import render_engine.TextureData;
 import shaders.StaticShader;
 import textures.Modeltexture;
+import toolbox.Instrumentation;
+import toolbox.TimingStats;
+import toolbox.Workers;
+import world.BlockBehaviours;
+import world.BlockChangeListener;
+import world.BlockTicker;
+import world.FlatTerrain;
+import world.FluidEngine;
+import world.ChunkSection;
+import world.LightEngine;
+import world.Material;
+import world.TreeDecorator;
+import world.World;
+import world.WorldGenerator;
 
 /**
  * The MainGameLoop class is the entry point of the JuanCraft game application.
@@ -29,17 +50,28 @@ public class MainGameLoop {
     public static Loader loader1 = null; // Loader instance for model loading
     public static StaticShader shader1 = null; // Shader instance for rendering
     
-    // List of chunks to be rendered in the game world.
-    static List<Chunck> chunks = Collections.synchronizedList(new ArrayList<Chunck>());
+    // Block storage of the game world, queried by the simulation.
+    static World world = new World();
     
-    // Vector representing the position of the camera.
-    static Vector3f camPos = new Vector3f(0, 0, 0);
+    // Chunks to be rendered in the game world, published as lock-free snapshots.
+    static LoadedChunks chunks = new LoadedChunks();
     
-    // List of positions that have been used for placing entities to avoid duplication.
-    static List<Vector3f> usedPos = new ArrayList<Vector3f>();
-    
-    // Defines the size of the world (distance from the camera in each direction).
+    // Seed of the world's random block ticks.
+    static final long WORLD_SEED = 42;
+
+    // Defines the initial size of the world (distance from the camera in each
+    // direction), and the bounds the quality governor keeps it within.
     static final int WORLD_SIZE = 9 * 16;
+    static final int MIN_WORLD_SIZE = 4 * 16, MAX_WORLD_SIZE = 16 * 16;
+
+    // Initial time each frame may spend uploading section meshes, and its bounds.
+    static final long MESH_UPLOAD_BUDGET_NANOS = 2_000_000L;
+    static final long MIN_MESH_UPLOAD_BUDGET_NANOS = 500_000L, MAX_MESH_UPLOAD_BUDGET_NANOS = 8_000_000L;
+
+    // System properties naming a camera path file to replay instead of the
+    // player's input, and a file to record the camera's path into.
+    static final String REPLAY_PROPERTY = "juancraft.replay";
+    static final String RECORD_PROPERTY = "juancraft.record";
 
     /**
      * The main method that starts the game. It initializes the display, creates a
@@ -48,109 +80,210 @@ public class MainGameLoop {
      * @param args Command line arguments (not used in this application).
      */
     public static void main(String[] args) {
+        // Start the clock used for the time-to-first-frame report.
+        Instrumentation.start();
+
+        // Start decoding the material textures on the worker pool; this needs no OpenGL
+        // context, so it overlaps with display creation and shader compilation.
+        List<CompletableFuture<TextureData>> materialTextureData = new ArrayList<CompletableFuture<TextureData>>();
+        for (int material = 0; material < Material.COUNT; material++) {
+            String textureName = Material.getTexture(material);
+            materialTextureData.add(textureName != null ? AssetLoader.decodeTexture(textureName)
+                    : CompletableFuture.completedFuture(Loader.createColourTexture(Material.getColour(material))));
+        }
+
         // Create and initialize the display window for the game.
         DisplayManager.createDisplay();
+        Instrumentation.mark("display created");
 
         // Create a Loader instance for loading models and shaders.
         Loader loader = new Loader();
         loader1 = loader; // Store the loader instance for potential future use.
+        AssetLoader assets = new AssetLoader(loader); // Uploads the assets decoded by the workers
         StaticShader shader = new StaticShader();
         shader1 = shader; // Store the shader instance for potential future use.
+        Instrumentation.mark("shaders ready");
 
-        // Instantiate the MasterRenderer to handle rendering operations.
-        MasterRenderer renderer = new MasterRenderer();
+        // Instantiate the MasterRenderer to handle rendering operations, sharing the shader program.
+        MasterRenderer renderer = new MasterRenderer(shader);
+
+        // Upload the decoded textures and create a Modeltexture object for each material.
+        Modeltexture[] materialTextures = new Modeltexture[Material.COUNT];
+        for (int material = 0; material < Material.COUNT; material++) {
+            materialTextures[material] = new Modeltexture(assets.uploadTexture(materialTextureData.get(material)));
+        }
+        Instrumentation.mark("assets uploaded");
 
-        // Load the vertices, indices, and UV coordinates into a RawModel.
-        RawModel model = loader.loadToVao(AtlasCubeModel.vertices, AtlasCubeModel.indices, AtlasCubeModel.uv);
+        // Mesh the sections on the workers whenever their blocks or light change,
+        // and light every new section.
+        ChunkMeshUploader meshUploader = new ChunkMeshUploader(world, loader, materialTextures, chunks);
+        LightEngine lightEngine = new LightEngine(world);
+        lightEngine.setListener(meshUploader::requestMesh);
 
-        // Load a texture from the specified file and create a Modeltexture object.
-        Modeltexture texture = new Modeltexture(loader.loadTexture("grassTex"));
+        // Tick the blocks of the world and let the water flow on the workers; the
+        // blocks they change are lit and meshed again, and the water flows around
+        // the blocks the ticks change.
+        FluidEngine fluids = new FluidEngine(world, Workers.POOL);
+        fluids.setListener(lightEngine::blockChanged);
+        BlockTicker blockTicker = new BlockTicker(world, WORLD_SEED, Workers.POOL);
+        BlockBehaviours.registerDefaults(blockTicker);
+        BlockChangeListener blockChanges = (x, y, z, oldBlock, newBlock) -> {
+            lightEngine.blockChanged(x, y, z, oldBlock, newBlock);
+            fluids.blockChanged(x, y, z, oldBlock, newBlock);
+        };
+        blockTicker.setListener(blockChanges);
 
-        // Create a TexturedModel object using the loaded texture and the 3D model.
-        TexturedModel texturedModel = new TexturedModel(model, texture);
+        // Generate the flat world with trees on it; the leaves a new section places
+        // in its live neighbours are applied by the simulation, like block ticks.
+        FlatTerrain terrain = new FlatTerrain();
+        WorldGenerator worldGenerator = new WorldGenerator(world, terrain, new TreeDecorator(WORLD_SEED, terrain));
+        worldGenerator.setListener(blockChanges);
 
-        // Create a Camera object positioned at the origin with no rotation.
+        // Create the simulation's Camera object positioned at the origin with no rotation.
         Camera camera = new Camera(new Vector3f(0, 0, 0), 0, 0, 0);
         
-        // Create a new thread to manage entities creation in the positive X and Z quadrant.
+        // Move the camera with the input sampled here, along a recorded path when
+        // replaying one, and record the path taken when asked to.
+        CameraInput input = new CameraInput();
+        CameraInputSource source = input;
+        String replayFile = System.getProperty(REPLAY_PROPERTY);
+        if (replayFile != null) {
+            try {
+                source = new CameraPath.Player(CameraPath.load(Paths.get(replayFile)));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not load camera path " + replayFile, e);
+            }
+        }
+        String recordFile = System.getProperty(RECORD_PROPERTY);
+        CameraPath.Recorder recorder = null;
+        if (recordFile != null) {
+            recorder = new CameraPath.Recorder(source);
+            source = recorder;
+        }
+
+        // Start the fixed-rate simulation; it moves its own camera and publishes a
+        // snapshot of the world after every tick.
+        Simulation simulation = new Simulation(camera, source, chunks, world, blockTicker, fluids,
+                worldGenerator, WORLD_SIZE);
+        simulation.start();
+
+        // Adapt the view distance, upload budget and mesh shading to the frame times.
+        QualityGovernor governor = new QualityGovernor(1_000_000_000L / DisplayManager.getFpsCap(), MIN_WORLD_SIZE,
+                WORLD_SIZE, MAX_WORLD_SIZE, MIN_MESH_UPLOAD_BUDGET_NANOS, MESH_UPLOAD_BUDGET_NANOS,
+                MAX_MESH_UPLOAD_BUDGET_NANOS);
+
+        // Create a new thread generating the chunks around the camera, those on the
+        // camera's predicted path and in view first.
         new Thread(new Runnable() {
             @Override
             public void run() {
+                ChunkScheduler scheduler = new ChunkScheduler(WORLD_SIZE);
+                int[] column = new int[2];
+                long lastTick = -1;
+
                 // Loop continuously while the display is open.
                 while (!Display.isCloseRequested()) {
-                    // Loop through a 20x20 grid area in the positive X and Z quadrant around the camera.
-                    for (int x = (int) (camPos.x - WORLD_SIZE) / 16; x < (camPos.x + WORLD_SIZE) / 16; x++) {
-                        for (int z = (int) (camPos.z - WORLD_SIZE) / 16; z < (camPos.z + WORLD_SIZE) / 16; z++) {
-                            // Check if the position is already used to avoid duplicate entities.
-                            if (!usedPos.contains(new Vector3f(x * 16, 0, z * 16))) {
-                                
-                                // Create a list of blocks (entities) for the current chunk.
-                                List<Entity> blocks = new ArrayList<Entity>();
-                                
-                                // Loop to create a 16x16 grid of blocks for the current chunk.
-                                for (int i = 0; i < 16; i++) {
-                                    for (int j = 0; j < 16; j++) {
-                                        blocks.add(new Entity(
-                                            texturedModel,
-                                            new Vector3f((x * 16) + i, 0, (z * 16) + j),
-                                            0, 0, 0, 1
-                                        ));
-                                    }
-                                }
-                                
-                                // Add the new chunk to the list of chunks.
-                                chunks.add(new Chunck(blocks, new Vector3f(x * 16, 0, z * 16)));
-                                
-                                // Mark the position as used.
-                                usedPos.add(new Vector3f(x * 16, 0, z * 16));
-                            }
-                        }
+                    // Rank the missing chunks again whenever the simulation publishes a new camera.
+                    WorldSnapshot snapshot = simulation.getSnapshot();
+                    if (snapshot != null && snapshot.getTick() != lastTick) {
+                        lastTick = snapshot.getTick();
+                        scheduler.setRange(governor.getViewDistance());
+                        scheduler.update(snapshot.getPreviousCamera(), snapshot.getCamera());
+                    }
+
+                    // Wait for the next tick when every chunk in range is generated.
+                    if (!scheduler.next(column)) {
+                        LockSupport.parkNanos(Simulation.TICK_NANOS);
+                        continue;
                     }
+
+                    // Generate the section of the current chunk and add it to the
+                    // world; once lit, it is meshed and its chunk appears in the
+                    // list of chunks.
+                    ChunkSection section = worldGenerator.generate(column[0], 0, column[1]);
+                    lightEngine.sectionAdded(section);
                 }
             }
         }).start();
 
+        // The camera the frames are rendered from, interpolated between ticks.
+        Camera renderCamera = new Camera(new Vector3f(0, 0, 0), 0, 0, 0);
+
+        // Time from a snapshot being published to its first frame.
+        TimingStats publishLatency = Instrumentation.timing("sim.publishLatency");
+        long lastTick = -1;
+
+        // Whether the first frame has been presented, for the startup report.
+        boolean firstFrame = true;
+
+        // Duration of the frames' work, without the wait for the frame rate cap.
+        TimingStats frameTime = Instrumentation.timing("frame");
+
         // Main game loop, which runs continuously until the display requests to close.
         while (!Display.isCloseRequested()) {
+            long frameStart = System.nanoTime();
             
-            // Call the move method of the camera to update its position based on input.
-            camera.move(); // Update camera position based on user input
-            
-            // Get the current camera position for entity placement logic.
-            camPos = camera.getPosition();
-
-            // Render each chunk if within the specified world size.
-            for (int i = 0; i < chunks.size(); i++) {
-                
-                Vector3f origin = chunks.get(i).getOrigin();
-                
-                // Calculate the distance between the camera and the chunk along the X-axis.
-                int distX = (int) (camPos.x - origin.x);
-                // Calculate the distance between the camera and the chunk along the Z-axis.
-                int distZ = (int) (camPos.z - origin.z);
-
-                // Convert negative distances to positive values.
-                if (distX < 0) {
-                    distX = -distX;
-                }
+            // Hand this frame's keyboard and mouse input to the simulation.
+            input.sample();
 
-                if (distZ < 0) {
-                    distZ = -distZ;
+            // Upload the section meshes the workers have finished, within the frame's budget.
+            meshUploader.uploadPending(governor.getUploadBudgetNanos());
+
+            WorldSnapshot snapshot = simulation.getSnapshot();
+            if (snapshot != null) {
+                if (snapshot.getTick() != lastTick) {
+                    lastTick = snapshot.getTick();
+                    publishLatency.record(System.nanoTime() - snapshot.getPublishTime());
                 }
 
-                // If the chunk is within the world size range, render its blocks.
-                if (distX <= WORLD_SIZE && distZ <= WORLD_SIZE) {
-                    for (Entity block : chunks.get(i).getBlocks()) {
+                // Interpolate the camera between the last two ticks.
+                float alpha = (System.nanoTime() - snapshot.getTickTime()) / (float) Simulation.TICK_NANOS;
+                CameraState.interpolate(snapshot.getPreviousCamera(), snapshot.getCamera(),
+                        Math.max(0f, Math.min(1f, alpha)), renderCamera);
+
+                // Render the blocks of every chunk the simulation found within view distance.
+                for (Chunck chunk : snapshot.getVisibleChunks()) {
+                    for (Entity block : chunk.getBlocks()) {
                         renderer.addEntity(block); // Add each block entity to the renderer.
                     }
+                    for (Entity block : chunk.getTranslucentBlocks()) {
+                        renderer.addTranslucentEntity(block, ChunkSection.SIZE); // Drawn back to front
+                    }
                 }
+
+                // Keep the faces of the translucent blocks near the camera ordered back to front.
+                meshUploader.sortTranslucent(renderCamera.getPosition());
             }
             
             // Render the scene with the camera's current view.
-            renderer.render(camera);
+            renderer.render(renderCamera);
 
             // Update the display (sync frame rate and render new frame).
             DisplayManager.updateDisplay();
+
+            // Let the governor adjust the settings to the frame's duration.
+            long frameNanos = System.nanoTime() - frameStart - DisplayManager.getSyncNanos();
+            frameTime.record(frameNanos);
+            if (governor.recordFrame(frameNanos, meshUploader.getBacklog())) {
+                simulation.setViewDistance(governor.getViewDistance());
+                meshUploader.setAmbientOcclusion(governor.isAmbientOcclusion());
+            }
+
+            if (firstFrame) {
+                firstFrame = false;
+                Instrumentation.mark("first frame");
+                Instrumentation.reportStartup(); // Report the time to first frame
+            }
+            Instrumentation.reportPeriodically();
+        }
+
+        // Save the recorded camera path before the display closes and exits.
+        if (recorder != null) {
+            try {
+                recorder.getPath().save(Paths.get(recordFile));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
 
         // Close the display and clean up resources when the loop exits.
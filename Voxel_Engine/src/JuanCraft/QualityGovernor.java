@@ -0,0 +1,272 @@
+package juancraft;
+
+import java.util.Locale;
+
+import toolbox.Instrumentation;
+import toolbox.TimingStats;
+
+/**
+ * The QualityGovernor class adapts the engine's quality settings to the
+ * machine it runs on. It watches the frame times and the mesh upload backlog
+ * over windows of frames, and adjusts three settings within their bounds: the
+ * view distance, the time each frame may spend uploading meshes, and whether
+ * meshes are shaded with ambient occlusion.
+ *
+ * A window whose 95th percentile frame time is well over the target lowers the
+ * cheapest setting first: the upload budget while meshes are waiting, then the
+ * view distance, then ambient occlusion, which frees the workers' time on
+ * machines where meshing competes with the render thread. A window with plenty
+ * of headroom and no backlog raises them again in the reverse order. A backlog
+ * that persists while frames have headroom raises the upload budget.
+ *
+ * Several mechanisms keep the settings from oscillating: the thresholds for
+ * lowering and raising leave a dead band around the target, a change needs
+ * several windows in a row agreeing (more to raise than to lower), every
+ * change is followed by a cool-down while its effect shows, and raising the
+ * view distance or upload budget back to a value that was just abandoned takes
+ * a longer streak.
+ *
+ * The governor has no clock of its own: it is fed the duration of every
+ * frame, so it can be driven by synthetic frame times. Decisions are logged
+ * through the Instrumentation. Frames are recorded by the render thread; the
+ * settings may be read from any thread.
+ */
+public class QualityGovernor {
+
+    // Number of frames per evaluation window.
+    private static final int WINDOW_FRAMES = 120;
+
+    // The settings are lowered when the 95th percentile frame time exceeds the
+    // target by this factor, and may be raised when it stays below this one.
+    private static final double SLOW_FACTOR = 1.15, FAST_FACTOR = 0.7;
+
+    // Frames with headroom have a 95th percentile below the target by this factor.
+    private static final double HEADROOM_FACTOR = 0.9;
+
+    // Consecutive windows needed to lower or raise the settings.
+    private static final int LOWER_WINDOWS = 2, RAISE_WINDOWS = 5;
+
+    // Windows skipped after a change, while its effect shows.
+    private static final int COOLDOWN_WINDOWS = 2;
+
+    // Backlog above which uploads are falling behind, and at or below which they
+    // keep up, in meshes.
+    private static final int BACKLOG_HIGH = 64, BACKLOG_LOW = 4;
+
+    // Change of the view distance per step, in blocks: one chunk.
+    private static final int VIEW_DISTANCE_STEP = 16;
+
+    // Frame time the governor aims for.
+    private final long targetFrameNanos;
+
+    // Bounds of the settings.
+    private final int minViewDistance, maxViewDistance;
+    private final long minUploadBudget, maxUploadBudget;
+
+    // The settings.
+    private volatile int viewDistance;
+    private volatile long uploadBudgetNanos;
+    private volatile boolean ambientOcclusion = true;
+
+    // Frame times of the current window.
+    private final TimingStats frameTimes = new TimingStats("governor.frame", WINDOW_FRAMES);
+
+    // Frames recorded in the current window, and the largest backlog seen in it.
+    private int windowFrames, windowBacklog;
+
+    // Consecutive slow, fast and backlogged windows, and windows left to cool down.
+    private int slowWindows, fastWindows, backlogWindows, cooldown;
+
+    // The last view distance and upload budget lowered from, raised back to more
+    // reluctantly.
+    private int abandonedViewDistance = Integer.MAX_VALUE;
+    private long abandonedUploadBudget = Long.MAX_VALUE;
+
+    // Number of changes made.
+    private long changes;
+
+    /**
+     * Creates a governor.
+     *
+     * @param targetFrameNanos  The frame time to aim for.
+     * @param minViewDistance   The smallest view distance, in blocks.
+     * @param viewDistance      The initial view distance, in blocks.
+     * @param maxViewDistance   The largest view distance, in blocks.
+     * @param minUploadBudget   The smallest upload budget per frame, in nanoseconds.
+     * @param uploadBudgetNanos The initial upload budget per frame, in nanoseconds.
+     * @param maxUploadBudget   The largest upload budget per frame, in nanoseconds.
+     */
+    public QualityGovernor(long targetFrameNanos, int minViewDistance, int viewDistance, int maxViewDistance,
+            long minUploadBudget, long uploadBudgetNanos, long maxUploadBudget) {
+        if (minViewDistance > viewDistance || viewDistance > maxViewDistance || minUploadBudget > uploadBudgetNanos
+                || uploadBudgetNanos > maxUploadBudget || minUploadBudget <= 0) {
+            throw new IllegalArgumentException("Initial settings outside their bounds");
+        }
+        this.targetFrameNanos = targetFrameNanos;
+        this.minViewDistance = minViewDistance;
+        this.viewDistance = viewDistance;
+        this.maxViewDistance = maxViewDistance;
+        this.minUploadBudget = minUploadBudget;
+        this.uploadBudgetNanos = uploadBudgetNanos;
+        this.maxUploadBudget = maxUploadBudget;
+    }
+
+    /**
+     * Records a frame, and adjusts the settings at the end of each window.
+     *
+     * @param frameNanos The time the frame's work took, without waiting for the
+     *                   frame rate cap.
+     * @param backlog    The number of meshes waiting to be uploaded.
+     * @return true if the settings changed.
+     */
+    public boolean recordFrame(long frameNanos, int backlog) {
+        frameTimes.record(frameNanos);
+        windowBacklog = Math.max(windowBacklog, backlog);
+        if (++windowFrames < WINDOW_FRAMES) {
+            return false;
+        }
+        double p95 = frameTimes.percentileMillis(95) * 1e6;
+        int maxBacklog = windowBacklog;
+        windowFrames = 0;
+        windowBacklog = 0;
+
+        if (cooldown > 0) {
+            cooldown--;
+            return false;
+        }
+        slowWindows = p95 > targetFrameNanos * SLOW_FACTOR ? slowWindows + 1 : 0;
+        fastWindows = p95 < targetFrameNanos * FAST_FACTOR && maxBacklog <= BACKLOG_LOW ? fastWindows + 1 : 0;
+        backlogWindows = maxBacklog > BACKLOG_HIGH && p95 < targetFrameNanos * HEADROOM_FACTOR ? backlogWindows + 1
+                : 0;
+
+        String change = null;
+        if (slowWindows >= LOWER_WINDOWS) {
+            change = lower(maxBacklog);
+        } else if (backlogWindows >= LOWER_WINDOWS && uploadBudgetNanos < maxUploadBudget) {
+            change = raiseUploadBudget();
+        } else if (fastWindows >= RAISE_WINDOWS) {
+            change = raise();
+        }
+        if (change == null) {
+            return false;
+        }
+
+        changes++;
+        slowWindows = fastWindows = backlogWindows = 0;
+        cooldown = COOLDOWN_WINDOWS;
+        Instrumentation.log("governor", String.format(Locale.ROOT, "frame p95 %.2f ms (target %.2f ms), backlog %d: %s",
+                p95 / 1e6, targetFrameNanos / 1e6, maxBacklog, change));
+        return true;
+    }
+
+    /**
+     * Lowers the cheapest setting still above its bound. The upload budget only
+     * costs frame time while meshes are waiting, so it is left alone without a
+     * backlog.
+     *
+     * @param backlog The largest backlog of the window.
+     * @return The change made, or null if every setting is at its lowest.
+     */
+    private String lower(int backlog) {
+        if (uploadBudgetNanos > minUploadBudget && backlog > 0) {
+            long budget = Math.max(minUploadBudget, uploadBudgetNanos / 2);
+            String change = String.format(Locale.ROOT, "upload budget %.2f -> %.2f ms", uploadBudgetNanos / 1e6,
+                    budget / 1e6);
+            abandonedUploadBudget = uploadBudgetNanos;
+            uploadBudgetNanos = budget;
+            return change;
+        }
+        if (viewDistance > minViewDistance) {
+            int distance = Math.max(minViewDistance, viewDistance - VIEW_DISTANCE_STEP);
+            String change = "view distance " + viewDistance + " -> " + distance + " blocks";
+            abandonedViewDistance = viewDistance;
+            viewDistance = distance;
+            return change;
+        }
+        if (ambientOcclusion) {
+            ambientOcclusion = false;
+            return "ambient occlusion off";
+        }
+        return null;
+    }
+
+    /**
+     * Doubles the upload budget, within its bound, for a persistent backlog.
+     *
+     * @return The change made, or null if the budget was too much recently.
+     */
+    private String raiseUploadBudget() {
+        long budget = Math.min(maxUploadBudget, uploadBudgetNanos * 2);
+        if (budget >= abandonedUploadBudget) {
+            if (backlogWindows < 2 * RAISE_WINDOWS) {
+                return null;
+            }
+            abandonedUploadBudget = Long.MAX_VALUE;
+        }
+        String change = String.format(Locale.ROOT, "upload budget %.2f -> %.2f ms", uploadBudgetNanos / 1e6,
+                budget / 1e6);
+        uploadBudgetNanos = budget;
+        return change;
+    }
+
+    /**
+     * Raises the setting lowered last, if it is below its bound.
+     *
+     * @return The change made, or null if there is nothing to raise yet.
+     */
+    private String raise() {
+        if (!ambientOcclusion) {
+            ambientOcclusion = true;
+            return "ambient occlusion on";
+        }
+        if (viewDistance < maxViewDistance) {
+            int distance = Math.min(maxViewDistance, viewDistance + VIEW_DISTANCE_STEP);
+            if (distance >= abandonedViewDistance) {
+                if (fastWindows < 2 * RAISE_WINDOWS) {
+                    return null; // The distance was too much recently; wait longer
+                }
+                abandonedViewDistance = Integer.MAX_VALUE;
+            }
+            String change = "view distance " + viewDistance + " -> " + distance + " blocks";
+            viewDistance = distance;
+            return change;
+        }
+        return null;
+    }
+
+    /**
+     * Gets the half-size of the area around the camera to generate and draw.
+     *
+     * @return The view distance, in blocks.
+     */
+    public int getViewDistance() {
+        return viewDistance;
+    }
+
+    /**
+     * Gets the time each frame may spend uploading meshes.
+     *
+     * @return The upload budget in nanoseconds.
+     */
+    public long getUploadBudgetNanos() {
+        return uploadBudgetNanos;
+    }
+
+    /**
+     * Gets whether meshes are shaded with ambient occlusion.
+     *
+     * @return true to shade with ambient occlusion.
+     */
+    public boolean isAmbientOcclusion() {
+        return ambientOcclusion;
+    }
+
+    /**
+     * Gets the number of times the settings changed.
+     *
+     * @return The number of changes.
+     */
+    public long getChanges() {
+        return changes;
+    }
+}
@@ -0,0 +1,217 @@
+package juancraft;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import entities.Camera;
+import entities.CameraInputSource;
+import entities.CameraState;
+import toolbox.Instrumentation;
+import toolbox.TimingStats;
+import world.BlockTicker;
+import world.FluidEngine;
+import world.RaycastHit;
+import world.VoxelRaycast;
+import world.World;
+import world.WorldGenerator;
+
+/**
+ * The Simulation class runs the world logic at a fixed tick rate on its own
+ * thread, independently of the frame rate. Each tick applies the input gathered
+ * by the render thread to the camera, applies the blocks that newly generated
+ * sections placed in their loaded neighbours, runs the block ticks of the world
+ * and every few ticks a step of the flowing water, works out which chunks are
+ * within view distance, finds the block the camera is looking at, and publishes
+ * the result as an immutable WorldSnapshot that the render thread, and the
+ * chunk generator following the camera, pick up without locking.
+ */
+public class Simulation implements Runnable {
+
+	/** Number of simulation ticks per second. */
+	public static final int TICK_RATE = 60;
+
+	/** Duration of one tick in nanoseconds. */
+	public static final long TICK_NANOS = 1_000_000_000L / TICK_RATE;
+
+	// Number of ticks per step of the flowing water.
+	private static final int FLUID_STEP_TICKS = 5;
+
+	// Maximum number of ticks run back to back to catch up after a stall.
+	private static final int MAX_CATCH_UP_TICKS = 5;
+
+	// Distance up to which the block the camera looks at is picked.
+	private static final float PICK_DISTANCE = 64f;
+
+	// The camera owned by the simulation.
+	private final Camera camera;
+
+	// Where the camera's movement comes from: the player's input or a replayed path.
+	private final CameraInputSource input;
+
+	// The chunks ready to be rendered, published by the mesh uploader.
+	private final LoadedChunks chunks;
+
+	// Runs the scheduled and random block ticks.
+	private final BlockTicker blockTicker;
+
+	// Makes the water flow.
+	private final FluidEngine fluids;
+
+	// Generates the sections, and queues the blocks they place in loaded ones.
+	private final WorldGenerator generator;
+
+	// Half-size of the visible area around the camera, changed by the render thread.
+	private volatile int viewDistance;
+
+	// Raycaster picking the block the camera looks at, and its scratch data.
+	private final VoxelRaycast raycast;
+	private final RaycastHit hit = new RaycastHit();
+	private final Vector3f viewDirection = new Vector3f();
+
+	// Latest published snapshot.
+	private volatile WorldSnapshot snapshot;
+
+	// Cleared to stop the simulation thread.
+	private volatile boolean running = true;
+
+	// Number of ticks run so far.
+	private long tick;
+
+	// Camera state at the end of the last tick.
+	private CameraState lastCamera;
+
+	// Reused list collecting the visible chunks of a tick.
+	private final List<Chunck> visible = new ArrayList<Chunck>();
+
+	// Duration of the ticks.
+	private final TimingStats tickTime = Instrumentation.timing("sim.tick");
+
+	/**
+	 * Creates a simulation.
+	 *
+	 * @param camera       The camera moved by the simulation.
+	 * @param input        The source of the camera's movement.
+	 * @param chunks       The chunks ready to be rendered.
+	 * @param world        The block storage of the world.
+	 * @param blockTicker  The block ticker of the world.
+	 * @param fluids       The fluid engine of the world.
+	 * @param generator    The generator of the world's sections.
+	 * @param viewDistance The half-size of the visible area around the camera.
+	 */
+	public Simulation(Camera camera, CameraInputSource input, LoadedChunks chunks, World world,
+			BlockTicker blockTicker, FluidEngine fluids, WorldGenerator generator, int viewDistance) {
+		this.camera = camera;
+		this.input = input;
+		this.chunks = chunks;
+		this.blockTicker = blockTicker;
+		this.fluids = fluids;
+		this.generator = generator;
+		this.viewDistance = viewDistance;
+		this.raycast = new VoxelRaycast(world);
+		this.lastCamera = new CameraState(camera);
+	}
+
+	/**
+	 * Starts the simulation on a new daemon thread.
+	 */
+	public void start() {
+		Thread thread = new Thread(this, "simulation");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the simulation loop after the current tick.
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	/**
+	 * Changes the half-size of the visible area around the camera, from the
+	 * next tick on.
+	 *
+	 * @param viewDistance The new view distance, in blocks.
+	 */
+	public void setViewDistance(int viewDistance) {
+		this.viewDistance = viewDistance;
+	}
+
+	/**
+	 * Gets the latest published snapshot.
+	 *
+	 * @return The latest snapshot, or null before the first tick.
+	 */
+	public WorldSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	@Override
+	public void run() {
+		long nextTick = System.nanoTime();
+		while (running) {
+			long now = System.nanoTime();
+			int ticks = 0;
+			// Run every tick that is due, but give up catching up after a long stall.
+			while (now - nextTick >= 0 && ticks < MAX_CATCH_UP_TICKS) {
+				tick(nextTick);
+				nextTick += TICK_NANOS;
+				ticks++;
+			}
+			if (ticks == MAX_CATCH_UP_TICKS) {
+				nextTick = System.nanoTime() + TICK_NANOS; // Drop the ticks we could not run
+			}
+			LockSupport.parkNanos(nextTick - System.nanoTime());
+		}
+	}
+
+	/**
+	 * Runs one tick and publishes its snapshot.
+	 *
+	 * @param scheduledTime The time the tick was due.
+	 */
+	private void tick(long scheduledTime) {
+		long start = System.nanoTime();
+
+		// Move the camera with the input gathered since the last tick.
+		input.applyTo(camera, 1f / TICK_RATE);
+		Vector3f camPos = camera.getPosition();
+		int viewDistance = this.viewDistance;
+
+		// Grow the trees reaching into loaded sections, run the block ticks of the
+		// loaded world, and let the water flow.
+		generator.applyLateWrites();
+		blockTicker.tick();
+		if (tick % FLUID_STEP_TICKS == 0) {
+			fluids.step();
+		}
+
+		// Collect the chunks within view distance from the current snapshot, without locking.
+		visible.clear();
+		for (Chunck chunk : chunks.getSnapshot().getChunks()) {
+			Vector3f origin = chunk.getOrigin();
+			if (Math.abs(camPos.x - origin.x) <= viewDistance && Math.abs(camPos.z - origin.z) <= viewDistance) {
+				visible.add(chunk);
+			}
+		}
+
+		// Pick the block the camera is looking at.
+		RaycastHit target = null;
+		camera.getViewDirection(viewDirection);
+		if (raycast.cast(camPos.x, camPos.y, camPos.z, viewDirection.x, viewDirection.y, viewDirection.z,
+				PICK_DISTANCE, hit)) {
+			target = new RaycastHit();
+			target.set(hit); // The snapshot keeps its own copy
+		}
+
+		CameraState cameraState = new CameraState(camera);
+		snapshot = new WorldSnapshot(tick++, scheduledTime, lastCamera, cameraState,
+				visible.toArray(new Chunck[visible.size()]), target);
+		lastCamera = cameraState;
+
+		tickTime.record(System.nanoTime() - start);
+	}
+}
@@ -0,0 +1,245 @@
+package juancraft;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+
+import models.RawModel;
+import toolbox.Instrumentation;
+import toolbox.TimingStats;
+import world.ChunkSection;
+import world.FaceSorter;
+import world.MeshData;
+
+/**
+ * The TranslucentSorter class keeps the faces of the translucent section
+ * meshes ordered back to front as the camera moves. Whole sections are ordered
+ * every frame by the render queue; this class orders the faces inside them.
+ *
+ * Sorting is incremental: a section is sorted once when it appears, and again
+ * only while it is near the camera and the camera has moved more than a block
+ * since its last sort. Far sections keep their order, which changes little
+ * from afar. The sorts run on an executor (the worker pool in the game) and
+ * hand back new indices, which the render thread uploads into the mesh's index
+ * buffer; the vertices are never uploaded again.
+ *
+ * Sections are added, removed and updated on the render thread.
+ */
+public class TranslucentSorter {
+
+	// Distance the camera moves before the faces are sorted again, in blocks.
+	private static final float RESORT_DISTANCE = 1f;
+
+	// Distance from the camera to a section's centre within which its faces are
+	// kept sorted, in blocks.
+	private static final float SORT_RADIUS = 3 * ChunkSection.SIZE;
+
+	/**
+	 * The translucent mesh of a section and the eye position it was last sorted
+	 * for.
+	 */
+	public static final class Section {
+		final MeshData.Part part;
+		final RawModel model;
+		final float originX, originY, originZ;
+
+		// Eye position of the last sort, relative to the section origin; NaN before the first.
+		float sortedX = Float.NaN, sortedY, sortedZ;
+
+		// Whether a sort is in flight, and whether the section was removed.
+		boolean sorting, removed;
+
+		Section(MeshData.Part part, RawModel model, float originX, float originY, float originZ) {
+			this.part = part;
+			this.model = model;
+			this.originX = originX;
+			this.originY = originY;
+			this.originZ = originZ;
+		}
+	}
+
+	/**
+	 * Indices sorted by a worker, waiting for the render thread.
+	 */
+	private static final class Sorted {
+		final Section section;
+		final int[] indices;
+
+		Sorted(Section section, int[] indices) {
+			this.section = section;
+			this.indices = indices;
+		}
+	}
+
+	// Where the sorts run.
+	private final Executor executor;
+
+	// The sections with translucent faces.
+	private final Set<Section> sections = new LinkedHashSet<Section>();
+
+	// Sections added since the last update, sorted once wherever they are.
+	private final List<Section> added = new ArrayList<Section>();
+
+	// Sorted indices waiting to be uploaded.
+	private final ConcurrentLinkedQueue<Sorted> finished = new ConcurrentLinkedQueue<Sorted>();
+
+	// One face sorter per thread.
+	private final ThreadLocal<FaceSorter> sorters = ThreadLocal.withInitial(FaceSorter::new);
+
+	// Eye position of the last scan of the near sections.
+	private float scannedX = Float.NaN, scannedY, scannedZ;
+
+	// Number of sorts requested.
+	private long sorts;
+
+	// Duration of the sorts, and of the render thread's share of an update.
+	private final TimingStats sortTime = Instrumentation.timing("translucent.sort");
+	private final TimingStats updateTime = Instrumentation.timing("translucent.update");
+
+	/**
+	 * Creates a sorter.
+	 *
+	 * @param executor Where the sorts run.
+	 */
+	public TranslucentSorter(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Starts keeping the faces of a translucent mesh sorted.
+	 *
+	 * @param part    The translucent part of a section's mesh.
+	 * @param model   The model the part was uploaded to.
+	 * @param originX The X coordinate of the section origin.
+	 * @param originY The Y coordinate of the section origin.
+	 * @param originZ The Z coordinate of the section origin.
+	 * @return The sorted section, to remove when the mesh is replaced.
+	 */
+	public Section add(MeshData.Part part, RawModel model, float originX, float originY, float originZ) {
+		Section section = new Section(part, model, originX, originY, originZ);
+		sections.add(section);
+		added.add(section);
+		return section;
+	}
+
+	/**
+	 * Stops sorting a mesh. A sort in flight for it is discarded.
+	 *
+	 * @param section The section returned by add.
+	 */
+	public void remove(Section section) {
+		section.removed = true;
+		sections.remove(section);
+	}
+
+	/**
+	 * Hands the sorts that finished to an uploader, then requests the sorts the
+	 * camera's movement calls for.
+	 *
+	 * @param eyeX   The X coordinate of the camera.
+	 * @param eyeY   The Y coordinate of the camera.
+	 * @param eyeZ   The Z coordinate of the camera.
+	 * @param upload Uploads new indices into a model.
+	 */
+	public void update(float eyeX, float eyeY, float eyeZ, BiConsumer<RawModel, int[]> upload) {
+		long start = System.nanoTime();
+		Sorted sorted;
+		while ((sorted = finished.poll()) != null) {
+			Section section = sorted.section;
+			section.sorting = false;
+			if (!section.removed) {
+				upload.accept(section.model, sorted.indices);
+
+				// The camera may have moved on while the sort was in flight.
+				if (isStale(section, eyeX, eyeY, eyeZ)) {
+					sort(section, eyeX, eyeY, eyeZ);
+				}
+			}
+		}
+
+		// New sections are sorted once, wherever they are.
+		for (int i = 0; i < added.size(); i++) {
+			Section section = added.get(i);
+			if (!section.removed) {
+				sort(section, eyeX, eyeY, eyeZ);
+			}
+		}
+		added.clear();
+
+		// Near sections are sorted again once the camera has moved far enough.
+		if (!(distanceSquared(eyeX, eyeY, eyeZ, scannedX, scannedY, scannedZ) < RESORT_DISTANCE * RESORT_DISTANCE)) {
+			scannedX = eyeX;
+			scannedY = eyeY;
+			scannedZ = eyeZ;
+			for (Section section : sections) {
+				if (!section.sorting && isStale(section, eyeX, eyeY, eyeZ)) {
+					sort(section, eyeX, eyeY, eyeZ);
+				}
+			}
+		}
+		updateTime.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Gets the number of sorts requested so far.
+	 *
+	 * @return The sort count.
+	 */
+	public long getSorts() {
+		return sorts;
+	}
+
+	/**
+	 * Gets the number of sections with translucent faces.
+	 *
+	 * @return The section count.
+	 */
+	public int size() {
+		return sections.size();
+	}
+
+	/**
+	 * Checks whether a section is near the camera, which has moved too far since
+	 * its last sort.
+	 */
+	private static boolean isStale(Section section, float eyeX, float eyeY, float eyeZ) {
+		float half = ChunkSection.SIZE / 2f - 0.5f; // Blocks are centred on their positions
+		if (distanceSquared(eyeX, eyeY, eyeZ, section.originX + half, section.originY + half,
+				section.originZ + half) > SORT_RADIUS * SORT_RADIUS) {
+			return false;
+		}
+		return distanceSquared(eyeX - section.originX, eyeY - section.originY, eyeZ - section.originZ, section.sortedX,
+				section.sortedY, section.sortedZ) >= RESORT_DISTANCE * RESORT_DISTANCE;
+	}
+
+	/**
+	 * Requests a sort of a section's faces for an eye position.
+	 */
+	private void sort(Section section, float eyeX, float eyeY, float eyeZ) {
+		float x = eyeX - section.originX, y = eyeY - section.originY, z = eyeZ - section.originZ;
+		section.sortedX = x;
+		section.sortedY = y;
+		section.sortedZ = z;
+		section.sorting = true;
+		sorts++;
+		executor.execute(() -> {
+			long start = System.nanoTime();
+			int[] indices = new int[section.part.indices.length];
+			sorters.get().sortBackToFront(section.part, x, y, z, indices);
+			sortTime.record(System.nanoTime() - start);
+			finished.add(new Sorted(section, indices));
+		});
+	}
+
+	/**
+	 * Gets the squared distance between two points.
+	 */
+	private static float distanceSquared(float x1, float y1, float z1, float x2, float y2, float z2) {
+		float dx = x1 - x2, dy = y1 - y2, dz = z1 - z2;
+		return dx * dx + dy * dy + dz * dz;
+	}
+}
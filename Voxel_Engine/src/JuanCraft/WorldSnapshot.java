@@ -0,0 +1,94 @@
+package juancraft;
+
+import entities.CameraState;
+import world.RaycastHit;
+
+/**
+ * The WorldSnapshot class is the immutable result of one simulation tick that
+ * the simulation thread publishes to the render thread. It carries the camera
+ * states of the last two ticks, so the renderer can interpolate between them,
+ * the chunks that were visible at the end of the tick, and the block the
+ * camera was looking at.
+ */
+public final class WorldSnapshot {
+
+	// Number of the tick that produced this snapshot.
+	private final long tick;
+
+	// Scheduled time of the tick (System.nanoTime), the base for interpolation.
+	private final long tickTime;
+
+	// Time the snapshot was published (System.nanoTime).
+	private final long publishTime;
+
+	// Camera state at the end of the previous tick and of this tick.
+	private final CameraState previousCamera;
+	private final CameraState camera;
+
+	// Chunks within view distance; the array must not be modified.
+	private final Chunck[] visibleChunks;
+
+	// Block the camera is looking at, or null; must not be modified.
+	private final RaycastHit targetBlock;
+
+	/**
+	 * Creates a snapshot.
+	 *
+	 * @param tick           The number of the tick.
+	 * @param tickTime       The scheduled time of the tick.
+	 * @param previousCamera The camera state of the previous tick.
+	 * @param camera         The camera state of this tick.
+	 * @param visibleChunks  The chunks within view distance, owned by the snapshot.
+	 * @param targetBlock    The block the camera is looking at, or null.
+	 */
+	public WorldSnapshot(long tick, long tickTime, CameraState previousCamera, CameraState camera,
+			Chunck[] visibleChunks, RaycastHit targetBlock) {
+		this.tick = tick;
+		this.tickTime = tickTime;
+		this.previousCamera = previousCamera;
+		this.camera = camera;
+		this.visibleChunks = visibleChunks;
+		this.targetBlock = targetBlock;
+		this.publishTime = System.nanoTime();
+	}
+
+	public long getTick() {
+		return tick;
+	}
+
+	public long getTickTime() {
+		return tickTime;
+	}
+
+	public long getPublishTime() {
+		return publishTime;
+	}
+
+	public CameraState getPreviousCamera() {
+		return previousCamera;
+	}
+
+	public CameraState getCamera() {
+		return camera;
+	}
+
+	/**
+	 * Gets the chunks that were within view distance at the end of the tick. The
+	 * returned array is shared and must not be modified.
+	 *
+	 * @return The visible chunks.
+	 */
+	public Chunck[] getVisibleChunks() {
+		return visibleChunks;
+	}
+
+	/**
+	 * Gets the block the camera was looking at at the end of the tick. The
+	 * returned object is shared and must not be modified.
+	 *
+	 * @return The target block, or null if no block is within reach.
+	 */
+	public RaycastHit getTargetBlock() {
+		return targetBlock;
+	}
+}
@@ -0,0 +1,61 @@
+package models;
+
+/**
+ * The ModelData class holds the indexed vertex data of a model loaded from a
+ * file, before it is uploaded to OpenGL. Every vertex has a position, a texture
+ * coordinate and a normal, and the indices reference those vertices.
+ */
+public class ModelData {
+
+	// Vertex positions (x, y, z per vertex).
+	private float[] vertices;
+
+	// Texture coordinates (u, v per vertex).
+	private float[] textureCoords;
+
+	// Vertex normals (x, y, z per vertex).
+	private float[] normals;
+
+	// Triangle indices into the vertex arrays.
+	private int[] indices;
+
+	/**
+	 * Constructs the model data from its vertex and index arrays.
+	 *
+	 * @param vertices      The vertex positions.
+	 * @param textureCoords The texture coordinates.
+	 * @param normals       The vertex normals.
+	 * @param indices       The triangle indices.
+	 */
+	public ModelData(float[] vertices, float[] textureCoords, float[] normals, int[] indices) {
+		this.vertices = vertices;
+		this.textureCoords = textureCoords;
+		this.normals = normals;
+		this.indices = indices;
+	}
+
+	public float[] getVertices() {
+		return vertices;
+	}
+
+	public float[] getTextureCoords() {
+		return textureCoords;
+	}
+
+	public float[] getNormals() {
+		return normals;
+	}
+
+	public int[] getIndices() {
+		return indices;
+	}
+
+	/**
+	 * Gets the number of unique vertices of the model.
+	 *
+	 * @return The vertex count.
+	 */
+	public int getVertexCount() {
+		return vertices.length / 3;
+	}
+}
@@ -0,0 +1,487 @@
+package models;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import toolbox.FloatList;
+import toolbox.IntList;
+import toolbox.LongIntHashMap;
+
+/**
+ * The OBJLoader class loads Wavefront OBJ models from the resources folder into
+ * indexed ModelData ready for Loader.loadToVao.
+ *
+ * The file is streamed through a small byte buffer and parsed in place, without
+ * building a String per line or token. Vertices are deduplicated by their
+ * position/texture/normal index triple, so shared corners are emitted once.
+ *
+ * After a successful parse a compact binary copy of the model is written next
+ * to the asset (or to a temporary cache folder when the asset lives inside a
+ * jar). Later loads read that file in one go instead of parsing the OBJ again,
+ * as long as the size and modification time of the source still match.
+ */
+public class OBJLoader {
+
+	// Folder of the models on the classpath.
+	private static final String RES_LOC = "/res/";
+
+	// Extension of the binary mesh cache files.
+	public static final String CACHE_EXTENSION = ".mesh";
+
+	// Identifies a mesh cache file ("VXMS") and its layout version.
+	private static final int CACHE_MAGIC = 0x56584D53;
+	private static final int CACHE_VERSION = 1;
+
+	// Cache header: magic, version, source length, source time, vertex count, index count.
+	private static final int CACHE_HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4;
+
+	// Each index of a position/texture/normal triple gets 21 bits of the dedup key.
+	private static final long INDEX_MASK = (1L << 21) - 1;
+
+	/**
+	 * Loads a model from the resources folder, using its binary cache when it is
+	 * up to date and refreshing it otherwise.
+	 *
+	 * @param fileName The name of the OBJ file (without extension).
+	 * @return The indexed model data.
+	 */
+	public static ModelData loadOBJ(String fileName) {
+		URL source = OBJLoader.class.getResource(RES_LOC + fileName + ".obj");
+		if (source == null) {
+			throw new IllegalArgumentException("Model file not found: " + fileName);
+		}
+		return load(source, getCachePath(source, fileName));
+	}
+
+	/**
+	 * Loads an OBJ model from any URL, using the given cache file when it is up
+	 * to date and refreshing it otherwise.
+	 *
+	 * @param source    The URL of the OBJ file.
+	 * @param cacheFile The binary cache of the model.
+	 * @return The indexed model data.
+	 */
+	public static ModelData load(URL source, Path cacheFile) {
+		try {
+			URLConnection connection = source.openConnection();
+			long sourceLength = connection.getContentLengthLong();
+			long sourceModified = connection.getLastModified();
+
+			// Use the cached copy if it was built from this exact source file.
+			ModelData cached = readCache(cacheFile, sourceLength, sourceModified);
+			if (cached != null) {
+				connection.getInputStream().close(); // Release the unused connection
+				return cached;
+			}
+
+			ModelData data;
+			try (InputStream in = connection.getInputStream()) {
+				data = parse(in);
+			}
+			writeCache(cacheFile, data, sourceLength, sourceModified);
+			return data;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not load model " + source, e);
+		}
+	}
+
+	/**
+	 * Gets the location of the binary cache of a model: next to the asset if it
+	 * is a plain file, otherwise in a cache folder under the temporary directory.
+	 *
+	 * @param source   The URL of the OBJ file.
+	 * @param fileName The name of the model (without extension).
+	 * @return The path of the cache file.
+	 */
+	public static Path getCachePath(URL source, String fileName) {
+		if ("file".equals(source.getProtocol())) {
+			try {
+				return Paths.get(source.toURI()).resolveSibling(fileName + CACHE_EXTENSION);
+			} catch (URISyntaxException e) {
+				// Fall back to the temporary cache folder below.
+			}
+		}
+		return Paths.get(System.getProperty("java.io.tmpdir"), "juancraft-cache", fileName + CACHE_EXTENSION);
+	}
+
+	/**
+	 * Parses an OBJ stream into indexed model data. Faces with more than three
+	 * vertices are triangulated as fans; negative (relative) indices are
+	 * supported. Texture coordinates are flipped vertically to match the top-down
+	 * row order of the loaded textures.
+	 *
+	 * @param in The OBJ data.
+	 * @return The indexed model data.
+	 * @throws IOException If the stream cannot be read or holds a malformed face.
+	 */
+	public static ModelData parse(InputStream in) throws IOException {
+		ObjReader reader = new ObjReader(in);
+
+		// Attributes as declared in the file.
+		FloatList positions = new FloatList(1024);
+		FloatList textures = new FloatList(1024);
+		FloatList fileNormals = new FloatList(1024);
+
+		// Deduplicated output vertices and triangle indices.
+		FloatList vertices = new FloatList(1024);
+		FloatList uvs = new FloatList(1024);
+		FloatList normals = new FloatList(1024);
+		IntList indices = new IntList(1024);
+		LongIntHashMap vertexIndex = new LongIntHashMap(1024, -1);
+
+		int c;
+		while ((c = reader.read()) != -1) {
+			if (c == 'v') {
+				int kind = reader.read();
+				if (kind == ' ' || kind == '\t') {
+					positions.add(reader.readFloat());
+					positions.add(reader.readFloat());
+					positions.add(reader.readFloat());
+				} else if (kind == 't') {
+					textures.add(reader.readFloat());
+					textures.add(1 - reader.readFloat());
+				} else if (kind == 'n') {
+					fileNormals.add(reader.readFloat());
+					fileNormals.add(reader.readFloat());
+					fileNormals.add(reader.readFloat());
+				}
+			} else if (c == 'f') {
+				int first = -1;
+				int previous = -1;
+				int corner = 0;
+				while (reader.skipBlanks()) {
+					int position = reader.readIndex(positions.size() / 3);
+					int texture = -1;
+					int normal = -1;
+					if (reader.peek() == '/') {
+						reader.read();
+						if (reader.peek() != '/') {
+							texture = reader.readIndex(textures.size() / 2);
+						}
+						if (reader.peek() == '/') {
+							reader.read();
+							normal = reader.readIndex(fileNormals.size() / 3);
+						}
+					}
+
+					// Reuse the output vertex if this exact triple was seen before. The key
+					// holds 21 bits per index, so larger indices would collide.
+					if (position < 0 || position > INDEX_MASK || texture + 1 > INDEX_MASK
+							|| normal + 1 > INDEX_MASK) {
+						throw new IOException("Face index out of range: " + (position + 1) + "/" + (texture + 1) + "/"
+								+ (normal + 1));
+					}
+					long key = ((position & INDEX_MASK) << 42) | (((texture + 1) & INDEX_MASK) << 21)
+							| ((normal + 1) & INDEX_MASK);
+					int index = vertexIndex.get(key);
+					if (index < 0) {
+						index = vertices.size() / 3;
+						vertexIndex.put(key, index);
+						vertices.add(positions.get(position * 3));
+						vertices.add(positions.get(position * 3 + 1));
+						vertices.add(positions.get(position * 3 + 2));
+						uvs.add(texture < 0 ? 0 : textures.get(texture * 2));
+						uvs.add(texture < 0 ? 0 : textures.get(texture * 2 + 1));
+						normals.add(normal < 0 ? 0 : fileNormals.get(normal * 3));
+						normals.add(normal < 0 ? 0 : fileNormals.get(normal * 3 + 1));
+						normals.add(normal < 0 ? 0 : fileNormals.get(normal * 3 + 2));
+					}
+
+					// Emit one triangle per corner after the second (fan triangulation).
+					if (corner == 0) {
+						first = index;
+					} else if (corner >= 2) {
+						indices.add(first);
+						indices.add(previous);
+						indices.add(index);
+					}
+					previous = index;
+					corner++;
+				}
+			}
+			if (c != '\n') {
+				reader.skipLine();
+			}
+		}
+
+		return new ModelData(vertices.toArray(), uvs.toArray(), normals.toArray(), indices.toArray());
+	}
+
+	/**
+	 * Reads a mesh cache file into a heap buffer. The file is not mapped, as a
+	 * mapping would keep it open and Windows refuses to replace an open file,
+	 * so writeCache could not refresh it.
+	 *
+	 * @param cacheFile      The cache file.
+	 * @param sourceLength   The length of the OBJ file the cache must match.
+	 * @param sourceModified The modification time of the OBJ file the cache must match.
+	 * @return The cached model data, or null if the cache is missing or stale.
+	 */
+	static ModelData readCache(Path cacheFile, long sourceLength, long sourceModified) {
+		if (!Files.isRegularFile(cacheFile)) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < CACHE_HEADER_BYTES || size > Integer.MAX_VALUE) {
+				return null;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					return null; // Truncated while reading
+				}
+			}
+			buffer.flip();
+
+			if (buffer.getInt() != CACHE_MAGIC || buffer.getInt() != CACHE_VERSION
+					|| buffer.getLong() != sourceLength || buffer.getLong() != sourceModified) {
+				return null; // Built from another version of the model
+			}
+			int vertexCount = buffer.getInt();
+			int indexCount = buffer.getInt();
+			long attributeBytes = (long) vertexCount * 8 * 4;
+			if (vertexCount < 0 || indexCount < 0
+					|| size != CACHE_HEADER_BYTES + attributeBytes + (long) indexCount * 4) {
+				return null; // Truncated or corrupt
+			}
+
+			float[] vertices = new float[vertexCount * 3];
+			float[] uvs = new float[vertexCount * 2];
+			float[] normals = new float[vertexCount * 3];
+			int[] indices = new int[indexCount];
+
+			// Bulk-copy the attribute blocks out of the buffer.
+			ByteBuffer body = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+			body.asFloatBuffer().get(vertices).get(uvs).get(normals);
+			body.position((int) attributeBytes);
+			body.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(indices);
+
+			return new ModelData(vertices, uvs, normals, indices);
+		} catch (IOException e) {
+			System.err.println("Could not read mesh cache " + cacheFile + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a mesh cache file. The file is written under a temporary name and
+	 * then moved into place, so a reader never sees a partial cache.
+	 *
+	 * @param cacheFile      The cache file.
+	 * @param data           The model data to cache.
+	 * @param sourceLength   The length of the OBJ file the cache was built from.
+	 * @param sourceModified The modification time of the OBJ file the cache was built from.
+	 */
+	static void writeCache(Path cacheFile, ModelData data, long sourceLength, long sourceModified) {
+		int vertexCount = data.getVertexCount();
+		int indexCount = data.getIndices().length;
+		long size = CACHE_HEADER_BYTES + (long) vertexCount * 8 * 4 + (long) indexCount * 4;
+		if (size > Integer.MAX_VALUE) {
+			return; // Too large for one buffer; the model is parsed on every load
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(CACHE_MAGIC).putInt(CACHE_VERSION).putLong(sourceLength).putLong(sourceModified);
+		buffer.putInt(vertexCount).putInt(indexCount);
+		for (float value : data.getVertices()) {
+			buffer.putFloat(value);
+		}
+		for (float value : data.getTextureCoords()) {
+			buffer.putFloat(value);
+		}
+		for (float value : data.getNormals()) {
+			buffer.putFloat(value);
+		}
+		for (int value : data.getIndices()) {
+			buffer.putInt(value);
+		}
+		buffer.flip();
+
+		try {
+			Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+			Path temporary = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+			try {
+				Files.move(temporary, cacheFile, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			// The cache is only an optimisation; the model was loaded anyway.
+			System.err.println("Could not write mesh cache " + cacheFile + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Byte-level reader over an OBJ stream with just enough tokenising to parse
+	 * numbers and face indices without creating Strings.
+	 */
+	private static final class ObjReader {
+
+		// Powers of ten used to scale parsed decimal mantissas.
+		private static final double[] POWERS_OF_TEN = new double[39];
+
+		static {
+			for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+				POWERS_OF_TEN[i] = Math.pow(10, i);
+			}
+		}
+
+		private final InputStream in;
+		private final byte[] buffer = new byte[64 * 1024];
+		private int position;
+		private int limit;
+
+		ObjReader(InputStream in) {
+			this.in = in;
+		}
+
+		/** Returns the next byte without consuming it, or -1 at the end. */
+		int peek() throws IOException {
+			if (position == limit && !fill()) {
+				return -1;
+			}
+			return buffer[position] & 0xFF;
+		}
+
+		/** Consumes and returns the next byte, or -1 at the end. */
+		int read() throws IOException {
+			if (position == limit && !fill()) {
+				return -1;
+			}
+			return buffer[position++] & 0xFF;
+		}
+
+		/** Skips the rest of the current line, including its line break. */
+		void skipLine() throws IOException {
+			int c;
+			while ((c = read()) != -1 && c != '\n') {
+				// Discard.
+			}
+		}
+
+		/**
+		 * Skips spaces and tabs on the current line.
+		 *
+		 * @return true if another token follows on the same line.
+		 */
+		boolean skipBlanks() throws IOException {
+			int c;
+			while ((c = peek()) == ' ' || c == '\t' || c == '\r') {
+				position++;
+			}
+			return c != -1 && c != '\n' && c != '#';
+		}
+
+		/**
+		 * Reads a 1-based OBJ index and converts it to a 0-based index, resolving
+		 * negative indices relative to the number of elements declared so far.
+		 */
+		int readIndex(int declared) throws IOException {
+			boolean negative = false;
+			if (peek() == '-') {
+				negative = true;
+				position++;
+			}
+			int value = 0;
+			int digits = 0;
+			int c;
+			while ((c = peek()) >= '0' && c <= '9') {
+				value = value * 10 + (c - '0');
+				position++;
+				digits++;
+			}
+			if (digits == 0) {
+				throw new IOException("Malformed face index");
+			}
+			return negative ? declared - value : value - 1;
+		}
+
+		/** Reads a decimal floating point number such as -1.25e-3. */
+		float readFloat() throws IOException {
+			skipBlanks();
+			boolean negative = false;
+			int c = peek();
+			if (c == '-' || c == '+') {
+				negative = c == '-';
+				position++;
+			}
+
+			long mantissa = 0;
+			int exponent = 0;
+			int digits = 0;
+			while ((c = peek()) >= '0' && c <= '9') {
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (c - '0');
+					digits++;
+				} else {
+					exponent++; // Keep the magnitude of digits beyond long precision
+				}
+				position++;
+			}
+			if (c == '.') {
+				position++;
+				while ((c = peek()) >= '0' && c <= '9') {
+					if (digits < 18) {
+						mantissa = mantissa * 10 + (c - '0');
+						digits++;
+						exponent--;
+					}
+					position++;
+				}
+			}
+			if (c == 'e' || c == 'E') {
+				position++;
+				boolean negativeExponent = false;
+				c = peek();
+				if (c == '-' || c == '+') {
+					negativeExponent = c == '-';
+					position++;
+				}
+				int value = 0;
+				while ((c = peek()) >= '0' && c <= '9') {
+					value = value * 10 + (c - '0');
+					position++;
+				}
+				exponent += negativeExponent ? -value : value;
+			}
+
+			double result = mantissa;
+			if (exponent < 0) {
+				result = -exponent < POWERS_OF_TEN.length ? result / POWERS_OF_TEN[-exponent] : 0;
+			} else if (exponent > 0) {
+				result *= exponent < POWERS_OF_TEN.length ? POWERS_OF_TEN[exponent] : Double.POSITIVE_INFINITY;
+			}
+			return (float) (negative ? -result : result);
+		}
+
+		/** Refills the buffer from the stream; returns false at the end. */
+		private boolean fill() throws IOException {
+			int read = in.read(buffer);
+			if (read <= 0) {
+				return false;
+			}
+			position = 0;
+			limit = read;
+			return true;
+		}
+	}
+}
@@ -16,6 +16,12 @@ public class RawModel {
 	// The number of vertices that make up the model.
 	private int vertexCount;
 
+	// The number of vertex attributes stored in the VAO.
+	private int attributeCount = 2;
+
+	// The IDs of the VBOs owned by the VAO, or null if they are not tracked.
+	private int[] vboIDs;
+
 	/**
 	 * Constructs a new RawModel with the specified VAO ID and vertex count.
 	 * 
@@ -27,6 +33,22 @@ public class RawModel {
 		this.vertexCount = vertexCount;
 	}
 
+	/**
+	 * Constructs a new RawModel that knows the buffers it owns, so it can be
+	 * deleted on its own before shutdown.
+	 * 
+	 * @param vaoID          The ID of the VAO that contains the model's vertex data.
+	 * @param vertexCount    The total number of vertices in the model.
+	 * @param attributeCount The number of vertex attributes stored in the VAO.
+	 * @param vboIDs         The IDs of the VBOs of the VAO.
+	 */
+	public RawModel(int vaoID, int vertexCount, int attributeCount, int[] vboIDs) {
+		this.vaoID = vaoID;
+		this.vertexCount = vertexCount;
+		this.attributeCount = attributeCount;
+		this.vboIDs = vboIDs;
+	}
+
 	/**
 	 * Returns the ID of the VAO that contains the model's vertex data.
 	 * 
@@ -44,4 +66,22 @@ public class RawModel {
 	public int getVertexCount() {
 		return vertexCount;
 	}
+
+	/**
+	 * Returns the number of vertex attributes stored in the VAO.
+	 * 
+	 * @return The attribute count.
+	 */
+	public int getAttributeCount() {
+		return attributeCount;
+	}
+
+	/**
+	 * Returns the IDs of the VBOs owned by the VAO.
+	 * 
+	 * @return The VBO IDs, or null if they are not tracked.
+	 */
+	public int[] getVboIDs() {
+		return vboIDs;
+	}
 }
@@ -0,0 +1,146 @@
+package shaders;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL41;
+import org.lwjgl.opengl.GLContext;
+
+/**
+ * The ProgramBinaryCache class stores linked shader programs on disk, keyed by
+ * a hash of their sources, attribute bindings and the OpenGL driver, and loads
+ * them back with glProgramBinary on later startups so the shaders do not have
+ * to be compiled and linked again.
+ *
+ * Program binaries need OpenGL 4.1; on older contexts the cache is disabled
+ * and programs are always compiled. A binary the driver rejects (for example
+ * after a driver update) is simply recompiled and replaced.
+ */
+final class ProgramBinaryCache {
+
+	// Folder holding one file per cached program.
+	private static final Path CACHE_DIR = Paths.get(System.getProperty("java.io.tmpdir"), "juancraft-cache", "shaders");
+
+	private ProgramBinaryCache() {
+	}
+
+	/**
+	 * Checks whether the current context can save and load program binaries.
+	 * 
+	 * @return true if program binaries are supported.
+	 */
+	static boolean isSupported() {
+		return GLContext.getCapabilities().OpenGL41;
+	}
+
+	/**
+	 * Builds the cache key of a program. The driver strings are part of the key
+	 * because binaries are only valid for the driver that produced them.
+	 * 
+	 * @param parts The sources and bindings that define the program.
+	 * @return A hexadecimal SHA-256 digest.
+	 */
+	static String key(CharSequence... parts) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (CharSequence part : parts) {
+				digest.update(part.toString().getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) 0);
+			}
+			String driver = GL11.glGetString(GL11.GL_VENDOR) + "|" + GL11.glGetString(GL11.GL_RENDERER) + "|"
+					+ GL11.glGetString(GL11.GL_VERSION);
+			digest.update(driver.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest()) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	/**
+	 * Loads a cached binary into a program.
+	 * 
+	 * @param programID The program to load the binary into.
+	 * @param key       The cache key of the program.
+	 * @return true if the binary was found and the program linked successfully.
+	 */
+	static boolean load(int programID, String key) {
+		Path file = CACHE_DIR.resolve(key + ".bin");
+		if (!isSupported() || !Files.isRegularFile(file)) {
+			return false;
+		}
+		try {
+			byte[] bytes = Files.readAllBytes(file);
+			if (bytes.length <= 4) {
+				return false;
+			}
+			ByteBuffer buffer = BufferUtils.createByteBuffer(bytes.length);
+			buffer.put(bytes).flip();
+			int format = buffer.getInt(); // The binary format precedes the binary
+			GL41.glProgramBinary(programID, format, buffer.slice());
+			return GL20.glGetProgrami(programID, GL20.GL_LINK_STATUS) == GL11.GL_TRUE;
+		} catch (IOException e) {
+			System.err.println("Could not read shader cache " + file + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Requests that the driver keeps the binary of a program retrievable. Must be
+	 * called before the program is linked.
+	 * 
+	 * @param programID The program about to be linked.
+	 */
+	static void prepare(int programID) {
+		if (isSupported()) {
+			GL41.glProgramParameteri(programID, GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL11.GL_TRUE);
+		}
+	}
+
+	/**
+	 * Saves the binary of a linked program.
+	 * 
+	 * @param programID The linked program.
+	 * @param key       The cache key of the program.
+	 */
+	static void save(int programID, String key) {
+		if (!isSupported()) {
+			return;
+		}
+		int length = GL20.glGetProgrami(programID, GL41.GL_PROGRAM_BINARY_LENGTH);
+		if (length <= 0) {
+			return;
+		}
+		ByteBuffer binary = BufferUtils.createByteBuffer(length);
+		IntBuffer written = BufferUtils.createIntBuffer(1);
+		IntBuffer format = BufferUtils.createIntBuffer(1);
+		GL41.glGetProgramBinary(programID, written, format, binary);
+		binary.limit(written.get(0));
+
+		byte[] bytes = new byte[4 + written.get(0)];
+		ByteBuffer.wrap(bytes).putInt(format.get(0)).put(binary);
+		try {
+			Files.createDirectories(CACHE_DIR);
+			Path temporary = Files.createTempFile(CACHE_DIR, key, ".tmp");
+			Files.write(temporary, bytes);
+			Files.move(temporary, CACHE_DIR.resolve(key + ".bin"), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			// The cache is only an optimisation; the program is already linked.
+			System.err.println("Could not write shader cache: " + e.getMessage());
+		}
+	}
+}
@@ -1,14 +1,15 @@
 package shaders;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
 
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL31;
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector2f;
 import org.lwjgl.util.vector.Vector3f;
@@ -23,6 +24,12 @@ import org.lwjgl.util.vector.Vector3f;
  */
 public abstract class ShaderProgram {
 
+	/** Name of the uniform block holding the per-frame camera data. */
+	public static final String FRAME_BLOCK_NAME = "FrameData";
+
+	/** Uniform buffer binding point shared by every program for the frame block. */
+	public static final int FRAME_BLOCK_BINDING = 0;
+
 	/** The ID of the shader program created in OpenGL. */
 	int programID;
 
@@ -35,24 +42,46 @@ public abstract class ShaderProgram {
 	/** Buffer to hold matrix data for uploading to the GPU. */
 	FloatBuffer matrixBuffer = BufferUtils.createFloatBuffer(16);
 
+	/** Attribute bindings of the program, recorded for the binary cache key. */
+	private StringBuilder attributeBindings = new StringBuilder();
+
 	/**
-	 * Constructor for ShaderProgram that initializes the shader program.
+	 * Constructor for ShaderProgram that initializes the shader program. If a
+	 * binary of the same sources was cached by an earlier run, it is loaded
+	 * instead of compiling and linking the shaders again.
 	 * 
 	 * @param vertexFile   The file path of the vertex shader source code.
 	 * @param fragmentFile The file path of the fragment shader source code.
 	 */
 	public ShaderProgram(String vertexFile, String fragmentFile) {
 		programID = GL20.glCreateProgram(); // Create the shader program
-		vertexShaderID = loadShader(vertexFile, GL20.GL_VERTEX_SHADER); // Load vertex shader
-		fragmentShaderID = loadShader(fragmentFile, GL20.GL_FRAGMENT_SHADER); // Load fragment shader
-
-		GL20.glAttachShader(programID, vertexShaderID); // Attach vertex shader
-		GL20.glAttachShader(programID, fragmentShaderID); // Attach fragment shader
+		String vertexSource = readShaderSource(vertexFile); // Read vertex shader source
+		String fragmentSource = readShaderSource(fragmentFile); // Read fragment shader source
 		bindAttributes(); // Bind shader attributes (to be defined in subclasses)
-		GL20.glLinkProgram(programID); // Link the shader program
+
+		// Try the binary cache before compiling anything.
+		String cacheKey = ProgramBinaryCache.key(vertexSource, fragmentSource, attributeBindings);
+		if (!ProgramBinaryCache.load(programID, cacheKey)) {
+			vertexShaderID = compileShader(vertexSource, GL20.GL_VERTEX_SHADER); // Compile vertex shader
+			fragmentShaderID = compileShader(fragmentSource, GL20.GL_FRAGMENT_SHADER); // Compile fragment shader
+
+			GL20.glAttachShader(programID, vertexShaderID); // Attach vertex shader
+			GL20.glAttachShader(programID, fragmentShaderID); // Attach fragment shader
+			ProgramBinaryCache.prepare(programID); // Keep the linked binary retrievable
+			GL20.glLinkProgram(programID); // Link the shader program
+
+			// Check for link errors
+			if (GL20.glGetProgrami(programID, GL20.GL_LINK_STATUS) == GL11.GL_FALSE) {
+				System.out.println(GL20.glGetProgramInfoLog(programID, 1000)); // Print link errors
+				System.err.println("Could not link shader program!"); // Error message
+				System.exit(-1); // Exit program on error
+			}
+			ProgramBinaryCache.save(programID, cacheKey); // Cache the binary for the next startup
+		}
 		GL20.glValidateProgram(programID); // Validate the linked program
 
 		getAllUniformLocations(); // Get uniform locations for shader variables
+		bindUniformBlock(FRAME_BLOCK_NAME, FRAME_BLOCK_BINDING); // Attach the shared per-frame block
 
 		GL20.glUniform1f(programID, fragmentShaderID); // Example of using a fragment shader ID
 	}
@@ -73,6 +102,35 @@ public abstract class ShaderProgram {
 		return GL20.glGetUniformLocation(programID, varName);
 	}
 
+	/**
+	 * Gets the index of a uniform block in the shader program.
+	 * 
+	 * @param blockName The name of the uniform block in the shader.
+	 * @return The index of the block, or GL31.GL_INVALID_INDEX if the program does
+	 *         not declare it.
+	 */
+	protected int getUniformBlockIndex(String blockName) {
+		return GL31.glGetUniformBlockIndex(programID, blockName);
+	}
+
+	/**
+	 * Connects a uniform block of this program to a uniform buffer binding point,
+	 * so every program using the same binding point reads the same buffer.
+	 * Programs that do not declare the block are left untouched.
+	 * 
+	 * @param blockName    The name of the uniform block in the shader.
+	 * @param bindingPoint The binding point the buffer is bound to.
+	 * @return true if the block exists in this program and was bound.
+	 */
+	protected boolean bindUniformBlock(String blockName, int bindingPoint) {
+		int blockIndex = getUniformBlockIndex(blockName);
+		if (blockIndex == GL31.GL_INVALID_INDEX) {
+			return false; // The program does not use this block
+		}
+		GL31.glUniformBlockBinding(programID, blockIndex, bindingPoint); // Link block to binding point
+		return true;
+	}
+
 	/**
 	 * Abstract method for binding shader attributes. Subclasses must implement this
 	 * method to define how vertex attributes are bound to the shader program.
@@ -141,6 +199,16 @@ public abstract class ShaderProgram {
 	 */
 	protected void bindAttribute(String variableName, int attribute) {
 		GL20.glBindAttribLocation(programID, attribute, variableName); // Bind attribute location
+		attributeBindings.append(variableName).append('=').append(attribute).append(';');
+	}
+
+	/**
+	 * Gets the ID of the shader program in OpenGL.
+	 * 
+	 * @return The program ID.
+	 */
+	public int getProgramID() {
+		return programID;
 	}
 
 	/**
@@ -164,44 +232,56 @@ public abstract class ShaderProgram {
 	 */
 	public void cleanUp() {
 		stop(); // Stop using the shader program
-		GL20.glDetachShader(programID, vertexShaderID); // Detach vertex shader
-		GL20.glDetachShader(programID, fragmentShaderID); // Detach fragment shader
-		GL20.glDeleteShader(vertexShaderID); // Delete vertex shader
-		GL20.glDeleteShader(fragmentShaderID); // Delete fragment shader
+		// Programs loaded from the binary cache have no shader objects
+		if (vertexShaderID != 0) {
+			GL20.glDetachShader(programID, vertexShaderID); // Detach vertex shader
+			GL20.glDeleteShader(vertexShaderID); // Delete vertex shader
+		}
+		if (fragmentShaderID != 0) {
+			GL20.glDetachShader(programID, fragmentShaderID); // Detach fragment shader
+			GL20.glDeleteShader(fragmentShaderID); // Delete fragment shader
+		}
 		GL20.glDeleteProgram(programID); // Delete the shader program
 	}
 
 	/**
-	 * Loads and compiles a shader from the specified file.
+	 * Reads the source code of a shader from the specified file in one pass.
 	 * 
 	 * @param file The file path of the shader source code.
-	 * @param type The type of shader (GL20.GL_VERTEX_SHADER or
-	 *             GL20.GL_FRAGMENT_SHADER).
-	 * @return The ID of the compiled shader.
+	 * @return The shader source code.
 	 */
-	private int loadShader(String file, int type) {
-		StringBuilder shaderSource = new StringBuilder(); // StringBuilder for shader source
-		InputStream in = getClass().getResourceAsStream(file); // Load shader file
-		if (in == null) {
-			System.err.println("Shader file not found: " + file);
-			System.exit(-1); // Exit the program if the shader file is not found
-		}
-		BufferedReader reader = new BufferedReader(new InputStreamReader(in)); // Read shader file
-
-		String line;
-		try {
-			while ((line = reader.readLine()) != null) {
-				shaderSource.append(line).append("//\n"); // Append lines to shader source
+	private String readShaderSource(String file) {
+		try (InputStream in = getClass().getResourceAsStream(file)) { // Load shader file
+			if (in == null) {
+				System.err.println("Shader file not found: " + file);
+				System.exit(-1); // Exit the program if the shader file is not found
 			}
-			reader.close(); // Close the reader
+			ByteArrayOutputStream source = new ByteArrayOutputStream(4096);
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				source.write(buffer, 0, read); // Copy the whole file
+			}
+			return new String(source.toByteArray(), StandardCharsets.UTF_8);
 		} catch (IOException e) {
 			e.printStackTrace(); // Print stack trace for IOException
 			System.err.println("Could not load shader file!"); // Error message
 			System.exit(-1); // Exit program on error
+			return null;
 		}
+	}
 
+	/**
+	 * Compiles a shader from its source code.
+	 * 
+	 * @param source The shader source code.
+	 * @param type   The type of shader (GL20.GL_VERTEX_SHADER or
+	 *               GL20.GL_FRAGMENT_SHADER).
+	 * @return The ID of the compiled shader.
+	 */
+	private int compileShader(String source, int type) {
 		int shaderID = GL20.glCreateShader(type); // Create shader
-		GL20.glShaderSource(shaderID, shaderSource); // Load shader source
+		GL20.glShaderSource(shaderID, source); // Load shader source
 		GL20.glCompileShader(shaderID); // Compile the shader
 
 		// Check for compilation errors
@@ -2,9 +2,6 @@ package shaders;
 
 import org.lwjgl.util.vector.Matrix4f;
 
-import entities.Camera;
-import toolbox.Maths;
-
 /**
  * The StaticShader class represents a shader program used for rendering static
  * geometry. It extends the ShaderProgram class to manage the loading and
@@ -17,9 +14,8 @@ public class StaticShader extends ShaderProgram {
     private static final String fragmentFile = "/Shaders/fragmentShader.txt"; // Path to the fragment shader
 
     // Location of the transformation matrix uniform variable in the shader
+    // Projection and view matrices come from the shared FrameData uniform block
     private int location_transformationMatrix; // Variable to hold the location of the transformation matrix
-    private int location_projectionMatrix; // Variable to hold the location of the projection matrix
-    private int location_viewMatrix; // Variable to hold the location of the view matrix
 
     /**
      * Constructor for the StaticShader class. Calls the parent constructor with the
@@ -41,6 +37,8 @@ public class StaticShader extends ShaderProgram {
         super.bindAttribute("position", 0);
         // Bind the "textureCoords" attribute to index 1 in the shader
         super.bindAttribute("textureCoords", 1);
+        // Bind the "light" attribute (block light, sky light) to index 2 in the shader
+        super.bindAttribute("light", 2);
     }
 
     /**
@@ -52,8 +50,6 @@ public class StaticShader extends ShaderProgram {
     protected void getAllUniformLocations() {
         // Get the location of the transformation matrix uniform variable
         location_transformationMatrix = super.getUniformLocation("transformationMatrix");
-        location_projectionMatrix = super.getUniformLocation("projectionMatrix");
-        location_viewMatrix = super.getUniformLocation("viewMatrix");
     }
 
     /**
@@ -66,29 +62,4 @@ public class StaticShader extends ShaderProgram {
     public void loadTransformationMatrix(Matrix4f matrix) {
         super.loadMatrix(location_transformationMatrix, matrix); // Load the matrix using the parent method
     }
-
-    /**
-     * Loads the projection matrix into the shader program. This matrix is used to
-     * define the perspective projection of the scene, affecting how objects are
-     * displayed based on camera settings.
-     *
-     * @param matrix The projection matrix to load into the shader.
-     */
-    public void loadProjectionMatrix(Matrix4f matrix) {
-        super.loadMatrix(location_projectionMatrix, matrix); // Load the matrix using the parent method
-    }
-    
-    /**
-     * Loads the view matrix for the specified camera into the shader program.
-     * The view matrix is responsible for transforming coordinates from world space
-     * to camera space, effectively positioning and orienting the scene as seen 
-     * through the camera.
-     *
-     * @param camera The Camera object containing the current camera's position and 
-     *               rotation, which is used to generate the view matrix.
-     */
-    public void loadViewMatrix(Camera camera) {
-        // Call the superclass method to load the view matrix into the shader.
-        super.loadMatrix(location_viewMatrix, Maths.createViewMatrix(camera));
-    }
 }
@@ -0,0 +1,96 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * The Bench class is a small, dependency-free micro-benchmark harness for the
+ * headless benchmarks of the engine. Each measurement runs a warm-up phase so
+ * the JIT compiles the code under test, then times a number of iterations and
+ * reports the average time and the bytes allocated by the calling thread per
+ * operation.
+ *
+ * Every benchmark of this package runs headlessly, from its main method,
+ * without a display or an OpenGL context.
+ */
+public final class Bench {
+
+	// Thread bean used to read the bytes allocated by the benchmark thread.
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	// Sink for values produced by benchmarks, so the JIT cannot drop the work.
+	private static volatile long blackhole;
+
+	private Bench() {
+	}
+
+	/**
+	 * Result of a single measurement.
+	 */
+	public static final class Result {
+		public final String name;
+		public final double nanosPerOp;
+		public final double bytesPerOp;
+
+		Result(String name, double nanosPerOp, double bytesPerOp) {
+			this.name = name;
+			this.nanosPerOp = nanosPerOp;
+			this.bytesPerOp = bytesPerOp;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%-48s %14.2f ns/op %12.2f B/op", name, nanosPerOp, bytesPerOp);
+		}
+	}
+
+	/**
+	 * Measures a benchmark body and prints the result.
+	 *
+	 * @param name             The name printed with the result.
+	 * @param opsPerInvocation The number of operations performed by one call of
+	 *                         the body, used to report per-operation figures.
+	 * @param warmup           The number of warm-up calls.
+	 * @param iterations       The number of measured calls.
+	 * @param body             The code under test.
+	 * @return The measured result.
+	 */
+	public static Result measure(String name, long opsPerInvocation, int warmup, int iterations, Runnable body) {
+		for (int i = 0; i < warmup; i++) {
+			body.run();
+		}
+
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			body.run();
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+		double ops = (double) opsPerInvocation * iterations;
+		Result result = new Result(name, elapsed / ops, allocated / ops);
+		System.out.println(result);
+		return result;
+	}
+
+	/**
+	 * Gets the number of bytes allocated so far by the calling thread.
+	 *
+	 * @return The allocated byte count.
+	 */
+	public static long allocatedBytes() {
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Consumes a value so the work producing it is not optimised away.
+	 *
+	 * @param value The value to consume.
+	 */
+	public static void consume(long value) {
+		blackhole ^= value;
+	}
+}
@@ -0,0 +1,185 @@
+package benchmark;
+
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import toolbox.TimingStats;
+import world.Block;
+import world.BlockBehaviour;
+import world.BlockBehaviours;
+import world.BlockTicker;
+import world.ChunkSection;
+import world.World;
+
+/**
+ * Measures the BlockTicker on a hilly world of 25600 loaded sections, on pools
+ * of 1 to N threads (N being the number of cores), and reports the block ticks
+ * run per second, in total and per core. On top of the game's behaviours and
+ * three random ticks per section, stone blocks keep a load of scheduled ticks
+ * going: each section starts with 32 of them, and every one schedules itself
+ * again a few game ticks later. Above the hills, a sparse grid of glass and
+ * lamp cells follows a parity rule reading the cells four blocks away, so many
+ * ticks read blocks across region borders. The number of ticks run and the
+ * blocks of the world afterwards must not depend on the number of threads. The
+ * largest pool size may be given as the first argument.
+ */
+public class BlockTickBenchmark {
+
+	// Size of the world in sections.
+	private static final int SECTIONS_XZ = 80, SECTIONS_Y = 4;
+
+	// Scheduled ticks started per section, and the largest delay of a stone's tick.
+	private static final int SCHEDULED_PER_SECTION = 32, MAX_DELAY = 20;
+
+	// Distance between the cells of the grid above the hills.
+	private static final int CELL_SPACING = 4;
+
+	// Game ticks run before and while measuring.
+	private static final int WARMUP_TICKS = 100, TICKS = 300;
+
+	// Time a game tick may take at 60 ticks per second.
+	private static final double TICK_BUDGET_MILLIS = 1000.0 / 60;
+
+	/**
+	 * Stone schedules itself again a few ticks after each of its ticks.
+	 */
+	private static final BlockBehaviour CLOCK = new BlockBehaviour() {
+		@Override
+		public void scheduledTick(BlockTicker.Context context, int x, int y, int z, short block) {
+			context.schedule(x, y, z, 1 + context.nextInt(MAX_DELAY));
+		}
+	};
+
+	/**
+	 * A cell of the grid lights up when an odd number of the four cells around
+	 * it is lit, and goes dark otherwise, then ticks again a few game ticks
+	 * later.
+	 */
+	private static final BlockBehaviour PARITY = new BlockBehaviour() {
+		@Override
+		public void scheduledTick(BlockTicker.Context context, int x, int y, int z, short block) {
+			int lit = 0;
+			if (context.getBlock(x - CELL_SPACING, y, z) == Block.LAMP) {
+				lit++;
+			}
+			if (context.getBlock(x + CELL_SPACING, y, z) == Block.LAMP) {
+				lit++;
+			}
+			if (context.getBlock(x, y, z - CELL_SPACING) == Block.LAMP) {
+				lit++;
+			}
+			if (context.getBlock(x, y, z + CELL_SPACING) == Block.LAMP) {
+				lit++;
+			}
+			context.setBlock(x, y, z, (lit & 1) != 0 ? Block.LAMP : Block.GLASS);
+			context.schedule(x, y, z, 1 + context.nextInt(MAX_DELAY));
+		}
+	};
+
+	public static void main(String[] args) {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		double[] single = run(1, 0);
+		for (int threads = 2; threads <= maxThreads; threads++) {
+			double[] result = run(threads, single[1]);
+			if (result[0] != single[0]) {
+				throw new IllegalStateException(threads + " threads ran " + (long) result[0] + " ticks instead of "
+						+ (long) single[0]);
+			}
+			if (result[2] != single[2]) {
+				throw new IllegalStateException(threads + " threads ticked the world differently");
+			}
+		}
+	}
+
+	/**
+	 * Ticks a new world on a pool of the given size and reports the throughput.
+	 *
+	 * @return The number of block ticks run while measuring, the ticks per
+	 *         second, and a hash of the world's blocks afterwards.
+	 */
+	private static double[] run(int threads, double singleCore) {
+		World world = TestWorlds.hills(42, SECTIONS_XZ, SECTIONS_Y);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		BlockTicker ticker = new BlockTicker(world, 42, pool);
+		BlockBehaviours.registerDefaults(ticker);
+		ticker.setBehaviour(Block.STONE, CLOCK);
+		ticker.setBehaviour(Block.GLASS, PARITY);
+		ticker.setBehaviour(Block.LAMP, PARITY);
+
+		// Start the scheduled ticks on stone blocks picked by a fixed sequence.
+		long state = 1;
+		int sections = 0;
+		for (int sx = 0; sx < SECTIONS_XZ; sx++) {
+			for (int sz = 0; sz < SECTIONS_XZ; sz++) {
+				for (int sy = 0; sy < SECTIONS_Y; sy++) {
+					sections++;
+					for (int i = 0; i < SCHEDULED_PER_SECTION; i++) {
+						state = state * 6364136223846793005L + 1442695040888963407L;
+						int index = (int) (state >>> 52);
+						int x = sx * ChunkSection.SIZE + (index & ChunkSection.MASK);
+						int y = sy * ChunkSection.SIZE + (index >>> 8);
+						int z = sz * ChunkSection.SIZE + (index >>> 4 & ChunkSection.MASK);
+						if (world.getBlock(x, y, z) == Block.STONE) {
+							ticker.schedule(x, y, z, 1 + (int) ((state >>> 33) % MAX_DELAY));
+						}
+					}
+				}
+			}
+		}
+
+		// Lay the grid in the top layer, above the hills, with one cell in seven lit.
+		int top = SECTIONS_Y * ChunkSection.SIZE - 1;
+		for (int x = 0; x < SECTIONS_XZ * ChunkSection.SIZE; x += CELL_SPACING) {
+			for (int z = 0; z < SECTIONS_XZ * ChunkSection.SIZE; z += CELL_SPACING) {
+				state = state * 6364136223846793005L + 1442695040888963407L;
+				world.setBlock(x, top, z, (state >>> 33) % 7 == 0 ? Block.LAMP : Block.GLASS);
+				ticker.schedule(x, top, z, 1 + (int) ((state >>> 40) % MAX_DELAY));
+			}
+		}
+
+		for (int i = 0; i < WARMUP_TICKS; i++) {
+			ticker.tick();
+		}
+		long before = ticker.getScheduledTicks() + ticker.getRandomTicks();
+		long changesBefore = ticker.getChanges();
+		TimingStats tickTimes = new TimingStats("block ticks", TICKS);
+		long start = System.nanoTime();
+		for (int i = 0; i < TICKS; i++) {
+			long tickStart = System.nanoTime();
+			ticker.tick();
+			tickTimes.record(System.nanoTime() - tickStart);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+
+		long ticks = ticker.getScheduledTicks() + ticker.getRandomTicks() - before;
+		double ticksPerSecond = ticks / seconds;
+		System.out.println(String.format(Locale.ROOT,
+				"%2d threads, %d sections in %d regions: %,.0f block ticks/s (%,.0f per core%s), game tick mean %.2f ms, p99 %.2f ms (budget %.1f ms), %d blocks changed",
+				threads, sections, ticker.getRegionCount(), ticksPerSecond, ticksPerSecond / threads,
+				singleCore > 0 ? String.format(Locale.ROOT, ", speed-up %.2f", ticksPerSecond / singleCore) : "",
+				tickTimes.meanMillis(), tickTimes.percentileMillis(99), TICK_BUDGET_MILLIS,
+				ticker.getChanges() - changesBefore));
+		return new double[] { ticks, ticksPerSecond, hashBlocks(world) };
+	}
+
+	/**
+	 * Hashes the blocks of every section of the world, folded to an int so it
+	 * fits a double exactly.
+	 */
+	private static int hashBlocks(World world) {
+		long hash = 1;
+		short[] blocks = new short[ChunkSection.VOLUME];
+		for (int sx = 0; sx < SECTIONS_XZ; sx++) {
+			for (int sz = 0; sz < SECTIONS_XZ; sz++) {
+				for (int sy = 0; sy < SECTIONS_Y; sy++) {
+					world.getSection(sx, sy, sz).copyBlocks(blocks);
+					for (short block : blocks) {
+						hash = hash * 31 + block;
+					}
+				}
+			}
+		}
+		return (int) (hash ^ hash >>> 32);
+	}
+}
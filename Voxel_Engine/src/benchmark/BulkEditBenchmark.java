@@ -0,0 +1,303 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+
+import world.Block;
+import world.ChunkMesher;
+import world.ChunkSection;
+import world.Clipboard;
+import world.LightEngine;
+import world.Material;
+import world.MeshData;
+import world.RegionEditor;
+import world.World;
+
+/**
+ * Measures the RegionEditor on a lit hilly world: a 256x256x64 fill, aligned to
+ * the sections and not, a replace, and a copy and paste, each timed until the
+ * result is renderable, that is written, relit in one update and meshed in
+ * parallel. Setting the blocks of a smaller box one by one, with a light update
+ * per block, is measured for comparison. The blocks written are then checked,
+ * and the light against the light computed from scratch.
+ *
+ * Usage: BulkEditBenchmark [threads]
+ */
+public class BulkEditBenchmark {
+
+	// Size of the world in sections: the edited box, with a margin.
+	private static final int SECTIONS_XZ = 18, SECTIONS_Y = 6;
+
+	// Size of the edited box in blocks.
+	private static final int BOX_XZ = 256, BOX_Y = 64;
+
+	// Edge of the box set block by block.
+	private static final int SINGLE_BOX = 32;
+
+	// Number of measured runs of each edit.
+	private static final int RUNS = 3;
+
+	public static void main(String[] args) {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		World world = TestWorlds.hills(42, SECTIONS_XZ, SECTIONS_Y);
+		LightEngine engine = new LightEngine(world);
+		List<ChunkSection> lit = new ArrayList<ChunkSection>();
+		engine.setListener(lit::add);
+		lightAll(world, engine);
+		lit.clear();
+		System.out.println(String.format(Locale.ROOT, "%d sections, %d threads", world.getRegistry().size(), threads));
+
+		// The editor hands its sections to the light engine, which publishes what to mesh.
+		RegionEditor editor = new RegionEditor(world, pool);
+		List<ChunkSection> edited = new ArrayList<ChunkSection>();
+		editor.setListener(edited::addAll);
+		Pipeline pipeline = new Pipeline(world, engine, pool, edited, lit);
+
+		// Warm up every path on a small box first.
+		for (int i = 0; i < 4; i++) {
+			short block = (i & 1) == 0 ? Block.STONE : Block.AIR;
+			pipeline.run(() -> editor.fill(40, 20, 40, 90, 50, 90, block));
+			pipeline.run(() -> editor.replace(40, 20, 40, 90, 50, 90, Block.DIRT, Block.GLASS));
+			Clipboard small = editor.copy(40, 20, 40, 90, 50, 90);
+			pipeline.run(() -> editor.paste(small, 100, 21, 97, false));
+		}
+
+		// Fills of the whole box, aligned and not, alternately solid and empty.
+		int x0 = ChunkSection.SIZE, y0 = ChunkSection.SIZE, z0 = ChunkSection.SIZE;
+		for (int run = 0; run < RUNS; run++) {
+			pipeline.measure("fill aligned, stone", () -> editor.fill(x0, y0, z0, x0 + BOX_XZ - 1, y0 + BOX_Y - 1,
+					z0 + BOX_XZ - 1, Block.STONE));
+			checkBox(world, x0, y0, z0, Block.STONE);
+			pipeline.measure("fill aligned, air", () -> editor.fill(x0, y0, z0, x0 + BOX_XZ - 1, y0 + BOX_Y - 1,
+					z0 + BOX_XZ - 1, Block.AIR));
+			checkBox(world, x0, y0, z0, Block.AIR);
+		}
+		int u0 = ChunkSection.SIZE / 2;
+		for (int run = 0; run < RUNS; run++) {
+			pipeline.measure("fill unaligned, stone", () -> editor.fill(u0, u0, u0, u0 + BOX_XZ - 1, u0 + BOX_Y - 1,
+					u0 + BOX_XZ - 1, Block.STONE));
+			checkBox(world, u0, u0, u0, Block.STONE);
+			pipeline.measure("fill unaligned, air", () -> editor.fill(u0, u0, u0, u0 + BOX_XZ - 1, u0 + BOX_Y - 1,
+					u0 + BOX_XZ - 1, Block.AIR));
+			checkBox(world, u0, u0, u0, Block.AIR);
+		}
+		checkLight(world, engine, lit, "fills");
+
+		// Fresh terrain for the replace and the copy: the hills of another world, pasted in.
+		World hills = TestWorlds.hills(7, SECTIONS_XZ, SECTIONS_Y);
+		Clipboard terrain = new RegionEditor(hills, pool).copy(0, 0, 0, SECTIONS_XZ * ChunkSection.SIZE - 1,
+				SECTIONS_Y * ChunkSection.SIZE - 1, SECTIONS_XZ * ChunkSection.SIZE - 1);
+		pipeline.measure("paste terrain, whole world", () -> editor.paste(terrain, 0, 0, 0, false));
+		for (int run = 0; run < RUNS; run++) {
+			pipeline.measure("replace stone with glass", () -> editor.replace(x0, y0, z0, x0 + BOX_XZ - 1,
+					y0 + BOX_Y - 1, z0 + BOX_XZ - 1, Block.STONE, Block.GLASS));
+			pipeline.measure("replace glass with stone", () -> editor.replace(x0, y0, z0, x0 + BOX_XZ - 1,
+					y0 + BOX_Y - 1, z0 + BOX_XZ - 1, Block.GLASS, Block.STONE));
+		}
+		checkLight(world, engine, lit, "replaces");
+
+		// Copy half the box and paste it elsewhere, off the section grid.
+		long start = System.nanoTime();
+		Clipboard clipboard = editor.copy(x0, 0, z0, x0 + BOX_XZ / 2 - 1, BOX_Y - 1, z0 + BOX_XZ / 2 - 1);
+		long copyNanos = System.nanoTime() - start;
+		long copied = (long) clipboard.getSizeX() * clipboard.getSizeY() * clipboard.getSizeZ();
+		System.out.println(String.format(Locale.ROOT,
+				"%-28s %8.1f ms  %6.1f M blocks/s  clipboard %,d bytes (%.2f bits per block)", "copy 128x64x128",
+				copyNanos / 1e6, copied * 1e3 / copyNanos, clipboard.getMemoryBytes(),
+				clipboard.getMemoryBytes() * 8.0 / copied));
+		checkClipboard(world, clipboard, x0, 0, z0);
+		int px = x0 + BOX_XZ / 2 - 5, py = 11, pz = x0 + BOX_XZ / 2 - 13;
+		for (int run = 0; run < RUNS; run++) {
+			pipeline.measure("paste 128x64x128, unaligned", () -> editor.paste(clipboard, px, py, pz, false));
+			pipeline.measure("paste back the terrain", () -> editor.paste(terrain, 0, 0, 0, false));
+		}
+		editor.paste(clipboard, px, py, pz, false);
+		checkClipboard(world, clipboard, px, py, pz);
+		pipeline.run(() -> 0); // Relights the paste
+		checkLight(world, engine, lit, "pastes");
+
+		// The same kind of edit block by block, with a light update per block.
+		int bx = x0 + 40, by = y0 + 8, bz = z0 + 40;
+		for (int run = 0; run <= RUNS; run++) {
+			short block = (run & 1) == 0 ? Block.STONE : Block.AIR;
+			start = System.nanoTime();
+			long changed = 0;
+			for (int y = by; y < by + SINGLE_BOX; y++) {
+				for (int z = bz; z < bz + SINGLE_BOX; z++) {
+					for (int x = bx; x < bx + SINGLE_BOX; x++) {
+						short old = world.setBlock(x, y, z, block);
+						if (old != block) {
+							engine.updateBlock(x, y, z, old, block);
+							changed++;
+						}
+					}
+				}
+			}
+			long nanos = System.nanoTime() - start;
+			int meshes = lit.size();
+			engine.flushChanges();
+			meshes = lit.size() - meshes;
+			lit.clear();
+			if (run > 0) { // The first run warms up
+				System.out.println(String.format(Locale.ROOT,
+						"%-28s %8.1f ms  %6.2f M blocks/s  (write and light; %d sections to mesh)",
+						"set block by block, " + SINGLE_BOX + "^3", nanos / 1e6, changed * 1e3 / nanos, meshes));
+			}
+		}
+
+		engine.flushChanges();
+		lit.clear();
+		checkLight(world, engine, lit, "block edits");
+		System.out.println(String.format(Locale.ROOT, "%,d blocks and %,d sections changed by the bulk edits",
+				editor.getBlocksChanged(), editor.getSectionsChanged()));
+		pool.shutdown();
+	}
+
+	/**
+	 * Runs bulk edits through to renderable sections, and reports the time of
+	 * each stage.
+	 */
+	private static final class Pipeline {
+		private final World world;
+		private final LightEngine engine;
+		private final ForkJoinPool pool;
+		private final List<ChunkSection> edited, lit;
+		private final ThreadLocal<ChunkMesher> meshers = ThreadLocal.withInitial(ChunkMesher::new);
+
+		Pipeline(World world, LightEngine engine, ForkJoinPool pool, List<ChunkSection> edited, List<ChunkSection> lit) {
+			this.world = world;
+			this.engine = engine;
+			this.pool = pool;
+			this.edited = edited;
+			this.lit = lit;
+		}
+
+		/**
+		 * Runs an edit, relights and meshes, and returns the nanoseconds of each
+		 * stage and the blocks changed.
+		 */
+		long[] run(LongSupplier edit) {
+			long start = System.nanoTime();
+			long changed = edit.getAsLong();
+			long written = System.nanoTime();
+			engine.relightSections(edited);
+			engine.flushChanges();
+			long relit = System.nanoTime();
+			long vertices = pool.submit(() -> IntStream.range(0, lit.size()).parallel()
+					.mapToLong(i -> countVertices(meshers.get().mesh(world, lit.get(i)))).sum()).join();
+			long meshed = System.nanoTime();
+			Bench.consume(vertices);
+			long[] result = { written - start, relit - written, meshed - relit, changed, edited.size(), lit.size() };
+			edited.clear();
+			lit.clear();
+			return result;
+		}
+
+		void measure(String name, LongSupplier edit) {
+			long[] r = run(edit);
+			long total = r[0] + r[1] + r[2];
+			System.out.println(String.format(Locale.ROOT,
+					"%-28s %8.1f ms  %6.1f M blocks/s  write %6.1f ms, light %6.1f ms, mesh %6.1f ms  (%d edited, %d meshed)",
+					name, total / 1e6, r[3] * 1e3 / r[0], r[0] / 1e6, r[1] / 1e6, r[2] / 1e6, r[4], r[5]));
+		}
+	}
+
+	private static long countVertices(MeshData mesh) {
+		long vertices = 0;
+		for (int material = 0; material < Material.COUNT; material++) {
+			MeshData.Part part = mesh.getPart(material);
+			if (part != null) {
+				vertices += part.positions.length;
+			}
+		}
+		return vertices;
+	}
+
+	/**
+	 * Checks that every block of a filled box is the block it was filled with.
+	 */
+	private static void checkBox(World world, int x0, int y0, int z0, short block) {
+		for (int y = y0; y < y0 + BOX_Y; y++) {
+			for (int z = z0; z < z0 + BOX_XZ; z++) {
+				for (int x = x0; x < x0 + BOX_XZ; x++) {
+					if (world.getBlock(x, y, z) != block) {
+						throw new IllegalStateException("Block " + x + ", " + y + ", " + z + " was not filled");
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks that the blocks of a box of the world are those of a clipboard.
+	 */
+	private static void checkClipboard(World world, Clipboard clipboard, int x0, int y0, int z0) {
+		for (int y = 0; y < clipboard.getSizeY(); y++) {
+			for (int z = 0; z < clipboard.getSizeZ(); z++) {
+				for (int x = 0; x < clipboard.getSizeX(); x++) {
+					if (world.getBlock(x0 + x, y0 + y, z0 + z) != clipboard.getBlock(x, y, z)) {
+						throw new IllegalStateException("Block " + x + ", " + y + ", " + z + " differs from the clipboard");
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks that the light left by the updates is the light computed from
+	 * scratch for the same blocks.
+	 */
+	private static void checkLight(World world, LightEngine engine, List<ChunkSection> lit, String stage) {
+		int[] updated = copyLight(world);
+		lightAll(world, engine);
+		lit.clear();
+		int[] scratch = copyLight(world);
+		for (int i = 0; i < scratch.length; i++) {
+			if (updated[i] != scratch[i]) {
+				throw new IllegalStateException("Light after the " + stage + " differs from a full relight at entry " + i);
+			}
+		}
+		System.out.println("Light after the " + stage + " matches a full relight");
+	}
+
+	/**
+	 * Clears the light of every section, then lights them one by one.
+	 */
+	private static void lightAll(World world, LightEngine engine) {
+		List<ChunkSection> sections = new ArrayList<ChunkSection>();
+		world.getRegistry().forEach(sections::add);
+		for (ChunkSection section : sections) {
+			section.getBlockLight().fill(0);
+			section.getSkyLight().fill(0);
+		}
+		for (ChunkSection section : sections) {
+			engine.initSection(section);
+		}
+		engine.flushChanges();
+	}
+
+	/**
+	 * Copies the block and sky light of every section into one array, in
+	 * coordinate order.
+	 */
+	private static int[] copyLight(World world) {
+		int[] light = new int[SECTIONS_XZ * SECTIONS_Y * SECTIONS_XZ * ChunkSection.VOLUME];
+		int offset = 0;
+		for (int sx = 0; sx < SECTIONS_XZ; sx++) {
+			for (int sy = 0; sy < SECTIONS_Y; sy++) {
+				for (int sz = 0; sz < SECTIONS_XZ; sz++) {
+					ChunkSection section = world.getSection(sx, sy, sz);
+					for (int index = 0; index < ChunkSection.VOLUME; index++) {
+						light[offset++] = section.getBlockLight().get(index) << 4 | section.getSkyLight().get(index);
+					}
+				}
+			}
+		}
+		return light;
+	}
+}
@@ -0,0 +1,159 @@
+package benchmark;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import world.Block;
+import world.ChunkSection;
+import world.TerrainGenerator;
+import world.TreeDecorator;
+import world.World;
+import world.WorldGenerator;
+
+/**
+ * Generates a hilly world of 4096 sections with and without trees, and reports
+ * the sections generated per second of the terrain alone and of the terrain
+ * with its trees. The decorated world is generated in row order, in reverse
+ * order, and in a shuffled order on a pool of N threads (N being the number of
+ * cores, or the first argument), and the benchmark checks that the three orders
+ * give the same blocks once the late writes are applied.
+ */
+public class DecorationBenchmark {
+
+	// Size of the world in sections.
+	private static final int SECTIONS_XZ = 32, SECTIONS_Y = 4;
+
+	// Number of times each generation is repeated; the fastest run is reported.
+	private static final int RUNS = 5;
+
+	private static final long SEED = 42;
+
+	public static void main(String[] args) {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		TerrainGenerator terrain = new TerrainGenerator(SEED, SECTIONS_Y);
+		int count = SECTIONS_XZ * SECTIONS_XZ * SECTIONS_Y;
+
+		// Section coordinates in row order (x, then z, then y), and shuffled.
+		int[] rowOrder = new int[count];
+		for (int i = 0; i < count; i++) {
+			rowOrder[i] = i;
+		}
+		int[] reverseOrder = new int[count];
+		for (int i = 0; i < count; i++) {
+			reverseOrder[i] = count - 1 - i;
+		}
+		int[] shuffled = rowOrder.clone();
+		Random random = new Random(SEED);
+		for (int i = count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = shuffled[i];
+			shuffled[i] = shuffled[j];
+			shuffled[j] = swap;
+		}
+
+		System.out.println(String.format(Locale.ROOT, "%d sections, %d threads", count, threads));
+
+		// The terrain alone.
+		long best = Long.MAX_VALUE;
+		for (int run = 0; run < RUNS; run++) {
+			World world = new World();
+			long start = System.nanoTime();
+			pool.submit(() -> IntStream.of(shuffled).parallel().forEach(
+					i -> world.addSection(terrain.generateSection(sx(i), sy(i), sz(i))))).join();
+			best = Math.min(best, System.nanoTime() - start);
+			Bench.consume(world.getRegistry().size());
+		}
+		report("terrain, parallel", count, best);
+
+		long expected = generate("trees, row order", terrain, rowOrder, null);
+		if (generate("trees, reverse order", terrain, reverseOrder, null) != expected) {
+			throw new IllegalStateException("Generating in reverse order grew different trees");
+		}
+		if (generate("trees, shuffled, parallel", terrain, shuffled, pool) != expected) {
+			throw new IllegalStateException("Generating in parallel grew different trees");
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Generates the decorated world in an order, on the calling thread or on a
+	 * pool, applies the late writes, and reports the figures.
+	 *
+	 * @return A hash of the world's blocks.
+	 */
+	private static long generate(String name, TerrainGenerator terrain, int[] order, ForkJoinPool pool) {
+		long best = Long.MAX_VALUE;
+		long hash = 0;
+		for (int run = 0; run < RUNS; run++) {
+			World world = new World();
+			WorldGenerator generator = new WorldGenerator(world, terrain, new TreeDecorator(SEED, terrain));
+			long start = System.nanoTime();
+			if (pool == null) {
+				for (int i : order) {
+					generator.generate(sx(i), sy(i), sz(i));
+				}
+			} else {
+				pool.submit(() -> IntStream.of(order).parallel().forEach(
+						i -> generator.generate(sx(i), sy(i), sz(i)))).join();
+			}
+			generator.applyLateWrites();
+			best = Math.min(best, System.nanoTime() - start);
+
+			long[] counts = new long[2];
+			long runHash = hashBlocks(world, counts);
+			if (run > 0 && runHash != hash) {
+				throw new IllegalStateException(name + ": two runs grew different trees");
+			}
+			hash = runHash;
+			if (run == RUNS - 1) {
+				report(name, order.length, best);
+				System.out.println(String.format(Locale.ROOT,
+						"    %,d trees: %,d logs, %,d leaves; %,d blocks buffered for later sections, %,d late writes",
+						generator.getTreesGrown(), counts[0], counts[1], generator.getBufferedWrites(),
+						generator.getLateWrites()));
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Hashes the blocks of every section of the world, counting the logs and
+	 * leaves.
+	 */
+	private static long hashBlocks(World world, long[] counts) {
+		long hash = 1;
+		short[] blocks = new short[ChunkSection.VOLUME];
+		for (int i = 0; i < SECTIONS_XZ * SECTIONS_XZ * SECTIONS_Y; i++) {
+			world.getSection(sx(i), sy(i), sz(i)).copyBlocks(blocks);
+			for (short block : blocks) {
+				hash = hash * 31 + block;
+				if (block == Block.LOG) {
+					counts[0]++;
+				} else if (block == Block.LEAVES) {
+					counts[1]++;
+				}
+			}
+		}
+		return hash;
+	}
+
+	private static void report(String name, int sections, long nanos) {
+		System.out.println(String.format(Locale.ROOT, "%-26s %7.1f ms, %,9.0f sections/s", name, nanos / 1e6,
+				sections / (nanos / 1e9)));
+	}
+
+	private static int sx(int i) {
+		return i % SECTIONS_XZ;
+	}
+
+	private static int sz(int i) {
+		return i / SECTIONS_XZ % SECTIONS_XZ;
+	}
+
+	private static int sy(int i) {
+		return i / (SECTIONS_XZ * SECTIONS_XZ);
+	}
+}
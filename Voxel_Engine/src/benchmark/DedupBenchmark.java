@@ -0,0 +1,138 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import world.Block;
+import world.ChunkMesher;
+import world.ChunkSection;
+import world.LightEngine;
+import world.Material;
+import world.MeshCache;
+import world.MeshData;
+import world.PalettedBlocks;
+import world.World;
+
+/**
+ * Measures the sharing of identical sections on a flat world like the one the
+ * game generates (a layer of grass in every section), and on the hilly test
+ * world, where few sections repeat: the memory of the block storage with and
+ * without sharing, the hit rates of the interner and the mesh cache, and the
+ * time to mesh every section with and without the cache. Meshes taken from the
+ * cache are checked against freshly built ones, and an edit is checked to copy
+ * the shared storage.
+ */
+public class DedupBenchmark {
+
+	// Size of the flat world in sections.
+	private static final int FLAT_SECTIONS = 32;
+
+	// Number of meshes the cache keeps, as in the game.
+	private static final int MESH_CACHE_SIZE = 1024;
+
+	public static void main(String[] args) {
+		World flat = createFlatWorld();
+		measure("flat", flat);
+		checkCopyOnWrite(flat);
+		measure("hills", TestWorlds.hills(42, 16, 4));
+	}
+
+	/**
+	 * Generates a world the way the game does: one section per column, with a
+	 * layer of grass at the bottom.
+	 */
+	private static World createFlatWorld() {
+		World world = new World();
+		for (int sx = 0; sx < FLAT_SECTIONS; sx++) {
+			for (int sz = 0; sz < FLAT_SECTIONS; sz++) {
+				ChunkSection section = new ChunkSection(sx, 0, sz);
+				for (int x = 0; x < ChunkSection.SIZE; x++) {
+					for (int z = 0; z < ChunkSection.SIZE; z++) {
+						section.setBlock(x, 0, z, Block.GRASS);
+					}
+				}
+				world.addSection(section);
+			}
+		}
+		return world;
+	}
+
+	private static void measure(String name, World world) {
+		List<ChunkSection> sections = new ArrayList<ChunkSection>();
+		world.getRegistry().forEach(sections::add);
+		LightEngine engine = new LightEngine(world);
+		for (ChunkSection section : sections) {
+			engine.initSection(section);
+		}
+
+		// Block storage memory, counting shared storages once.
+		Set<PalettedBlocks> distinct = Collections.newSetFromMap(new IdentityHashMap<PalettedBlocks, Boolean>());
+		long unshared = 0, shared = 0;
+		for (ChunkSection section : sections) {
+			unshared += section.getBlocks().getMemoryBytes();
+			if (distinct.add(section.getBlocks())) {
+				shared += section.getBlocks().getMemoryBytes();
+			}
+		}
+		System.out.println(String.format(Locale.ROOT,
+				"%s: %d sections, %d distinct storages; interner hit rate %.1f%%; blocks take %d bytes, %d unshared",
+				name, sections.size(), distinct.size(),
+				100.0 * world.getInterner().getHits() / world.getInterner().getLookups(), shared, unshared));
+
+		// Meshing, with a cold cache every time as when the world is first loaded.
+		ChunkMesher plain = new ChunkMesher();
+		Bench.measure(name + " mesh, no cache", sections.size(), 3, 10, () -> meshAll(world, plain, sections));
+		MeshCache[] cache = new MeshCache[1];
+		Bench.measure(name + " mesh, cache", sections.size(), 3, 10, () -> {
+			cache[0] = new MeshCache(MESH_CACHE_SIZE);
+			meshAll(world, new ChunkMesher(cache[0]), sections);
+		});
+		System.out.println(String.format(Locale.ROOT, "%s: mesh cache hit rate %.1f%%", name,
+				100.0 * cache[0].getHits() / cache[0].getLookups()));
+
+		// Meshes from the cache must be those the section would get anyway.
+		ChunkMesher cached = new ChunkMesher(new MeshCache(MESH_CACHE_SIZE));
+		for (ChunkSection section : sections) {
+			MeshData expected = plain.mesh(world, section), actual = cached.mesh(world, section);
+			for (int material = 0; material < Material.COUNT; material++) {
+				MeshData.Part a = expected.getPart(material), b = actual.getPart(material);
+				if ((a == null) != (b == null) || a != null && (!Arrays.equals(a.positions, b.positions)
+						|| !Arrays.equals(a.light, b.light) || !Arrays.equals(a.indices, b.indices))) {
+					throw new IllegalStateException("Cached mesh differs at section " + section.getSectionX() + ", "
+							+ section.getSectionY() + ", " + section.getSectionZ());
+				}
+			}
+		}
+	}
+
+	private static void meshAll(World world, ChunkMesher mesher, List<ChunkSection> sections) {
+		long parts = 0;
+		for (ChunkSection section : sections) {
+			MeshData mesh = mesher.mesh(world, section);
+			parts += mesh.isEmpty() ? 0 : 1;
+		}
+		Bench.consume(parts);
+	}
+
+	/**
+	 * Edits one of two identical sections, checking that only it changes.
+	 */
+	private static void checkCopyOnWrite(World world) {
+		ChunkSection edited = world.getSection(1, 0, 1), other = world.getSection(2, 0, 2);
+		if (edited.getBlocks() != other.getBlocks()) {
+			throw new IllegalStateException("Identical sections do not share their storage");
+		}
+		long copies = ChunkSection.getCopiesOnWrite();
+		edited.setBlock(3, 1, 3, Block.STONE);
+		if (edited.getBlocks() == other.getBlocks() || other.getBlock(3, 1, 3) != Block.AIR
+				|| edited.getBlock(3, 1, 3) != Block.STONE || ChunkSection.getCopiesOnWrite() != copies + 1) {
+			throw new IllegalStateException("Editing a shared section did not copy it");
+		}
+		System.out.println("Editing a shared section copies its storage");
+	}
+}
@@ -0,0 +1,169 @@
+package benchmark;
+
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import world.Block;
+import world.ChunkSection;
+import world.FluidEngine;
+import world.TerrainGenerator;
+import world.World;
+
+/**
+ * Floods a hilly world of 2304 sections from a grid of water sources with the
+ * FluidEngine, until the water settles, then removes the sources and lets the
+ * water drain away. Reports the cells evaluated per second, the level and block
+ * changes, and the sections whose blocks changed (the sections to mesh again)
+ * against remeshing every section holding water at every step. Runs on a pool
+ * of one thread, and again on each larger pool up to N threads (N being the
+ * number of cores, or the first argument), and checks that every run floods the
+ * world the same way.
+ */
+public class FluidBenchmark {
+
+	// Size of the world in sections.
+	private static final int SECTIONS_XZ = 24, SECTIONS_Y = 4;
+
+	// Distance between the sources, in blocks.
+	private static final int SOURCE_SPACING = 12;
+
+	// Steps after which the water must have settled.
+	private static final int MAX_STEPS = 1000;
+
+	public static void main(String[] args) {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		long expected = run(1);
+		for (int threads = 2; threads <= maxThreads; threads++) {
+			if (run(threads) != expected) {
+				throw new IllegalStateException(threads + " threads flooded the world differently");
+			}
+		}
+	}
+
+	/**
+	 * Floods and drains a new world on a pool of the given size.
+	 *
+	 * @return A hash of the flooded world's water levels.
+	 */
+	private static long run(int threads) {
+		World world = TestWorlds.hills(42, SECTIONS_XZ, SECTIONS_Y);
+		TerrainGenerator terrain = new TerrainGenerator(42, SECTIONS_Y);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		FluidEngine fluids = new FluidEngine(world, pool);
+		int size = SECTIONS_XZ * ChunkSection.SIZE;
+		int top = SECTIONS_Y * ChunkSection.SIZE - 1;
+
+		// Place the sources on the ground, where it is below the top of the world.
+		int sources = 0;
+		for (int x = SOURCE_SPACING / 2; x < size; x += SOURCE_SPACING) {
+			for (int z = SOURCE_SPACING / 2; z < size; z += SOURCE_SPACING) {
+				int y = terrain.getHeight(x, z) + 1;
+				if (y <= top) {
+					fluids.addSource(x, y, z);
+					sources++;
+				}
+			}
+		}
+
+		System.out.println(String.format(Locale.ROOT, "--- %d threads, %d sections, %d sources", threads,
+				world.getRegistry().size(), sources));
+		long flooded = settle("flood", fluids, world);
+		long hash = hashLevels(fluids, size, top);
+
+		// Remove the sources; all the flowing water must drain away.
+		for (int x = SOURCE_SPACING / 2; x < size; x += SOURCE_SPACING) {
+			for (int z = SOURCE_SPACING / 2; z < size; z += SOURCE_SPACING) {
+				int y = terrain.getHeight(x, z) + 1;
+				if (y <= top) {
+					world.setBlock(x, y, z, Block.AIR);
+					fluids.blockChanged(x, y, z, Block.WATER, Block.AIR);
+				}
+			}
+		}
+		settle("drain", fluids, world);
+		if (countWater(world) != 0) {
+			throw new IllegalStateException("Water remains after the sources were removed");
+		}
+		pool.shutdown();
+		return hash ^ flooded;
+	}
+
+	/**
+	 * Steps the water until no cell changes, and reports the figures.
+	 *
+	 * @return The number of water blocks once settled.
+	 */
+	private static long settle(String name, FluidEngine fluids, World world) {
+		long cellsBefore = fluids.getCellsProcessed(), changesBefore = fluids.getCellsChanged();
+		long blocksBefore = fluids.getBlocksChanged(), sectionsBefore = fluids.getSectionsChanged();
+		long naiveRemeshes = 0; // Sections holding water, summed over the steps
+		long stepNanos = 0;
+		int steps = 0;
+		while (true) {
+			long changed = fluids.getCellsChanged();
+			long start = System.nanoTime();
+			fluids.step();
+			stepNanos += System.nanoTime() - start;
+			steps++;
+			if (fluids.getCellsChanged() == changed) {
+				break;
+			}
+			if (steps == MAX_STEPS) {
+				throw new IllegalStateException(name + ": the water has not settled after " + steps + " steps");
+			}
+			naiveRemeshes += countWaterSections(world);
+		}
+		long cells = fluids.getCellsProcessed() - cellsBefore;
+		long water = countWater(world);
+		System.out.println(String.format(Locale.ROOT,
+				"%-5s %4d steps, %.1f ms/step: %,d cells evaluated (%,.0f cells/s), %,d level changes, %,d block changes, %,d water blocks; %,d section remeshes vs %,d remeshing every section with water",
+				name, steps, stepNanos / 1e6 / steps, cells, cells / (stepNanos / 1e9),
+				fluids.getCellsChanged() - changesBefore, fluids.getBlocksChanged() - blocksBefore, water,
+				fluids.getSectionsChanged() - sectionsBefore, naiveRemeshes));
+		return water;
+	}
+
+	/**
+	 * Hashes the level of every block of the world.
+	 */
+	private static long hashLevels(FluidEngine fluids, int size, int top) {
+		long hash = 1;
+		for (int x = 0; x < size; x++) {
+			for (int z = 0; z < size; z++) {
+				for (int y = 0; y <= top; y++) {
+					hash = hash * 31 + fluids.getLevel(x, y, z);
+				}
+			}
+		}
+		return hash;
+	}
+
+	private static long countWater(World world) {
+		long[] count = new long[1];
+		short[] blocks = new short[ChunkSection.VOLUME];
+		world.getRegistry().forEach(section -> {
+			section.copyBlocks(blocks);
+			for (short block : blocks) {
+				if (block == Block.WATER) {
+					count[0]++;
+				}
+			}
+		});
+		return count[0];
+	}
+
+	private static long countWaterSections(World world) {
+		long[] count = new long[1];
+		short[] blocks = new short[ChunkSection.VOLUME];
+		world.getRegistry().forEach(section -> {
+			section.copyBlocks(blocks);
+			for (short block : blocks) {
+				if (block == Block.WATER) {
+					count[0]++;
+					return;
+				}
+			}
+		});
+		return count[0];
+	}
+}
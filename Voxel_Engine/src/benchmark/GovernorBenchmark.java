@@ -0,0 +1,101 @@
+package benchmark;
+
+import java.util.Locale;
+import java.util.Random;
+
+import juancraft.QualityGovernor;
+
+/**
+ * Drives the QualityGovernor with synthetic frame times from a model of the
+ * machine, checking that it settles on settings the machine can hold and then
+ * stays there. The model draws each frame in a fixed cost plus a cost per
+ * column in view, adds the time spent uploading meshes within the budget, plus
+ * noise; meshes arrive at a given rate and wait in the backlog. Each scenario
+ * checks that the settings stay within their bounds and that the governor stops
+ * changing them once the load is steady.
+ */
+public class GovernorBenchmark {
+
+	// Frame rate the governor aims for, as the display's cap.
+	private static final int FPS = 120;
+
+	// Bounds of the settings, as in the game.
+	private static final int MIN_VIEW = 4 * 16, VIEW = 9 * 16, MAX_VIEW = 16 * 16;
+	private static final long MIN_BUDGET = 500_000L, BUDGET = 2_000_000L, MAX_BUDGET = 8_000_000L;
+
+	// Length of each scenario: five minutes of frames.
+	private static final int FRAMES = 5 * 60 * FPS;
+
+	// Time to upload one mesh in the model.
+	private static final double UPLOAD_MILLIS = 0.25;
+
+	public static void main(String[] args) {
+		// name, base ms, ms per column, noise ms, meshes arriving per frame, and
+		// the frames of a slowdown adding ms to every frame: start, end, ms.
+		run("weak machine", 4.0, 0.02, 0.4, 1, 0, 0, 0);
+		run("strong machine", 1.0, 0.004, 0.2, 1, 0, 0, 0);
+		run("streaming burst", 2.0, 0.008, 0.3, 12, 0, 0, 0);
+		run("background load", 2.0, 0.008, 0.3, 1, FRAMES / 5, FRAMES / 3, 6.0);
+		run("noise at target", 3.5, 0.01, 1.2, 1, 0, 0, 0);
+
+		QualityGovernor governor = new QualityGovernor(1_000_000_000L / FPS, MIN_VIEW, VIEW, MAX_VIEW, MIN_BUDGET,
+				BUDGET, MAX_BUDGET);
+		long[] frame = new long[1];
+		Bench.measure("governor recordFrame", 1, 100_000, 1_000_000,
+				() -> Bench.consume(governor.recordFrame(7_000_000L + (frame[0]++ & 1023) * 1000, 0) ? 1 : 0));
+	}
+
+	/**
+	 * Runs one scenario and reports where the settings settled.
+	 */
+	private static void run(String name, double baseMillis, double columnMillis, double noiseMillis,
+			int meshesPerFrame, int loadStart, int loadEnd, double loadMillis) {
+		System.out.println("--- " + name);
+		QualityGovernor governor = new QualityGovernor(1_000_000_000L / FPS, MIN_VIEW, VIEW, MAX_VIEW, MIN_BUDGET,
+				BUDGET, MAX_BUDGET);
+		Random random = new Random(1);
+		int backlog = 0;
+		long lastChangeFrame = 0;
+		double slowFrames = 0;
+
+		for (int frame = 0; frame < FRAMES; frame++) {
+			// Meshes arrive while the world streams in, during the first minute.
+			if (frame < 60 * FPS) {
+				backlog += meshesPerFrame;
+			}
+			int uploads = Math.min(backlog, (int) (governor.getUploadBudgetNanos() / 1e6 / UPLOAD_MILLIS));
+			backlog -= uploads;
+
+			int columns = (2 * governor.getViewDistance() / 16 + 1) * (2 * governor.getViewDistance() / 16 + 1);
+			double millis = baseMillis + columnMillis * columns + uploads * UPLOAD_MILLIS
+					+ Math.abs(random.nextGaussian()) * noiseMillis;
+			if (!governor.isAmbientOcclusion()) {
+				millis *= 0.95; // Workers meshing faster leave more of the machine to the frame
+			}
+			if (frame >= loadStart && frame < loadEnd) {
+				millis += loadMillis;
+			}
+			if (millis > 1000.0 / FPS) {
+				slowFrames++;
+			}
+
+			if (governor.recordFrame((long) (millis * 1e6), backlog)) {
+				lastChangeFrame = frame;
+			}
+			if (governor.getViewDistance() < MIN_VIEW || governor.getViewDistance() > MAX_VIEW
+					|| governor.getUploadBudgetNanos() < MIN_BUDGET || governor.getUploadBudgetNanos() > MAX_BUDGET) {
+				throw new IllegalStateException(name + ": settings out of bounds");
+			}
+		}
+
+		// Under a steady load the settings must settle: no change in the last two minutes.
+		if (FRAMES - lastChangeFrame < 2 * 60 * FPS) {
+			throw new IllegalStateException(name + ": settings still changing at frame " + lastChangeFrame);
+		}
+		System.out.println(String.format(Locale.ROOT,
+				"%-16s %2d changes, settled after %5.1f s: view distance %3d, upload budget %.2f ms, ambient occlusion %s; %4.1f%% frames over target, backlog %d",
+				name, governor.getChanges(), lastChangeFrame / (double) FPS, governor.getViewDistance(),
+				governor.getUploadBudgetNanos() / 1e6, governor.isAmbientOcclusion() ? "on" : "off",
+				100 * slowFrames / FRAMES, backlog));
+	}
+}
@@ -0,0 +1,132 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import toolbox.TimingStats;
+import world.Block;
+import world.ChunkSection;
+import world.LightEngine;
+import world.World;
+
+/**
+ * Measures the LightEngine on a hilly world: the time to light every section
+ * from scratch, and the latency of the incremental update following a single
+ * block edit (placing and removing a lamp, and a stone casting a shadow). After
+ * the edits, the incrementally updated light is checked against the light
+ * computed from scratch for the same blocks.
+ */
+public class LightBenchmark {
+
+	// Size of the world in sections.
+	private static final int SECTIONS_XZ = 16, SECTIONS_Y = 4;
+
+	// Number of edits of each kind.
+	private static final int EDITS = 2_000;
+
+	public static void main(String[] args) {
+		World world = TestWorlds.hills(42, SECTIONS_XZ, SECTIONS_Y);
+		LightEngine engine = new LightEngine(world);
+		List<ChunkSection> sections = new ArrayList<ChunkSection>();
+		world.getRegistry().forEach(sections::add);
+
+		Bench.measure("light every section from scratch", sections.size(), 2, 5, () -> lightAll(engine, sections));
+
+		// Edits on the surface, away from the edges of the world.
+		Random random = new Random(7);
+		int size = SECTIONS_XZ * ChunkSection.SIZE;
+		TimingStats placeLamp = new TimingStats("place lamp", EDITS);
+		TimingStats removeLamp = new TimingStats("remove lamp", EDITS);
+		TimingStats placeStone = new TimingStats("place stone", EDITS);
+		TimingStats removeStone = new TimingStats("remove stone", EDITS);
+		for (int pass = 0; pass < 2; pass++) { // The first pass warms up
+			for (int i = 0; i < EDITS; i++) {
+				int x = 16 + random.nextInt(size - 32), z = 16 + random.nextInt(size - 32);
+				int y = surface(world, x, z) + 1;
+				boolean lamp = (i & 1) == 0;
+				short block = lamp ? Block.LAMP : Block.STONE;
+				edit(engine, world, x, y, z, block, pass == 0 ? null : lamp ? placeLamp : placeStone);
+				edit(engine, world, x, y, z, Block.AIR, pass == 0 ? null : lamp ? removeLamp : removeStone);
+			}
+		}
+		for (TimingStats stats : new TimingStats[] { placeLamp, removeLamp, placeStone, removeStone }) {
+			System.out.println(String.format(Locale.ROOT, "%-14s p50 %7.3f ms  p99 %7.3f ms", stats.getName(),
+					stats.percentileMillis(50), stats.percentileMillis(99)));
+		}
+
+		// Leave some edits in place, then compare with the light computed from scratch.
+		for (int i = 0; i < 200; i++) {
+			int x = 16 + random.nextInt(size - 32), z = 16 + random.nextInt(size - 32);
+			int y = surface(world, x, z) + 1 + random.nextInt(3);
+			edit(engine, world, x, y, z, (i & 1) == 0 ? Block.LAMP : Block.STONE, null);
+		}
+		for (int i = 0; i < 50; i++) {
+			int x = 16 + random.nextInt(size - 32), z = 16 + random.nextInt(size - 32);
+			edit(engine, world, x, surface(world, x, z), z, Block.AIR, null);
+		}
+		engine.flushChanges();
+		int[] incremental = copyLight(sections);
+		lightAll(engine, sections);
+		int[] scratch = copyLight(sections);
+		for (int i = 0; i < scratch.length; i++) {
+			if (incremental[i] != scratch[i]) {
+				throw new IllegalStateException("Incremental light differs from a full relight at entry " + i);
+			}
+		}
+		System.out.println("Incremental light matches a full relight");
+	}
+
+	/**
+	 * Clears the light of every section, then lights them one by one.
+	 */
+	private static void lightAll(LightEngine engine, List<ChunkSection> sections) {
+		for (ChunkSection section : sections) {
+			section.getBlockLight().fill(0);
+			section.getSkyLight().fill(0);
+		}
+		for (ChunkSection section : sections) {
+			engine.initSection(section);
+		}
+		engine.flushChanges();
+	}
+
+	/**
+	 * Sets a block and updates the light, recording the time of the update.
+	 */
+	private static void edit(LightEngine engine, World world, int x, int y, int z, short block, TimingStats stats) {
+		short old = world.getBlock(x, y, z);
+		world.setBlock(x, y, z, block);
+		long start = System.nanoTime();
+		engine.updateBlock(x, y, z, old, block);
+		if (stats != null) {
+			stats.record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Gets the height of the highest solid block of a column.
+	 */
+	private static int surface(World world, int x, int z) {
+		int y = SECTIONS_Y * ChunkSection.SIZE - 1;
+		while (y > 0 && !Block.isSolid(world.getBlock(x, y, z))) {
+			y--;
+		}
+		return y;
+	}
+
+	/**
+	 * Copies the block and sky light of every section into one array.
+	 */
+	private static int[] copyLight(List<ChunkSection> sections) {
+		int[] light = new int[sections.size() * ChunkSection.VOLUME];
+		int offset = 0;
+		for (ChunkSection section : sections) {
+			for (int index = 0; index < ChunkSection.VOLUME; index++) {
+				light[offset++] = section.getBlockLight().get(index) << 4 | section.getSkyLight().get(index);
+			}
+		}
+		return light;
+	}
+}
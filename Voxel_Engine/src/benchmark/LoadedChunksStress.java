@@ -0,0 +1,199 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import entities.Entity;
+import juancraft.Chunck;
+import juancraft.LoadedChunks;
+import toolbox.TimingStats;
+
+/**
+ * Stress test of the LoadedChunks snapshots: a generator thread adds and
+ * removes batches of chunks while reader threads iterate the snapshots, as the
+ * simulation and render threads do. Readers check that snapshot versions never
+ * go back and that every batch is either fully present or absent. The same load
+ * is then timed with readers doing identical work on the snapshots and on a
+ * synchronized list iterated under its lock, the layout the snapshots replace,
+ * comparing reader throughput and the generator's latency.
+ */
+public class LoadedChunksStress {
+
+	// Number of batches the generator adds, and chunks per batch.
+	private static final int BATCHES = 4_000, BATCH_SIZE = 16;
+
+	// Batches stay loaded for this many newer batches before being removed.
+	private static final int RETAINED_BATCHES = 64;
+
+	// Number of reader threads.
+	private static final int READERS = 3;
+
+	public static void main(String[] args) throws InterruptedException {
+		// Chunks of each batch, with the batch number as the origin's X.
+		List<List<Chunck>> batches = new ArrayList<List<Chunck>>();
+		for (int batch = 0; batch < BATCHES; batch++) {
+			List<Chunck> chunks = new ArrayList<Chunck>();
+			for (int i = 0; i < BATCH_SIZE; i++) {
+				chunks.add(new Chunck(Collections.<Entity>emptyList(), new Vector3f(batch, i, 0)));
+			}
+			batches.add(chunks);
+		}
+
+		checkSnapshots(batches);
+		System.out.println("Readers never saw a partial batch or an older snapshot");
+		for (int run = 0; run < 2; run++) { // The first run warms up
+			boolean report = run == 1;
+			timeSnapshots(batches, report);
+			timeSynchronizedList(batches, report);
+		}
+	}
+
+	/**
+	 * Runs the generator and readers on LoadedChunks, checking every snapshot.
+	 */
+	private static void checkSnapshots(List<List<Chunck>> batches) throws InterruptedException {
+		LoadedChunks loaded = new LoadedChunks();
+		AtomicBoolean done = new AtomicBoolean();
+		List<Thread> readers = new ArrayList<Thread>();
+		Throwable[] failure = new Throwable[1];
+		for (int r = 0; r < READERS; r++) {
+			Thread reader = new Thread(() -> {
+				int[] counts = new int[BATCHES];
+				long lastVersion = -1;
+				while (!done.get()) {
+					LoadedChunks.Snapshot snapshot = loaded.getSnapshot();
+					if (snapshot.getVersion() < lastVersion) {
+						throw new IllegalStateException("Snapshot version went back");
+					}
+					lastVersion = snapshot.getVersion();
+					Chunck[] chunks = snapshot.getChunks();
+					for (Chunck chunk : chunks) {
+						counts[(int) chunk.getOrigin().x]++;
+					}
+					for (Chunck chunk : chunks) {
+						int batch = (int) chunk.getOrigin().x;
+						if (counts[batch] != 0 && counts[batch] != BATCH_SIZE) {
+							throw new IllegalStateException("Batch " + batch + " is partly published");
+						}
+						counts[batch] = 0;
+					}
+				}
+			});
+			reader.setUncaughtExceptionHandler((thread, e) -> failure[0] = e);
+			readers.add(reader);
+		}
+
+		readers.forEach(Thread::start);
+		for (int batch = 0; batch < BATCHES; batch++) {
+			loaded.addAll(batches.get(batch));
+			if (batch >= RETAINED_BATCHES) {
+				loaded.removeAll(batches.get(batch - RETAINED_BATCHES));
+			}
+		}
+		done.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		if (failure[0] != null) {
+			throw new IllegalStateException("A reader failed", failure[0]);
+		}
+		if (loaded.getSnapshot().getChunks().length != RETAINED_BATCHES * BATCH_SIZE) {
+			throw new IllegalStateException("Wrong number of chunks at the end");
+		}
+	}
+
+	/**
+	 * Times the generator and readers on LoadedChunks.
+	 */
+	private static void timeSnapshots(List<List<Chunck>> batches, boolean report) throws InterruptedException {
+		LoadedChunks loaded = new LoadedChunks();
+		time("snapshots", batches, report, () -> visit(loaded.getSnapshot().getChunks()), batch -> {
+			loaded.addAll(batches.get(batch));
+			if (batch >= RETAINED_BATCHES) {
+				loaded.removeAll(batches.get(batch - RETAINED_BATCHES));
+			}
+		});
+	}
+
+	/**
+	 * Times the same load on a synchronized list iterated under its lock.
+	 */
+	private static void timeSynchronizedList(List<List<Chunck>> batches, boolean report) throws InterruptedException {
+		List<Chunck> loaded = Collections.synchronizedList(new ArrayList<Chunck>());
+		time("synchronized list", batches, report, () -> {
+			synchronized (loaded) {
+				long sum = 0;
+				for (Chunck chunk : loaded) {
+					sum += (long) chunk.getOrigin().x;
+				}
+				Bench.consume(sum);
+				return loaded.size();
+			}
+		}, batch -> {
+			loaded.addAll(batches.get(batch));
+			if (batch >= RETAINED_BATCHES) {
+				loaded.removeAll(batches.get(batch - RETAINED_BATCHES));
+			}
+		});
+	}
+
+	/**
+	 * Runs readers repeating a pass over the chunks while the generator applies
+	 * every batch, reporting the generator's latency per batch and the readers'
+	 * throughput.
+	 */
+	private static void time(String name, List<List<Chunck>> batches, boolean report,
+			IntSupplier pass, IntConsumer generate) throws InterruptedException {
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicLong visits = new AtomicLong();
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int r = 0; r < READERS; r++) {
+			readers.add(new Thread(() -> {
+				long visited = 0;
+				while (!done.get()) {
+					visited += pass.getAsInt();
+				}
+				visits.addAndGet(visited);
+			}));
+		}
+
+		TimingStats latency = new TimingStats(name, BATCHES);
+		long start = System.nanoTime();
+		readers.forEach(Thread::start);
+		for (int batch = 0; batch < BATCHES; batch++) {
+			long batchStart = System.nanoTime();
+			generate.accept(batch);
+			latency.record(System.nanoTime() - batchStart);
+		}
+		long nanos = System.nanoTime() - start;
+		done.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		if (report) {
+			System.out.println(String.format(Locale.ROOT,
+					"%-18s generator p50 %7.3f ms  p99 %7.3f ms per batch; readers visited %6.1f M chunks/s", name,
+					latency.percentileMillis(50), latency.percentileMillis(99), visits.get() / (nanos / 1e9) / 1e6));
+		}
+	}
+
+	/**
+	 * Sums the origins of the chunks, as a reader's pass.
+	 */
+	private static int visit(Chunck[] chunks) {
+		long sum = 0;
+		for (Chunck chunk : chunks) {
+			sum += (long) chunk.getOrigin().x;
+		}
+		Bench.consume(sum);
+		return chunks.length;
+	}
+}
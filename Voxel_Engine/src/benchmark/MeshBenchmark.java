@@ -0,0 +1,99 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import world.ChunkMesher;
+import world.ChunkSection;
+import world.LightEngine;
+import world.Material;
+import world.MeshData;
+import world.World;
+
+/**
+ * Measures the ChunkMesher on every section of a lit hilly world, with and
+ * without ambient occlusion, and checks that the cost of ambient occlusion
+ * stays within its budget.
+ */
+public class MeshBenchmark {
+
+	// Size of the world in sections.
+	private static final int SECTIONS_XZ = 16, SECTIONS_Y = 4;
+
+	// Largest accepted cost of ambient occlusion, relative to meshing without it.
+	private static final double MAX_OCCLUSION_OVERHEAD = 0.40;
+
+	public static void main(String[] args) {
+		World world = TestWorlds.hills(42, SECTIONS_XZ, SECTIONS_Y);
+		LightEngine engine = new LightEngine(world);
+		List<ChunkSection> sections = new ArrayList<ChunkSection>();
+		world.getRegistry().forEach(sections::add);
+		for (ChunkSection section : sections) {
+			engine.initSection(section);
+		}
+
+		// Warm up both paths first, so neither is measured while the other compiles.
+		ChunkMesher mesher = new ChunkMesher();
+		long[] occluded = count(world, mesher, sections);
+		for (int i = 0; i < 5; i++) {
+			mesher.setAmbientOcclusion(i % 2 == 0);
+			meshAll(world, mesher, sections);
+		}
+
+		mesher.setAmbientOcclusion(false);
+		long[] flat = count(world, mesher, sections);
+		Bench.Result baseline = Bench.measure("mesh section, no occlusion", sections.size(), 3, 10,
+				() -> meshAll(world, mesher, sections));
+
+		mesher.setAmbientOcclusion(true);
+		Bench.Result withOcclusion = Bench.measure("mesh section, ambient occlusion", sections.size(), 3, 10,
+				() -> meshAll(world, mesher, sections));
+
+		if (flat[0] != occluded[0] || flat[1] != 0 || occluded[1] == 0) {
+			throw new IllegalStateException("Ambient occlusion changed the geometry or occluded nothing");
+		}
+		double overhead = withOcclusion.nanosPerOp / baseline.nanosPerOp - 1;
+		System.out.println(String.format(Locale.ROOT, "%d vertices, %.1f%% occluded; occlusion costs %.1f%% (budget %.0f%%)",
+				occluded[0], 100.0 * occluded[1] / occluded[0], overhead * 100, MAX_OCCLUSION_OVERHEAD * 100));
+		if (overhead > MAX_OCCLUSION_OVERHEAD) {
+			throw new IllegalStateException("Ambient occlusion is over its budget");
+		}
+	}
+
+	private static void meshAll(World world, ChunkMesher mesher, List<ChunkSection> sections) {
+		long vertices = 0;
+		for (ChunkSection section : sections) {
+			MeshData mesh = mesher.mesh(world, section);
+			for (int material = 0; material < Material.COUNT; material++) {
+				MeshData.Part part = mesh.getPart(material);
+				if (part != null) {
+					vertices += part.positions.length;
+				}
+			}
+		}
+		Bench.consume(vertices);
+	}
+
+	/**
+	 * Counts the vertices of every section, and those with some occlusion.
+	 */
+	private static long[] count(World world, ChunkMesher mesher, List<ChunkSection> sections) {
+		long vertices = 0, occluded = 0;
+		for (ChunkSection section : sections) {
+			MeshData mesh = mesher.mesh(world, section);
+			for (int material = 0; material < Material.COUNT; material++) {
+				MeshData.Part part = mesh.getPart(material);
+				if (part != null) {
+					for (int i = 2; i < part.light.length; i += 3) {
+						vertices++;
+						if (part.light[i] < 1f) {
+							occluded++;
+						}
+					}
+				}
+			}
+		}
+		return new long[] { vertices, occluded };
+	}
+}
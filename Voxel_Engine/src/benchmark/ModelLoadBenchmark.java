@@ -0,0 +1,84 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import models.ModelData;
+import models.OBJLoader;
+
+/**
+ * Compares cold model loading (streaming OBJ parse plus cache write) against
+ * loading from the binary cache. Covers the models shipped in resources/res and
+ * a large generated terrain grid, since the shipped models are only a few dozen
+ * lines each. Run with the resources folder on the classpath.
+ */
+public class ModelLoadBenchmark {
+
+	// Models shipped with the game.
+	private static final String[] MODELS = { "dirtgrass", "leaf", "treebark" };
+
+	// Side of the generated grid, in quads.
+	private static final int GRID = 256;
+
+	public static void main(String[] args) throws IOException {
+		for (String name : MODELS) {
+			URL source = ModelLoadBenchmark.class.getResource("/res/" + name + ".obj");
+			run(name, source, OBJLoader.getCachePath(source, name), 2000, 5000);
+		}
+
+		Path grid = Files.createTempFile("grid", ".obj");
+		writeGrid(grid);
+		Path gridCache = grid.resolveSibling(grid.getFileName() + OBJLoader.CACHE_EXTENSION);
+		run("grid " + GRID + "x" + GRID, grid.toUri().toURL(), gridCache, 10, 30);
+		Files.deleteIfExists(gridCache);
+		Files.deleteIfExists(grid);
+	}
+
+	/**
+	 * Measures cold and cached loads of one model.
+	 */
+	private static void run(String name, URL source, Path cacheFile, int warmup, int iterations) throws IOException {
+		Bench.measure(name + " cold (parse + write cache)", 1, warmup, iterations, () -> {
+			try {
+				Files.deleteIfExists(cacheFile);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			Bench.consume(OBJLoader.load(source, cacheFile).getIndices().length);
+		});
+		Bench.measure(name + " cached", 1, warmup, iterations,
+				() -> Bench.consume(OBJLoader.load(source, cacheFile).getIndices().length));
+
+		ModelData data = OBJLoader.load(source, cacheFile);
+		System.out.println(String.format(Locale.ROOT, "  %s: %d vertices, %d indices, cache %d bytes", name,
+				data.getVertexCount(), data.getIndices().length, Files.size(cacheFile)));
+	}
+
+	/**
+	 * Writes a flat grid of quads with positions, texture coordinates and normals.
+	 */
+	private static void writeGrid(Path file) throws IOException {
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+			for (int z = 0; z <= GRID; z++) {
+				for (int x = 0; x <= GRID; x++) {
+					out.printf(Locale.ROOT, "v %f %f %f%n", (float) x, (float) Math.sin(x * 0.1) * 2, (float) z);
+					out.printf(Locale.ROOT, "vt %f %f%n", x / (float) GRID, z / (float) GRID);
+				}
+			}
+			out.println("vn 0.000000 1.000000 0.000000");
+			for (int z = 0; z < GRID; z++) {
+				for (int x = 0; x < GRID; x++) {
+					int a = z * (GRID + 1) + x + 1;
+					int b = a + 1;
+					int c = a + GRID + 1;
+					int d = c + 1;
+					out.printf("f %d/%d/1 %d/%d/1 %d/%d/1 %d/%d/1%n", a, a, c, c, d, d, b, b);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package benchmark;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.LockSupport;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import entities.Camera;
+import entities.CameraPath;
+import world.ChunkSection;
+import world.TerrainGenerator;
+import world.TreeDecorator;
+import world.ViewerColumns;
+import world.World;
+import world.WorldGenerator;
+
+/**
+ * Simulates 1 to N viewers (64 by default, or the first argument) flying
+ * scripted camera paths over one shared world of hills with trees, for a few
+ * seconds of real time each (5, or the second argument), with the loaded
+ * columns shared between them through ViewerColumns. The viewers start in a
+ * grid, close enough that their views overlap, and fly zig-zags, straight
+ * lines, back and forth (unloading and generating again the same columns) or
+ * spin in place. For each viewer count, reports the generation queue latency,
+ * the generation throughput, how much the viewers share, and the heap used once
+ * the queue has drained. Checks that the loaded sections match a world
+ * generated from scratch, where the columns around them are loaded too (at the
+ * edge of the loaded area, the trees of columns not generated yet are missing).
+ */
+public class MultiViewerBenchmark {
+
+	// Section layers of a column.
+	private static final int SECTIONS_Y = 4;
+
+	// Radius of each viewer's view, in section columns.
+	private static final int VIEW_RADIUS = 6;
+
+	// Ticks per second, and flight speed in blocks per tick.
+	private static final int TICK_RATE = 20;
+	private static final float BLOCKS_PER_TICK = 0.75f;
+
+	// Distance between the starting points of the viewers, in blocks.
+	private static final int START_SPACING = 48;
+
+	// Loaded sections compared with a world generated from scratch per run.
+	private static final int CHECKED_SECTIONS = 64;
+
+	private static final long SEED = 42;
+
+	public static void main(String[] args) {
+		int maxViewers = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		for (int viewers = 1; viewers <= maxViewers; viewers *= 2) {
+			run(viewers, seconds, pool);
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Flies the viewers over a new world and reports the figures.
+	 */
+	private static void run(int viewerCount, int seconds, ForkJoinPool pool) {
+		long heapBefore = usedHeap();
+		World world = new World();
+		TerrainGenerator terrain = new TerrainGenerator(SEED, SECTIONS_Y);
+		WorldGenerator generator = new WorldGenerator(world, terrain, new TreeDecorator(SEED, terrain));
+		ViewerColumns columns = new ViewerColumns(generator, SECTIONS_Y, pool);
+
+		int ticks = seconds * TICK_RATE;
+		CameraPath[] paths = { CameraPath.zigZag(ticks, 60, BLOCKS_PER_TICK, 40),
+				CameraPath.straight(ticks, 60, BLOCKS_PER_TICK), backAndForth(ticks, 60, BLOCKS_PER_TICK, 64),
+				CameraPath.spin(ticks, 60, 3) };
+		Camera[] cameras = new Camera[viewerCount];
+		int[] ids = new int[viewerCount];
+		for (int i = 0; i < viewerCount; i++) {
+			cameras[i] = new Camera(new Vector3f(), 0, 0, 0);
+			ids[i] = columns.addViewer(VIEW_RADIUS);
+		}
+
+		// Fly the paths in real time, then let the queue drain.
+		long start = System.nanoTime();
+		long nextTick = start;
+		for (int tick = 0; tick < ticks; tick++) {
+			for (int i = 0; i < viewerCount; i++) {
+				paths[i % paths.length].applyTo(tick, cameras[i]);
+				Vector3f position = cameras[i].getPosition();
+				columns.moveViewer(ids[i], position.x + (i % 8) * START_SPACING,
+						position.z + (i / 8) * START_SPACING);
+			}
+			columns.update();
+			nextTick += 1_000_000_000L / TICK_RATE;
+			LockSupport.parkNanos(nextTick - System.nanoTime());
+		}
+		long flown = System.nanoTime();
+		while (columns.getQueued() > 0) {
+			LockSupport.parkNanos(1_000_000);
+			columns.update();
+		}
+		long drained = System.nanoTime();
+		double elapsed = (drained - start) / 1e9;
+
+		int sections = world.getRegistry().size();
+		if (sections != columns.getColumnCount() * SECTIONS_Y) {
+			throw new IllegalStateException(sections + " sections loaded for " + columns.getColumnCount() + " columns");
+		}
+		long heap = usedHeap() - heapBefore;
+		check(world, terrain);
+
+		System.out.println(String.format(Locale.ROOT,
+				"%3d viewers: %,6d columns loaded for %,6d views (%.1fx shared), %,7d generated (%,.0f sections/s), %,6d unloaded, %,5d cancelled",
+				viewerCount, columns.getColumnCount(), columns.getReferences(),
+				(double) columns.getReferences() / columns.getColumnCount(), columns.getColumnsGenerated(),
+				columns.getColumnsGenerated() * SECTIONS_Y / elapsed, columns.getColumnsUnloaded(),
+				columns.getColumnsCancelled()));
+		System.out.println(String.format(Locale.ROOT,
+				"             queue latency mean %.1f ms, p50 %.1f ms, p99 %.1f ms, most queued %,d, drained %.0f ms after the paths; heap %.1f MB (%.1f KB per section)",
+				columns.getQueueLatency().meanMillis(), columns.getQueueLatency().percentileMillis(50),
+				columns.getQueueLatency().percentileMillis(99), columns.getMaxQueued(), (drained - flown) / 1e6,
+				heap / 1e6, heap / 1024.0 / sections));
+	}
+
+	/**
+	 * Compares loaded sections picked at random, among those whose surrounding
+	 * columns are loaded, with the same sections of a world generated from
+	 * scratch around them.
+	 */
+	private static void check(World world, TerrainGenerator terrain) {
+		ChunkSection[] loaded = new ChunkSection[world.getRegistry().size()];
+		int[] count = new int[1];
+		world.getRegistry().forEach(section -> loaded[count[0]++] = section);
+		Random random = new Random(SEED);
+		short[] expected = new short[ChunkSection.VOLUME], actual = new short[ChunkSection.VOLUME];
+		for (int n = 0, tries = 0; n < CHECKED_SECTIONS && tries < count[0] * 4; tries++) {
+			ChunkSection section = loaded[random.nextInt(count[0])];
+			int sx = section.getSectionX(), sz = section.getSectionZ();
+			if (!surrounded(world, sx, sz)) {
+				continue;
+			}
+			n++;
+
+			// The trees reaching into a section grow from its column and those around it.
+			World reference = new World();
+			WorldGenerator fresh = new WorldGenerator(reference, terrain, new TreeDecorator(SEED, terrain));
+			for (int x = sx - 1; x <= sx + 1; x++) {
+				for (int z = sz - 1; z <= sz + 1; z++) {
+					for (int y = 0; y < SECTIONS_Y; y++) {
+						fresh.generate(x, y, z);
+					}
+				}
+			}
+			fresh.applyLateWrites();
+			reference.getSection(sx, section.getSectionY(), sz).copyBlocks(expected);
+			section.copyBlocks(actual);
+			for (int i = 0; i < ChunkSection.VOLUME; i++) {
+				if (expected[i] != actual[i]) {
+					throw new IllegalStateException("Section " + sx + ", " + section.getSectionY() + ", " + sz
+							+ " differs from a world generated from scratch");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the eight columns around a column are loaded.
+	 */
+	private static boolean surrounded(World world, int sx, int sz) {
+		for (int x = sx - 1; x <= sx + 1; x++) {
+			for (int z = sz - 1; z <= sz + 1; z++) {
+				if (world.getSection(x, 0, z) == null) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Builds a path flying along X and back, over and over.
+	 */
+	private static CameraPath backAndForth(int ticks, float y, float blocksPerTick, int legTicks) {
+		CameraPath path = new CameraPath();
+		float x = 0;
+		for (int tick = 0; tick < ticks; tick++) {
+			boolean out = (tick / legTicks) % 2 == 0;
+			x += out ? blocksPerTick : -blocksPerTick;
+			path.add(x, y, 0, 10, out ? 90 : -90, 0);
+		}
+		return path;
+	}
+
+	private static long usedHeap() {
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,158 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import world.ChunkSection;
+import world.PalettedBlocks;
+import world.World;
+
+/**
+ * Compares the palette-compressed block storage of sections with a flat array
+ * of shorts: memory per section on a hilly world, and the cost of random gets
+ * and sets and of decoding a whole section, for palettes of several widths. The
+ * storage is checked against a flat array through every width.
+ */
+public class PaletteBenchmark {
+
+	// Size of the world in sections.
+	private static final int SECTIONS_XZ = 16, SECTIONS_Y = 4;
+
+	// Heap size of a flat array of 4096 shorts, with its header.
+	private static final long FLAT_BYTES = 16 + 2L * ChunkSection.VOLUME;
+
+	public static void main(String[] args) {
+		checkAgainstFlatArray(new Random(1));
+
+		// Memory of a resident world.
+		World world = TestWorlds.hills(42, SECTIONS_XZ, SECTIONS_Y);
+		List<ChunkSection> sections = new ArrayList<ChunkSection>();
+		world.getRegistry().forEach(sections::add);
+		long bytes = 0;
+		int[] widths = new int[17];
+		for (ChunkSection section : sections) {
+			bytes += section.getBlocks().getMemoryBytes();
+			widths[section.getBlocks().getBitsPerBlock()]++;
+		}
+		System.out.println(String.format(Locale.ROOT, "%d sections: %.0f bytes per section, %d flat (%.1fx smaller)",
+				sections.size(), bytes / (double) sections.size(), FLAT_BYTES,
+				FLAT_BYTES * sections.size() / (double) bytes));
+		StringBuilder histogram = new StringBuilder("Sections per width:");
+		for (int bits = 0; bits < widths.length; bits++) {
+			if (widths[bits] > 0) {
+				histogram.append(' ').append(bits).append(" bits: ").append(widths[bits]);
+			}
+		}
+		System.out.println(histogram);
+
+		// Random accesses, the same indices for every layout.
+		Random random = new Random(7);
+		int[] indices = new int[ChunkSection.VOLUME];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = random.nextInt(ChunkSection.VOLUME);
+		}
+		short[] scratch = new short[ChunkSection.VOLUME];
+
+		short[] flat = new short[ChunkSection.VOLUME];
+		fill(flat, null, 16, new Random(3));
+		measure("flat", flat, null, indices, scratch);
+		for (int kinds : new int[] { 2, 16, 256, 1000 }) {
+			PalettedBlocks blocks = new PalettedBlocks();
+			short[] ids = new short[ChunkSection.VOLUME];
+			fill(ids, blocks, kinds, new Random(3));
+			measure(blocks.getBitsPerBlock() + " bits", ids, blocks, indices, scratch);
+		}
+	}
+
+	/**
+	 * Measures gets, sets and decoding on one layout: the flat array when
+	 * blocks is null, the paletted storage otherwise.
+	 */
+	private static void measure(String name, short[] ids, PalettedBlocks blocks, int[] indices, short[] scratch) {
+		if (blocks == null) {
+			Bench.measure(name + " get", indices.length, 1000, 5000, () -> {
+				long sum = 0;
+				for (int index : indices) {
+					sum += ids[index];
+				}
+				Bench.consume(sum);
+			});
+			Bench.measure(name + " set", indices.length, 1000, 5000, () -> {
+				for (int i = 0; i < indices.length; i++) {
+					ids[indices[i]] = ids[i];
+				}
+			});
+			Bench.measure(name + " decode, per block", ChunkSection.VOLUME, 1000, 5000,
+					() -> System.arraycopy(ids, 0, scratch, 0, ChunkSection.VOLUME));
+		} else {
+			Bench.measure(name + " get", indices.length, 1000, 5000, () -> {
+				long sum = 0;
+				for (int index : indices) {
+					sum += blocks.get(index);
+				}
+				Bench.consume(sum);
+			});
+			// Copies blocks around, so the palette stays the same.
+			Bench.measure(name + " set", indices.length, 1000, 5000, () -> {
+				for (int i = 0; i < indices.length; i++) {
+					blocks.set(indices[i], blocks.get(i));
+				}
+			});
+			Bench.measure(name + " decode, per block", ChunkSection.VOLUME, 1000, 5000, () -> blocks.decode(scratch));
+		}
+	}
+
+	/**
+	 * Fills a section with random ids among the given number of kinds, in the
+	 * flat array and, if present, the paletted storage.
+	 */
+	private static void fill(short[] ids, PalettedBlocks blocks, int kinds, Random random) {
+		for (int index = 0; index < ids.length; index++) {
+			// Every kind appears at least once, so the palette reaches its full width.
+			short id = (short) (index < kinds ? index : random.nextInt(kinds));
+			ids[index] = id;
+			if (blocks != null) {
+				blocks.set(index, id);
+			}
+		}
+	}
+
+	/**
+	 * Applies random writes, with more and more distinct ids, to the storage and
+	 * a flat array, checking that they always agree.
+	 */
+	private static void checkAgainstFlatArray(Random random) {
+		PalettedBlocks blocks = new PalettedBlocks();
+		short[] expected = new short[ChunkSection.VOLUME];
+		short[] decoded = new short[ChunkSection.VOLUME];
+		int lastBits = 0;
+		for (int kinds = 1; kinds <= 1024; kinds *= 2) {
+			for (int i = 0; i < 20_000; i++) {
+				int index = random.nextInt(ChunkSection.VOLUME);
+				short id = (short) random.nextInt(kinds);
+				if (blocks.set(index, id) != expected[index]) {
+					throw new IllegalStateException("Wrong previous block at " + index);
+				}
+				expected[index] = id;
+			}
+			blocks.decode(decoded);
+			for (int index = 0; index < ChunkSection.VOLUME; index++) {
+				if (blocks.get(index) != expected[index] || decoded[index] != expected[index]) {
+					throw new IllegalStateException("Wrong block at " + index + " with " + kinds + " kinds");
+				}
+			}
+			lastBits = blocks.getBitsPerBlock();
+		}
+		if (lastBits != 16) {
+			throw new IllegalStateException("The storage never switched to direct ids");
+		}
+		blocks.fill((short) 5);
+		blocks.decode(decoded);
+		if (blocks.getBitsPerBlock() != 0 || decoded[4095] != 5 || blocks.get(0) != 5) {
+			throw new IllegalStateException("Filling did not reset the storage");
+		}
+		System.out.println("Paletted storage matches a flat array at every width");
+	}
+}
@@ -0,0 +1,355 @@
+package benchmark;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import world.Block;
+import world.ChunkSection;
+import world.NavPath;
+import world.PathBatch;
+import world.PathFinder;
+import world.TerrainGenerator;
+import world.TreeDecorator;
+import world.World;
+import world.WorldGenerator;
+
+/**
+ * Finds paths over a hilly world of 4096 sections with trees and stone walls
+ * with the hierarchical PathFinder, in batches on fork-join pools of 1 and N
+ * threads (N being the number of cores, or the first argument), and reports:
+ *
+ * - the paths found per second, with the section graphs cold and cached, for
+ * short, medium and long paths;
+ *
+ * - the memory of the cached graphs, estimated and measured on the heap;
+ *
+ * - against plain A* over blocks, for medium and long paths: the time and
+ * nodes expanded per path, and how much longer the hierarchical paths are;
+ *
+ * - the cost of dropping the graphs around random edits, and of finding paths
+ * while they are built again.
+ *
+ * Every path compared is refined leg by leg and checked move by move against
+ * the live world and its cost.
+ */
+public class PathfindingBenchmark {
+
+	// Size of the world in sections.
+	private static final int SECTIONS_XZ = 32, SECTIONS_Y = 4;
+
+	// Stone walls three blocks high laid across the hills, and their length.
+	private static final int WALLS = 48, WALL_LENGTH = 40;
+
+	// Requests per batch.
+	private static final int BATCH = 2048;
+
+	// Distance classes: name, and shortest and longest distance between start and goal in blocks.
+	private static final String[] CLASS_NAMES = { "short", "medium", "long" };
+	private static final int[][] CLASS_DISTANCES = { { 8, 24 }, { 48, 96 }, { 192, 320 } };
+
+	// Paths compared with plain A* per class, from medium on, and its budget of expanded blocks.
+	private static final int[] COMPARED = { 0, 128, 24 };
+	private static final int DIRECT_BUDGET = 1 << 21;
+
+	// Edits made to the world, each a block placed or removed near the surface.
+	private static final int EDITS = 2000;
+
+	private static final long SEED = 42;
+
+	private static final TerrainGenerator TERRAIN = new TerrainGenerator(SEED, SECTIONS_Y);
+
+	public static void main(String[] args) {
+		int cores = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		World world = generate();
+		PathFinder finder = new PathFinder(world);
+		Random random = new Random(SEED);
+		System.out.println(String.format(Locale.ROOT, "%d sections, %d walls, %d requests per batch",
+				world.getRegistry().size(), WALLS, BATCH));
+
+		int[] threadCounts = cores > 1 ? new int[] { 1, cores } : new int[] { 1 };
+		for (int threads : threadCounts) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			finder.clear();
+
+			// Cold: the graphs are built by the searches reaching them.
+			PathBatch mixed = new PathBatch(BATCH);
+			for (int i = 0; i < BATCH; i++) {
+				addRequest(mixed, finder, random, i % CLASS_NAMES.length);
+			}
+			long built = finder.getGraphsBuilt();
+			report(threads + " threads, all, cold", mixed, run(mixed, finder, pool));
+			System.out.println(String.format(Locale.ROOT, "    %,d graphs built", finder.getGraphsBuilt() - built));
+
+			for (int c = 0; c < CLASS_NAMES.length; c++) {
+				PathBatch batch = new PathBatch(BATCH);
+				for (int i = 0; i < BATCH; i++) {
+					addRequest(batch, finder, random, c);
+				}
+				run(batch, finder, pool); // Builds the graphs the batch needs
+				report(threads + " threads, " + CLASS_NAMES[c] + ", cached", batch, run(batch, finder, pool));
+			}
+			pool.shutdown();
+		}
+
+		// Memory of the graphs, once long paths have reached most sections.
+		ForkJoinPool pool = new ForkJoinPool(cores);
+		PathBatch all = new PathBatch(BATCH);
+		for (int i = 0; i < BATCH * 2; i++) {
+			addRequest(all, finder, random, 2);
+		}
+		run(all, finder, pool);
+		int graphs = finder.getCachedGraphs();
+		long heapWith = usedHeap();
+		long estimated = finder.getCachedBytes(), nodes = finder.getCachedNodes();
+		finder.clear();
+		long heapWithout = usedHeap();
+		System.out.println(String.format(Locale.ROOT,
+				"cached graphs: %,d of %,d sections, %.1f portal nodes each; %.0f bytes each estimated, %.0f measured (%.2f MB in all)",
+				graphs, world.getRegistry().size(), (double) nodes / graphs, (double) estimated / graphs,
+				(double) (heapWith - heapWithout) / graphs, (heapWith - heapWithout) / 1e6));
+
+		// Against plain A* over blocks.
+		run(all, finder, pool);
+		for (int c = 0; c < CLASS_NAMES.length; c++) {
+			if (COMPARED[c] > 0) {
+				compare(finder, random, c);
+			}
+		}
+
+		// Edits drop the graphs around them; the next batch builds them again.
+		long dropped = finder.getGraphsDropped(), built = finder.getGraphsBuilt();
+		int size = SECTIONS_XZ * ChunkSection.SIZE;
+		long editTime = 0;
+		for (int i = 0; i < EDITS; i++) {
+			int x = 8 + random.nextInt(size - 16), z = 8 + random.nextInt(size - 16);
+			int y = ground(finder, x, z);
+			if (y < 0) {
+				continue;
+			}
+			boolean place = random.nextBoolean();
+			int editY = place ? y : y - 1;
+			short id = place ? Block.STONE : Block.AIR;
+			short old = world.setBlock(x, editY, z, id);
+			long start = System.nanoTime();
+			finder.blockChanged(x, editY, z, old, id);
+			editTime += System.nanoTime() - start;
+		}
+		System.out.println(String.format(Locale.ROOT,
+				"%,d edits: %.2f us each to drop the graphs around them, %,d graphs dropped", EDITS,
+				editTime / 1e3 / EDITS, finder.getGraphsDropped() - dropped));
+		PathBatch after = new PathBatch(BATCH);
+		for (int i = 0; i < BATCH; i++) {
+			addRequest(after, finder, random, i % CLASS_NAMES.length);
+		}
+		report("after the edits", after, run(after, finder, pool));
+		System.out.println(String.format(Locale.ROOT, "    %,d graphs built again", finder.getGraphsBuilt() - built));
+		for (int i = 0; i < after.size(); i += 16) {
+			if (after.getPath(i) != null) {
+				check(finder, after.getPath(i));
+			}
+		}
+		compare(finder, random, 1);
+		pool.shutdown();
+	}
+
+	/**
+	 * Generates the world in parallel and lays the walls.
+	 */
+	private static World generate() {
+		World world = new World();
+		WorldGenerator generator = new WorldGenerator(world, TERRAIN, new TreeDecorator(SEED, TERRAIN));
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		pool.submit(() -> IntStream.range(0, SECTIONS_XZ * SECTIONS_XZ * SECTIONS_Y).parallel()
+				.forEach(i -> generator.generate(i % SECTIONS_XZ, i / (SECTIONS_XZ * SECTIONS_XZ),
+						i / SECTIONS_XZ % SECTIONS_XZ)))
+				.join();
+		pool.shutdown();
+		generator.applyLateWrites();
+
+		Random random = new Random(SEED + 1);
+		int size = SECTIONS_XZ * ChunkSection.SIZE;
+		for (int w = 0; w < WALLS; w++) {
+			int x = random.nextInt(size - WALL_LENGTH), z = random.nextInt(size - WALL_LENGTH);
+			boolean alongX = random.nextBoolean();
+			for (int i = 0; i < WALL_LENGTH; i++) {
+				int wx = alongX ? x + i : x, wz = alongX ? z : z + i;
+				int height = TERRAIN.getHeight(wx, wz);
+				for (int y = height + 1; y <= height + 3; y++) {
+					world.setBlock(wx, y, wz, Block.STONE);
+				}
+			}
+		}
+		return world;
+	}
+
+	/**
+	 * Adds a request to a batch (see request).
+	 */
+	private static void addRequest(PathBatch batch, PathFinder finder, Random random, int distanceClass) {
+		int[] r = new int[6];
+		request(finder, random, distanceClass, r);
+		batch.add(r[0], r[1], r[2], r[3], r[4], r[5]);
+	}
+
+	/**
+	 * Picks a request between two blocks a walker can stand in, at a distance
+	 * of the given class.
+	 *
+	 * @param r Receives the start's and goal's coordinates.
+	 */
+	private static void request(PathFinder finder, Random random, int distanceClass, int[] r) {
+		int size = SECTIONS_XZ * ChunkSection.SIZE;
+		int[] distances = CLASS_DISTANCES[distanceClass];
+		while (true) {
+			int x = 8 + random.nextInt(size - 16), z = 8 + random.nextInt(size - 16);
+			double angle = random.nextDouble() * 2 * Math.PI;
+			double distance = distances[0] + random.nextDouble() * (distances[1] - distances[0]);
+			int goalX = x + (int) (Math.cos(angle) * distance), goalZ = z + (int) (Math.sin(angle) * distance);
+			if (goalX < 8 || goalZ < 8 || goalX >= size - 8 || goalZ >= size - 8) {
+				continue;
+			}
+			int y = ground(finder, x, z), goalY = ground(finder, goalX, goalZ);
+			if (y >= 0 && goalY >= 0) {
+				r[0] = x;
+				r[1] = y;
+				r[2] = z;
+				r[3] = goalX;
+				r[4] = goalY;
+				r[5] = goalZ;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Gets the block over the ground of a column, if a walker can stand in it:
+	 * not under a wall or a tree trunk, nor on a tree top.
+	 *
+	 * @return The Y coordinate, or -1 if a walker cannot stand there.
+	 */
+	private static int ground(PathFinder finder, int x, int z) {
+		int y = TERRAIN.getHeight(x, z) + 1;
+		return finder.isStandable(x, y, z) ? y : -1;
+	}
+
+	/**
+	 * Runs a batch and waits for it.
+	 *
+	 * @return The time taken in nanoseconds.
+	 */
+	private static long run(PathBatch batch, PathFinder finder, ForkJoinPool pool) {
+		long start = System.nanoTime();
+		batch.find(finder, pool).join();
+		return System.nanoTime() - start;
+	}
+
+	private static void report(String name, PathBatch batch, long nanos) {
+		int found = 0;
+		long expanded = 0, waypoints = 0;
+		for (int i = 0; i < batch.size(); i++) {
+			NavPath path = batch.getPath(i);
+			if (path != null) {
+				found++;
+				expanded += path.getExpanded();
+				waypoints += path.getWaypointCount();
+			}
+		}
+		System.out.println(String.format(Locale.ROOT,
+				"%-28s %,9.0f paths/s (%.3f ms each), %5.1f%% found, %,7.0f nodes expanded, %5.1f waypoints", name,
+				batch.size() / (nanos / 1e9), nanos / 1e6 / batch.size(), 100.0 * found / batch.size(),
+				(double) expanded / Math.max(1, found), (double) waypoints / Math.max(1, found)));
+	}
+
+	/**
+	 * Finds paths of a class with both searches on the current thread, checks
+	 * them, and reports the time, nodes expanded and extra length of the
+	 * hierarchical paths.
+	 */
+	private static void compare(PathFinder finder, Random random, int distanceClass) {
+		int count = COMPARED[distanceClass];
+		long hierarchicalTime = 0, directTime = 0, hierarchicalExpanded = 0, directExpanded = 0;
+		double extra = 0, worst = 0;
+		int both = 0, missed = 0;
+		int[] r = new int[6];
+		for (int i = 0; i < count; i++) {
+			request(finder, random, distanceClass, r);
+			NavPath path = null, direct = null;
+			for (int pass = 0; pass < 2; pass++) { // The first pass warms up
+				long start = System.nanoTime();
+				path = finder.find(r[0], r[1], r[2], r[3], r[4], r[5]);
+				long middle = System.nanoTime();
+				direct = finder.findDirect(r[0], r[1], r[2], r[3], r[4], r[5], DIRECT_BUDGET);
+				long end = System.nanoTime();
+				if (pass == 1) {
+					hierarchicalTime += middle - start;
+					directTime += end - middle;
+				}
+			}
+			if (path != null) {
+				check(finder, path);
+			}
+			if (direct == null) {
+				continue;
+			}
+			check(finder, direct);
+			if (path == null) {
+				missed++;
+				continue;
+			}
+			if (path.getCost() < direct.getCost()) {
+				throw new IllegalStateException("A hierarchical path is shorter than the shortest path");
+			}
+			both++;
+			hierarchicalExpanded += path.getExpanded();
+			directExpanded += direct.getExpanded();
+			double ratio = (double) path.getCost() / direct.getCost() - 1;
+			extra += ratio;
+			worst = Math.max(worst, ratio);
+		}
+		System.out.println(String.format(Locale.ROOT,
+				"%-6s vs plain A*: %.3f ms vs %.3f ms per path (%.0fx), %,.0f vs %,.0f nodes expanded; paths %.1f%% longer on average, %.1f%% at worst; %d of %d missed",
+				CLASS_NAMES[distanceClass], hierarchicalTime / 1e6 / count, directTime / 1e6 / count,
+				(double) directTime / hierarchicalTime, (double) hierarchicalExpanded / Math.max(1, both),
+				(double) directExpanded / Math.max(1, both), 100 * extra / Math.max(1, both), 100 * worst, missed,
+				both + missed));
+	}
+
+	/**
+	 * Refines every leg of a path and checks that its blocks follow each
+	 * other in valid moves whose costs add up to the path's cost.
+	 */
+	private static void check(PathFinder finder, NavPath path) {
+		int cost = 0;
+		for (int leg = 0; leg < path.getLegCount(); leg++) {
+			int[] blocks = finder.refine(path, leg);
+			if (blocks == null) {
+				throw new IllegalStateException("A leg of a path is blocked");
+			}
+			int last = blocks.length - 3;
+			if (blocks[0] != path.getWaypointX(leg) || blocks[1] != path.getWaypointY(leg)
+					|| blocks[2] != path.getWaypointZ(leg) || blocks[last] != path.getWaypointX(leg + 1)
+					|| blocks[last + 1] != path.getWaypointY(leg + 1) || blocks[last + 2] != path.getWaypointZ(leg + 1)) {
+				throw new IllegalStateException("A leg does not join its waypoints");
+			}
+			for (int b = 0; b < last; b += 3) {
+				int move = finder.getMoveCost(blocks[b], blocks[b + 1], blocks[b + 2], blocks[b + 3], blocks[b + 4],
+						blocks[b + 5]);
+				if (move < 0) {
+					throw new IllegalStateException("A path makes an impossible move");
+				}
+				cost += move;
+			}
+		}
+		if (cost != path.getCost()) {
+			throw new IllegalStateException("A path costs " + cost + ", not " + path.getCost());
+		}
+	}
+
+	private static long usedHeap() {
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,176 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import juancraft.ChunkScheduler;
+import juancraft.Simulation;
+import toolbox.LongIntHashMap;
+import world.ChunkRegistry;
+import world.ChunkSection;
+
+/**
+ * Compares the order in which chunks are generated along a scripted fast
+ * flight: the former fixed scan of the square around the camera against the
+ * ChunkScheduler's ranking by predicted path and view direction. The
+ * generator's throughput is modelled as a fixed number of columns per tick; for
+ * every column that comes into view, the time from its first visible tick to
+ * its generation is recorded.
+ */
+public class PrefetchBenchmark {
+
+	// Length of the flight in ticks.
+	private static final int TICKS = 30 * Simulation.TICK_RATE;
+
+	// Flight speed, the camera's top speed, in blocks per second.
+	private static final float SPEED = 36f;
+
+	// Columns the generator builds per tick.
+	private static final int COLUMNS_PER_TICK = 2;
+
+	// Distance around the camera within which chunks are generated and drawn.
+	private static final int RANGE = 9 * 16;
+
+	// Half of the horizontal field of view of a 16:9 display with the renderer's
+	// 70 degree vertical field of view.
+	private static final double VIEW_HALF_ANGLE = Math.atan(Math.tan(Math.toRadians(35)) * 16 / 9);
+
+	public static void main(String[] args) {
+		float[] path = recordPath();
+		run("fixed scan", path, false);
+		run("predictive", path, true);
+
+		ChunkScheduler scheduler = new ChunkScheduler(RANGE);
+		int[] tick = new int[1];
+		Bench.measure("scheduler update", 1, 2_000, 20_000, () -> {
+			int offset = (tick[0]++ % TICKS) * 6;
+			scheduler.update(path[offset], path[offset + 1], path[offset + 2], path[offset + 3], path[offset + 4],
+					path[offset + 5]);
+		});
+	}
+
+	/**
+	 * Scripts the flight: the camera flies at top speed along a weaving course
+	 * while looking around it. Each tick stores x, z, velocity x, velocity z and
+	 * the horizontal view direction.
+	 */
+	private static float[] recordPath() {
+		float[] path = new float[TICKS * 6];
+		float x = 0, z = 0;
+		for (int tick = 0; tick < TICKS; tick++) {
+			double time = tick / (double) Simulation.TICK_RATE;
+			double heading = Math.toRadians(60 * Math.sin(time * 0.2) + 25 * time % 360);
+			double look = heading + Math.toRadians(35 * Math.sin(time * 0.9));
+			float velocityX = (float) (Math.sin(heading) * SPEED), velocityZ = (float) (-Math.cos(heading) * SPEED);
+			x += velocityX / Simulation.TICK_RATE;
+			z += velocityZ / Simulation.TICK_RATE;
+			int offset = tick * 6;
+			path[offset] = x;
+			path[offset + 1] = z;
+			path[offset + 2] = velocityX;
+			path[offset + 3] = velocityZ;
+			path[offset + 4] = (float) Math.sin(look);
+			path[offset + 5] = (float) -Math.cos(look);
+		}
+		return path;
+	}
+
+	/**
+	 * Flies the path with one of the generation orders, reporting the time to
+	 * visible of the columns that came into view.
+	 */
+	private static void run(String name, float[] path, boolean predictive) {
+		LongIntHashMap generatedTick = new LongIntHashMap(4096, -1);
+		LongIntHashMap firstVisibleTick = new LongIntHashMap(4096, -1);
+		ChunkScheduler scheduler = new ChunkScheduler(RANGE);
+		int[] column = new int[2];
+		long holes = 0;
+
+		for (int tick = 0; tick < TICKS; tick++) {
+			int offset = tick * 6;
+			float x = path[offset], z = path[offset + 1];
+
+			// Generate this tick's columns.
+			if (predictive) {
+				scheduler.update(x, z, path[offset + 2], path[offset + 3], path[offset + 4], path[offset + 5]);
+				for (int i = 0; i < COLUMNS_PER_TICK && scheduler.next(column); i++) {
+					generatedTick.put(ChunkRegistry.key(column[0], 0, column[1]), tick);
+				}
+			} else {
+				// The former generator loop, restarted every tick.
+				int count = 0;
+				scan: for (int cx = (int) (x - RANGE) / 16; cx < (x + RANGE) / 16; cx++) {
+					for (int cz = (int) (z - RANGE) / 16; cz < (z + RANGE) / 16; cz++) {
+						long key = ChunkRegistry.key(cx, 0, cz);
+						if (!generatedTick.containsKey(key)) {
+							generatedTick.put(key, tick);
+							if (++count == COLUMNS_PER_TICK) {
+								break scan;
+							}
+						}
+					}
+				}
+			}
+
+			// Record the columns in view, and those in view but missing.
+			for (int cx = Math.floorDiv((int) x - RANGE, 16) - 1; cx <= Math.floorDiv((int) x + RANGE, 16) + 1; cx++) {
+				for (int cz = Math.floorDiv((int) z - RANGE, 16) - 1; cz <= Math.floorDiv((int) z + RANGE, 16) + 1; cz++) {
+					if (isVisible(cx, cz, x, z, path[offset + 4], path[offset + 5])) {
+						long key = ChunkRegistry.key(cx, 0, cz);
+						if (!firstVisibleTick.containsKey(key)) {
+							firstVisibleTick.put(key, tick);
+						}
+						if (!generatedTick.containsKey(key)) {
+							holes++;
+						}
+					}
+				}
+			}
+		}
+
+		// Time to visible of every column that came into view; columns never
+		// generated count until the end of the flight.
+		int[] delays = new int[firstVisibleTick.size()];
+		int count = 0;
+		for (int cx = -1024; cx <= 1024 && count < delays.length; cx++) {
+			for (int cz = -1024; cz <= 1024; cz++) {
+				long key = ChunkRegistry.key(cx, 0, cz);
+				int visible = firstVisibleTick.get(key);
+				if (visible >= 0) {
+					int generated = generatedTick.get(key);
+					delays[count++] = Math.max(0, (generated < 0 ? TICKS : generated) - visible);
+				}
+			}
+		}
+		if (count != delays.length) {
+			throw new IllegalStateException("Columns outside the scanned area came into view");
+		}
+		Arrays.sort(delays);
+		double tickMillis = 1000.0 / Simulation.TICK_RATE;
+		double mean = Arrays.stream(delays).average().orElse(0) * tickMillis;
+		System.out.println(String.format(Locale.ROOT,
+				"%-10s %d columns seen: time to visible mean %6.1f ms, p95 %6.1f ms, max %6.1f ms; %5.1f holes per frame%s",
+				name, count, mean, delays[(int) (count * 0.95)] * tickMillis, delays[count - 1] * tickMillis,
+				holes / (double) TICKS,
+				predictive ? String.format(Locale.ROOT, "; %d queued columns cancelled", scheduler.getCancelled())
+						: ""));
+	}
+
+	/**
+	 * Checks whether a column is drawn and inside the horizontal field of view.
+	 */
+	private static boolean isVisible(int cx, int cz, float x, float z, float viewX, float viewZ) {
+		float originX = cx * ChunkSection.SIZE, originZ = cz * ChunkSection.SIZE;
+		if (Math.abs(x - originX) > RANGE || Math.abs(z - originZ) > RANGE) {
+			return false; // Not drawn by the simulation
+		}
+		float toX = originX + 8 - x, toZ = originZ + 8 - z;
+		double distance = Math.sqrt(toX * toX + toZ * toZ);
+		if (distance < ChunkSection.SIZE) {
+			return true;
+		}
+		// The column's half-diagonal widens the cone it can be seen in.
+		double angle = Math.acos(Math.max(-1, Math.min(1, (toX * viewX + toZ * viewZ) / distance)));
+		return angle <= VIEW_HALF_ANGLE + Math.asin(Math.min(1, 11.32 / distance));
+	}
+}
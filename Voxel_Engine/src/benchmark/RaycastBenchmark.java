@@ -0,0 +1,116 @@
+package benchmark;
+
+import java.util.Locale;
+import java.util.Random;
+
+import toolbox.Workers;
+import world.Block;
+import world.ChunkSection;
+import world.RaycastBatch;
+import world.RaycastHit;
+import world.VoxelRaycast;
+import world.World;
+
+/**
+ * Measures voxel raycast throughput in rays per second over a hilly test world,
+ * on one thread and batched across the worker pool. Hits are checked against a
+ * ray-box intersection and a fine-grained march.
+ */
+public class RaycastBenchmark {
+
+	// Number of rays per measured invocation.
+	private static final int RAYS = 100_000;
+
+	// Size of the test world in sections.
+	private static final int SECTIONS_XZ = 32, SECTIONS_Y = 4;
+
+	// Length of the rays.
+	private static final float RAY_LENGTH = 64f;
+
+	public static void main(String[] args) {
+		World world = TestWorlds.hills(42, SECTIONS_XZ, SECTIONS_Y);
+		int size = SECTIONS_XZ * ChunkSection.SIZE;
+
+		Random random = new Random(7);
+		float[] rays = new float[RAYS * 6];
+		RaycastBatch batch = new RaycastBatch(RAYS);
+		for (int i = 0; i < RAYS; i++) {
+			float ox = random.nextFloat() * size, oy = 40 + random.nextFloat() * 20, oz = random.nextFloat() * size;
+			float dx = random.nextFloat() * 2 - 1, dy = random.nextFloat() * 2 - 1, dz = random.nextFloat() * 2 - 1;
+			rays[i * 6] = ox;
+			rays[i * 6 + 1] = oy;
+			rays[i * 6 + 2] = oz;
+			rays[i * 6 + 3] = dx;
+			rays[i * 6 + 4] = dy;
+			rays[i * 6 + 5] = dz;
+			batch.add(ox, oy, oz, dx, dy, dz, RAY_LENGTH);
+		}
+
+		VoxelRaycast raycast = new VoxelRaycast(world);
+		RaycastHit hit = new RaycastHit();
+		Bench.Result single = Bench.measure("raycast, 1 thread", RAYS, 20, 100, () -> {
+			int hits = 0;
+			for (int i = 0; i < rays.length; i += 6) {
+				if (raycast.cast(rays[i], rays[i + 1], rays[i + 2], rays[i + 3], rays[i + 4], rays[i + 5], RAY_LENGTH,
+						hit)) {
+					hits++;
+				}
+			}
+			Bench.consume(hits);
+		});
+		Bench.Result parallel = Bench.measure("raycast batch, " + Workers.POOL.getParallelism() + " workers", RAYS, 20,
+				100, () -> batch.cast(world, Workers.POOL));
+		System.out.printf(Locale.ROOT, "%.1f M rays/s on 1 thread, %.1f M rays/s batched%n", 1e3 / single.nanosPerOp,
+				1e3 / parallel.nanosPerOp);
+
+		// Sanity check: each hit is the first solid block along the ray.
+		int hits = 0;
+		for (int i = 0; i < RAYS; i++) {
+			if (!batch.isHit(i)) {
+				continue;
+			}
+			hits++;
+			float ox = rays[i * 6], oy = rays[i * 6 + 1], oz = rays[i * 6 + 2];
+			float dx = rays[i * 6 + 3], dy = rays[i * 6 + 4], dz = rays[i * 6 + 5];
+			float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+			dx /= length;
+			dy /= length;
+			dz /= length;
+			int bx = batch.getHitX(i), by = batch.getHitY(i), bz = batch.getHitZ(i);
+			if (!Block.isSolid(world.getBlock(bx, by, bz))) {
+				throw new IllegalStateException("Ray " + i + " hit a block that is not solid");
+			}
+			float entry = entryDistance(ox, oy, oz, dx, dy, dz, bx, by, bz);
+			if (Math.abs(entry - batch.getHitDistance(i)) > 1e-3f) {
+				throw new IllegalStateException("Ray " + i + " hit at " + batch.getHitDistance(i) + ", expected " + entry);
+			}
+			for (float t = 0; t < entry - 0.01f; t += 0.005f) {
+				int x = Math.round(ox + dx * t), y = Math.round(oy + dy * t), z = Math.round(oz + dz * t);
+				if (Block.isSolid(world.getBlock(x, y, z))) {
+					throw new IllegalStateException("Ray " + i + " passed through a solid block");
+				}
+			}
+		}
+		System.out.println(hits + " of " + RAYS + " rays hit a block");
+	}
+
+	/**
+	 * Gets the distance at which a ray enters the unit cube centred on a block,
+	 * with the slab method.
+	 */
+	private static float entryDistance(float ox, float oy, float oz, float dx, float dy, float dz, int bx, int by,
+			int bz) {
+		float near = 0;
+		float[] origin = { ox, oy, oz }, direction = { dx, dy, dz };
+		int[] block = { bx, by, bz };
+		for (int axis = 0; axis < 3; axis++) {
+			if (direction[axis] == 0) {
+				continue;
+			}
+			float t1 = (block[axis] - 0.5f - origin[axis]) / direction[axis];
+			float t2 = (block[axis] + 0.5f - origin[axis]) / direction[axis];
+			near = Math.max(near, Math.min(t1, t2));
+		}
+		return near;
+	}
+}
@@ -0,0 +1,53 @@
+package benchmark;
+
+import java.util.Random;
+
+import render_engine.RenderQueue;
+
+/**
+ * Measures the cost of submitting and sorting a frame's worth of draws in the
+ * RenderQueue.
+ */
+public class RenderQueueBenchmark {
+
+	// Number of draws submitted per frame.
+	private static final int ITEMS = 100_000;
+
+	public static void main(String[] args) {
+		RenderQueue queue = new RenderQueue(ITEMS);
+		Random random = new Random(42);
+
+		// Pre-compute the draw state so the benchmark only measures the queue.
+		long[] keys = new long[ITEMS];
+		int[] depths = new int[ITEMS];
+		for (int i = 0; i < ITEMS; i++) {
+			int texture = 1 + random.nextInt(8);
+			int vao = 1 + random.nextInt(64);
+			keys[i] = RenderQueue.createKey(RenderQueue.PASS_OPAQUE, 3, texture, vao, 0);
+			depths[i] = RenderQueue.quantizeDepth(random.nextFloat() * 200f * 200f);
+		}
+
+		Bench.measure("submit 100k", ITEMS, 200, 500, () -> {
+			queue.clear();
+			for (int i = 0; i < ITEMS; i++) {
+				queue.submit(keys[i], i);
+			}
+		});
+
+		Bench.measure("submit + depth + sort 100k", ITEMS, 50, 200, () -> {
+			queue.clear();
+			for (int i = 0; i < ITEMS; i++) {
+				queue.setDepth(queue.submit(keys[i], i), depths[i]);
+			}
+			queue.sort();
+			Bench.consume(queue.getKey(ITEMS - 1));
+		});
+
+		// Sanity check: keys must come out in ascending order.
+		for (int i = 1; i < queue.size(); i++) {
+			if (Long.compareUnsigned(queue.getKey(i - 1), queue.getKey(i)) > 0) {
+				throw new IllegalStateException("Render queue is not sorted at " + i);
+			}
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import entities.Camera;
+import entities.CameraPath;
+import entities.CameraState;
+import juancraft.ChunkScheduler;
+import juancraft.Simulation;
+import toolbox.IntList;
+import toolbox.LongIntHashMap;
+import toolbox.TimingStats;
+import world.ChunkMesher;
+import world.ChunkRegistry;
+import world.ChunkSection;
+import world.LightEngine;
+import world.MeshCache;
+import world.TerrainGenerator;
+import world.World;
+
+/**
+ * Replays the standard camera paths (spinning in place, a long straight flight
+ * and a zig-zag) over a world generated from a fixed seed, and reports the
+ * frame times, the chunk streaming latency and the allocations of each as JSON.
+ * Every replay starts from an empty world and runs the game's streaming
+ * pipeline on one thread: the ChunkScheduler picks the columns, which are
+ * generated, lit and meshed within the tick that picked them, so two runs
+ * stream the same columns on the same ticks and only the timings differ.
+ *
+ * Usage: ReplayBenchmark [report file], writing replay-report.json by default.
+ */
+public class ReplayBenchmark {
+
+	// Seed of the replayed world.
+	private static final long SEED = 42;
+
+	// Sections per column of the world.
+	private static final int SECTIONS_Y = 4;
+
+	// Height the paths fly at, above the highest hills.
+	private static final float HEIGHT = 48;
+
+	// Length of each path: 20 seconds of ticks.
+	private static final int TICKS = 20 * Simulation.TICK_RATE;
+
+	// Columns streamed per tick.
+	private static final int COLUMNS_PER_TICK = 2;
+
+	// Distance around the camera within which chunks are streamed and drawn, as in the game.
+	private static final int RANGE = 9 * 16;
+
+	public static void main(String[] args) throws IOException {
+		Path reportFile = Paths.get(args.length > 0 ? args[0] : "replay-report.json");
+
+		// A short replay warms the code up; its figures are not reported.
+		replay("warm-up", CameraPath.spin(TICKS / 4, HEIGHT, 1.5f));
+
+		List<String> reports = new ArrayList<String>();
+		reports.add(replay("spin", CameraPath.spin(TICKS, HEIGHT, 1.5f)));
+		reports.add(replay("straight", CameraPath.straight(TICKS, HEIGHT, 36f / Simulation.TICK_RATE)));
+		reports.add(replay("zigzag", CameraPath.zigZag(TICKS, HEIGHT, 36f / Simulation.TICK_RATE, 2 * Simulation.TICK_RATE)));
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"seed\": ").append(SEED).append(",\n  \"tickRate\": ").append(Simulation.TICK_RATE)
+				.append(",\n  \"range\": ").append(RANGE).append(",\n  \"columnsPerTick\": ").append(COLUMNS_PER_TICK)
+				.append(",\n  \"paths\": [\n");
+		for (int i = 0; i < reports.size(); i++) {
+			json.append(reports.get(i)).append(i + 1 < reports.size() ? ",\n" : "\n");
+		}
+		json.append("  ]\n}\n");
+		Files.write(reportFile, json.toString().getBytes(StandardCharsets.UTF_8));
+		System.out.print(json);
+		System.out.println("Report written to " + reportFile.toAbsolutePath());
+	}
+
+	/**
+	 * Replays a path from an empty world.
+	 *
+	 * @return The path's report, as a JSON object.
+	 */
+	private static String replay(String name, CameraPath path) {
+		World world = new World();
+		TerrainGenerator generator = new TerrainGenerator(SEED, SECTIONS_Y);
+		LightEngine lightEngine = new LightEngine(world);
+		Set<ChunkSection> changed = new LinkedHashSet<ChunkSection>();
+		lightEngine.setListener(changed::add);
+		ChunkMesher mesher = new ChunkMesher(new MeshCache(1024));
+		ChunkScheduler scheduler = new ChunkScheduler(RANGE);
+		Camera camera = new Camera(new Vector3f(0, 0, 0), 0, 0, 0);
+
+		// Tick each column came into range and was meshed.
+		LongIntHashMap inRangeTick = new LongIntHashMap(4096, -1);
+		LongIntHashMap meshedTick = new LongIntHashMap(4096, -1);
+		IntList latencies = new IntList(4096);
+
+		TimingStats frameTime = new TimingStats(name + ".frame", TICKS);
+		int[] column = new int[2];
+		int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, minZ = Integer.MAX_VALUE, maxZ = Integer.MIN_VALUE;
+		long sectionsMeshed = 0, visible = 0, holes = 0;
+		CameraState previous = null;
+		long allocatedBefore = Bench.allocatedBytes();
+		long start = System.nanoTime();
+
+		for (int tick = 0; tick < path.length(); tick++) {
+			long tickStart = System.nanoTime();
+			path.applyTo(tick, camera);
+			CameraState current = new CameraState(camera);
+			scheduler.update(previous != null ? previous : current, current);
+			previous = current;
+
+			// Note the columns coming into range, and count those drawn and missing.
+			float x = current.x, z = current.z;
+			for (int cx = Math.floorDiv((int) x - RANGE, 16); cx <= Math.floorDiv((int) x + RANGE, 16); cx++) {
+				for (int cz = Math.floorDiv((int) z - RANGE, 16); cz <= Math.floorDiv((int) z + RANGE, 16); cz++) {
+					if (Math.abs(x - cx * ChunkSection.SIZE) > RANGE || Math.abs(z - cz * ChunkSection.SIZE) > RANGE) {
+						continue; // Not drawn by the simulation
+					}
+					long key = ChunkRegistry.key(cx, 0, cz);
+					if (!inRangeTick.containsKey(key)) {
+						inRangeTick.put(key, tick);
+						minX = Math.min(minX, cx);
+						maxX = Math.max(maxX, cx);
+						minZ = Math.min(minZ, cz);
+						maxZ = Math.max(maxZ, cz);
+					}
+					if (meshedTick.containsKey(key)) {
+						visible++;
+					} else {
+						holes++;
+					}
+				}
+			}
+
+			// Stream this tick's columns: generate, light and mesh every section they change.
+			for (int i = 0; i < COLUMNS_PER_TICK && scheduler.next(column); i++) {
+				for (int sy = 0; sy < SECTIONS_Y; sy++) {
+					ChunkSection section = generator.generateSection(column[0], sy, column[1]);
+					world.addSection(section);
+					lightEngine.initSection(section);
+				}
+				lightEngine.flushChanges();
+				for (ChunkSection section : changed) {
+					Bench.consume(mesher.mesh(world, section).getSectionX());
+					sectionsMeshed++;
+				}
+				changed.clear();
+
+				long key = ChunkRegistry.key(column[0], 0, column[1]);
+				meshedTick.put(key, tick);
+				int entered = inRangeTick.get(key);
+				latencies.add(entered < 0 ? 0 : tick - entered);
+			}
+			frameTime.record(System.nanoTime() - tickStart);
+		}
+
+		long elapsed = System.nanoTime() - start;
+		long allocated = Bench.allocatedBytes() - allocatedBefore;
+
+		// Columns still in range but never streamed count until the end of the path;
+		// those that left range first were skipped, as the scheduler intends.
+		int pending = 0, skipped = 0;
+		for (int cx = minX; cx <= maxX; cx++) {
+			for (int cz = minZ; cz <= maxZ; cz++) {
+				long key = ChunkRegistry.key(cx, 0, cz);
+				int entered = inRangeTick.get(key);
+				if (entered >= 0 && !meshedTick.containsKey(key)) {
+					if (Math.abs(previous.x - cx * ChunkSection.SIZE) > RANGE
+							|| Math.abs(previous.z - cz * ChunkSection.SIZE) > RANGE) {
+						skipped++;
+					} else {
+						latencies.add(path.length() - entered);
+						pending++;
+					}
+				}
+			}
+		}
+		int[] delays = latencies.toArray();
+		Arrays.sort(delays);
+		double tickMillis = 1000.0 / Simulation.TICK_RATE;
+
+		System.out.println(String.format(Locale.ROOT,
+				"%-8s %5d ticks in %6.0f ms: frame p50 %6.2f ms, p99 %6.2f ms; %d columns streamed, latency p50 %6.1f ms, p95 %6.1f ms; %.1f MB allocated",
+				name, path.length(), elapsed / 1e6, frameTime.percentileMillis(50), frameTime.percentileMillis(99),
+				meshedTick.size(), percentile(delays, 50) * tickMillis, percentile(delays, 95) * tickMillis,
+				allocated / 1e6));
+
+		StringBuilder json = new StringBuilder();
+		json.append("    {\n      \"name\": \"").append(name).append("\",\n      \"ticks\": ").append(path.length())
+				.append(",\n      \"frameMillis\": ").append(frameTimes(frameTime))
+				.append(",\n      \"streaming\": {\"columns\": ").append(meshedTick.size())
+				.append(", \"pendingColumns\": ").append(pending)
+				.append(", \"skippedColumns\": ").append(skipped).append(", \"sectionsMeshed\": ").append(sectionsMeshed)
+				.append(String.format(Locale.ROOT,
+						", \"latencyMillis\": {\"p50\": %.1f, \"p95\": %.1f, \"p99\": %.1f, \"max\": %.1f}}",
+						percentile(delays, 50) * tickMillis, percentile(delays, 95) * tickMillis,
+						percentile(delays, 99) * tickMillis, delays.length == 0 ? 0 : delays[delays.length - 1] * tickMillis))
+				.append(String.format(Locale.ROOT, ",\n      \"chunksPerFrame\": {\"visible\": %.1f, \"holes\": %.1f}",
+						visible / (double) path.length(), holes / (double) path.length()))
+				.append(",\n      \"allocatedBytes\": ").append(allocated)
+				.append(",\n      \"allocatedBytesPerTick\": ").append(allocated / path.length()).append("\n    }");
+		return json.toString();
+	}
+
+	/**
+	 * Formats the frame time percentiles as a JSON object.
+	 */
+	private static String frameTimes(TimingStats stats) {
+		return String.format(Locale.ROOT, "{\"p50\": %.3f, \"p95\": %.3f, \"p99\": %.3f, \"max\": %.3f, \"mean\": %.3f}",
+				stats.percentileMillis(50), stats.percentileMillis(95), stats.percentileMillis(99),
+				stats.percentileMillis(100), stats.meanMillis());
+	}
+
+	/**
+	 * Gets a percentile of sorted values, or 0 when there are none.
+	 */
+	private static int percentile(int[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		return sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile / 100))];
+	}
+}
@@ -0,0 +1,102 @@
+package benchmark;
+
+import java.util.Random;
+
+import entities.EntityStore;
+import entities.SpatialHash;
+import toolbox.IntList;
+
+/**
+ * Measures the SpatialHash with 100k entities moving every tick: the cost of
+ * bringing the index up to date, and of range, box and nearest queries. Results
+ * are checked against a brute-force scan.
+ */
+public class SpatialHashBenchmark {
+
+	// Number of simulated entities.
+	private static final int ENTITIES = 100_000;
+
+	// Number of queries per measured invocation.
+	private static final int QUERIES = 10_000;
+
+	// Size of the area the entities roam, in world units.
+	private static final float WORLD = 512f, HEIGHT = 64f;
+
+	// Simulation time step in seconds.
+	private static final float DELTA = 1f / 60f;
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		EntityStore store = new EntityStore(ENTITIES);
+		for (int i = 0; i < ENTITIES; i++) {
+			int slot = store.create(0, random.nextFloat() * WORLD, random.nextFloat() * HEIGHT,
+					random.nextFloat() * WORLD, 0, 0, 0, 1);
+			store.setVelocity(slot, (random.nextFloat() - 0.5f) * 8f, 0, (random.nextFloat() - 0.5f) * 8f);
+		}
+		SpatialHash hash = new SpatialHash(4f, ENTITIES);
+		hash.update(store);
+
+		float[] queryPoints = new float[QUERIES * 3];
+		for (int i = 0; i < queryPoints.length; i += 3) {
+			queryPoints[i] = random.nextFloat() * WORLD;
+			queryPoints[i + 1] = random.nextFloat() * HEIGHT;
+			queryPoints[i + 2] = random.nextFloat() * WORLD;
+		}
+		IntList result = new IntList(1024);
+
+		Bench.measure("integrate + index update, 100k", ENTITIES, 100, 500, () -> {
+			store.integrate(DELTA);
+			hash.update(store);
+		});
+
+		Bench.measure("range query r=4", QUERIES, 50, 200, () -> {
+			for (int i = 0; i < queryPoints.length; i += 3) {
+				result.clear();
+				hash.queryRange(queryPoints[i], queryPoints[i + 1], queryPoints[i + 2], 4f, result);
+			}
+		});
+
+		Bench.measure("AABB query 8x8x8", QUERIES, 50, 200, () -> {
+			for (int i = 0; i < queryPoints.length; i += 3) {
+				result.clear();
+				float x = queryPoints[i], y = queryPoints[i + 1], z = queryPoints[i + 2];
+				hash.queryAabb(x - 4, y - 4, z - 4, x + 4, y + 4, z + 4, result);
+			}
+		});
+
+		Bench.measure("nearest query", QUERIES, 50, 200, () -> {
+			for (int i = 0; i < queryPoints.length; i += 3) {
+				Bench.consume(hash.nearest(queryPoints[i], queryPoints[i + 1], queryPoints[i + 2], 64f, -1));
+			}
+		});
+
+		// Sanity check: the index agrees with a brute-force scan of the store.
+		for (int q = 0; q < 100; q++) {
+			float x = queryPoints[q * 3], y = queryPoints[q * 3 + 1], z = queryPoints[q * 3 + 2];
+			result.clear();
+			int found = hash.queryRange(x, y, z, 6f, result);
+			int expected = 0;
+			int closest = -1;
+			float closestDistance = Float.MAX_VALUE;
+			for (int slot = 0; slot < store.getSlotLimit(); slot++) {
+				float dx = store.getX(slot) - x, dy = store.getY(slot) - y, dz = store.getZ(slot) - z;
+				float distance = dx * dx + dy * dy + dz * dz;
+				if (distance <= 36f) {
+					expected++;
+				}
+				if (distance < closestDistance) {
+					closestDistance = distance;
+					closest = slot;
+				}
+			}
+			if (found != expected) {
+				throw new IllegalStateException("Range query found " + found + " entities, expected " + expected);
+			}
+			int nearest = hash.nearest(x, y, z, 1000f, -1);
+			float dx = store.getX(nearest) - x, dy = store.getY(nearest) - y, dz = store.getZ(nearest) - z;
+			if (nearest != closest && dx * dx + dy * dy + dz * dz != closestDistance) {
+				throw new IllegalStateException("Nearest query returned " + nearest + ", expected " + closest);
+			}
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package benchmark;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Random;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import entities.Camera;
+import entities.CameraPath;
+import net.ChunkClient;
+import net.ChunkServer;
+import toolbox.TimingStats;
+import world.Block;
+import world.ChunkSection;
+import world.TerrainGenerator;
+import world.World;
+
+/**
+ * Load-tests the ChunkServer on loopback: streams a hilly world of 16384
+ * sections to many clients flying zig-zag paths across it, each editing a block
+ * near it twice a second, and reports the bandwidth, the encoding and batching
+ * figures, and the latency of sections and changes from the server queueing
+ * them to a client receiving them. Once the clients stop, every copy must match
+ * the server's world and hold nothing beyond the view radius. The first
+ * argument lists the client counts to run (8, 32 and 128 by default), the
+ * second the seconds each run lasts.
+ */
+public class StreamingBenchmark {
+
+	// Size of the world in sections.
+	private static final int SECTIONS_XZ = 64, SECTIONS_Y = 4;
+
+	// Radius of the area streamed around each client, in section columns.
+	private static final int VIEW_RADIUS = 5;
+
+	// Client ticks per second, flight speed in blocks per tick, and ticks between edits.
+	private static final int TICK_RATE = 20;
+	private static final float BLOCKS_PER_TICK = 0.75f;
+	private static final int EDIT_TICKS = 10;
+
+	// Time without any byte received after which the streams count as settled.
+	private static final long QUIET_NANOS = 500_000_000L;
+
+	private static final long SEED = 42;
+
+	public static void main(String[] args) throws Exception {
+		String[] counts = (args.length > 0 ? args[0] : "8,32,128").split(",");
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		for (String count : counts) {
+			run(Integer.parseInt(count.trim()), seconds);
+		}
+	}
+
+	/**
+	 * Runs the server and the clients for a while, then checks their copies.
+	 */
+	private static void run(int clientCount, int seconds) throws IOException, InterruptedException {
+		World world = TestWorlds.hills(SEED, SECTIONS_XZ, SECTIONS_Y);
+		TerrainGenerator terrain = new TerrainGenerator(SEED, SECTIONS_Y);
+		ChunkServer server = new ChunkServer(world, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				VIEW_RADIUS, SECTIONS_Y);
+		Thread serverThread = new Thread(server, "chunk-server");
+		serverThread.start();
+
+		// Connect the clients, each on its own path from its own starting point.
+		int ticks = seconds * TICK_RATE;
+		TimingStats sectionLatency = new TimingStats("section latency", 1 << 20);
+		TimingStats deltaLatency = new TimingStats("delta latency", 1 << 20);
+		Selector selector = Selector.open();
+		ChunkClient[] clients = new ChunkClient[clientCount];
+		World[] copies = new World[clientCount];
+		Camera[] cameras = new Camera[clientCount];
+		float[] startX = new float[clientCount], startZ = new float[clientCount];
+		CameraPath path = CameraPath.zigZag(ticks, 60, BLOCKS_PER_TICK, 40);
+		int size = SECTIONS_XZ * ChunkSection.SIZE;
+		for (int i = 0; i < clientCount; i++) {
+			copies[i] = new World();
+			clients[i] = new ChunkClient(server.getAddress(), copies[i], sectionLatency, deltaLatency);
+			clients[i].register(selector);
+			cameras[i] = new Camera(new Vector3f(), 0, 0, 0);
+			startX[i] = size / 8 + (i * 97) % (size * 3 / 4);
+			startZ[i] = size - 64 - (i * 53) % (size / 4);
+		}
+
+		Random random = new Random(SEED);
+		long start = System.nanoTime();
+		long nextTick = start;
+		int tick = 0;
+		long lastReceived = 0, lastReceiveTime = start;
+		while (true) {
+			long now = System.nanoTime();
+			if (tick < ticks && now - nextTick >= 0) {
+				for (int i = 0; i < clientCount; i++) {
+					path.applyTo(tick, cameras[i]);
+					Vector3f position = cameras[i].getPosition();
+					cameras[i].set(position.x + startX[i], position.y, position.z + startZ[i], cameras[i].getRotX(),
+							cameras[i].getRotY(), cameras[i].getRotZ());
+					clients[i].sendCamera(cameras[i]);
+					if ((tick + i) % EDIT_TICKS == 0) {
+						int x = (int) cameras[i].getPosition().x + random.nextInt(33) - 16;
+						int z = (int) cameras[i].getPosition().z + random.nextInt(33) - 16;
+						int y = terrain.getHeight(x, z) + 1;
+						clients[i].sendEdit(x, y, z, random.nextBoolean() ? Block.GLASS : Block.AIR);
+					}
+				}
+				tick++;
+				nextTick += 1_000_000_000L / TICK_RATE;
+			}
+
+			selector.select(1);
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				((ChunkClient) key.attachment()).handle(key);
+			}
+
+			// Once the paths are over, wait until nothing more arrives.
+			long received = 0;
+			for (ChunkClient client : clients) {
+				received += client.getBytesReceived();
+			}
+			if (received != lastReceived) {
+				lastReceived = received;
+				lastReceiveTime = now;
+			} else if (tick == ticks && now - lastReceiveTime > QUIET_NANOS) {
+				break;
+			}
+		}
+		double elapsed = (lastReceiveTime - start) / 1e9;
+		server.stop();
+		serverThread.join();
+
+		// Every copy must match the server, and only hold what is around its camera.
+		long sections = 0, sectionsReceived = 0, unloads = 0, deltas = 0;
+		short[] expected = new short[ChunkSection.VOLUME], actual = new short[ChunkSection.VOLUME];
+		for (int i = 0; i < clientCount; i++) {
+			int centreX = (int) Math.floor(cameras[i].getPosition().x) >> ChunkSection.SHIFT;
+			int centreZ = (int) Math.floor(cameras[i].getPosition().z) >> ChunkSection.SHIFT;
+			int[] held = new int[1];
+			int client = i;
+			copies[i].getRegistry().forEach(section -> {
+				int dx = section.getSectionX() - centreX, dz = section.getSectionZ() - centreZ;
+				if (dx * dx + dz * dz > (VIEW_RADIUS + 1) * (VIEW_RADIUS + 1)) {
+					throw new IllegalStateException("Client " + client + " holds a section out of range");
+				}
+				world.getSection(section.getSectionX(), section.getSectionY(), section.getSectionZ())
+						.copyBlocks(expected);
+				section.copyBlocks(actual);
+				for (int b = 0; b < ChunkSection.VOLUME; b++) {
+					if (expected[b] != actual[b]) {
+						throw new IllegalStateException("Client " + client + " has a stale block");
+					}
+				}
+				held[0]++;
+			});
+			sections += held[0];
+			sectionsReceived += clients[i].getSectionsReceived();
+			unloads += clients[i].getUnloadsReceived();
+			deltas += clients[i].getDeltasReceived();
+			clients[i].close();
+		}
+		selector.close();
+
+		System.out.println(String.format(Locale.ROOT,
+				"--- %d clients, %.1f s, view radius %d columns: copies match, %,d sections held", clientCount,
+				elapsed, VIEW_RADIUS, sections));
+		System.out.println(String.format(Locale.ROOT,
+				"bandwidth %.2f MB/s total, %.1f kB/s per client; %,d sections (%,d from the cache), %,d unloads",
+				lastReceived / elapsed / 1e6, lastReceived / elapsed / 1e3 / clientCount, sectionsReceived,
+				server.getCacheHits(), unloads));
+		System.out.println(String.format(Locale.ROOT,
+				"encoding %.1f bytes per section vs %d raw (%.0fx); %,d edits applied, %,d changes sent in %,d frames (%.1f per frame)",
+				(double) server.getCodec().getEncodedBytes() / server.getCodec().getSectionsEncoded(),
+				ChunkSection.VOLUME * 2,
+				(double) server.getCodec().getRawBytes() / server.getCodec().getEncodedBytes(),
+				server.getEditsApplied(), deltas, server.getDeltaFrames(),
+				(double) deltas / Math.max(1, server.getDeltaFrames())));
+		System.out.println(String.format(Locale.ROOT,
+				"latency: sections mean %.2f ms, p50 %.2f ms, p99 %.2f ms; changes mean %.2f ms, p99 %.2f ms; %d clients dropped",
+				sectionLatency.meanMillis(), sectionLatency.percentileMillis(50), sectionLatency.percentileMillis(99),
+				deltaLatency.meanMillis(), deltaLatency.percentileMillis(99), server.getClientsDropped()));
+	}
+}
@@ -0,0 +1,38 @@
+package benchmark;
+
+import world.TerrainGenerator;
+import world.World;
+
+/**
+ * Builds the deterministic test worlds shared by the world benchmarks.
+ */
+final class TestWorlds {
+
+	private TestWorlds() {
+	}
+
+	/**
+	 * Builds rolling hills of stone and dirt with grass on top, filling every
+	 * section of the given box so the box has no holes.
+	 *
+	 * @param seed       The seed of the hills' phase.
+	 * @param sectionsXZ The number of sections along X and Z.
+	 * @param sectionsY  The number of sections along Y.
+	 * @return The new world.
+	 */
+	static World hills(long seed, int sectionsXZ, int sectionsY) {
+		TerrainGenerator generator = new TerrainGenerator(seed, sectionsY);
+
+		// Fill each section before adding it, as a generator would, so identical
+		// sections are shared.
+		World world = new World();
+		for (int sx = 0; sx < sectionsXZ; sx++) {
+			for (int sz = 0; sz < sectionsXZ; sz++) {
+				for (int sy = 0; sy < sectionsY; sy++) {
+					world.addSection(generator.generateSection(sx, sy, sz));
+				}
+			}
+		}
+		return world;
+	}
+}
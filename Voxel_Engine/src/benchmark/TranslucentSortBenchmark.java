@@ -0,0 +1,196 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import juancraft.TranslucentSorter;
+import models.RawModel;
+import toolbox.TimingStats;
+import world.Block;
+import world.ChunkMesher;
+import world.ChunkSection;
+import world.FaceSorter;
+import world.LightEngine;
+import world.Material;
+import world.MeshData;
+import world.World;
+
+/**
+ * Measures the cost of keeping translucent faces sorted back to front. A hilly
+ * world is flooded up to a sea level and dotted with blobs of leaves, and the
+ * translucent parts of its section meshes are collected. The FaceSorter is
+ * measured per section and per face, then a camera flies over the water while
+ * the TranslucentSorter keeps the faces sorted, and its cost per frame is
+ * compared with sorting every translucent section every frame. The sorts run
+ * inline and nothing is uploaded.
+ */
+public class TranslucentSortBenchmark {
+
+	// Size of the world in sections.
+	private static final int SECTIONS_XZ = 12, SECTIONS_Y = 4;
+
+	// Height the hills are flooded to.
+	private static final int SEA_LEVEL = 26;
+
+	// Number and radius of the leaf blobs.
+	private static final int LEAF_BLOBS = 60, LEAF_RADIUS = 3;
+
+	// Length of the flight, in frames, and the camera's speed, in blocks per frame.
+	private static final int FRAMES = 1200;
+	private static final float SPEED = 0.1f;
+
+	public static void main(String[] args) {
+		World world = TestWorlds.hills(42, SECTIONS_XZ, SECTIONS_Y);
+		flood(world);
+		addLeaves(world, new Random(7));
+
+		LightEngine engine = new LightEngine(world);
+		List<ChunkSection> sections = new ArrayList<ChunkSection>();
+		world.getRegistry().forEach(sections::add);
+		for (ChunkSection section : sections) {
+			engine.initSection(section);
+		}
+
+		// Collect the translucent parts with their section origins.
+		ChunkMesher mesher = new ChunkMesher();
+		List<MeshData.Part> parts = new ArrayList<MeshData.Part>();
+		List<int[]> origins = new ArrayList<int[]>();
+		long faces = 0;
+		for (ChunkSection section : sections) {
+			MeshData mesh = mesher.mesh(world, section);
+			for (int material = 0; material < Material.COUNT; material++) {
+				MeshData.Part part = mesh.getPart(material);
+				if (part != null && Material.isTranslucent(material)) {
+					parts.add(part);
+					origins.add(new int[] { section.getSectionX() * ChunkSection.SIZE,
+							section.getSectionY() * ChunkSection.SIZE, section.getSectionZ() * ChunkSection.SIZE });
+					faces += part.getFaceCount();
+				}
+			}
+		}
+		System.out.println(String.format(Locale.ROOT, "%d translucent parts, %d faces (%.0f per part)", parts.size(),
+				faces, faces / (double) parts.size()));
+
+		// The face sort alone, from a fixed eye above the middle of the world.
+		FaceSorter sorter = new FaceSorter();
+		float middle = SECTIONS_XZ * ChunkSection.SIZE / 2f;
+		Bench.Result perSection = Bench.measure("sort translucent section", parts.size(), 5, 20,
+				() -> sortAll(sorter, parts, origins, middle, SEA_LEVEL + 2, middle));
+		System.out.println(String.format(Locale.ROOT, "%.1f ns per face",
+				perSection.nanosPerOp * parts.size() / faces));
+
+		// Warm up the flight, then fly it twice: sorting incrementally, and
+		// sorting every section every frame.
+		fly(parts, origins, null);
+		TimingStats incremental = new TimingStats("incremental", FRAMES);
+		long sorts = fly(parts, origins, incremental);
+		TimingStats everyFrame = new TimingStats("every frame", FRAMES);
+		for (int frame = 0; frame < FRAMES; frame++) {
+			long start = System.nanoTime();
+			float[] eye = eye(frame);
+			sortAll(sorter, parts, origins, eye[0], eye[1], eye[2]);
+			everyFrame.record(System.nanoTime() - start);
+		}
+
+		System.out.println(String.format(Locale.ROOT,
+				"incremental: %.1f sorts per frame, mean %.3f ms, p99 %.3f ms per frame", sorts / (double) FRAMES,
+				incremental.meanMillis(), incremental.percentileMillis(99)));
+		System.out.println(String.format(Locale.ROOT,
+				"every frame: %d sorts per frame, mean %.3f ms, p99 %.3f ms per frame", parts.size(),
+				everyFrame.meanMillis(), everyFrame.percentileMillis(99)));
+		if (incremental.meanMillis() >= everyFrame.meanMillis()) {
+			throw new IllegalStateException("Incremental sorting costs as much as sorting everything");
+		}
+	}
+
+	/**
+	 * Flies the camera over the water with a TranslucentSorter running its sorts
+	 * inline, recording each frame's cost.
+	 *
+	 * @return The number of sorts.
+	 */
+	private static long fly(List<MeshData.Part> parts, List<int[]> origins, TimingStats frames) {
+		TranslucentSorter translucent = new TranslucentSorter(Runnable::run);
+		RawModel model = new RawModel(0, 0);
+		for (int i = 0; i < parts.size(); i++) {
+			int[] origin = origins.get(i);
+			translucent.add(parts.get(i), model, origin[0], origin[1], origin[2]);
+		}
+		long[] uploads = new long[1];
+		translucent.update(0, SEA_LEVEL + 2, 0, (m, indices) -> uploads[0]++); // The first sort of every section
+
+		long before = translucent.getSorts();
+		for (int frame = 0; frame < FRAMES; frame++) {
+			long start = System.nanoTime();
+			float[] eye = eye(frame);
+			translucent.update(eye[0], eye[1], eye[2], (m, indices) -> uploads[0]++);
+			if (frames != null) {
+				frames.record(System.nanoTime() - start);
+			}
+		}
+		Bench.consume(uploads[0]);
+		return translucent.getSorts() - before;
+	}
+
+	/**
+	 * Gets the camera position of a frame: a diagonal flight over the water.
+	 */
+	private static float[] eye(int frame) {
+		float distance = frame * SPEED;
+		return new float[] { 8 + distance * 0.8f, SEA_LEVEL + 2 + (float) Math.sin(frame * 0.01), 8 + distance * 0.6f };
+	}
+
+	private static void sortAll(FaceSorter sorter, List<MeshData.Part> parts, List<int[]> origins, float x, float y,
+			float z) {
+		long checksum = 0;
+		for (int i = 0; i < parts.size(); i++) {
+			MeshData.Part part = parts.get(i);
+			int[] origin = origins.get(i);
+			int[] indices = new int[part.indices.length];
+			sorter.sortBackToFront(part, x - origin[0], y - origin[1], z - origin[2], indices);
+			checksum += indices[0];
+		}
+		Bench.consume(checksum);
+	}
+
+	/**
+	 * Fills the air below the sea level with water.
+	 */
+	private static void flood(World world) {
+		int size = SECTIONS_XZ * ChunkSection.SIZE;
+		for (int x = 0; x < size; x++) {
+			for (int z = 0; z < size; z++) {
+				for (int y = 0; y <= SEA_LEVEL; y++) {
+					if (world.getBlock(x, y, z) == Block.AIR) {
+						world.setBlock(x, y, z, Block.WATER);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Places blobs of leaves on the hills above the water.
+	 */
+	private static void addLeaves(World world, Random random) {
+		int size = SECTIONS_XZ * ChunkSection.SIZE;
+		int top = SECTIONS_Y * ChunkSection.SIZE;
+		for (int blob = 0; blob < LEAF_BLOBS; blob++) {
+			int cx = LEAF_RADIUS + random.nextInt(size - 2 * LEAF_RADIUS);
+			int cz = LEAF_RADIUS + random.nextInt(size - 2 * LEAF_RADIUS);
+			int cy = SEA_LEVEL + LEAF_RADIUS + 2 + random.nextInt(top - SEA_LEVEL - 2 * LEAF_RADIUS - 3);
+			for (int x = -LEAF_RADIUS; x <= LEAF_RADIUS; x++) {
+				for (int y = -LEAF_RADIUS; y <= LEAF_RADIUS; y++) {
+					for (int z = -LEAF_RADIUS; z <= LEAF_RADIUS; z++) {
+						if (x * x + y * y + z * z <= LEAF_RADIUS * LEAF_RADIUS
+								&& world.getBlock(cx + x, cy + y, cz + z) == Block.AIR) {
+							world.setBlock(cx + x, cy + y, cz + z, Block.LEAVES);
+						}
+					}
+				}
+			}
+		}
+	}
+}
@@ -1,12 +1,11 @@
 package entities;
 
-import org.lwjgl.input.Keyboard;
-import org.lwjgl.input.Mouse;
 import org.lwjgl.util.vector.Vector3f;
 
 /**
  * The Camera class represents a camera in a 3D space, allowing for movement and rotation based on user input.
- * It uses keyboard input for forward and backward movement and mouse input for rotation.
+ * Input is sampled by CameraInput (keyboard for forward and backward movement, mouse for rotation)
+ * and applied once per simulation tick.
  */
 public class Camera {
 
@@ -16,10 +15,10 @@ public class Camera {
     // Rotation angles for the camera around the X, Y, and Z axes.
     private float rotX, rotY, rotZ;
     
-    // Speed at which the camera moves.
-    private float speed = 0.3f;
+    // Speed at which the camera moves, in units per second.
+    private float speed = 36f;
     
-    // Speed at which the camera rotates.
+    // Speed at which the camera rotates, in degrees per mouse count.
     private float turnSpeed = 0.1f;
 
     /**
@@ -38,26 +37,22 @@ public class Camera {
     }
 
     /**
-     * Updates the camera's position and rotation based on user input.
-     * The W and S keys (or UP and DOWN arrows) move the camera forward and backward.
-     * The mouse movement updates the camera's rotation.
+     * Updates the camera's position and rotation from one step of input. The
+     * movement is scaled by the elapsed time, so the camera travels at the same
+     * speed whatever the step rate is.
+     * 
+     * @param moveAxis The movement input: 1 forward, -1 backward, 0 still.
+     * @param mouseDX  The horizontal mouse movement since the last step.
+     * @param mouseDY  The vertical mouse movement since the last step.
+     * @param delta    The duration of the step in seconds.
      */
-    public void move() {
-        // Variable to control movement direction
-        float moveAt = 0;
-
-        // Move the camera forward when W or UP key is pressed.
-        if (Keyboard.isKeyDown(Keyboard.KEY_W) || Keyboard.isKeyDown(Keyboard.KEY_UP)) {
-            moveAt = -speed; // Move forward in the negative Z direction.
-        }
-        // Move the camera backward when S or DOWN key is pressed.
-        else if (Keyboard.isKeyDown(Keyboard.KEY_S) || Keyboard.isKeyDown(Keyboard.KEY_DOWN)) {
-            moveAt = speed; // Move backward in the positive Z direction.
-        }
+    public void move(float moveAxis, float mouseDX, float mouseDY, float delta) {
+        // Distance travelled this step; forward is the negative Z direction.
+        float moveAt = -moveAxis * speed * delta;
 
         // Update rotation based on mouse movement.
-        rotX += -Mouse.getDY() * turnSpeed; // Adjust rotation around X based on vertical mouse movement.
-        rotY += Mouse.getDX() * turnSpeed;  // Adjust rotation around Y based on horizontal mouse movement.
+        rotX += -mouseDY * turnSpeed; // Adjust rotation around X based on vertical mouse movement.
+        rotY += mouseDX * turnSpeed;  // Adjust rotation around Y based on horizontal mouse movement.
 
         // Calculate directional movement based on rotation angles
         float dx = (float) -(moveAt * Math.sin(Math.toRadians(rotY)));
@@ -70,6 +65,41 @@ public class Camera {
         position.z += dz;
     }
 
+    /**
+     * Places the camera at the given position and orientation.
+     * 
+     * @param x    The X coordinate of the position.
+     * @param y    The Y coordinate of the position.
+     * @param z    The Z coordinate of the position.
+     * @param rotX The rotation angle around the X axis.
+     * @param rotY The rotation angle around the Y axis.
+     * @param rotZ The rotation angle around the Z axis.
+     */
+    public void set(float x, float y, float z, float rotX, float rotY, float rotZ) {
+        position.x = x;
+        position.y = y;
+        position.z = z;
+        this.rotX = rotX;
+        this.rotY = rotY;
+        this.rotZ = rotZ;
+    }
+
+    /**
+     * Computes the unit vector the camera is looking along, the same direction
+     * it moves forward in.
+     * 
+     * @param dest The vector receiving the direction.
+     * @return The dest vector.
+     */
+    public Vector3f getViewDirection(Vector3f dest) {
+        double pitch = Math.toRadians(rotX);
+        double yaw = Math.toRadians(rotY);
+        dest.x = (float) (Math.sin(yaw) * Math.cos(pitch));
+        dest.y = (float) -Math.sin(pitch);
+        dest.z = (float) (-Math.cos(yaw) * Math.cos(pitch));
+        return dest;
+    }
+
     /**
      * Gets the current position of the camera.
      * 
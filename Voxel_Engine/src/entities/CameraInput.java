@@ -0,0 +1,70 @@
+package entities;
+
+import org.lwjgl.input.Keyboard;
+import org.lwjgl.input.Mouse;
+
+/**
+ * The CameraInput class hands user input from the render thread, which owns
+ * the LWJGL input devices, to the simulation thread, which moves the camera.
+ * Mouse movement is accumulated between ticks so no motion is lost when
+ * several frames are rendered per tick, and the movement key state is the one
+ * of the latest frame.
+ */
+public class CameraInput implements CameraInputSource {
+
+	// Mouse movement accumulated since the last tick.
+	private float mouseDX, mouseDY;
+
+	// Movement key state of the latest frame: 1 forward, -1 backward, 0 still.
+	private float moveAxis;
+
+	/**
+	 * Reads the keyboard and mouse. Must be called on the render thread after
+	 * the display has been updated.
+	 */
+	public void sample() {
+		float axis = 0;
+		// Move the camera forward when W or UP key is pressed.
+		if (Keyboard.isKeyDown(Keyboard.KEY_W) || Keyboard.isKeyDown(Keyboard.KEY_UP)) {
+			axis = 1;
+		}
+		// Move the camera backward when S or DOWN key is pressed.
+		else if (Keyboard.isKeyDown(Keyboard.KEY_S) || Keyboard.isKeyDown(Keyboard.KEY_DOWN)) {
+			axis = -1;
+		}
+		submit(axis, Mouse.getDX(), Mouse.getDY());
+	}
+
+	/**
+	 * Adds one frame of input.
+	 *
+	 * @param axis The movement key state.
+	 * @param dx   The horizontal mouse movement of the frame.
+	 * @param dy   The vertical mouse movement of the frame.
+	 */
+	public synchronized void submit(float axis, float dx, float dy) {
+		moveAxis = axis;
+		mouseDX += dx;
+		mouseDY += dy;
+	}
+
+	/**
+	 * Applies the input gathered since the last tick to a camera and resets the
+	 * accumulated mouse movement. Called on the simulation thread.
+	 *
+	 * @param camera The camera to move.
+	 * @param delta  The duration of the tick in seconds.
+	 */
+	@Override
+	public void applyTo(Camera camera, float delta) {
+		float axis, dx, dy;
+		synchronized (this) {
+			axis = moveAxis;
+			dx = mouseDX;
+			dy = mouseDY;
+			mouseDX = 0;
+			mouseDY = 0;
+		}
+		camera.move(axis, dx, dy, delta);
+	}
+}
@@ -0,0 +1,18 @@
+package entities;
+
+/**
+ * The CameraInputSource interface is where the simulation gets the movement
+ * of its camera from each tick: the live keyboard and mouse (CameraInput), or
+ * a recorded path being replayed (CameraPath), so the same simulation can be
+ * driven by a player or reproducibly by a benchmark.
+ */
+public interface CameraInputSource {
+
+	/**
+	 * Moves a camera by one tick of input. Called on the simulation thread.
+	 *
+	 * @param camera The camera to move.
+	 * @param delta  The duration of the tick in seconds.
+	 */
+	void applyTo(Camera camera, float delta);
+}
@@ -0,0 +1,272 @@
+package entities;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The CameraPath class is a camera path recorded one simulation tick at a
+ * time: the position and orientation of the camera at the end of every tick.
+ * Replaying the states rather than the input that produced them makes a replay
+ * exact, whatever the camera's speed settings and however the frames fell
+ * between the ticks when it was recorded.
+ *
+ * Paths are recorded from any input source with a Recorder, replayed with a
+ * Player, saved as text (one tick per line: x y z rotX rotY rotZ) and built
+ * by the factories of the standard benchmark paths.
+ */
+public class CameraPath {
+
+	// Floats per tick: x, y, z, rotX, rotY, rotZ.
+	private static final int STRIDE = 6;
+
+	// The states of the path, STRIDE floats per tick.
+	private float[] states;
+
+	// Number of ticks in the path.
+	private int length;
+
+	/**
+	 * Creates an empty path.
+	 */
+	public CameraPath() {
+		states = new float[STRIDE * 64];
+	}
+
+	/**
+	 * Appends the state of a camera as the next tick.
+	 *
+	 * @param camera The camera.
+	 */
+	public void add(Camera camera) {
+		add(camera.getPosition().x, camera.getPosition().y, camera.getPosition().z, camera.getRotX(), camera.getRotY(),
+				camera.getRotZ());
+	}
+
+	/**
+	 * Appends a state as the next tick.
+	 */
+	public void add(float x, float y, float z, float rotX, float rotY, float rotZ) {
+		if ((length + 1) * STRIDE > states.length) {
+			states = Arrays.copyOf(states, states.length * 2);
+		}
+		int offset = length++ * STRIDE;
+		states[offset] = x;
+		states[offset + 1] = y;
+		states[offset + 2] = z;
+		states[offset + 3] = rotX;
+		states[offset + 4] = rotY;
+		states[offset + 5] = rotZ;
+	}
+
+	/**
+	 * Places a camera at the state of a tick.
+	 *
+	 * @param tick   The tick, from 0 to length - 1.
+	 * @param camera The camera.
+	 */
+	public void applyTo(int tick, Camera camera) {
+		int offset = tick * STRIDE;
+		camera.set(states[offset], states[offset + 1], states[offset + 2], states[offset + 3], states[offset + 4],
+				states[offset + 5]);
+	}
+
+	/**
+	 * Gets the number of ticks in the path.
+	 *
+	 * @return The length of the path.
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Saves the path as text, one tick per line.
+	 *
+	 * @param file The file to write.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public void save(Path file) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (int tick = 0; tick < length; tick++) {
+				int offset = tick * STRIDE;
+				writer.write(String.format(Locale.ROOT, "%s %s %s %s %s %s", states[offset], states[offset + 1],
+						states[offset + 2], states[offset + 3], states[offset + 4], states[offset + 5]));
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Loads a path saved by save.
+	 *
+	 * @param file The file to read.
+	 * @return The path.
+	 * @throws IOException If the file cannot be read or is malformed.
+	 */
+	public static CameraPath load(Path file) throws IOException {
+		CameraPath path = new CameraPath();
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			int number = 0;
+			while ((line = reader.readLine()) != null) {
+				number++;
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				String[] values = line.trim().split("\\s+");
+				if (values.length != STRIDE) {
+					throw new IOException(file + ":" + number + ": expected " + STRIDE + " values");
+				}
+				try {
+					path.add(Float.parseFloat(values[0]), Float.parseFloat(values[1]), Float.parseFloat(values[2]),
+							Float.parseFloat(values[3]), Float.parseFloat(values[4]), Float.parseFloat(values[5]));
+				} catch (NumberFormatException e) {
+					throw new IOException(file + ":" + number + ": " + e.getMessage(), e);
+				}
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Builds a path spinning in place: a full turn every few seconds while
+	 * looking slightly down.
+	 *
+	 * @param ticks          The length of the path.
+	 * @param y              The height of the camera.
+	 * @param degreesPerTick The turning speed.
+	 * @return The path.
+	 */
+	public static CameraPath spin(int ticks, float y, float degreesPerTick) {
+		CameraPath path = new CameraPath();
+		for (int tick = 0; tick < ticks; tick++) {
+			path.add(0, y, 0, 15, tick * degreesPerTick, 0);
+		}
+		return path;
+	}
+
+	/**
+	 * Builds a path flying straight ahead (along negative Z) at a constant
+	 * speed.
+	 *
+	 * @param ticks         The length of the path.
+	 * @param y             The height of the camera.
+	 * @param blocksPerTick The flight speed.
+	 * @return The path.
+	 */
+	public static CameraPath straight(int ticks, float y, float blocksPerTick) {
+		CameraPath path = new CameraPath();
+		for (int tick = 0; tick < ticks; tick++) {
+			path.add(0, y, -tick * blocksPerTick, 10, 0, 0);
+		}
+		return path;
+	}
+
+	/**
+	 * Builds a path flying forward in a zig-zag, turning sharply from 45 degrees
+	 * left to 45 degrees right of the negative Z axis, looking where it goes.
+	 *
+	 * @param ticks         The length of the path.
+	 * @param y             The height of the camera.
+	 * @param blocksPerTick The flight speed.
+	 * @param legTicks      The length of each leg of the zig-zag.
+	 * @return The path.
+	 */
+	public static CameraPath zigZag(int ticks, float y, float blocksPerTick, int legTicks) {
+		CameraPath path = new CameraPath();
+		float x = 0, z = 0;
+		for (int tick = 0; tick < ticks; tick++) {
+			float yaw = (tick / legTicks) % 2 == 0 ? -45 : 45;
+			x += (float) Math.sin(Math.toRadians(yaw)) * blocksPerTick;
+			z -= (float) Math.cos(Math.toRadians(yaw)) * blocksPerTick;
+			path.add(x, y, z, 10, yaw, 0);
+		}
+		return path;
+	}
+
+	/**
+	 * The CameraPath.Recorder class records the camera moved by another input
+	 * source, one state per tick.
+	 */
+	public static class Recorder implements CameraInputSource {
+
+		private final CameraInputSource source;
+		private final CameraPath path = new CameraPath();
+
+		/**
+		 * Creates a recorder.
+		 *
+		 * @param source The input source actually moving the camera.
+		 */
+		public Recorder(CameraInputSource source) {
+			this.source = source;
+		}
+
+		@Override
+		public void applyTo(Camera camera, float delta) {
+			source.applyTo(camera, delta);
+			synchronized (path) {
+				path.add(camera);
+			}
+		}
+
+		/**
+		 * Gets a copy of the path recorded so far. Safe to call from any thread.
+		 *
+		 * @return The recorded path.
+		 */
+		public CameraPath getPath() {
+			synchronized (path) {
+				CameraPath copy = new CameraPath();
+				copy.states = Arrays.copyOf(path.states, path.states.length);
+				copy.length = path.length;
+				return copy;
+			}
+		}
+	}
+
+	/**
+	 * The CameraPath.Player class replays a path, moving the camera to the next
+	 * recorded state every tick. Once the path is over, the camera stays at its
+	 * last state.
+	 */
+	public static class Player implements CameraInputSource {
+
+		private final CameraPath path;
+		private volatile int tick;
+
+		/**
+		 * Creates a player starting at the first tick of a path.
+		 *
+		 * @param path The path to replay.
+		 */
+		public Player(CameraPath path) {
+			this.path = path;
+		}
+
+		@Override
+		public void applyTo(Camera camera, float delta) {
+			if (path.length > 0) {
+				path.applyTo(Math.min(tick, path.length - 1), camera);
+			}
+			if (tick < path.length) {
+				tick++;
+			}
+		}
+
+		/**
+		 * Checks whether every state of the path has been replayed.
+		 *
+		 * @return true once the path is over.
+		 */
+		public boolean isFinished() {
+			return tick >= path.length;
+		}
+	}
+}
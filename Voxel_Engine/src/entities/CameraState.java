@@ -0,0 +1,48 @@
+package entities;
+
+/**
+ * The CameraState class is an immutable copy of a camera's position and
+ * orientation at the end of a simulation tick. The render thread interpolates
+ * between the states of the last two ticks to draw smooth motion at any frame
+ * rate.
+ */
+public final class CameraState {
+
+	// Position of the camera.
+	public final float x, y, z;
+
+	// Rotation angles of the camera around the X, Y and Z axes.
+	public final float rotX, rotY, rotZ;
+
+	/**
+	 * Copies the current state of a camera.
+	 *
+	 * @param camera The camera to copy.
+	 */
+	public CameraState(Camera camera) {
+		this.x = camera.getPosition().x;
+		this.y = camera.getPosition().y;
+		this.z = camera.getPosition().z;
+		this.rotX = camera.getRotX();
+		this.rotY = camera.getRotY();
+		this.rotZ = camera.getRotZ();
+	}
+
+	/**
+	 * Writes the interpolation between two states into a camera.
+	 *
+	 * @param from   The earlier state.
+	 * @param to     The later state.
+	 * @param alpha  The interpolation factor, 0 for from and 1 for to.
+	 * @param target The camera receiving the interpolated state.
+	 */
+	public static void interpolate(CameraState from, CameraState to, float alpha, Camera target) {
+		target.set(
+				from.x + (to.x - from.x) * alpha,
+				from.y + (to.y - from.y) * alpha,
+				from.z + (to.z - from.z) * alpha,
+				from.rotX + (to.rotX - from.rotX) * alpha,
+				from.rotY + (to.rotY - from.rotY) * alpha,
+				from.rotZ + (to.rotZ - from.rotZ) * alpha);
+	}
+}
@@ -0,0 +1,391 @@
+package entities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import models.TexturedModel;
+
+/**
+ * The EntityStore class keeps dynamic entities (mobs, particles, dropped items)
+ * as a structure of arrays: one primitive array per attribute, indexed by the
+ * entity's slot. Bulk updates then walk contiguous memory instead of chasing an
+ * object and a Vector3f per entity, and can be split into ranges processed in
+ * parallel on a fork-join pool.
+ *
+ * Slots of destroyed entities are recycled through a free list. A destroyed
+ * slot keeps zero velocity and spin, so the bulk kernels can run over every
+ * slot without checking whether it is in use.
+ *
+ * Single-slot methods are not thread-safe; callers own the store from one
+ * thread (the simulation) and only hand ranges to the pool through the bulk
+ * methods.
+ */
+public class EntityStore {
+
+	// Number of slots processed by one task of a parallel update.
+	private static final int PARALLEL_CHUNK = 8192;
+
+	// Position of each entity.
+	float[] posX, posY, posZ;
+
+	// Rotation of each entity, in degrees.
+	float[] rotX, rotY, rotZ;
+
+	// Uniform scale of each entity.
+	float[] scale;
+
+	// Velocity of each entity, in units per second.
+	float[] velX, velY, velZ;
+
+	// Angular velocity of each entity, in degrees per second.
+	float[] spinX, spinY, spinZ;
+
+	// Model id of each entity, or -1 for a free slot.
+	int[] modelIds;
+
+	// Stack of free slots below the high-water mark.
+	private int[] freeSlots;
+	private int freeCount;
+
+	// Number of slots ever used; every live entity has a slot below it.
+	private int highWater;
+
+	// Registered models, indexed by model id.
+	private final List<TexturedModel> models = new ArrayList<TexturedModel>();
+	private final Map<TexturedModel, Integer> modelIdsByModel = new IdentityHashMap<TexturedModel, Integer>();
+
+	/**
+	 * Creates a store with room for the given number of entities. The store grows
+	 * on demand.
+	 *
+	 * @param capacity The initial number of slots.
+	 */
+	public EntityStore(int capacity) {
+		capacity = Math.max(capacity, 16);
+		posX = new float[capacity];
+		posY = new float[capacity];
+		posZ = new float[capacity];
+		rotX = new float[capacity];
+		rotY = new float[capacity];
+		rotZ = new float[capacity];
+		scale = new float[capacity];
+		velX = new float[capacity];
+		velY = new float[capacity];
+		velZ = new float[capacity];
+		spinX = new float[capacity];
+		spinY = new float[capacity];
+		spinZ = new float[capacity];
+		modelIds = new int[capacity];
+		Arrays.fill(modelIds, -1);
+		freeSlots = new int[capacity];
+	}
+
+	/**
+	 * Registers a model and returns its id. Registering the same model again
+	 * returns the same id.
+	 *
+	 * @param model The textured model.
+	 * @return The id of the model in this store.
+	 */
+	public int registerModel(TexturedModel model) {
+		Integer id = modelIdsByModel.get(model);
+		if (id == null) {
+			id = models.size();
+			models.add(model);
+			modelIdsByModel.put(model, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Gets a registered model.
+	 *
+	 * @param modelId The id of the model.
+	 * @return The textured model.
+	 */
+	public TexturedModel getModel(int modelId) {
+		return models.get(modelId);
+	}
+
+	/**
+	 * Creates an entity at rest.
+	 *
+	 * @param modelId The id of the entity's model.
+	 * @param x       The X coordinate of the position.
+	 * @param y       The Y coordinate of the position.
+	 * @param z       The Z coordinate of the position.
+	 * @param rx      The rotation around the X axis in degrees.
+	 * @param ry      The rotation around the Y axis in degrees.
+	 * @param rz      The rotation around the Z axis in degrees.
+	 * @param s       The uniform scale.
+	 * @return The slot of the new entity.
+	 */
+	public int create(int modelId, float x, float y, float z, float rx, float ry, float rz, float s) {
+		int slot;
+		if (freeCount > 0) {
+			slot = freeSlots[--freeCount]; // Reuse a destroyed slot
+		} else {
+			if (highWater == modelIds.length) {
+				grow(highWater * 2);
+			}
+			slot = highWater++;
+		}
+		modelIds[slot] = modelId;
+		posX[slot] = x;
+		posY[slot] = y;
+		posZ[slot] = z;
+		rotX[slot] = rx;
+		rotY[slot] = ry;
+		rotZ[slot] = rz;
+		scale[slot] = s;
+		return slot;
+	}
+
+	/**
+	 * Destroys an entity and frees its slot for reuse.
+	 *
+	 * @param slot The slot of the entity.
+	 */
+	public void destroy(int slot) {
+		if (modelIds[slot] < 0) {
+			return; // Already free
+		}
+		modelIds[slot] = -1;
+		// Keep free slots at rest so the bulk kernels leave them untouched.
+		velX[slot] = velY[slot] = velZ[slot] = 0;
+		spinX[slot] = spinY[slot] = spinZ[slot] = 0;
+		freeSlots[freeCount++] = slot;
+	}
+
+	/**
+	 * Checks whether a slot holds a live entity.
+	 *
+	 * @param slot The slot.
+	 * @return true if the slot is in use.
+	 */
+	public boolean isAlive(int slot) {
+		return slot >= 0 && slot < highWater && modelIds[slot] >= 0;
+	}
+
+	/**
+	 * Gets the number of slots ever used. Every live entity has a slot below this
+	 * value.
+	 *
+	 * @return The high-water mark of the slots.
+	 */
+	public int getSlotLimit() {
+		return highWater;
+	}
+
+	/**
+	 * Gets the number of live entities.
+	 *
+	 * @return The entity count.
+	 */
+	public int size() {
+		return highWater - freeCount;
+	}
+
+	/**
+	 * Gets a view of an entity that behaves like a regular Entity, for code that
+	 * works with Entity objects (such as the renderer).
+	 *
+	 * @param slot The slot of the entity.
+	 * @return An Entity backed by this store.
+	 */
+	public Entity view(int slot) {
+		return new StoredEntity(this, slot);
+	}
+
+	/**
+	 * Moves every entity by its velocity and turns it by its spin over a time
+	 * step.
+	 *
+	 * @param delta The time step in seconds.
+	 */
+	public void integrate(float delta) {
+		integrateRange(0, highWater, delta);
+	}
+
+	/**
+	 * Like integrate, but splits the slots into ranges processed in parallel.
+	 *
+	 * @param delta The time step in seconds.
+	 * @param pool  The pool running the ranges.
+	 */
+	public void integrateParallel(float delta, ForkJoinPool pool) {
+		pool.invoke(new IntegrateTask(this, 0, highWater, delta));
+	}
+
+	/**
+	 * Moves every entity by the same offset.
+	 *
+	 * @param dx The change in the X coordinate.
+	 * @param dy The change in the Y coordinate.
+	 * @param dz The change in the Z coordinate.
+	 */
+	public void translateAll(float dx, float dy, float dz) {
+		for (int i = 0; i < highWater; i++) {
+			posX[i] += dx;
+			posY[i] += dy;
+			posZ[i] += dz;
+		}
+	}
+
+	/**
+	 * Integrates the slots of a range. Free slots have zero velocity and spin, so
+	 * they are processed without a branch.
+	 */
+	void integrateRange(int from, int to, float delta) {
+		float[] px = posX, py = posY, pz = posZ;
+		float[] vx = velX, vy = velY, vz = velZ;
+		for (int i = from; i < to; i++) {
+			px[i] += vx[i] * delta;
+			py[i] += vy[i] * delta;
+			pz[i] += vz[i] * delta;
+		}
+		float[] rx = rotX, ry = rotY, rz = rotZ;
+		float[] sx = spinX, sy = spinY, sz = spinZ;
+		for (int i = from; i < to; i++) {
+			rx[i] += sx[i] * delta;
+			ry[i] += sy[i] * delta;
+			rz[i] += sz[i] * delta;
+		}
+	}
+
+	// Getters and setters for single entities
+
+	public int getModelId(int slot) {
+		return modelIds[slot];
+	}
+
+	public void setModelId(int slot, int modelId) {
+		modelIds[slot] = modelId;
+	}
+
+	public float getX(int slot) {
+		return posX[slot];
+	}
+
+	public float getY(int slot) {
+		return posY[slot];
+	}
+
+	public float getZ(int slot) {
+		return posZ[slot];
+	}
+
+	public void setPosition(int slot, float x, float y, float z) {
+		posX[slot] = x;
+		posY[slot] = y;
+		posZ[slot] = z;
+	}
+
+	public void translate(int slot, float dx, float dy, float dz) {
+		posX[slot] += dx;
+		posY[slot] += dy;
+		posZ[slot] += dz;
+	}
+
+	public float getRotX(int slot) {
+		return rotX[slot];
+	}
+
+	public float getRotY(int slot) {
+		return rotY[slot];
+	}
+
+	public float getRotZ(int slot) {
+		return rotZ[slot];
+	}
+
+	public void setRotation(int slot, float rx, float ry, float rz) {
+		rotX[slot] = rx;
+		rotY[slot] = ry;
+		rotZ[slot] = rz;
+	}
+
+	public void rotate(int slot, float dx, float dy, float dz) {
+		rotX[slot] += dx;
+		rotY[slot] += dy;
+		rotZ[slot] += dz;
+	}
+
+	public float getScale(int slot) {
+		return scale[slot];
+	}
+
+	public void setScale(int slot, float s) {
+		scale[slot] = s;
+	}
+
+	public void setVelocity(int slot, float vx, float vy, float vz) {
+		velX[slot] = vx;
+		velY[slot] = vy;
+		velZ[slot] = vz;
+	}
+
+	public void setSpin(int slot, float sx, float sy, float sz) {
+		spinX[slot] = sx;
+		spinY[slot] = sy;
+		spinZ[slot] = sz;
+	}
+
+	/**
+	 * Grows every array to the given number of slots.
+	 */
+	private void grow(int capacity) {
+		posX = Arrays.copyOf(posX, capacity);
+		posY = Arrays.copyOf(posY, capacity);
+		posZ = Arrays.copyOf(posZ, capacity);
+		rotX = Arrays.copyOf(rotX, capacity);
+		rotY = Arrays.copyOf(rotY, capacity);
+		rotZ = Arrays.copyOf(rotZ, capacity);
+		scale = Arrays.copyOf(scale, capacity);
+		velX = Arrays.copyOf(velX, capacity);
+		velY = Arrays.copyOf(velY, capacity);
+		velZ = Arrays.copyOf(velZ, capacity);
+		spinX = Arrays.copyOf(spinX, capacity);
+		spinY = Arrays.copyOf(spinY, capacity);
+		spinZ = Arrays.copyOf(spinZ, capacity);
+		int oldCapacity = modelIds.length;
+		modelIds = Arrays.copyOf(modelIds, capacity);
+		Arrays.fill(modelIds, oldCapacity, capacity, -1);
+		freeSlots = Arrays.copyOf(freeSlots, capacity);
+	}
+
+	/**
+	 * Fork-join task integrating a range of slots, split in halves until the
+	 * range is small enough to run directly.
+	 */
+	private static final class IntegrateTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final EntityStore store;
+		private final int from, to;
+		private final float delta;
+
+		IntegrateTask(EntityStore store, int from, int to, float delta) {
+			this.store = store;
+			this.from = from;
+			this.to = to;
+			this.delta = delta;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_CHUNK) {
+				store.integrateRange(from, to, delta);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new IntegrateTask(store, from, middle, delta), new IntegrateTask(store, middle, to, delta));
+			}
+		}
+	}
+}
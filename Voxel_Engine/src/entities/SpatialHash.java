@@ -0,0 +1,359 @@
+package entities;
+
+import java.util.Arrays;
+
+import toolbox.IntList;
+import toolbox.LongIntHashMap;
+
+/**
+ * The SpatialHash class is a broadphase index answering "which entities are
+ * near this point" without looking at every entity. Space is divided in cubic
+ * cells; each cell is identified by its packed integer coordinates and maps to
+ * the head of an intrusive linked list of the entity ids inside it.
+ *
+ * Entity ids are small non-negative ints, typically EntityStore slots. All the
+ * per-entity data (position, cell, list links) lives in primitive arrays
+ * indexed by id, and the cell table is a LongIntHashMap, so inserting, moving,
+ * removing and querying do not allocate once the arrays have grown.
+ *
+ * Entities are indexed as points. Queries accept an IntList that receives the
+ * ids found; callers reuse the same list between queries.
+ */
+public class SpatialHash {
+
+	// Value returned by the cell table for cells without entities.
+	private static final int NONE = -1;
+
+	// Bits per packed cell coordinate, and the offset making coordinates positive.
+	private static final int CELL_BITS = 21;
+	private static final int CELL_OFFSET = 1 << (CELL_BITS - 1);
+	private static final long CELL_MASK = (1L << CELL_BITS) - 1;
+
+	// Cell of the ids that are not indexed; no packed cell can take this value.
+	private static final long NO_CELL = LongIntHashMap.EMPTY_KEY;
+
+	// Edge length of a cell and its inverse.
+	private final float cellSize;
+	private final float inverseCellSize;
+
+	// Head entity id of every non-empty cell.
+	private final LongIntHashMap cellHeads;
+
+	// Position of each indexed entity.
+	private float[] posX, posY, posZ;
+
+	// Packed cell of each entity, or NO_CELL when the id is not indexed.
+	private long[] cells;
+
+	// Links of the per-cell entity lists.
+	private int[] next, previous;
+
+	// Number of indexed entities.
+	private int size;
+
+	/**
+	 * Creates an empty spatial hash.
+	 *
+	 * @param cellSize The edge length of a cell. Queries are fastest when it is
+	 *                 close to the usual query radius.
+	 * @param capacity The initial number of entity ids; the index grows on demand.
+	 */
+	public SpatialHash(float cellSize, int capacity) {
+		if (cellSize <= 0) {
+			throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+		}
+		this.cellSize = cellSize;
+		this.inverseCellSize = 1f / cellSize;
+		capacity = Math.max(capacity, 16);
+		cellHeads = new LongIntHashMap(capacity, NONE);
+		posX = new float[capacity];
+		posY = new float[capacity];
+		posZ = new float[capacity];
+		cells = new long[capacity];
+		Arrays.fill(cells, NO_CELL);
+		next = new int[capacity];
+		previous = new int[capacity];
+	}
+
+	/**
+	 * Packs cell coordinates into a cell key. Each coordinate keeps 21 bits, so
+	 * the key never reaches the sign bit and never equals the empty key of the
+	 * cell table.
+	 *
+	 * @param cx The X coordinate of the cell.
+	 * @param cy The Y coordinate of the cell.
+	 * @param cz The Z coordinate of the cell.
+	 * @return The cell key.
+	 */
+	public static long packCell(int cx, int cy, int cz) {
+		return ((cx + CELL_OFFSET) & CELL_MASK) << (2 * CELL_BITS)
+				| ((cy + CELL_OFFSET) & CELL_MASK) << CELL_BITS
+				| ((cz + CELL_OFFSET) & CELL_MASK);
+	}
+
+	/**
+	 * Adds an entity to the index.
+	 *
+	 * @param id The id of the entity; must not be indexed already.
+	 * @param x  The X coordinate of the entity.
+	 * @param y  The Y coordinate of the entity.
+	 * @param z  The Z coordinate of the entity.
+	 */
+	public void insert(int id, float x, float y, float z) {
+		if (id >= cells.length) {
+			grow(Math.max(id + 1, cells.length * 2));
+		}
+		if (cells[id] != NO_CELL) {
+			throw new IllegalArgumentException("Entity " + id + " is already indexed");
+		}
+		posX[id] = x;
+		posY[id] = y;
+		posZ[id] = z;
+		link(id, cellOf(x, y, z));
+		size++;
+	}
+
+	/**
+	 * Updates the position of an indexed entity. The cell lists are only touched
+	 * when the entity crosses into another cell.
+	 *
+	 * @param id The id of the entity.
+	 * @param x  The new X coordinate.
+	 * @param y  The new Y coordinate.
+	 * @param z  The new Z coordinate.
+	 */
+	public void move(int id, float x, float y, float z) {
+		posX[id] = x;
+		posY[id] = y;
+		posZ[id] = z;
+		long cell = cellOf(x, y, z);
+		if (cell != cells[id]) {
+			unlink(id);
+			link(id, cell);
+		}
+	}
+
+	/**
+	 * Removes an entity from the index. Does nothing if it is not indexed.
+	 *
+	 * @param id The id of the entity.
+	 */
+	public void remove(int id) {
+		if (id < cells.length && cells[id] != NO_CELL) {
+			unlink(id);
+			cells[id] = NO_CELL;
+			size--;
+		}
+	}
+
+	/**
+	 * Checks whether an entity is indexed.
+	 *
+	 * @param id The id of the entity.
+	 * @return true if the entity is in the index.
+	 */
+	public boolean contains(int id) {
+		return id >= 0 && id < cells.length && cells[id] != NO_CELL;
+	}
+
+	/**
+	 * Gets the number of indexed entities.
+	 *
+	 * @return The entity count.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Brings the index up to date with every live entity of a store, inserting
+	 * new entities and removing destroyed ones. Called once per tick after the
+	 * store has been integrated.
+	 *
+	 * @param store The store whose slots are used as entity ids.
+	 */
+	public void update(EntityStore store) {
+		int limit = store.getSlotLimit();
+		for (int slot = 0; slot < limit; slot++) {
+			boolean indexed = contains(slot);
+			if (store.modelIds[slot] < 0) {
+				if (indexed) {
+					remove(slot);
+				}
+			} else if (indexed) {
+				move(slot, store.posX[slot], store.posY[slot], store.posZ[slot]);
+			} else {
+				insert(slot, store.posX[slot], store.posY[slot], store.posZ[slot]);
+			}
+		}
+	}
+
+	/**
+	 * Finds the entities inside a sphere.
+	 *
+	 * @param x      The X coordinate of the centre.
+	 * @param y      The Y coordinate of the centre.
+	 * @param z      The Z coordinate of the centre.
+	 * @param radius The radius of the sphere.
+	 * @param result The list the ids found are appended to.
+	 * @return The number of ids appended.
+	 */
+	public int queryRange(float x, float y, float z, float radius, IntList result) {
+		int found = 0;
+		float radiusSquared = radius * radius;
+		int minX = cellCoord(x - radius), maxX = cellCoord(x + radius);
+		int minY = cellCoord(y - radius), maxY = cellCoord(y + radius);
+		int minZ = cellCoord(z - radius), maxZ = cellCoord(z + radius);
+		for (int cx = minX; cx <= maxX; cx++) {
+			for (int cy = minY; cy <= maxY; cy++) {
+				for (int cz = minZ; cz <= maxZ; cz++) {
+					for (int id = cellHeads.get(packCell(cx, cy, cz)); id != NONE; id = next[id]) {
+						float dx = posX[id] - x, dy = posY[id] - y, dz = posZ[id] - z;
+						if (dx * dx + dy * dy + dz * dz <= radiusSquared) {
+							result.add(id);
+							found++;
+						}
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Finds the entities inside an axis-aligned box, bounds included.
+	 *
+	 * @param minX   The minimum X coordinate of the box.
+	 * @param minY   The minimum Y coordinate of the box.
+	 * @param minZ   The minimum Z coordinate of the box.
+	 * @param maxX   The maximum X coordinate of the box.
+	 * @param maxY   The maximum Y coordinate of the box.
+	 * @param maxZ   The maximum Z coordinate of the box.
+	 * @param result The list the ids found are appended to.
+	 * @return The number of ids appended.
+	 */
+	public int queryAabb(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, IntList result) {
+		int found = 0;
+		int cellMaxX = cellCoord(maxX), cellMaxY = cellCoord(maxY), cellMaxZ = cellCoord(maxZ);
+		for (int cx = cellCoord(minX); cx <= cellMaxX; cx++) {
+			for (int cy = cellCoord(minY); cy <= cellMaxY; cy++) {
+				for (int cz = cellCoord(minZ); cz <= cellMaxZ; cz++) {
+					for (int id = cellHeads.get(packCell(cx, cy, cz)); id != NONE; id = next[id]) {
+						float px = posX[id], py = posY[id], pz = posZ[id];
+						if (px >= minX && px <= maxX && py >= minY && py <= maxY && pz >= minZ && pz <= maxZ) {
+							result.add(id);
+							found++;
+						}
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Finds the entity closest to a point, searching shells of cells of growing
+	 * size around it and stopping as soon as no unvisited cell can hold a closer
+	 * entity.
+	 *
+	 * @param x         The X coordinate of the point.
+	 * @param y         The Y coordinate of the point.
+	 * @param z         The Z coordinate of the point.
+	 * @param maxRadius The largest distance to search.
+	 * @param excludeId An id to ignore (such as the entity asking), or -1.
+	 * @return The id of the nearest entity, or -1 if none is within maxRadius.
+	 */
+	public int nearest(float x, float y, float z, float maxRadius, int excludeId) {
+		int best = NONE;
+		float bestDistanceSquared = maxRadius * maxRadius;
+		int centerX = cellCoord(x), centerY = cellCoord(y), centerZ = cellCoord(z);
+		int maxRing = (int) Math.ceil(maxRadius * inverseCellSize);
+		for (int ring = 0; ring <= maxRing; ring++) {
+			for (int cx = centerX - ring; cx <= centerX + ring; cx++) {
+				boolean edgeX = cx == centerX - ring || cx == centerX + ring;
+				for (int cy = centerY - ring; cy <= centerY + ring; cy++) {
+					boolean edgeY = edgeX || cy == centerY - ring || cy == centerY + ring;
+					// Inside the shell only the two faces at the Z extremes are new.
+					int stepZ = edgeY ? 1 : Math.max(2 * ring, 1);
+					for (int cz = centerZ - ring; cz <= centerZ + ring; cz += stepZ) {
+						for (int id = cellHeads.get(packCell(cx, cy, cz)); id != NONE; id = next[id]) {
+							if (id == excludeId) {
+								continue;
+							}
+							float dx = posX[id] - x, dy = posY[id] - y, dz = posZ[id] - z;
+							float distanceSquared = dx * dx + dy * dy + dz * dz;
+							if (distanceSquared <= bestDistanceSquared) {
+								best = id;
+								bestDistanceSquared = distanceSquared;
+							}
+						}
+					}
+				}
+			}
+			// Every cell of the next shell is at least ring cells away from the point.
+			float shellDistance = ring * cellSize;
+			if (best != NONE && shellDistance * shellDistance >= bestDistanceSquared) {
+				break;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Gets the cell coordinate containing a world coordinate.
+	 */
+	private int cellCoord(float coordinate) {
+		return (int) Math.floor(coordinate * inverseCellSize);
+	}
+
+	/**
+	 * Gets the packed cell containing a position.
+	 */
+	private long cellOf(float x, float y, float z) {
+		return packCell(cellCoord(x), cellCoord(y), cellCoord(z));
+	}
+
+	/**
+	 * Pushes an entity at the head of a cell's list.
+	 */
+	private void link(int id, long cell) {
+		int head = cellHeads.put(cell, id);
+		cells[id] = cell;
+		previous[id] = NONE;
+		next[id] = head;
+		if (head != NONE) {
+			previous[head] = id;
+		}
+	}
+
+	/**
+	 * Takes an entity out of its cell's list, dropping the cell when it empties.
+	 */
+	private void unlink(int id) {
+		int before = previous[id], after = next[id];
+		if (before != NONE) {
+			next[before] = after;
+		} else if (after != NONE) {
+			cellHeads.put(cells[id], after);
+		} else {
+			cellHeads.remove(cells[id]);
+		}
+		if (after != NONE) {
+			previous[after] = before;
+		}
+	}
+
+	/**
+	 * Grows the per-entity arrays to the given number of ids.
+	 */
+	private void grow(int capacity) {
+		int oldCapacity = cells.length;
+		posX = Arrays.copyOf(posX, capacity);
+		posY = Arrays.copyOf(posY, capacity);
+		posZ = Arrays.copyOf(posZ, capacity);
+		cells = Arrays.copyOf(cells, capacity);
+		Arrays.fill(cells, oldCapacity, capacity, NO_CELL);
+		next = Arrays.copyOf(next, capacity);
+		previous = Arrays.copyOf(previous, capacity);
+	}
+}
@@ -0,0 +1,122 @@
+package entities;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import models.TexturedModel;
+
+/**
+ * The StoredEntity class is an Entity whose state lives in a slot of an
+ * EntityStore. It lets code written against Entity (the renderer, the chunk
+ * code) use entities from the store without copying them back and forth.
+ *
+ * getPosition returns a vector refreshed from the store on every call; changes
+ * made to that vector are not written back, so positions must be changed
+ * through setPosition or increasePosition.
+ */
+public class StoredEntity extends Entity {
+
+	// The store holding the entity's state
+	private final EntityStore store;
+	// The slot of the entity in the store
+	private final int slot;
+	// Vector reused by getPosition
+	private final Vector3f position = new Vector3f();
+
+	/**
+	 * Creates a view of an entity of a store.
+	 *
+	 * @param store The store holding the entity.
+	 * @param slot  The slot of the entity.
+	 */
+	public StoredEntity(EntityStore store, int slot) {
+		super(null, null, 0, 0, 0, 0);
+		this.store = store;
+		this.slot = slot;
+	}
+
+	@Override
+	public void increasePosition(float dx, float dy, float dz) {
+		store.translate(slot, dx, dy, dz);
+	}
+
+	@Override
+	public void increaseRotation(float dx, float dy, float dz) {
+		store.rotate(slot, dx, dy, dz);
+	}
+
+	@Override
+	public void increaseScale(float scale) {
+		store.setScale(slot, store.getScale(slot) + scale);
+	}
+
+	// Getters and setters reading and writing the store
+
+	public EntityStore getStore() {
+		return store;
+	}
+
+	public int getSlot() {
+		return slot;
+	}
+
+	@Override
+	public TexturedModel getModel() {
+		return store.getModel(store.getModelId(slot));
+	}
+
+	@Override
+	public void setModel(TexturedModel model) {
+		store.setModelId(slot, store.registerModel(model));
+	}
+
+	@Override
+	public Vector3f getPosition() {
+		position.set(store.getX(slot), store.getY(slot), store.getZ(slot));
+		return position;
+	}
+
+	@Override
+	public void setPosition(Vector3f position) {
+		store.setPosition(slot, position.x, position.y, position.z);
+	}
+
+	@Override
+	public float getRotX() {
+		return store.getRotX(slot);
+	}
+
+	@Override
+	public void setRotX(float rotX) {
+		store.setRotation(slot, rotX, store.getRotY(slot), store.getRotZ(slot));
+	}
+
+	@Override
+	public float getRotY() {
+		return store.getRotY(slot);
+	}
+
+	@Override
+	public void setRotY(float rotY) {
+		store.setRotation(slot, store.getRotX(slot), rotY, store.getRotZ(slot));
+	}
+
+	@Override
+	public float getRotZ() {
+		return store.getRotZ(slot);
+	}
+
+	@Override
+	public void setRotZ(float rotZ) {
+		store.setRotation(slot, store.getRotX(slot), store.getRotY(slot), rotZ);
+	}
+
+	@Override
+	public float getScale() {
+		return store.getScale(slot);
+	}
+
+	@Override
+	public void setScale(float scale) {
+		store.setScale(slot, scale);
+	}
+}
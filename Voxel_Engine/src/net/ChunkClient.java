@@ -0,0 +1,256 @@
+package net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import entities.Camera;
+import toolbox.Instrumentation;
+import toolbox.TimingStats;
+import world.BlockChangeListener;
+import world.ChunkSection;
+import world.World;
+
+/**
+ * The ChunkClient class keeps a copy of the part of a ChunkServer's world
+ * around a camera: it sends the camera and its block edits to the server, and
+ * loads the sections the server streams into its own world, applies the
+ * changes, and drops the sections the server unloads. The socket is
+ * non-blocking and driven by a selector the client is registered with, so one
+ * thread can drive many clients.
+ *
+ * The client measures how long the sections and changes took to reach it from
+ * the server, which is only meaningful when both run in the same process, as
+ * on loopback in the benchmarks.
+ *
+ * Not thread-safe; used by the thread driving its selector.
+ */
+public class ChunkClient {
+
+	private final World world;
+	private final Connection connection;
+	private final SectionCodec codec = new SectionCodec();
+
+	// Time from a section or a batch of changes being queued by the server to its arrival here.
+	private final TimingStats sectionLatency, deltaLatency;
+
+	// Told about every block the changes from the server change.
+	private BlockChangeListener listener;
+
+	// What was received so far.
+	private long sectionsReceived, unloadsReceived, deltasReceived, deltaFrames;
+
+	/**
+	 * Connects a client to a server, recording the latencies into the shared
+	 * "net.sectionLatency" and "net.deltaLatency" timings.
+	 *
+	 * @param address The server's address.
+	 * @param world   The world receiving the streamed sections.
+	 * @throws IOException If the server cannot be reached.
+	 */
+	public ChunkClient(InetSocketAddress address, World world) throws IOException {
+		this(address, world, Instrumentation.timing("net.sectionLatency"), Instrumentation.timing("net.deltaLatency"));
+	}
+
+	/**
+	 * Connects a client to a server.
+	 *
+	 * @param address        The server's address.
+	 * @param world          The world receiving the streamed sections.
+	 * @param sectionLatency Where the latency of the sections is recorded.
+	 * @param deltaLatency   Where the latency of the changes is recorded.
+	 * @throws IOException If the server cannot be reached.
+	 */
+	public ChunkClient(InetSocketAddress address, World world, TimingStats sectionLatency, TimingStats deltaLatency)
+			throws IOException {
+		this.world = world;
+		this.sectionLatency = sectionLatency;
+		this.deltaLatency = deltaLatency;
+		SocketChannel channel = SocketChannel.open(address);
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		connection = new Connection(channel);
+	}
+
+	/**
+	 * Registers the client with the selector that drives it. Its selection
+	 * key's attachment is the client.
+	 *
+	 * @param selector The selector.
+	 * @throws IOException If the socket is closed.
+	 */
+	public void register(Selector selector) throws IOException {
+		connection.setKey(connection.getChannel().register(selector, SelectionKey.OP_READ, this));
+		connection.flush(); // Ask for a write event if frames are waiting
+	}
+
+	/**
+	 * Handles a selection event: reads and applies what the server sent, and
+	 * writes what is queued for it.
+	 *
+	 * @param key The client's selection key.
+	 * @throws IOException If the connection fails or the server sends a
+	 *                     malformed frame.
+	 */
+	public void handle(SelectionKey key) throws IOException {
+		if (key.isReadable()) {
+			connection.read(this::receive);
+		}
+		if (key.isValid() && key.isWritable()) {
+			connection.flush();
+		}
+	}
+
+	/**
+	 * Sends the camera the server streams the world around.
+	 *
+	 * @param camera The camera.
+	 * @throws IOException If the connection fails.
+	 */
+	public void sendCamera(Camera camera) throws IOException {
+		connection.send(Protocol.camera(camera));
+	}
+
+	/**
+	 * Sends a block edit. It is applied here once the server sends it back.
+	 *
+	 * @param x  The X block coordinate.
+	 * @param y  The Y block coordinate.
+	 * @param z  The Z block coordinate.
+	 * @param id The block id.
+	 * @throws IOException If the connection fails.
+	 */
+	public void sendEdit(int x, int y, int z, short id) throws IOException {
+		connection.send(Protocol.edit(x, y, z, id));
+	}
+
+	/**
+	 * Sets the listener told about the blocks changed by the server, so the
+	 * light and meshes of the copy follow them.
+	 *
+	 * @param listener The listener, or null.
+	 */
+	public void setListener(BlockChangeListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Closes the connection.
+	 */
+	public void close() {
+		connection.close();
+	}
+
+	/**
+	 * Handles a frame from the server.
+	 */
+	private void receive(byte type, ByteBuffer payload) throws IOException {
+		long now = System.nanoTime();
+		switch (type) {
+		case Protocol.SECTION: {
+			if (payload.remaining() < 20) {
+				throw new IOException("Bad SECTION frame");
+			}
+			int sx = payload.getInt(), sy = payload.getInt(), sz = payload.getInt();
+			long stamp = payload.getLong();
+			ChunkSection section;
+			try {
+				section = codec.decode(payload.array(), payload.arrayOffset() + payload.position(),
+						payload.remaining(), sx, sy, sz);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Bad SECTION frame", e);
+			}
+			world.getRegistry().remove(sx, sy, sz);
+			world.addSection(section);
+			sectionsReceived++;
+			sectionLatency.record(now - stamp);
+			break;
+		}
+		case Protocol.UNLOAD:
+			if (payload.remaining() != 12) {
+				throw new IOException("Bad UNLOAD frame");
+			}
+			world.getRegistry().remove(payload.getInt(), payload.getInt(), payload.getInt());
+			unloadsReceived++;
+			break;
+		case Protocol.DELTAS: {
+			if (payload.remaining() < 12) {
+				throw new IOException("Bad DELTAS frame");
+			}
+			long stamp = payload.getLong();
+			int count = payload.getInt();
+			// The count is bounded first, so a bad one cannot overflow the product.
+			if (count < 0 || count > Protocol.MAX_FRAME_BYTES / Protocol.DELTA_BYTES
+					|| payload.remaining() != count * Protocol.DELTA_BYTES) {
+				throw new IOException("Bad DELTAS frame");
+			}
+			for (int i = 0; i < count; i++) {
+				int x = payload.getInt(), y = payload.getShort(), z = payload.getInt();
+				short id = payload.getShort();
+				ChunkSection section = world.getSection(x >> ChunkSection.SHIFT, y >> ChunkSection.SHIFT,
+						z >> ChunkSection.SHIFT);
+				if (section == null) {
+					continue; // Unloaded since; it comes back with the change
+				}
+				short previous = section.setBlock(x & ChunkSection.MASK, y & ChunkSection.MASK,
+						z & ChunkSection.MASK, id);
+				if (previous != id && listener != null) {
+					listener.blockChanged(x, y, z, previous, id);
+				}
+			}
+			deltasReceived += count;
+			deltaFrames++;
+			deltaLatency.record(now - stamp);
+			break;
+		}
+		default:
+			throw new IOException("Unknown frame type: " + type);
+		}
+	}
+
+	public long getSectionsReceived() {
+		return sectionsReceived;
+	}
+
+	public long getUnloadsReceived() {
+		return unloadsReceived;
+	}
+
+	public long getDeltasReceived() {
+		return deltasReceived;
+	}
+
+	public long getDeltaFrames() {
+		return deltaFrames;
+	}
+
+	/**
+	 * Gets the number of bytes received from the server so far.
+	 *
+	 * @return The byte count.
+	 */
+	public long getBytesReceived() {
+		return connection.getBytesRead();
+	}
+
+	/**
+	 * Gets the number of bytes sent to the server so far.
+	 *
+	 * @return The byte count.
+	 */
+	public long getBytesSent() {
+		return connection.getBytesWritten();
+	}
+
+	/**
+	 * Gets the number of bytes waiting to be sent to the server.
+	 *
+	 * @return The queued byte count.
+	 */
+	public long getQueuedBytes() {
+		return connection.getQueuedBytes();
+	}
+}
@@ -0,0 +1,612 @@
+package net;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import entities.Camera;
+import toolbox.IntList;
+import toolbox.LongIntHashMap;
+import world.Block;
+import world.ChunkRegistry;
+import world.ChunkSection;
+import world.World;
+
+/**
+ * The ChunkServer class owns a world and streams it to clients over
+ * non-blocking sockets, all on one thread driving a selector. Each client
+ * sends its camera, and the server sends it the sections around it, nearest
+ * first, then the changes made to the sections it holds, and tells it to drop
+ * the sections it left behind (interest management). Block edits come from
+ * the clients, or from other threads through setBlock; the server applies
+ * them to its world and forwards them.
+ *
+ * Sections are streamed a few times per second, each time only while the
+ * client's send queue holds less than a high-water mark, so a slow client
+ * gets sections at the pace it reads them rather than piling them up in the
+ * server (backpressure); a client whose queue still grows past a hard limit is
+ * disconnected. Changes are batched per client and sent once per streaming
+ * round, many to a frame. Encoded sections are cached while a client holds
+ * them and until they change, so clients looking at the same area share the
+ * encoding work.
+ *
+ * The server only streams loaded sections; generating the world is up to its
+ * owner, and may go on while clients are connected: when sections are loaded,
+ * the walk around each camera starts over, skipping the sections already
+ * sent. Once started, the blocks of the world must only be changed through the
+ * server. The statistics are kept by the server's thread and read by others
+ * without locking, as approximate figures until the server stops.
+ */
+public class ChunkServer implements Runnable {
+
+	/** Number of streaming rounds per second. */
+	public static final int SEND_RATE = 20;
+
+	// Duration of a streaming round in nanoseconds.
+	private static final long SEND_NANOS = 1_000_000_000L / SEND_RATE;
+
+	// Queued bytes past which no more sections are sent to a client this round.
+	private static final long HIGH_WATER_BYTES = 256 * 1024;
+
+	// Queued bytes past which a client is disconnected.
+	private static final long MAX_QUEUED_BYTES = 16 * 1024 * 1024;
+
+	// Most changes per DELTAS frame.
+	private static final int MAX_DELTAS_PER_FRAME = 4096;
+
+	/**
+	 * What the server knows of a client.
+	 */
+	private static final class Session {
+		final Connection connection;
+
+		// The client's camera, and whether it was received yet.
+		final Camera camera = new Camera(new Vector3f(), 0, 0, 0);
+		boolean hasCamera;
+
+		// Section column the camera is in, and the next offset of the nearest-first walk around it.
+		int centreX, centreZ;
+		int cursor;
+
+		// Registry version when the walk last started over.
+		int walkVersion;
+
+		// Sections sent: sx, sy, sz per section, and the slot of each keyed by ChunkRegistry.key.
+		int[] sent = new int[3 * 256];
+		int sentCount;
+		final LongIntHashMap sentSlots = new LongIntHashMap(256, -1);
+
+		// Changes to send: x, y, z, block id per change, and the time the first was made.
+		final IntList deltas = new IntList(64);
+		long deltaStamp;
+
+		Session(Connection connection) {
+			this.connection = connection;
+		}
+	}
+
+	private final World world;
+
+	// Radius of the area streamed around each camera, in section columns, and the section layers of a column.
+	private final int viewRadius;
+	private final int sectionsY;
+
+	// Column offsets within the view radius, nearest first: dx, dz per column.
+	private final int[] offsets;
+
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+
+	// Connected clients.
+	private final List<Session> sessions = new ArrayList<Session>();
+
+	// Encodes the sections, and the encoded sections not changed since, keyed by ChunkRegistry.key.
+	private final SectionCodec codec = new SectionCodec();
+	private final Map<Long, byte[]> encoded = new HashMap<Long, byte[]>();
+
+	// Number of clients holding each section, keyed by ChunkRegistry.key; a section no client holds is dropped from
+	// the cache.
+	private final LongIntHashMap holders = new LongIntHashMap(1024, 0);
+
+	// Edits made by other threads: x, y, z, block id per edit; swapped with the second list to be applied.
+	private IntList inbox = new IntList(64), applying = new IntList(64);
+
+	private volatile boolean running = true;
+
+	// Statistics.
+	private long clientsAccepted, clientsDropped, sectionsSent, unloadsSent, deltasSent, deltaFrames, editsApplied,
+			cacheHits;
+
+	/**
+	 * Creates a server listening on an address.
+	 *
+	 * @param world      The world to stream.
+	 * @param address    The address to listen on; port 0 picks a free port.
+	 * @param viewRadius The radius of the area streamed around each camera, in
+	 *                   section columns.
+	 * @param sectionsY  The number of section layers of a column, from Y = 0.
+	 * @throws IOException If the address cannot be bound.
+	 */
+	public ChunkServer(World world, InetSocketAddress address, int viewRadius, int sectionsY) throws IOException {
+		if (viewRadius < 0 || sectionsY < 1) {
+			throw new IllegalArgumentException("Bad view radius or column height: " + viewRadius + ", " + sectionsY);
+		}
+		this.world = world;
+		this.viewRadius = viewRadius;
+		this.sectionsY = sectionsY;
+		this.offsets = nearestFirst(viewRadius);
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.configureBlocking(false);
+		serverChannel.bind(address);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	/**
+	 * Gets the address the server listens on.
+	 *
+	 * @return The address.
+	 * @throws IOException If the socket is closed.
+	 */
+	public InetSocketAddress getAddress() throws IOException {
+		return (InetSocketAddress) serverChannel.getLocalAddress();
+	}
+
+	/**
+	 * Starts the server on a new daemon thread.
+	 */
+	public void start() {
+		Thread thread = new Thread(this, "chunk-server");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the server after the current round and closes every connection.
+	 */
+	public void stop() {
+		running = false;
+		selector.wakeup();
+	}
+
+	/**
+	 * Edits a block of the world from another thread. The edit is applied, and
+	 * forwarded to the clients holding its section, by the server's thread.
+	 *
+	 * @param x  The X block coordinate.
+	 * @param y  The Y block coordinate.
+	 * @param z  The Z block coordinate.
+	 * @param id The block id.
+	 */
+	public void setBlock(int x, int y, int z, short id) {
+		if (id < 0 || id >= Block.COUNT) {
+			throw new IllegalArgumentException("Bad block id: " + id);
+		}
+		synchronized (this) {
+			inbox.add(x);
+			inbox.add(y);
+			inbox.add(z);
+			inbox.add(id);
+		}
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		long nextRound = System.nanoTime();
+		try {
+			while (running) {
+				long wait = (nextRound - System.nanoTime()) / 1_000_000;
+				if (wait > 0) {
+					selector.select(wait);
+				} else {
+					selector.selectNow();
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+					} else {
+						handle(key);
+					}
+				}
+				applyInbox();
+
+				long now = System.nanoTime();
+				if (now - nextRound >= 0) {
+					for (int i = sessions.size() - 1; i >= 0; i--) {
+						round(sessions.get(i));
+					}
+					nextRound += SEND_NANOS;
+					if (now - nextRound >= 0) {
+						nextRound = now + SEND_NANOS; // Skip the rounds we fell behind on
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Chunk server failed", e);
+		} finally {
+			for (Session session : sessions) {
+				session.connection.close();
+			}
+			sessions.clear();
+			try {
+				serverChannel.close();
+				selector.close();
+			} catch (IOException e) {
+				// Closing anyway
+			}
+		}
+	}
+
+	/**
+	 * Accepts the pending connections.
+	 */
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = serverChannel.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			Session session = new Session(new Connection(channel));
+			session.connection.setKey(channel.register(selector, SelectionKey.OP_READ, session));
+			sessions.add(session);
+			clientsAccepted++;
+		}
+	}
+
+	/**
+	 * Reads the frames of a client, and writes what is queued for it.
+	 */
+	private void handle(SelectionKey key) {
+		Session session = (Session) key.attachment();
+		try {
+			if (key.isReadable()) {
+				session.connection.read((type, payload) -> receive(session, type, payload));
+			}
+			if (key.isValid() && key.isWritable()) {
+				session.connection.flush();
+			}
+		} catch (IOException e) {
+			disconnect(session);
+		}
+	}
+
+	/**
+	 * Handles a frame from a client.
+	 */
+	private void receive(Session session, byte type, ByteBuffer payload) throws IOException {
+		switch (type) {
+		case Protocol.CAMERA:
+			if (payload.remaining() != 24) {
+				throw new IOException("Bad CAMERA frame");
+			}
+			session.camera.set(payload.getFloat(), payload.getFloat(), payload.getFloat(), payload.getFloat(),
+					payload.getFloat(), payload.getFloat());
+			moveCamera(session);
+			break;
+		case Protocol.EDIT:
+			if (payload.remaining() != 14) {
+				throw new IOException("Bad EDIT frame");
+			}
+			int x = payload.getInt(), y = payload.getInt(), z = payload.getInt();
+			short id = payload.getShort();
+			if (id < 0 || id >= Block.COUNT) {
+				throw new IOException("Bad block id in EDIT frame: " + id);
+			}
+			applyEdit(x, y, z, id);
+			break;
+		default:
+			throw new IOException("Unknown frame type: " + type);
+		}
+	}
+
+	/**
+	 * Follows a client's camera: when it enters another column, the walk
+	 * around it starts over and the sections left behind are dropped.
+	 */
+	private void moveCamera(Session session) throws IOException {
+		int centreX = (int) Math.floor(session.camera.getPosition().x) >> ChunkSection.SHIFT;
+		int centreZ = (int) Math.floor(session.camera.getPosition().z) >> ChunkSection.SHIFT;
+		if (session.hasCamera && centreX == session.centreX && centreZ == session.centreZ) {
+			return;
+		}
+		session.hasCamera = true;
+		session.centreX = centreX;
+		session.centreZ = centreZ;
+		session.cursor = 0;
+
+		// Drop the sections a column beyond the view radius, so a camera going
+		// back and forth over a border does not make them stream again.
+		int keep = (viewRadius + 1) * (viewRadius + 1);
+		for (int slot = session.sentCount - 1; slot >= 0; slot--) {
+			int sx = session.sent[slot * 3], sy = session.sent[slot * 3 + 1], sz = session.sent[slot * 3 + 2];
+			int dx = sx - centreX, dz = sz - centreZ;
+			if (dx * dx + dz * dz > keep) {
+				removeSent(session, slot);
+				session.connection.send(Protocol.unload(sx, sy, sz));
+				unloadsSent++;
+			}
+		}
+	}
+
+	/**
+	 * Runs a streaming round of a client: the batched changes first, then the
+	 * sections around its camera it does not hold yet, nearest first, while its
+	 * queue stays under the high-water mark.
+	 */
+	private void round(Session session) {
+		Connection connection = session.connection;
+		try {
+			flushDeltas(session);
+			if (session.hasCamera) {
+				// Sections loaded since the walk passed their column are picked up
+				// by walking again; the sections already sent are skipped.
+				int version = world.getRegistry().getVersion();
+				if (version != session.walkVersion) {
+					session.walkVersion = version;
+					session.cursor = 0;
+				}
+				while (session.cursor < offsets.length / 2 && connection.getQueuedBytes() < HIGH_WATER_BYTES) {
+					int sx = session.centreX + offsets[session.cursor * 2];
+					int sz = session.centreZ + offsets[session.cursor * 2 + 1];
+					session.cursor++;
+					for (int sy = 0; sy < sectionsY; sy++) {
+						long key = ChunkRegistry.key(sx, sy, sz);
+						if (session.sentSlots.containsKey(key)) {
+							continue;
+						}
+						ChunkSection section = world.getSection(sx, sy, sz);
+						if (section == null) {
+							continue; // Not generated yet; walked again once sections load
+						}
+						connection.send(Protocol.section(sx, sy, sz, System.nanoTime(), encode(key, section)));
+						addSent(session, sx, sy, sz, key);
+						sectionsSent++;
+					}
+				}
+			}
+			if (connection.getQueuedBytes() > MAX_QUEUED_BYTES) {
+				clientsDropped++;
+				disconnect(session);
+			}
+		} catch (IOException e) {
+			disconnect(session);
+		}
+	}
+
+	/**
+	 * Applies the edits made by other threads.
+	 */
+	private void applyInbox() {
+		synchronized (this) {
+			IntList swap = inbox;
+			inbox = applying;
+			applying = swap;
+		}
+		for (int i = 0; i < applying.size(); i += 4) {
+			applyEdit(applying.get(i), applying.get(i + 1), applying.get(i + 2), (short) applying.get(i + 3));
+		}
+		applying.clear();
+	}
+
+	/**
+	 * Applies an edit to a loaded section, and queues it for the clients
+	 * holding the section. Edits of sections that are not loaded are dropped.
+	 */
+	private void applyEdit(int x, int y, int z, short id) {
+		int sx = x >> ChunkSection.SHIFT, sy = y >> ChunkSection.SHIFT, sz = z >> ChunkSection.SHIFT;
+		ChunkSection section = world.getSection(sx, sy, sz);
+		if (section == null) {
+			return;
+		}
+		short previous = section.setBlock(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK, id);
+		if (previous == id) {
+			return;
+		}
+		editsApplied++;
+		long key = ChunkRegistry.key(sx, sy, sz);
+		encoded.remove(key);
+		long now = System.nanoTime();
+		for (int i = 0; i < sessions.size(); i++) {
+			Session session = sessions.get(i);
+			if (session.sentSlots.containsKey(key)) {
+				if (session.deltas.size() == 0) {
+					session.deltaStamp = now;
+				}
+				session.deltas.add(x);
+				session.deltas.add(y);
+				session.deltas.add(z);
+				session.deltas.add(id);
+			}
+		}
+	}
+
+	/**
+	 * Sends the batched changes of a client.
+	 */
+	private void flushDeltas(Session session) throws IOException {
+		int count = session.deltas.size() / 4;
+		for (int from = 0; from < count; from += MAX_DELTAS_PER_FRAME) {
+			int to = Math.min(count, from + MAX_DELTAS_PER_FRAME);
+			session.connection.send(Protocol.deltas(session.deltas, from, to, session.deltaStamp));
+			deltaFrames++;
+		}
+		deltasSent += count;
+		session.deltas.clear();
+	}
+
+	/**
+	 * Gets the encoded blocks of a section from the cache, encoding them if
+	 * they changed since they were last encoded.
+	 */
+	private byte[] encode(long key, ChunkSection section) {
+		byte[] data = encoded.get(key);
+		if (data != null) {
+			cacheHits++;
+			return data;
+		}
+		data = codec.encode(section);
+		encoded.put(key, data);
+		return data;
+	}
+
+	private void disconnect(Session session) {
+		session.connection.close();
+		if (sessions.remove(session)) {
+			int[] sent = session.sent;
+			for (int slot = 0; slot < session.sentCount; slot++) {
+				release(ChunkRegistry.key(sent[slot * 3], sent[slot * 3 + 1], sent[slot * 3 + 2]));
+			}
+		}
+	}
+
+	/**
+	 * Records a section sent to a client.
+	 */
+	private void addSent(Session session, int sx, int sy, int sz, long key) {
+		if (session.sentCount * 3 == session.sent.length) {
+			session.sent = Arrays.copyOf(session.sent, session.sent.length * 2);
+		}
+		int offset = session.sentCount * 3;
+		session.sent[offset] = sx;
+		session.sent[offset + 1] = sy;
+		session.sent[offset + 2] = sz;
+		session.sentSlots.put(key, session.sentCount++);
+		holders.put(key, holders.get(key) + 1);
+	}
+
+	/**
+	 * Forgets a section sent to a client, moving the last one into its slot.
+	 */
+	private void removeSent(Session session, int slot) {
+		int[] sent = session.sent;
+		long key = ChunkRegistry.key(sent[slot * 3], sent[slot * 3 + 1], sent[slot * 3 + 2]);
+		session.sentSlots.remove(key);
+		release(key);
+		int last = --session.sentCount;
+		if (slot != last) {
+			sent[slot * 3] = sent[last * 3];
+			sent[slot * 3 + 1] = sent[last * 3 + 1];
+			sent[slot * 3 + 2] = sent[last * 3 + 2];
+			session.sentSlots.put(ChunkRegistry.key(sent[slot * 3], sent[slot * 3 + 1], sent[slot * 3 + 2]), slot);
+		}
+	}
+
+	/**
+	 * Counts a client fewer holding a section, dropping its encoding from the
+	 * cache when it was the last.
+	 */
+	private void release(long key) {
+		int count = holders.get(key) - 1;
+		if (count > 0) {
+			holders.put(key, count);
+		} else {
+			holders.remove(key);
+			encoded.remove(key);
+		}
+	}
+
+	/**
+	 * Lists the column offsets within a radius, nearest first.
+	 */
+	private static int[] nearestFirst(int radius) {
+		List<int[]> columns = new ArrayList<int[]>();
+		for (int dx = -radius; dx <= radius; dx++) {
+			for (int dz = -radius; dz <= radius; dz++) {
+				if (dx * dx + dz * dz <= radius * radius) {
+					columns.add(new int[] { dx, dz });
+				}
+			}
+		}
+		columns.sort((a, b) -> Integer.compare(a[0] * a[0] + a[1] * a[1], b[0] * b[0] + b[1] * b[1]));
+		int[] offsets = new int[columns.size() * 2];
+		for (int i = 0; i < columns.size(); i++) {
+			offsets[i * 2] = columns.get(i)[0];
+			offsets[i * 2 + 1] = columns.get(i)[1];
+		}
+		return offsets;
+	}
+
+	/**
+	 * Gets the number of clients connected.
+	 *
+	 * @return The client count.
+	 */
+	public int getClientCount() {
+		return sessions.size();
+	}
+
+	public long getClientsAccepted() {
+		return clientsAccepted;
+	}
+
+	/**
+	 * Gets the number of clients disconnected for reading too slowly.
+	 *
+	 * @return The dropped client count.
+	 */
+	public long getClientsDropped() {
+		return clientsDropped;
+	}
+
+	public long getSectionsSent() {
+		return sectionsSent;
+	}
+
+	public long getUnloadsSent() {
+		return unloadsSent;
+	}
+
+	public long getDeltasSent() {
+		return deltasSent;
+	}
+
+	/**
+	 * Gets the number of DELTAS frames sent, each carrying a batch of changes.
+	 *
+	 * @return The frame count.
+	 */
+	public long getDeltaFrames() {
+		return deltaFrames;
+	}
+
+	public long getEditsApplied() {
+		return editsApplied;
+	}
+
+	/**
+	 * Gets the number of sections sent from the encoding cache.
+	 *
+	 * @return The cache hit count.
+	 */
+	public long getCacheHits() {
+		return cacheHits;
+	}
+
+	/**
+	 * Gets the codec encoding the sections, for its statistics.
+	 *
+	 * @return The codec.
+	 */
+	public SectionCodec getCodec() {
+		return codec;
+	}
+}
@@ -0,0 +1,196 @@
+package net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * The Connection class frames the messages of one non-blocking socket (see
+ * Protocol): it splits what arrives into frames, and queues the frames to send
+ * until the socket takes them. The bytes queued are counted, so the owner can
+ * hold back when a peer reads slower than it is sent to (backpressure).
+ *
+ * Not thread-safe; used by the thread owning the socket's selector.
+ */
+final class Connection {
+
+	/**
+	 * Receives the frames of a connection.
+	 */
+	interface FrameHandler {
+
+		/**
+		 * Handles a frame. The payload buffer is only valid during the call.
+		 *
+		 * @param type    The frame type.
+		 * @param payload The payload, from its position to its limit.
+		 * @throws IOException If the frame is malformed.
+		 */
+		void frame(byte type, ByteBuffer payload) throws IOException;
+	}
+
+	// Initial size of the receive buffer; it grows to hold the largest frame.
+	private static final int READ_BUFFER_BYTES = 64 * 1024;
+
+	private final SocketChannel channel;
+
+	// Key of the channel with its selector, set once registered.
+	private SelectionKey key;
+
+	// Received bytes not handled yet, in write mode.
+	private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_BYTES);
+
+	// Frames waiting for the socket, the first one maybe partly written.
+	private final ArrayDeque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+	private long queuedBytes;
+
+	// Bytes read and written so far.
+	private long bytesRead, bytesWritten;
+
+	Connection(SocketChannel channel) {
+		this.channel = channel;
+	}
+
+	SocketChannel getChannel() {
+		return channel;
+	}
+
+	void setKey(SelectionKey key) {
+		this.key = key;
+	}
+
+	/**
+	 * Reads what the socket holds and handles every complete frame.
+	 *
+	 * @param handler The handler of the frames.
+	 * @throws IOException If the socket fails, the peer closed it, or a frame
+	 *                     is malformed.
+	 */
+	void read(FrameHandler handler) throws IOException {
+		while (true) {
+			int read = channel.read(in);
+			if (read < 0) {
+				throw new EOFException("Connection closed by peer");
+			}
+			if (read == 0) {
+				return;
+			}
+			bytesRead += read;
+
+			in.flip();
+			while (in.remaining() >= Protocol.HEADER_BYTES) {
+				int start = in.position();
+				int length = checkLength(in.getInt(start));
+				if (in.remaining() < 4 + length) {
+					break;
+				}
+				ByteBuffer payload = in.duplicate();
+				payload.position(start + Protocol.HEADER_BYTES).limit(start + 4 + length);
+				handler.frame(in.get(start + 4), payload);
+				in.position(start + 4 + length);
+			}
+
+			// Keep the partial frame, growing the buffer if it cannot hold it. The
+			// length is checked first, so a peer cannot make it allocate at will.
+			int pending = in.remaining() >= 4 ? checkLength(in.getInt(in.position())) : 0;
+			if (pending + 4 > in.capacity()) {
+				int size = Math.min(pending + 4, Protocol.HEADER_BYTES + Protocol.MAX_FRAME_BYTES);
+				ByteBuffer grown = ByteBuffer.allocate(size);
+				grown.put(in);
+				in = grown;
+			} else {
+				in.compact();
+			}
+		}
+	}
+
+	/**
+	 * Checks the length prefix of a frame: its type byte and payload.
+	 *
+	 * @return The length.
+	 * @throws IOException If the length is out of range.
+	 */
+	private static int checkLength(int length) throws IOException {
+		if (length < 1 || length > Protocol.MAX_FRAME_BYTES + 1) {
+			throw new IOException("Bad frame length: " + length);
+		}
+		return length;
+	}
+
+	/**
+	 * Queues a frame and writes what the socket takes at once.
+	 *
+	 * @param frame The frame, ready to be written.
+	 * @throws IOException If the socket fails.
+	 */
+	void send(ByteBuffer frame) throws IOException {
+		out.add(frame);
+		queuedBytes += frame.remaining();
+		if (out.size() == 1) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes queued frames until the socket takes no more, and asks the
+	 * selector for a write event if some remain.
+	 *
+	 * @return true if every queued frame was written.
+	 * @throws IOException If the socket fails.
+	 */
+	boolean flush() throws IOException {
+		while (!out.isEmpty()) {
+			ByteBuffer frame = out.peek();
+			int written = channel.write(frame);
+			bytesWritten += written;
+			queuedBytes -= written;
+			if (frame.hasRemaining()) {
+				break;
+			}
+			out.poll();
+		}
+		if (key != null && key.isValid()) {
+			int ops = out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+			if (key.interestOps() != ops) {
+				key.interestOps(ops);
+			}
+		}
+		return out.isEmpty();
+	}
+
+	/**
+	 * Gets the number of bytes queued and not written yet.
+	 *
+	 * @return The queued byte count.
+	 */
+	long getQueuedBytes() {
+		return queuedBytes;
+	}
+
+	long getBytesRead() {
+		return bytesRead;
+	}
+
+	long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * Closes the socket, dropping the queued frames.
+	 */
+	void close() {
+		if (key != null) {
+			key.cancel();
+		}
+		out.clear();
+		queuedBytes = 0;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// Nothing more to do with a socket that fails to close
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package net;
+
+import java.nio.ByteBuffer;
+
+import entities.Camera;
+import toolbox.IntList;
+
+/**
+ * The Protocol class defines the messages exchanged by the ChunkServer and its
+ * clients. Every message is a frame: its length as an int (counting the type
+ * and the payload), a type byte, then the payload, big-endian.
+ *
+ * From a client to the server:
+ * <ul>
+ * <li>CAMERA: the client's camera (x, y, z, rotX, rotY, rotZ as floats); the
+ * server streams the sections around it.</li>
+ * <li>EDIT: a block edit (x, y, z as ints, the block id as a short).</li>
+ * </ul>
+ * From the server to a client:
+ * <ul>
+ * <li>SECTION: a section (sx, sy, sz as ints), the time it was queued (a long
+ * from System.nanoTime), then its blocks encoded by SectionCodec.</li>
+ * <li>UNLOAD: a section the client should drop (sx, sy, sz as ints).</li>
+ * <li>DELTAS: a batch of block changes in the sections the client holds: the
+ * time the first of them was made (a long), their count (an int), then x (an
+ * int), y (a short), z (an int) and the block id (a short) per change.</li>
+ * </ul>
+ * The times let a client in the same process measure how long messages took
+ * to reach it; they mean nothing across machines.
+ */
+public final class Protocol {
+
+	/** Client to server: the client's camera. */
+	public static final byte CAMERA = 1;
+
+	/** Client to server: a block edit. */
+	public static final byte EDIT = 2;
+
+	/** Server to client: the blocks of a section. */
+	public static final byte SECTION = 16;
+
+	/** Server to client: a section to drop. */
+	public static final byte UNLOAD = 17;
+
+	/** Server to client: a batch of block changes. */
+	public static final byte DELTAS = 18;
+
+	/** Size of the frame header: the length and the type. */
+	public static final int HEADER_BYTES = 5;
+
+	/** Largest frame accepted, header excluded. */
+	public static final int MAX_FRAME_BYTES = 1 << 20;
+
+	/** Size of one change in a DELTAS frame. */
+	public static final int DELTA_BYTES = 12;
+
+	private Protocol() {
+	}
+
+	/**
+	 * Builds a CAMERA frame.
+	 *
+	 * @param camera The camera.
+	 * @return The frame, ready to be written.
+	 */
+	public static ByteBuffer camera(Camera camera) {
+		ByteBuffer frame = frame(CAMERA, 24);
+		frame.putFloat(camera.getPosition().x).putFloat(camera.getPosition().y).putFloat(camera.getPosition().z);
+		frame.putFloat(camera.getRotX()).putFloat(camera.getRotY()).putFloat(camera.getRotZ());
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * Builds an EDIT frame.
+	 *
+	 * @param x  The X block coordinate.
+	 * @param y  The Y block coordinate.
+	 * @param z  The Z block coordinate.
+	 * @param id The block id.
+	 * @return The frame, ready to be written.
+	 */
+	public static ByteBuffer edit(int x, int y, int z, short id) {
+		ByteBuffer frame = frame(EDIT, 14);
+		frame.putInt(x).putInt(y).putInt(z).putShort(id);
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * Builds a SECTION frame.
+	 *
+	 * @param sx      The section's X coordinate.
+	 * @param sy      The section's Y coordinate.
+	 * @param sz      The section's Z coordinate.
+	 * @param stamp   The time the frame is queued.
+	 * @param encoded The blocks, encoded by SectionCodec.
+	 * @return The frame, ready to be written.
+	 */
+	public static ByteBuffer section(int sx, int sy, int sz, long stamp, byte[] encoded) {
+		ByteBuffer frame = frame(SECTION, 20 + encoded.length);
+		frame.putInt(sx).putInt(sy).putInt(sz).putLong(stamp).put(encoded);
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * Builds an UNLOAD frame.
+	 *
+	 * @param sx The section's X coordinate.
+	 * @param sy The section's Y coordinate.
+	 * @param sz The section's Z coordinate.
+	 * @return The frame, ready to be written.
+	 */
+	public static ByteBuffer unload(int sx, int sy, int sz) {
+		ByteBuffer frame = frame(UNLOAD, 12);
+		frame.putInt(sx).putInt(sy).putInt(sz);
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * Builds a DELTAS frame from a range of changes.
+	 *
+	 * @param changes The changes: x, y, z, block id per change.
+	 * @param from    The first change of the range.
+	 * @param to      The end of the range (exclusive).
+	 * @param stamp   The time the first change was made.
+	 * @return The frame, ready to be written.
+	 */
+	public static ByteBuffer deltas(IntList changes, int from, int to, long stamp) {
+		ByteBuffer frame = frame(DELTAS, 12 + (to - from) * DELTA_BYTES);
+		frame.putLong(stamp).putInt(to - from);
+		for (int i = from; i < to; i++) {
+			int offset = i * 4;
+			frame.putInt(changes.get(offset)).putShort((short) changes.get(offset + 1))
+					.putInt(changes.get(offset + 2)).putShort((short) changes.get(offset + 3));
+		}
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * Allocates a frame and writes its header.
+	 */
+	private static ByteBuffer frame(byte type, int payloadBytes) {
+		ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + payloadBytes);
+		frame.putInt(1 + payloadBytes).put(type);
+		return frame;
+	}
+}
@@ -0,0 +1,243 @@
+package net;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import world.ChunkSection;
+
+/**
+ * The SectionCodec class encodes the blocks of a section for the wire. A
+ * section of a single block is sent as that block id alone. Others are
+ * written as a palette of their distinct ids followed by one byte per block
+ * indexing into it (or the ids themselves past 256 distinct ones), then
+ * deflated; terrain sections, a few layers of a handful of blocks, shrink from
+ * 8 KB of ids to a few hundred bytes.
+ *
+ * Light is not sent: a client lights the sections it receives itself.
+ *
+ * Not thread-safe: each thread encoding or decoding keeps its own codec.
+ */
+public class SectionCodec {
+
+	// First byte of an encoded section: a single block id follows, or deflated blocks.
+	private static final byte UNIFORM = 0, DEFLATED = 1;
+
+	// Layout of the deflated blocks: palette indices as bytes, or ids as shorts.
+	private static final byte PALETTE = 0, DIRECT = 1;
+
+	// Largest palette of the palette layout.
+	private static final int MAX_PALETTE = 256;
+
+	// Size of the largest layout before deflating: the layout byte, then the direct ids.
+	private static final int MAX_RAW_BYTES = 1 + ChunkSection.VOLUME * 2;
+
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final Inflater inflater = new Inflater();
+
+	// Scratch: decoded blocks, palette index of each id (-1 when absent), the palette, raw and deflated bytes.
+	private final short[] blocks = new short[ChunkSection.VOLUME];
+	private final int[] paletteIndex = new int[1 << 16];
+	private final short[] palette = new short[MAX_PALETTE];
+	private final byte[] raw = new byte[MAX_RAW_BYTES];
+	private byte[] deflated = new byte[MAX_RAW_BYTES + 64];
+
+	// Sections encoded so far, and their size before and after encoding.
+	private long sectionsEncoded, rawBytes, encodedBytes;
+
+	/**
+	 * Creates a codec.
+	 */
+	public SectionCodec() {
+		Arrays.fill(paletteIndex, -1);
+	}
+
+	/**
+	 * Encodes the blocks of a section.
+	 *
+	 * @param section The section.
+	 * @return The encoded blocks.
+	 */
+	public byte[] encode(ChunkSection section) {
+		section.copyBlocks(blocks);
+		sectionsEncoded++;
+		rawBytes += ChunkSection.VOLUME * 2;
+
+		// Collect the palette, giving up on it past 256 ids.
+		int paletteSize = 0;
+		for (int i = 0; i < ChunkSection.VOLUME && paletteSize <= MAX_PALETTE; i++) {
+			int id = blocks[i] & 0xFFFF;
+			if (paletteIndex[id] < 0) {
+				if (paletteSize < MAX_PALETTE) {
+					palette[paletteSize] = blocks[i];
+				}
+				paletteIndex[id] = paletteSize++;
+			}
+		}
+
+		byte[] encoded;
+		if (paletteSize == 1) {
+			encoded = new byte[] { UNIFORM, (byte) (blocks[0] >> 8), (byte) blocks[0] };
+		} else {
+			int length;
+			if (paletteSize <= MAX_PALETTE) {
+				raw[0] = PALETTE;
+				raw[1] = (byte) (paletteSize - 1);
+				length = 2;
+				for (int i = 0; i < paletteSize; i++) {
+					raw[length++] = (byte) (palette[i] >> 8);
+					raw[length++] = (byte) palette[i];
+				}
+				for (int i = 0; i < ChunkSection.VOLUME; i++) {
+					raw[length++] = (byte) paletteIndex[blocks[i] & 0xFFFF];
+				}
+			} else {
+				raw[0] = DIRECT;
+				length = 1;
+				for (int i = 0; i < ChunkSection.VOLUME; i++) {
+					raw[length++] = (byte) (blocks[i] >> 8);
+					raw[length++] = (byte) blocks[i];
+				}
+			}
+			encoded = deflate(length);
+		}
+
+		// Clear the palette lookup for the next section.
+		for (int i = 0; i < ChunkSection.VOLUME; i++) {
+			paletteIndex[blocks[i] & 0xFFFF] = -1;
+		}
+		encodedBytes += encoded.length;
+		return encoded;
+	}
+
+	/**
+	 * Decodes the blocks of a section into a new section.
+	 *
+	 * @param data   The buffer holding the encoded blocks.
+	 * @param offset The offset of the encoded blocks in the buffer.
+	 * @param length The length of the encoded blocks.
+	 * @param sx     The section's X coordinate.
+	 * @param sy     The section's Y coordinate.
+	 * @param sz     The section's Z coordinate.
+	 * @return The new section, not added to a world.
+	 * @throws IllegalArgumentException If the data is not an encoded section.
+	 */
+	public ChunkSection decode(byte[] data, int offset, int length, int sx, int sy, int sz) {
+		ChunkSection section = new ChunkSection(sx, sy, sz);
+		if (length < 1) {
+			throw new IllegalArgumentException("Empty section data");
+		}
+		if (data[offset] == UNIFORM) {
+			if (length != 3) {
+				throw new IllegalArgumentException("Malformed uniform section");
+			}
+			Arrays.fill(blocks, (short) ((data[offset + 1] & 0xFF) << 8 | data[offset + 2] & 0xFF));
+		} else if (data[offset] == DEFLATED) {
+			int rawLength = inflate(data, offset + 1, length - 1);
+			if (raw[0] == PALETTE) {
+				int paletteSize = (raw[1] & 0xFF) + 1;
+				int start = 2 + paletteSize * 2;
+				if (rawLength != start + ChunkSection.VOLUME) {
+					throw new IllegalArgumentException("Malformed paletted section");
+				}
+				for (int i = 0; i < paletteSize; i++) {
+					palette[i] = (short) ((raw[2 + i * 2] & 0xFF) << 8 | raw[3 + i * 2] & 0xFF);
+				}
+				for (int i = 0; i < ChunkSection.VOLUME; i++) {
+					int index = raw[start + i] & 0xFF;
+					if (index >= paletteSize) {
+						throw new IllegalArgumentException("Palette index out of range");
+					}
+					blocks[i] = palette[index];
+				}
+			} else if (raw[0] == DIRECT && rawLength == MAX_RAW_BYTES) {
+				for (int i = 0; i < ChunkSection.VOLUME; i++) {
+					blocks[i] = (short) ((raw[1 + i * 2] & 0xFF) << 8 | raw[2 + i * 2] & 0xFF);
+				}
+			} else {
+				throw new IllegalArgumentException("Malformed section layout");
+			}
+		} else {
+			throw new IllegalArgumentException("Unknown section encoding: " + data[offset]);
+		}
+
+		for (int i = 0; i < ChunkSection.VOLUME; i++) {
+			if (blocks[i] != 0) {
+				section.setBlock(i & ChunkSection.MASK, i >>> 8, i >>> 4 & ChunkSection.MASK, blocks[i]);
+			}
+		}
+		return section;
+	}
+
+	/**
+	 * Gets the number of sections encoded so far.
+	 *
+	 * @return The section count.
+	 */
+	public long getSectionsEncoded() {
+		return sectionsEncoded;
+	}
+
+	/**
+	 * Gets the size of the sections encoded so far as plain 16-bit ids.
+	 *
+	 * @return The size in bytes.
+	 */
+	public long getRawBytes() {
+		return rawBytes;
+	}
+
+	/**
+	 * Gets the size of the sections encoded so far once encoded.
+	 *
+	 * @return The size in bytes.
+	 */
+	public long getEncodedBytes() {
+		return encodedBytes;
+	}
+
+	/**
+	 * Deflates the raw layout, behind the DEFLATED byte.
+	 */
+	private byte[] deflate(int length) {
+		deflater.reset();
+		deflater.setInput(raw, 0, length);
+		deflater.finish();
+		deflated[0] = DEFLATED;
+		int size = 1;
+		while (!deflater.finished()) {
+			if (size == deflated.length) {
+				deflated = Arrays.copyOf(deflated, deflated.length * 2);
+			}
+			size += deflater.deflate(deflated, size, deflated.length - size);
+		}
+		return Arrays.copyOf(deflated, size);
+	}
+
+	/**
+	 * Inflates a raw layout into the raw scratch array.
+	 *
+	 * @return The length of the layout.
+	 */
+	private int inflate(byte[] data, int offset, int length) {
+		inflater.reset();
+		inflater.setInput(data, offset, length);
+		try {
+			int size = 0;
+			while (!inflater.finished()) {
+				if (size == raw.length) {
+					throw new IllegalArgumentException("Section layout too large");
+				}
+				int inflated = inflater.inflate(raw, size, raw.length - size);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IllegalArgumentException("Truncated section data");
+				}
+				size += inflated;
+			}
+			return size;
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("Corrupt section data", e);
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.stream.IntStream;
+
+import toolbox.Workers;
+import world.TerrainGenerator;
+import world.TreeDecorator;
+import world.World;
+import world.WorldGenerator;
+
+/**
+ * Runs a ChunkServer as its own process: generates a square world of hills
+ * with trees, then streams it to the clients that connect until the process
+ * is killed. The arguments are the port (25570 by default), the size of the
+ * world in section columns (64) and the view radius in columns (8).
+ */
+public class ServerMain {
+
+	// Section layers of a column.
+	private static final int SECTIONS_Y = 4;
+
+	private static final long SEED = 42;
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 25570;
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		int viewRadius = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+		// Generate the world on the workers, centred on the origin.
+		World world = new World();
+		TerrainGenerator terrain = new TerrainGenerator(SEED, SECTIONS_Y);
+		WorldGenerator generator = new WorldGenerator(world, terrain, new TreeDecorator(SEED, terrain));
+		Workers.POOL.submit(() -> IntStream.range(0, size * size * SECTIONS_Y).parallel()
+				.forEach(i -> generator.generate(i % size - size / 2, i / (size * size), i / size % size - size / 2)))
+				.join();
+		generator.applyLateWrites();
+		System.out.println("Generated " + world.getRegistry().size() + " sections");
+
+		ChunkServer server = new ChunkServer(world, new InetSocketAddress(port), viewRadius, SECTIONS_Y);
+		System.out.println("Streaming on " + server.getAddress());
+		server.run();
+	}
+}
@@ -0,0 +1,79 @@
+package render_engine;
+
+import java.util.concurrent.CompletableFuture;
+
+import models.ModelData;
+import models.OBJLoader;
+import models.RawModel;
+import toolbox.Workers;
+
+/**
+ * The AssetLoader class splits asset loading between the worker pool and the
+ * render thread. Decoding images and parsing models runs on the workers as soon
+ * as it is requested, while the thread owning the OpenGL context only performs
+ * the uploads once it needs the asset.
+ *
+ * At startup the game only decodes the material textures this way: the world
+ * is drawn from meshed sections, and no OBJ model (such as the dirtgrass, leaf
+ * and treebark models in res) is rendered yet, so none is parsed. The model
+ * methods are there for the first one that is, and are measured by
+ * ModelLoadBenchmark.
+ */
+public class AssetLoader {
+
+	// The loader performing the OpenGL uploads.
+	private Loader loader;
+
+	/**
+	 * Constructs an AssetLoader that uploads through the given Loader.
+	 * 
+	 * @param loader The loader used for OpenGL uploads.
+	 */
+	public AssetLoader(Loader loader) {
+		this.loader = loader;
+	}
+
+	/**
+	 * Starts decoding a texture on the worker pool. Does not need an OpenGL
+	 * context, so it can be called before the display exists.
+	 * 
+	 * @param fileName The name of the texture file (without extension).
+	 * @return The pending decoded texture.
+	 */
+	public static CompletableFuture<TextureData> decodeTexture(String fileName) {
+		return CompletableFuture.supplyAsync(() -> Loader.decodeTexture(fileName), Workers.POOL);
+	}
+
+	/**
+	 * Starts loading a model on the worker pool (from its mesh cache, or by
+	 * parsing the OBJ file). Does not need an OpenGL context.
+	 * 
+	 * @param fileName The name of the OBJ file (without extension).
+	 * @return The pending model data.
+	 */
+	public static CompletableFuture<ModelData> parseModel(String fileName) {
+		return CompletableFuture.supplyAsync(() -> OBJLoader.loadOBJ(fileName), Workers.POOL);
+	}
+
+	/**
+	 * Waits for a texture to be decoded and uploads it. Must be called on the
+	 * thread that owns the OpenGL context.
+	 * 
+	 * @param texture The pending decoded texture.
+	 * @return The OpenGL texture ID.
+	 */
+	public int uploadTexture(CompletableFuture<TextureData> texture) {
+		return loader.loadTexture(texture.join());
+	}
+
+	/**
+	 * Waits for a model to be loaded and uploads it into a VAO. Must be called on
+	 * the thread that owns the OpenGL context.
+	 * 
+	 * @param model The pending model data.
+	 * @return The uploaded model.
+	 */
+	public RawModel uploadModel(CompletableFuture<ModelData> model) {
+		return loader.loadToVao(model.join());
+	}
+}
@@ -25,6 +25,9 @@ public class DisplayManager {
 	// The frame rate cap (frames per second).
 	private static final int FPS_CAP = 120;
 
+	// Time the last frame waited for the frame rate cap.
+	private static long syncNanos;
+
 	/**
 	 * Creates the display window with specified width, height, and OpenGL context.
 	 * Sets up the OpenGL context attributes and initializes the window. The display
@@ -63,8 +66,10 @@ public class DisplayManager {
 	 */
 	public static void updateDisplay() {
 
-		// Sync the display to maintain the defined frame rate cap.
+		// Sync the display to maintain the defined frame rate cap, timing the wait.
+		long syncStart = System.nanoTime();
 		Display.sync(FPS_CAP);
+		syncNanos = System.nanoTime() - syncStart;
 		// Update the display content.
 		Display.update();
 
@@ -86,6 +91,25 @@ public class DisplayManager {
 		}
 	}
 
+	/**
+	 * Gets the frame rate cap.
+	 *
+	 * @return The maximum number of frames per second.
+	 */
+	public static int getFpsCap() {
+		return FPS_CAP;
+	}
+
+	/**
+	 * Gets the time the last frame spent waiting for the frame rate cap, which
+	 * is not part of the frame's work.
+	 *
+	 * @return The wait in nanoseconds.
+	 */
+	public static long getSyncNanos() {
+		return syncNanos;
+	}
+
 	/**
 	 * Closes the display window and exits the program. Releases all resources
 	 * associated with the display and ensures a proper shutdown.
@@ -1,8 +1,5 @@
 package render_engine;
 
-import java.util.List;
-import java.util.Map;
-
 import org.lwjgl.opengl.GL11; // OpenGL functions for 2D rendering
 import org.lwjgl.opengl.GL13; // OpenGL functions for managing textures
 import org.lwjgl.opengl.GL20; // OpenGL functions for shader management
@@ -22,70 +19,128 @@ import toolbox.Maths; // Utility class for mathematical operations
  */
 public class EntityRenderer {
 	
-	static StaticShader shader = new StaticShader(); // Static instance of the shader used for rendering
+	private StaticShader shader; // The shader used for rendering, shared with the MasterRenderer
+
+	/**
+	 * Constructs an EntityRenderer drawing with the given shader program.
+	 * 
+	 * @param shader The shader program the entities are rendered with.
+	 */
+	public EntityRenderer(StaticShader shader) {
+		this.shader = shader;
+	}
     
     /**
-     * Renders the 3D entities grouped by their textured models.
+     * Renders the entities of a sorted render queue in key order. Consecutive
+     * entries sharing a textured model reuse its bound VAO and texture, so state
+     * only changes at batch boundaries. The translucent pass, which follows the
+     * opaque one, is alpha blended without writing depth, so translucent faces
+     * behind one another all show.
      * 
-     * @param entities A map where the keys are textured models and the values are lists of entities
-     *                 associated with each model. This allows batch rendering of entities that share
-     *                 the same texture.
+     * @param queue    The sorted render queue of the frame.
+     * @param entities The submitted entities, indexed by the payload of each queue entry.
      */
-    public void render(Map<TexturedModel, List<Entity>> entities) {
+    public void render(RenderQueue queue, Entity[] entities) {
     	
-    	// Iterate over each textured model in the provided map.
-    	for (TexturedModel model : entities.keySet()) {
+    	TexturedModel boundModel = null; // The model whose VAO and texture are currently bound
+    	boolean blending = false; // Whether the translucent pass has started
+    	
+    	// Iterate over the queue in sorted order.
+    	for (int i = 0; i < queue.size(); i++) {
+    		Entity entity = entities[queue.getPayload(i)];
+    		TexturedModel model = entity.getModel();
+
+    		if (!blending && RenderQueue.getPass(queue.getKey(i)) == RenderQueue.PASS_TRANSLUCENT) {
+    			// Blend the translucent faces over what is behind them, keeping the depth buffer.
+    			blending = true;
+    			GL11.glEnable(GL11.GL_BLEND);
+    			GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+    			GL11.glDepthMask(false);
+    		}
     		
-            // Bind the VAO (Vertex Array Object) of the model to prepare it for rendering.
-            GL30.glBindVertexArray(model.getModel().getVaoID());
+    		if (model != boundModel) {
+    			if (boundModel != null) {
+    				unbindModel(); // Finish the previous batch
+    			}
+    			bindModel(model); // Start a new batch
+    			boundModel = model;
+    		}
+    		
+            // Create the transformation matrix based on the entity's position, rotation,
+            // and scale, and load it into the shader.
+            Matrix4f transformationMatrix = Maths.createTransformationMatrix(
+                entity.getPosition(), // Position of the entity
+                entity.getRotX(), // Rotation around the X-axis
+                entity.getRotY(), // Rotation around the Y-axis
+                entity.getRotZ(), // Rotation around the Z-axis
+                entity.getScale() // Scale of the entity
+            );
+            shader.loadTransformationMatrix(transformationMatrix); // Load the transformation matrix into the shader.
+            
+            // Draw the vertices of the model as triangles. It uses the index buffer for
+            // drawing with the vertex count from the model, starting from index 0.
+            GL11.glDrawElements(
+                GL11.GL_TRIANGLES, // Drawing mode (triangles)
+                model.getModel().getVertexCount(), // Number of vertices to draw
+                GL11.GL_UNSIGNED_INT, // Type of the indices
+                0 // Offset in the index buffer
+            );
+    	}
+    	
+    	if (boundModel != null) {
+    		unbindModel(); // Finish the last batch
+    	}
+    	if (blending) {
+    		GL11.glDepthMask(true);
+    		GL11.glDisable(GL11.GL_BLEND);
+    	}
+    }
+
+    /**
+     * Binds the VAO and texture of a textured model and enables its attributes.
+     * 
+     * @param model The textured model about to be drawn.
+     */
+    private void bindModel(TexturedModel model) {
+        // Bind the VAO (Vertex Array Object) of the model to prepare it for rendering.
+        GL30.glBindVertexArray(model.getModel().getVaoID());
 
-            // Enable the vertex attribute array at index 0 for the shader to access the
-            // vertex position data.
-            GL20.glEnableVertexAttribArray(0);
+        // Enable the vertex attribute array at index 0 for the shader to access the
+        // vertex position data.
+        GL20.glEnableVertexAttribArray(0);
 
-            // Enable the vertex attribute array at index 1 for the shader to access the
-            // texture coordinate data.
-            GL20.glEnableVertexAttribArray(1);
-            
-            // Activate texture unit 0 (the first texture unit).
-            GL13.glActiveTexture(GL13.GL_TEXTURE0);
-            // Bind the texture associated with the model to the active texture unit.
-            GL11.glBindTexture(GL11.GL_TEXTURE_2D, model.getTexture().getTextureID());
-            
-            List<Entity> batch = entities.get(model); // Retrieve the list of entities for the current model.
-            
-            // Render each entity in the batch.
-            for (Entity entity : batch) {
-            	
-                // Create the transformation matrix based on the entity's position, rotation,
-                // and scale, and load it into the shader.
-                Matrix4f transformationMatrix = Maths.createTransformationMatrix(
-                    entity.getPosition(), // Position of the entity
-                    entity.getRotX(), // Rotation around the X-axis
-                    entity.getRotY(), // Rotation around the Y-axis
-                    entity.getRotZ(), // Rotation around the Z-axis
-                    entity.getScale() // Scale of the entity
-                );
-                shader.loadTransformationMatrix(transformationMatrix); // Load the transformation matrix into the shader.
-                
-                // Draw the vertices of the model as triangles. It uses the index buffer for
-                // drawing with the vertex count from the model, starting from index 0.
-                GL11.glDrawElements(
-                    GL11.GL_TRIANGLES, // Drawing mode (triangles)
-                    model.getModel().getVertexCount(), // Number of vertices to draw
-                    GL11.GL_UNSIGNED_INT, // Type of the indices
-                    0 // Offset in the index buffer
-                );            	
-            }
-            
-            // Disable the vertex attribute array for position data after rendering.
-            GL20.glDisableVertexAttribArray(0);
+        // Enable the vertex attribute array at index 1 for the shader to access the
+        // texture coordinate data.
+        GL20.glEnableVertexAttribArray(1);
 
-            // Disable the vertex attribute array for texture coordinates after rendering.
-            GL20.glDisableVertexAttribArray(1);
+        if (model.getModel().getAttributeCount() > 2) {
+            // Enable the light values of lit meshes such as chunk sections.
+            GL20.glEnableVertexAttribArray(2);
+        } else {
+            // Models without light values are drawn fully lit.
+            GL20.glVertexAttrib3f(2, 1f, 1f, 1f);
+        }
+        
+        // Activate texture unit 0 (the first texture unit).
+        GL13.glActiveTexture(GL13.GL_TEXTURE0);
+        // Bind the texture associated with the model to the active texture unit.
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, model.getTexture().getTextureID());
+    }
 
-            // Unbind the VAO to prevent any unintended modifications.
-            GL30.glBindVertexArray(0);
-    	}
+    /**
+     * Disables the vertex attributes and unbinds the VAO of the current batch.
+     */
+    private void unbindModel() {
+        // Disable the vertex attribute array for position data after rendering.
+        GL20.glDisableVertexAttribArray(0);
+
+        // Disable the vertex attribute array for texture coordinates after rendering.
+        GL20.glDisableVertexAttribArray(1);
+
+        // Disable the light values, if the model had any.
+        GL20.glDisableVertexAttribArray(2);
+
+        // Unbind the VAO to prevent any unintended modifications.
+        GL30.glBindVertexArray(0);
     }
 }
@@ -0,0 +1,97 @@
+package render_engine;
+
+import java.nio.FloatBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.util.vector.Matrix4f;
+
+import entities.Camera;
+import shaders.ShaderProgram;
+import toolbox.Maths;
+
+/**
+ * The FrameUniforms class owns the uniform buffer object (UBO) holding the data
+ * that is constant for a whole frame: projection, view and view-projection
+ * matrices, the camera position and the elapsed time. The buffer is filled once
+ * per frame and bound to the shared FrameData binding point, so every shader
+ * program declaring the block reads it without any per-program uploads.
+ *
+ * The layout follows the std140 rules of the FrameData block in the shaders:
+ * three mat4 (64 bytes each) followed by one vec4 (camera xyz, time in w).
+ */
+public class FrameUniforms {
+
+	// Number of floats in the FrameData block (3 matrices + 1 vec4).
+	private static final int BLOCK_FLOATS = 16 * 3 + 4;
+
+	// The ID of the uniform buffer in OpenGL.
+	private int uboID;
+
+	// Staging buffer reused every frame for the upload.
+	private FloatBuffer buffer = BufferUtils.createFloatBuffer(BLOCK_FLOATS);
+
+	// Scratch matrices reused every frame to avoid per-frame allocations.
+	private Matrix4f viewMatrix = new Matrix4f();
+	private Matrix4f viewProjectionMatrix = new Matrix4f();
+
+	/**
+	 * Creates the uniform buffer, allocates its storage and binds it to the
+	 * FrameData binding point.
+	 */
+	public FrameUniforms() {
+		uboID = GL15.glGenBuffers();
+		// Store the buffer ID so the Loader deletes it on shutdown.
+		Loader.vbos.add(uboID);
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, uboID);
+		GL15.glBufferData(GL31.GL_UNIFORM_BUFFER, BLOCK_FLOATS * 4, GL15.GL_DYNAMIC_DRAW);
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+		// Bind the whole buffer to the binding point shared by every program.
+		GL30.glBindBufferBase(GL31.GL_UNIFORM_BUFFER, ShaderProgram.FRAME_BLOCK_BINDING, uboID);
+	}
+
+	/**
+	 * Uploads the per-frame data. Should be called once per frame before any
+	 * program that reads the FrameData block is used.
+	 *
+	 * @param camera           The camera the frame is rendered from.
+	 * @param projectionMatrix The current projection matrix.
+	 * @param time             The elapsed time in seconds.
+	 */
+	public void update(Camera camera, Matrix4f projectionMatrix, float time) {
+		Maths.createViewMatrix(camera, viewMatrix);
+		Matrix4f.mul(projectionMatrix, viewMatrix, viewProjectionMatrix);
+
+		buffer.clear();
+		projectionMatrix.store(buffer);
+		viewMatrix.store(buffer);
+		viewProjectionMatrix.store(buffer);
+		buffer.put(camera.getPosition().x).put(camera.getPosition().y).put(camera.getPosition().z).put(time);
+		buffer.flip();
+
+		// Replace the whole block in a single upload.
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, uboID);
+		GL15.glBufferSubData(GL31.GL_UNIFORM_BUFFER, 0, buffer);
+		GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+	}
+
+	/**
+	 * Gets the view matrix computed by the last update.
+	 *
+	 * @return The view matrix of the current frame.
+	 */
+	public Matrix4f getViewMatrix() {
+		return viewMatrix;
+	}
+
+	/**
+	 * Gets the view-projection matrix computed by the last update.
+	 *
+	 * @return The view-projection matrix of the current frame.
+	 */
+	public Matrix4f getViewProjectionMatrix() {
+		return viewProjectionMatrix;
+	}
+}
@@ -1,10 +1,13 @@
 package render_engine;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
@@ -12,9 +15,9 @@ import org.lwjgl.opengl.GL14;
 import org.lwjgl.opengl.GL15;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
-import org.newdawn.slick.opengl.Texture;
-import org.newdawn.slick.opengl.TextureLoader;
 
+import de.matthiasmann.twl.utils.PNGDecoder;
+import models.ModelData;
 import models.RawModel;
 
 /**
@@ -25,12 +28,15 @@ import models.RawModel;
  */
 public class Loader {
 
-	// List to store IDs of all created VAOs, used for cleanup.
-	static List<Integer> vaos = new ArrayList<Integer>();
-	// List to store IDs of all created VBOs, used for cleanup.
-	static List<Integer> vbos = new ArrayList<Integer>();
-	// List to store IDs of all created textures, used for cleanup.
-	static List<Integer> textures = new ArrayList<Integer>();
+	// Set to store IDs of all live VAOs, used for cleanup.
+	static Set<Integer> vaos = new HashSet<Integer>();
+	// Set to store IDs of all live VBOs, used for cleanup.
+	static Set<Integer> vbos = new HashSet<Integer>();
+	// Set to store IDs of all created textures, used for cleanup.
+	static Set<Integer> textures = new HashSet<Integer>();
+
+	// Reused buffer the indices of updateIndices are copied through.
+	private IntBuffer indexBuffer;
 
 	/**
 	 * Loads the provided vertex data into a VAO and returns a RawModel object.
@@ -58,6 +64,102 @@ public class Loader {
 		return new RawModel(vaoID, indices.length);
 	}
 
+	/**
+	 * Loads lit vertex data, such as a chunk section mesh, into a VAO. Light is
+	 * stored in attribute 2 as three floats per vertex (block light, sky light,
+	 * ambient occlusion).
+	 * The returned model tracks its buffers so it can be deleted with
+	 * unloadModel when the mesh is replaced.
+	 * 
+	 * @param vertices Array of vertex positions.
+	 * @param indices  Array of index data for indexed drawing.
+	 * @param uv       Array of texture coordinates.
+	 * @param light    Array of light values.
+	 * @return A RawModel owning the created VAO and VBOs.
+	 */
+	public RawModel loadToVao(float[] vertices, int[] indices, float[] uv, float[] light) {
+		int vaoID = creatVAO();
+		int[] vboIDs = new int[4];
+		vboIDs[0] = storeDataInAttributeList(vertices, 0, 3);
+		vboIDs[1] = storeDataInAttributeList(uv, 1, 2);
+		vboIDs[2] = storeDataInAttributeList(light, 2, 3);
+		vboIDs[3] = bindIndicesbuffer(indices);
+		GL30.glBindVertexArray(0);
+		return new RawModel(vaoID, indices.length, 3, vboIDs);
+	}
+
+	/**
+	 * Replaces the indices of a model created by the lit loadToVao, leaving its
+	 * vertices untouched. The new indices must be as many as the old ones, as
+	 * when the faces of a translucent mesh are reordered. Must be called on the
+	 * thread that owns the OpenGL context.
+	 * 
+	 * @param model   The model to update.
+	 * @param indices The new indices.
+	 */
+	public void updateIndices(RawModel model, int[] indices) {
+		if (indices.length != model.getVertexCount()) {
+			throw new IllegalArgumentException("Expected " + model.getVertexCount() + " indices, got " + indices.length);
+		}
+		if (indexBuffer == null || indexBuffer.capacity() < indices.length) {
+			indexBuffer = BufferUtils.createIntBuffer(Math.max(indices.length, 1024));
+		}
+		indexBuffer.clear();
+		indexBuffer.put(indices);
+		indexBuffer.flip();
+
+		// The index buffer is part of the VAO's state, and the last of its VBOs.
+		GL30.glBindVertexArray(model.getVaoID());
+		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, model.getVboIDs()[model.getVboIDs().length - 1]);
+		GL15.glBufferSubData(GL15.GL_ELEMENT_ARRAY_BUFFER, 0, indexBuffer);
+		GL30.glBindVertexArray(0);
+	}
+
+	/**
+	 * Deletes the VAO and VBOs of a model created by the lit loadToVao. Must be
+	 * called on the thread that owns the OpenGL context.
+	 * 
+	 * @param model The model to delete.
+	 */
+	public void unloadModel(RawModel model) {
+		GL30.glDeleteVertexArrays(model.getVaoID());
+		vaos.remove(model.getVaoID());
+		if (model.getVboIDs() != null) {
+			for (int vboID : model.getVboIDs()) {
+				GL15.glDeleteBuffers(vboID);
+				vbos.remove(vboID);
+			}
+		}
+	}
+
+	/**
+	 * Creates the texture data of a plain colour, for materials that have no
+	 * texture file. Safe to call from any thread.
+	 * 
+	 * @param rgba The colour as 0xRRGGBBAA.
+	 * @return A small texture of that colour.
+	 */
+	public static TextureData createColourTexture(int rgba) {
+		int size = 16;
+		ByteBuffer buffer = ByteBuffer.allocateDirect(4 * size * size);
+		for (int i = 0; i < size * size; i++) {
+			buffer.putInt(rgba); // Big-endian, so the bytes come out in RGBA order
+		}
+		buffer.flip();
+		return new TextureData(size, size, buffer);
+	}
+
+	/**
+	 * Loads model data read from a file (see OBJLoader) into a VAO.
+	 * 
+	 * @param data The indexed model data.
+	 * @return A RawModel containing the ID of the created VAO and the number of
+	 *         vertices.
+	 */
+	public RawModel loadToVao(ModelData data) {
+		return loadToVao(data.getVertices(), data.getIndices(), data.getTextureCoords());
+	}
+
 	/**
 	 * Creates a new VAO (Vertex Array Object) and binds it.
 	 * 
@@ -82,30 +184,64 @@ public class Loader {
 	 * @return The OpenGL texture ID of the loaded texture.
 	 */
 	public int loadTexture(String fileName) {
-		// Initialize the texture object.
-		Texture texture = null;
-		try {
-			// Load a texture in PNG format from the "res" folder.
-			texture = TextureLoader.getTexture("PNG", getClass().getResourceAsStream("/res/" + fileName + ".PNG"));
+		return loadTexture(decodeTexture(fileName));
+	}
 
-			// Generate mipmaps for smoother texture rendering at different distances.
-			GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
+	/**
+	 * Decodes a PNG texture from the resources folder into RGBA pixels. This does
+	 * not touch OpenGL, so it is safe to call from worker threads.
+	 * 
+	 * @param fileName The name of the texture file to be decoded (without
+	 *                 extension).
+	 * @return The decoded texture data.
+	 */
+	public static TextureData decodeTexture(String fileName) {
+		try (InputStream in = Loader.class.getResourceAsStream("/res/" + fileName + ".PNG")) {
+			if (in == null) {
+				throw new IllegalArgumentException("Texture file not found: " + fileName);
+			}
+			PNGDecoder decoder = new PNGDecoder(in);
+			int width = decoder.getWidth();
+			int height = decoder.getHeight();
+			// Decode straight into a direct buffer OpenGL can read from.
+			ByteBuffer buffer = ByteBuffer.allocateDirect(4 * width * height);
+			decoder.decode(buffer, width * 4, PNGDecoder.Format.RGBA);
+			buffer.flip();
+			return new TextureData(width, height, buffer);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not decode texture " + fileName, e);
+		}
+	}
 
-			// Set the minification filter to GL_NEAREST (blocky style when downsized).
-			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+	/**
+	 * Uploads decoded texture data to OpenGL and returns its texture ID. Must be
+	 * called on the thread that owns the OpenGL context.
+	 * 
+	 * @param data The decoded texture data.
+	 * @return The OpenGL texture ID of the uploaded texture.
+	 */
+	public int loadTexture(TextureData data) {
+		// Generate a new texture ID and bind it.
+		int textureID = GL11.glGenTextures();
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureID);
 
-			// Set the magnification filter to GL_NEAREST (blocky style when upscaled).
-			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+		// Rows are tightly packed RGBA pixels.
+		GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, data.getWidth(), data.getHeight(), 0, GL11.GL_RGBA,
+				GL11.GL_UNSIGNED_BYTE, data.getBuffer());
 
-			// Apply a negative LOD bias for sharper textures.
-			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL14.GL_TEXTURE_LOD_BIAS, -4);
+		// Generate mipmaps for smoother texture rendering at different distances.
+		GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
 
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		// Set the minification filter to GL_NEAREST (blocky style when downsized).
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+
+		// Set the magnification filter to GL_NEAREST (blocky style when upscaled).
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+
+		// Apply a negative LOD bias for sharper textures.
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL14.GL_TEXTURE_LOD_BIAS, -4);
 
-		// Get the texture ID generated by OpenGL.
-		int textureID = texture.getTextureID();
 		// Store the texture ID for cleanup purposes.
 		textures.add(textureID);
 
@@ -121,8 +257,9 @@ public class Loader {
 	 *                        stored.
 	 * @param dimensions      The number of dimensions of each vertex (e.g., 3 for
 	 *                        x, y, z).
+	 * @return The ID of the created VBO.
 	 */
-	private void storeDataInAttributeList(float[] data, int attributeNumber, int dimensions) {
+	private int storeDataInAttributeList(float[] data, int attributeNumber, int dimensions) {
 		// Generate a new VBO ID using OpenGL.
 		int vboID = GL15.glGenBuffers();
 		// Store the VBO ID for cleanup purposes.
@@ -137,14 +274,17 @@ public class Loader {
 		GL20.glVertexAttribPointer(attributeNumber, dimensions, GL11.GL_FLOAT, false, 0, 0);
 		// Unbind the VBO to prevent further modification.
 		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+
+		return vboID;
 	}
 
 	/**
 	 * Binds an index buffer to the current VAO for indexed drawing.
 	 * 
 	 * @param indices Array of indices for drawing the vertices.
+	 * @return The ID of the created index buffer.
 	 */
-	private void bindIndicesbuffer(int[] indices) {
+	private int bindIndicesbuffer(int[] indices) {
 		// Generate a new VBO ID for the index buffer.
 		int vboID = GL15.glGenBuffers();
 		// Store the VBO ID for cleanup purposes.
@@ -155,6 +295,8 @@ public class Loader {
 		IntBuffer buffer = storeDataInIntBuffer(indices);
 		// Store the buffer data in the VBO with static draw usage.
 		GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+
+		return vboID;
 	}
 
 	/**
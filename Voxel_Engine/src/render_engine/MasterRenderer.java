@@ -1,13 +1,11 @@
 package render_engine;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 import org.lwjgl.opengl.Display;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
 
 import entities.Camera; // Camera class representing the player's view
 import entities.Entity; // Entity class representing 3D objects
@@ -27,19 +25,33 @@ public class MasterRenderer {
     private static final float NEAR_PLANE = 0.1f; // Distance to the near clipping plane
     private static final float FAR_PLANE = 10000f; // Distance to the far clipping plane
     
-    StaticShader shader = new StaticShader();
-    EntityRenderer renderer = new EntityRenderer();
-    Map<TexturedModel, List<Entity>> entities = new HashMap<TexturedModel, List<Entity>>();
+    StaticShader shader; // The single program shared with the EntityRenderer
+    EntityRenderer renderer;
+
+    // Sorted draw submissions of the current frame, retained between frames.
+    RenderQueue queue = new RenderQueue(4096);
+    // Entities submitted this frame, indexed by the payload of their queue entry.
+    Entity[] entities = new Entity[4096];
+    // Number of blocks each submitted entity spans from its position, by payload;
+    // translucent entities are ordered by the centre of those blocks.
+    float[] extents = new float[4096];
+
+    // Per-frame camera data shared by every shader program through a uniform block.
+    private FrameUniforms frameUniforms;
+    // Time the renderer was created, used for the time value of the frame block.
+    private final long startTime = System.nanoTime();
 
     /**
      * Constructor for the MasterRenderer class. Initializes the projection matrix
-     * and sets the shader for rendering.
+     * and the per-frame uniform buffer read by the shaders.
+     * 
+     * @param shader The shader program used to render entities.
      */
-    public MasterRenderer() {
+    public MasterRenderer(StaticShader shader) {
+        this.shader = shader;
+        renderer = new EntityRenderer(shader); // Share the program instead of compiling another one
         createProjectionMatrix(); // Create the projection matrix
-        shader.start(); // Start the shader program
-        shader.loadProjectionMatrix(projectionMatrix); // Load the projection matrix into the shader
-        shader.stop(); // Stop the shader program
+        frameUniforms = new FrameUniforms(); // Create the shared per-frame uniform buffer
     }
 
     /**
@@ -62,30 +74,78 @@ public class MasterRenderer {
      */
     public void render(Camera camera) {
         prepare(); // Prepare the rendering context
+        // Upload the camera data once for every program that uses the frame block
+        frameUniforms.update(camera, projectionMatrix, (System.nanoTime() - startTime) / 1e9f);
+
+        // Now that the camera is known, fill in the depth of every submission
+        // (opaque front to back, translucent back to front) and sort the queue
+        // into execution order.
+        Vector3f eye = camera.getPosition();
+        int count = queue.size();
+        for (int i = 0; i < count; i++) {
+            int payload = queue.getPayload(i);
+            Vector3f position = entities[payload].getPosition();
+            // Blocks are centred on their positions, so the centre of the blocks
+            // is half a block short of half the extent.
+            float half = extents[payload] / 2 - 0.5f;
+            float dx = position.x + half - eye.x;
+            float dy = position.y + half - eye.y;
+            float dz = position.z + half - eye.z;
+            int depth = RenderQueue.quantizeDepth(dx * dx + dy * dy + dz * dz);
+            boolean translucent = RenderQueue.getPass(queue.getKey(i)) == RenderQueue.PASS_TRANSLUCENT;
+            queue.setDepth(i, translucent ? RenderQueue.MAX_DEPTH - depth : depth);
+        }
+        queue.sort();
+
         shader.start(); // Start the shader program
-        shader.loadViewMatrix(camera); // Load the camera view matrix into the shader
-        renderer.render(entities); // Render the entities
+        renderer.render(queue, entities); // Render the entities in key order
         shader.stop(); // Stop the shader program
         
-        entities.clear(); // Clear the entity map for the next frame
+        // Empty the queue for the next frame without releasing its arrays.
+        Arrays.fill(entities, 0, count, null);
+        queue.clear();
     }
     
     /**
-     * Adds an entity to the rendering queue. Entities are batched by their textured model.
+     * Adds an entity to the rendering queue. The entity is keyed by its shader,
+     * texture and VAO so entities sharing a textured model are drawn together.
      * 
      * @param entity The entity to be added to the rendering queue.
      */
     public void addEntity(Entity entity) {
     	TexturedModel model = entity.getModel();
-    	List<Entity> batch = entities.get(model);
-    	
-    	if (batch != null) {
-    		batch.add(entity); // Add to existing batch
-    	} else {
-    		List<Entity> newBatch = new ArrayList<Entity>();
-    		newBatch.add(entity); // Create a new batch for the new model
-    		entities.put(model, newBatch);
+    	int payload = addPayload(entity, 0);
+    	queue.submit(RenderQueue.createKey(RenderQueue.PASS_OPAQUE, shader.getProgramID(),
+    			model.getTexture().getTextureID(), model.getModel().getVaoID(), 0), payload);
+    }
+
+    /**
+     * Adds a translucent entity to the rendering queue. Translucent entities are
+     * drawn blended after every opaque one, from the farthest to the nearest, so
+     * their key holds nothing but the depth.
+     * 
+     * @param entity The entity to be added to the rendering queue.
+     * @param extent The number of blocks the entity spans from its position along
+     *               each axis, such as a chunk section's size; the entity is
+     *               ordered by the centre of those blocks.
+     */
+    public void addTranslucentEntity(Entity entity, float extent) {
+    	int payload = addPayload(entity, extent);
+    	queue.submit(RenderQueue.createKey(RenderQueue.PASS_TRANSLUCENT, 0, 0, 0, 0), payload);
+    }
+
+    /**
+     * Stores a submitted entity and its extent under the next payload index.
+     */
+    private int addPayload(Entity entity, float extent) {
+    	int payload = queue.size();
+    	if (payload == entities.length) {
+    		entities = Arrays.copyOf(entities, payload * 2); // Grow the payload arrays
+    		extents = Arrays.copyOf(extents, payload * 2);
     	}
+    	entities[payload] = entity;
+    	extents[payload] = extent;
+    	return payload;
     }
 
     /**
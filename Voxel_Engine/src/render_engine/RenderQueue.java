@@ -0,0 +1,237 @@
+package render_engine;
+
+import java.util.Arrays;
+
+/**
+ * The RenderQueue class collects the draw submissions of a frame as packed
+ * 64-bit sort keys plus a payload index, both stored in primitive arrays that
+ * are retained between frames. Sorting the keys groups draws by render pass,
+ * shader, texture and VAO so state changes are minimised, and orders draws
+ * inside a group by depth.
+ *
+ * Key layout, from the most to the least significant bits:
+ * pass (2) | shader (6) | texture (12) | VAO (16) | depth (28).
+ *
+ * Once the arrays have grown to the frame's submission count, submitting,
+ * sorting and clearing do not allocate.
+ */
+public class RenderQueue {
+
+	// Render passes, executed in increasing order.
+	public static final int PASS_OPAQUE = 0;
+	public static final int PASS_TRANSLUCENT = 1;
+
+	// Bit widths of the key fields.
+	private static final int DEPTH_BITS = 28;
+	private static final int VAO_BITS = 16;
+	private static final int TEXTURE_BITS = 12;
+	private static final int SHADER_BITS = 6;
+
+	// Bit offsets of the key fields.
+	private static final int VAO_SHIFT = DEPTH_BITS;
+	private static final int TEXTURE_SHIFT = VAO_SHIFT + VAO_BITS;
+	private static final int SHADER_SHIFT = TEXTURE_SHIFT + TEXTURE_BITS;
+	private static final int PASS_SHIFT = SHADER_SHIFT + SHADER_BITS;
+
+	/** Largest depth value that fits in a key. */
+	public static final int MAX_DEPTH = (1 << DEPTH_BITS) - 1;
+
+	// Mask selecting the depth field of a key.
+	private static final long DEPTH_MASK = MAX_DEPTH;
+
+	// Sort keys and payload indices of the submissions.
+	private long[] keys;
+	private int[] payloads;
+
+	// Scratch arrays the radix sort scatters into.
+	private long[] sortedKeys;
+	private int[] sortedPayloads;
+
+	// One 256-entry histogram per key byte.
+	private final int[] histograms = new int[8 * 256];
+
+	// Number of submissions in the current frame.
+	private int count;
+
+	/**
+	 * Creates a render queue with room for the given number of submissions. The
+	 * queue grows on demand.
+	 *
+	 * @param capacity The initial number of submissions the queue can hold.
+	 */
+	public RenderQueue(int capacity) {
+		capacity = Math.max(capacity, 16);
+		keys = new long[capacity];
+		payloads = new int[capacity];
+		sortedKeys = new long[capacity];
+		sortedPayloads = new int[capacity];
+	}
+
+	/**
+	 * Packs the state of a draw into a sort key. Identifiers wider than their
+	 * field are truncated, which can only worsen batching, never correctness,
+	 * since renderers compare the real state before rebinding it.
+	 *
+	 * @param pass    The render pass (PASS_OPAQUE or PASS_TRANSLUCENT).
+	 * @param shader  The ID of the shader program.
+	 * @param texture The ID of the texture.
+	 * @param vao     The ID of the VAO.
+	 * @param depth   The quantised depth, from 0 to MAX_DEPTH.
+	 * @return The packed sort key.
+	 */
+	public static long createKey(int pass, int shader, int texture, int vao, int depth) {
+		return ((long) (pass & 0x3) << PASS_SHIFT)
+				| ((long) (shader & ((1 << SHADER_BITS) - 1)) << SHADER_SHIFT)
+				| ((long) (texture & ((1 << TEXTURE_BITS) - 1)) << TEXTURE_SHIFT)
+				| ((long) (vao & ((1 << VAO_BITS) - 1)) << VAO_SHIFT)
+				| (depth & DEPTH_MASK);
+	}
+
+	/**
+	 * Quantises a squared distance into the depth field. Non-negative floats
+	 * order the same way as their bit patterns, so dropping the low mantissa
+	 * bits keeps the order without a square root.
+	 *
+	 * @param distanceSquared The squared distance from the camera.
+	 * @return The depth value for the key.
+	 */
+	public static int quantizeDepth(float distanceSquared) {
+		return (Float.floatToRawIntBits(Math.max(distanceSquared, 0f)) >>> 3) & MAX_DEPTH;
+	}
+
+	/**
+	 * Gets the render pass stored in a key.
+	 *
+	 * @param key The sort key.
+	 * @return The render pass of the key.
+	 */
+	public static int getPass(long key) {
+		return (int) (key >>> PASS_SHIFT) & 0x3;
+	}
+
+	/**
+	 * Adds a draw to the queue.
+	 *
+	 * @param key     The sort key of the draw.
+	 * @param payload The index of the drawn item in the caller's payload array.
+	 * @return The position of the submission, usable with setDepth before sorting.
+	 */
+	public int submit(long key, int payload) {
+		if (count == keys.length) {
+			grow();
+		}
+		keys[count] = key;
+		payloads[count] = payload;
+		return count++;
+	}
+
+	/**
+	 * Replaces the depth field of a submission. Intended to be called between
+	 * submission and sort, once the camera of the frame is known.
+	 *
+	 * @param index The position of the submission.
+	 * @param depth The quantised depth, from 0 to MAX_DEPTH.
+	 */
+	public void setDepth(int index, int depth) {
+		keys[index] = (keys[index] & ~DEPTH_MASK) | (depth & DEPTH_MASK);
+	}
+
+	/**
+	 * Sorts the submissions by key with a least-significant-byte radix sort.
+	 * Byte positions where every key shares the same value are skipped, so keys
+	 * that only differ in a few fields take only a few scatter passes.
+	 */
+	public void sort() {
+		int[] hist = histograms;
+		Arrays.fill(hist, 0);
+
+		// Build the histograms of all eight bytes in a single read of the keys.
+		for (int i = 0; i < count; i++) {
+			long key = keys[i];
+			for (int b = 0; b < 8; b++) {
+				hist[(b << 8) + (int) ((key >>> (b << 3)) & 0xFF)]++;
+			}
+		}
+
+		for (int b = 0; b < 8; b++) {
+			int base = b << 8;
+			int shift = b << 3;
+
+			// Skip the pass if every key falls in the same bucket.
+			if (hist[base + (int) ((keys[0] >>> shift) & 0xFF)] == count) {
+				continue;
+			}
+
+			// Turn the counts into starting offsets.
+			int offset = 0;
+			for (int i = 0; i < 256; i++) {
+				int bucketSize = hist[base + i];
+				hist[base + i] = offset;
+				offset += bucketSize;
+			}
+
+			// Scatter the submissions into their buckets, keeping the order stable.
+			for (int i = 0; i < count; i++) {
+				long key = keys[i];
+				int target = hist[base + (int) ((key >>> shift) & 0xFF)]++;
+				sortedKeys[target] = key;
+				sortedPayloads[target] = payloads[i];
+			}
+
+			// Swap the buffers so the sorted data becomes the current data.
+			long[] swapKeys = keys;
+			keys = sortedKeys;
+			sortedKeys = swapKeys;
+			int[] swapPayloads = payloads;
+			payloads = sortedPayloads;
+			sortedPayloads = swapPayloads;
+		}
+	}
+
+	/**
+	 * Gets the key at a position of the queue.
+	 *
+	 * @param index The position in the queue.
+	 * @return The sort key.
+	 */
+	public long getKey(int index) {
+		return keys[index];
+	}
+
+	/**
+	 * Gets the payload index at a position of the queue.
+	 *
+	 * @param index The position in the queue.
+	 * @return The payload index submitted with the key.
+	 */
+	public int getPayload(int index) {
+		return payloads[index];
+	}
+
+	/**
+	 * Gets the number of submissions in the queue.
+	 *
+	 * @return The submission count.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Empties the queue for the next frame, keeping the allocated arrays.
+	 */
+	public void clear() {
+		count = 0;
+	}
+
+	/**
+	 * Doubles the capacity of every array of the queue.
+	 */
+	private void grow() {
+		int capacity = keys.length * 2;
+		keys = Arrays.copyOf(keys, capacity);
+		payloads = Arrays.copyOf(payloads, capacity);
+		sortedKeys = new long[capacity];
+		sortedPayloads = new int[capacity];
+	}
+}
@@ -0,0 +1,43 @@
+package render_engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The TextureData class holds a decoded image in RGBA order, ready to be
+ * uploaded to OpenGL. Decoding does not need the OpenGL context, so it can run
+ * on a worker thread while the render thread does other work.
+ */
+public class TextureData {
+
+	// Width and height of the image in pixels.
+	private int width;
+	private int height;
+
+	// The pixels, four bytes (RGBA) per pixel, row by row from the top.
+	private ByteBuffer buffer;
+
+	/**
+	 * Constructs the texture data of a decoded image.
+	 * 
+	 * @param width  The width of the image in pixels.
+	 * @param height The height of the image in pixels.
+	 * @param buffer The RGBA pixels, positioned for reading.
+	 */
+	public TextureData(int width, int height, ByteBuffer buffer) {
+		this.width = width;
+		this.height = height;
+		this.buffer = buffer;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+}
@@ -0,0 +1,73 @@
+package toolbox;
+
+import java.util.Arrays;
+
+/**
+ * The FloatList class is a growable array of primitive floats. It avoids the
+ * boxing of a List&lt;Float&gt; when building vertex data and can be cleared and
+ * refilled without releasing its storage.
+ */
+public class FloatList {
+
+	// The backing array; only the first size elements are in use.
+	private float[] data;
+
+	// Number of elements in the list.
+	private int size;
+
+	/**
+	 * Creates a list with the given initial capacity.
+	 *
+	 * @param capacity The number of elements the list can hold before growing.
+	 */
+	public FloatList(int capacity) {
+		data = new float[Math.max(capacity, 4)];
+	}
+
+	/**
+	 * Appends a value to the list.
+	 *
+	 * @param value The value to append.
+	 */
+	public void add(float value) {
+		if (size == data.length) {
+			data = Arrays.copyOf(data, size * 2);
+		}
+		data[size++] = value;
+	}
+
+	/**
+	 * Gets the value at an index.
+	 *
+	 * @param index The index of the value.
+	 * @return The value.
+	 */
+	public float get(int index) {
+		return data[index];
+	}
+
+	/**
+	 * Gets the number of values in the list.
+	 *
+	 * @return The size of the list.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Empties the list, keeping its storage.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Copies the values into a new array of exactly the list's size.
+	 *
+	 * @return A new array with the values of the list.
+	 */
+	public float[] toArray() {
+		return Arrays.copyOf(data, size);
+	}
+}
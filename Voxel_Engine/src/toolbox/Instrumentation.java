@@ -0,0 +1,126 @@
+package toolbox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The Instrumentation class collects the engine's performance measurements
+ * and writes them to the console. Startup is measured as a sequence of named
+ * marks relative to the moment the class is first used, which MainGameLoop
+ * does as the first thing in main. Recurring operations record their durations
+ * into named TimingStats, which are reported periodically.
+ */
+public final class Instrumentation {
+
+	// Time origin of the startup marks.
+	private static final long START = System.nanoTime();
+
+	// Names and times of the startup marks, in order.
+	private static final List<String> markNames = new ArrayList<String>();
+	private static final List<Long> markTimes = new ArrayList<Long>();
+
+	// Number of recent samples kept by each timing.
+	private static final int TIMING_SAMPLES = 1024;
+
+	// Interval between two periodic timing reports.
+	private static final long REPORT_INTERVAL = 10_000_000_000L;
+
+	// Timings by name.
+	private static final Map<String, TimingStats> timings = new ConcurrentHashMap<String, TimingStats>();
+
+	// Time of the last periodic report.
+	private static long lastReport = START;
+
+	private Instrumentation() {
+	}
+
+	/**
+	 * Starts the startup clock. Calling it is optional; it only makes the time
+	 * origin explicit.
+	 */
+	public static void start() {
+		// Loading the class sets START.
+	}
+
+	/**
+	 * Records that a startup phase has finished.
+	 *
+	 * @param phase The name of the phase.
+	 */
+	public static synchronized void mark(String phase) {
+		markNames.add(phase);
+		markTimes.add(System.nanoTime());
+	}
+
+	/**
+	 * Gets the time elapsed since the startup clock began.
+	 *
+	 * @return The elapsed time in milliseconds.
+	 */
+	public static double millisSinceStart() {
+		return (System.nanoTime() - START) / 1e6;
+	}
+
+	/**
+	 * Prints every startup mark with its time since start and the duration of
+	 * its phase.
+	 */
+	public static synchronized void reportStartup() {
+		long previous = START;
+		StringBuilder report = new StringBuilder("Startup timeline:");
+		for (int i = 0; i < markNames.size(); i++) {
+			long time = markTimes.get(i);
+			report.append(String.format(Locale.ROOT, "%n  %-28s %9.2f ms  (+%.2f ms)", markNames.get(i),
+					(time - START) / 1e6, (time - previous) / 1e6));
+			previous = time;
+		}
+		log("startup", report.toString());
+	}
+
+	/**
+	 * Gets the timing statistics with the given name, creating them on first use.
+	 * Callers on hot paths should look the statistics up once and keep them.
+	 *
+	 * @param name The name of the measured operation.
+	 * @return The timing statistics.
+	 */
+	public static TimingStats timing(String name) {
+		return timings.computeIfAbsent(name, key -> new TimingStats(key, TIMING_SAMPLES));
+	}
+
+	/**
+	 * Prints every timing if the report interval has elapsed since the last
+	 * report. Meant to be called once per frame.
+	 */
+	public static void reportPeriodically() {
+		long now = System.nanoTime();
+		if (now - lastReport >= REPORT_INTERVAL) {
+			lastReport = now;
+			reportTimings();
+		}
+	}
+
+	/**
+	 * Prints every timing.
+	 */
+	public static void reportTimings() {
+		StringBuilder report = new StringBuilder("Timings:");
+		for (TimingStats stats : timings.values()) {
+			report.append(System.lineSeparator()).append("  ").append(stats);
+		}
+		log("timing", report.toString());
+	}
+
+	/**
+	 * Writes an instrumentation message to the console.
+	 *
+	 * @param category The subsystem reporting the message.
+	 * @param message  The message.
+	 */
+	public static void log(String category, String message) {
+		System.out.println("[" + category + "] " + message);
+	}
+}
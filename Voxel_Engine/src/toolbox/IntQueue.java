@@ -0,0 +1,88 @@
+package toolbox;
+
+import java.util.Arrays;
+
+/**
+ * The IntQueue class is a growable first-in first-out queue of primitive ints,
+ * stored in a ring buffer. Breadth-first searches use it to queue packed
+ * positions without boxing them.
+ */
+public class IntQueue {
+
+	// The ring buffer; its length is always a power of two.
+	private int[] data;
+
+	// Index of the first element and number of elements.
+	private int head, size;
+
+	/**
+	 * Creates a queue with the given initial capacity.
+	 *
+	 * @param capacity The number of elements the queue can hold before growing.
+	 */
+	public IntQueue(int capacity) {
+		data = new int[Integer.highestOneBit(Math.max(capacity, 4) - 1) << 1];
+	}
+
+	/**
+	 * Appends a value at the tail of the queue.
+	 *
+	 * @param value The value to append.
+	 */
+	public void add(int value) {
+		if (size == data.length) {
+			grow();
+		}
+		data[(head + size++) & (data.length - 1)] = value;
+	}
+
+	/**
+	 * Removes and returns the value at the head of the queue.
+	 *
+	 * @return The oldest value of the queue.
+	 */
+	public int poll() {
+		int value = data[head];
+		head = (head + 1) & (data.length - 1);
+		size--;
+		return value;
+	}
+
+	/**
+	 * Checks whether the queue holds no values.
+	 *
+	 * @return true if the queue is empty.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gets the number of values in the queue.
+	 *
+	 * @return The size of the queue.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Empties the queue, keeping its storage.
+	 */
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * Doubles the ring buffer, unwrapping the elements to its start.
+	 */
+	private void grow() {
+		int[] grown = new int[data.length * 2];
+		int firstPart = data.length - head;
+		System.arraycopy(data, head, grown, 0, firstPart);
+		System.arraycopy(data, 0, grown, firstPart, head);
+		data = grown;
+		head = 0;
+	}
+}
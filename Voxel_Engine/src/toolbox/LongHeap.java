@@ -0,0 +1,98 @@
+package toolbox;
+
+import java.util.Arrays;
+
+/**
+ * The LongHeap class is a growable binary min-heap of primitive longs. Graph
+ * searches use it as their open set, packing a priority in the high bits and
+ * a node index in the low bits of each value, so the smallest value is the
+ * node to expand next and nothing is boxed.
+ */
+public class LongHeap {
+
+	// The heap array; only the first size elements are in use.
+	private long[] data;
+
+	// Number of values in the heap.
+	private int size;
+
+	/**
+	 * Creates a heap with the given initial capacity.
+	 *
+	 * @param capacity The number of values the heap can hold before growing.
+	 */
+	public LongHeap(int capacity) {
+		data = new long[Math.max(capacity, 4)];
+	}
+
+	/**
+	 * Adds a value to the heap.
+	 *
+	 * @param value The value to add.
+	 */
+	public void add(long value) {
+		if (size == data.length) {
+			data = Arrays.copyOf(data, size * 2);
+		}
+		int index = size++;
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (data[parent] <= value) {
+				break;
+			}
+			data[index] = data[parent];
+			index = parent;
+		}
+		data[index] = value;
+	}
+
+	/**
+	 * Removes and returns the smallest value of the heap.
+	 *
+	 * @return The smallest value.
+	 */
+	public long poll() {
+		long smallest = data[0];
+		long last = data[--size];
+		int index = 0;
+		int half = size >>> 1;
+		while (index < half) {
+			int child = 2 * index + 1;
+			if (child + 1 < size && data[child + 1] < data[child]) {
+				child++;
+			}
+			if (last <= data[child]) {
+				break;
+			}
+			data[index] = data[child];
+			index = child;
+		}
+		data[index] = last;
+		return smallest;
+	}
+
+	/**
+	 * Checks whether the heap holds no values.
+	 *
+	 * @return true if the heap is empty.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gets the number of values in the heap.
+	 *
+	 * @return The size of the heap.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Empties the heap, keeping its storage.
+	 */
+	public void clear() {
+		size = 0;
+	}
+}
@@ -0,0 +1,212 @@
+package toolbox;
+
+import java.util.Arrays;
+
+/**
+ * The LongIntHashMap class maps primitive long keys to primitive int values
+ * using open addressing with linear probing. It never boxes keys or values, so
+ * lookups and updates do not allocate once the table has grown to its working
+ * size. One key value is reserved to mark empty slots and cannot be stored.
+ */
+public class LongIntHashMap {
+
+	/** The key value reserved for empty slots. */
+	public static final long EMPTY_KEY = Long.MIN_VALUE;
+
+	// Keys and values of the table; empty slots hold EMPTY_KEY.
+	private long[] keys;
+	private int[] values;
+
+	// Index mask of the table (capacity - 1, capacity is a power of two).
+	private int mask;
+
+	// Number of entries in the map.
+	private int size;
+
+	// Value returned by get when a key is missing.
+	private final int missingValue;
+
+	/**
+	 * Creates a map sized for the expected number of entries.
+	 *
+	 * @param expectedSize The number of entries the map should hold without growing.
+	 * @param missingValue The value returned by get for missing keys.
+	 */
+	public LongIntHashMap(int expectedSize, int missingValue) {
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY_KEY);
+		values = new int[capacity];
+		mask = capacity - 1;
+		this.missingValue = missingValue;
+	}
+
+	/**
+	 * Spreads the bits of a key so packed coordinates hash evenly.
+	 *
+	 * @param key The key to hash.
+	 * @return The hash of the key.
+	 */
+	public static int hash(long key) {
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key ^ (key >>> 32));
+	}
+
+	/**
+	 * Gets the value of a key.
+	 *
+	 * @param key The key to look up.
+	 * @return The value of the key, or the missing value if it is not present.
+	 */
+	public int get(long key) {
+		int slot = hash(key) & mask;
+		while (true) {
+			long k = keys[slot];
+			if (k == key) {
+				return values[slot];
+			}
+			if (k == EMPTY_KEY) {
+				return missingValue;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Checks whether a key is present.
+	 *
+	 * @param key The key to look up.
+	 * @return true if the map contains the key.
+	 */
+	public boolean containsKey(long key) {
+		int slot = hash(key) & mask;
+		while (true) {
+			long k = keys[slot];
+			if (k == key) {
+				return true;
+			}
+			if (k == EMPTY_KEY) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Associates a value with a key, replacing any previous value.
+	 *
+	 * @param key   The key; must not be EMPTY_KEY.
+	 * @param value The value to store.
+	 * @return The previous value of the key, or the missing value if it was absent.
+	 */
+	public int put(long key, int value) {
+		int slot = hash(key) & mask;
+		while (true) {
+			long k = keys[slot];
+			if (k == key) {
+				int previous = values[slot];
+				values[slot] = value;
+				return previous;
+			}
+			if (k == EMPTY_KEY) {
+				keys[slot] = key;
+				values[slot] = value;
+				if (++size * 4 > keys.length * 3) {
+					rehash(keys.length * 2); // Keep the load factor under 75%
+				}
+				return missingValue;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Removes a key from the map.
+	 *
+	 * @param key The key to remove.
+	 * @return The value the key had, or the missing value if it was absent.
+	 */
+	public int remove(long key) {
+		int slot = hash(key) & mask;
+		while (true) {
+			long k = keys[slot];
+			if (k == EMPTY_KEY) {
+				return missingValue;
+			}
+			if (k == key) {
+				int previous = values[slot];
+				shiftBack(slot);
+				size--;
+				return previous;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Gets the number of entries in the map.
+	 *
+	 * @return The size of the map.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes every entry, keeping the table's storage.
+	 */
+	public void clear() {
+		Arrays.fill(keys, EMPTY_KEY);
+		size = 0;
+	}
+
+	/**
+	 * Closes the gap left by a removed slot by moving later entries of the same
+	 * probe run back, so no tombstones are needed.
+	 *
+	 * @param gap The slot that was emptied.
+	 */
+	private void shiftBack(int gap) {
+		int slot = gap;
+		while (true) {
+			slot = (slot + 1) & mask;
+			long k = keys[slot];
+			if (k == EMPTY_KEY) {
+				break;
+			}
+			int home = hash(k) & mask;
+			// Move the entry if its home slot is not between the gap and its slot.
+			if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+				keys[gap] = k;
+				values[gap] = values[slot];
+				gap = slot;
+			}
+		}
+		keys[gap] = EMPTY_KEY;
+	}
+
+	/**
+	 * Moves every entry into a new table of the given capacity.
+	 *
+	 * @param capacity The new capacity, a power of two.
+	 */
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY_KEY);
+		values = new int[capacity];
+		mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			long k = oldKeys[i];
+			if (k != EMPTY_KEY) {
+				int slot = hash(k) & mask;
+				while (keys[slot] != EMPTY_KEY) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = k;
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
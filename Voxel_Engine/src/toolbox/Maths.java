@@ -12,6 +12,11 @@ import entities.Camera; // Importing the Camera class for handling camera-relate
  */
 public class Maths {
 
+    // Shared rotation axes; Matrix4f.rotate only reads them.
+    private static final Vector3f X_AXIS = new Vector3f(1, 0, 0);
+    private static final Vector3f Y_AXIS = new Vector3f(0, 1, 0);
+    private static final Vector3f Z_AXIS = new Vector3f(0, 0, 1);
+
     /**
      * Creates a transformation matrix that combines translation, rotation, and
      * scaling. This matrix can be used to transform an object's vertices from
@@ -56,17 +61,31 @@ public class Maths {
      * @return A Matrix4f representing the view matrix.
      */
     public static Matrix4f createViewMatrix(Camera camera) {
-        // Initialize a new Matrix4f object
-        Matrix4f matrix = new Matrix4f();
+        return createViewMatrix(camera, new Matrix4f());
+    }
+
+    /**
+     * Creates a view matrix based on the provided camera's position and rotation,
+     * writing it into an existing matrix so per-frame callers do not allocate.
+     * 
+     * @param camera The Camera object representing the camera's position and rotation.
+     * @param matrix The matrix that receives the view matrix.
+     * @return The matrix passed in, holding the view matrix.
+     */
+    public static Matrix4f createViewMatrix(Camera camera, Matrix4f matrix) {
         matrix.setIdentity(); // Set the matrix to the identity matrix
 
         // Apply rotation based on the camera's rotation angles
-        Matrix4f.rotate((float) Math.toRadians(camera.getRotX()), new Vector3f(1, 0, 0), matrix, matrix);
-        Matrix4f.rotate((float) Math.toRadians(camera.getRotY()), new Vector3f(0, 1, 0), matrix, matrix);
-        Matrix4f.rotate((float) Math.toRadians(camera.getRotZ()), new Vector3f(0, 0, 1), matrix, matrix);
+        Matrix4f.rotate((float) Math.toRadians(camera.getRotX()), X_AXIS, matrix, matrix);
+        Matrix4f.rotate((float) Math.toRadians(camera.getRotY()), Y_AXIS, matrix, matrix);
+        Matrix4f.rotate((float) Math.toRadians(camera.getRotZ()), Z_AXIS, matrix, matrix);
         
         // Apply translation to position the camera in the world
-        Matrix4f.translate(new Vector3f(-camera.getPosition().x, -camera.getPosition().y, -camera.getPosition().z), matrix, matrix);
+        Vector3f position = camera.getPosition();
+        matrix.m30 -= matrix.m00 * position.x + matrix.m10 * position.y + matrix.m20 * position.z;
+        matrix.m31 -= matrix.m01 * position.x + matrix.m11 * position.y + matrix.m21 * position.z;
+        matrix.m32 -= matrix.m02 * position.x + matrix.m12 * position.y + matrix.m22 * position.z;
+        matrix.m33 -= matrix.m03 * position.x + matrix.m13 * position.y + matrix.m23 * position.z;
 
         // Return the constructed view matrix
         return matrix;
@@ -0,0 +1,114 @@
+package toolbox;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The TimingStats class keeps the most recent duration samples of one measured
+ * operation in a fixed-size ring and computes percentiles over them. Recording
+ * a sample does not allocate, so it can be used inside the game loop and the
+ * simulation tick. All methods are synchronized; samples are recorded at most
+ * a few hundred times per second, so contention is negligible.
+ */
+public class TimingStats {
+
+	// Name reported with the statistics.
+	private final String name;
+
+	// Ring of the most recent samples in nanoseconds.
+	private final long[] samples;
+
+	// Scratch copy sorted when percentiles are computed.
+	private final long[] sorted;
+
+	// Total number of samples recorded since creation.
+	private long count;
+
+	/**
+	 * Creates statistics that remember the given number of recent samples.
+	 *
+	 * @param name     The name reported with the statistics.
+	 * @param capacity The number of recent samples kept.
+	 */
+	public TimingStats(String name, int capacity) {
+		this.name = name;
+		this.samples = new long[capacity];
+		this.sorted = new long[capacity];
+	}
+
+	/**
+	 * Records one sample.
+	 *
+	 * @param nanos The measured duration in nanoseconds.
+	 */
+	public synchronized void record(long nanos) {
+		samples[(int) (count++ % samples.length)] = nanos;
+	}
+
+	/**
+	 * Gets the number of samples currently kept (at most the capacity).
+	 *
+	 * @return The number of recent samples.
+	 */
+	public synchronized int size() {
+		return (int) Math.min(count, samples.length);
+	}
+
+	/**
+	 * Gets the total number of samples recorded since creation.
+	 *
+	 * @return The sample count.
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Computes a percentile of the recent samples.
+	 *
+	 * @param percentile The percentile, from 0 to 100.
+	 * @return The sample at that percentile in milliseconds, or 0 without samples.
+	 */
+	public synchronized double percentileMillis(double percentile) {
+		int size = size();
+		if (size == 0) {
+			return 0;
+		}
+		System.arraycopy(samples, 0, sorted, 0, size);
+		Arrays.sort(sorted, 0, size);
+		int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+		return sorted[Math.max(0, Math.min(size - 1, index))] / 1e6;
+	}
+
+	/**
+	 * Computes the mean of the recent samples.
+	 *
+	 * @return The mean in milliseconds, or 0 without samples.
+	 */
+	public synchronized double meanMillis() {
+		int size = size();
+		if (size == 0) {
+			return 0;
+		}
+		long total = 0;
+		for (int i = 0; i < size; i++) {
+			total += samples[i];
+		}
+		return total / (double) size / 1e6;
+	}
+
+	/**
+	 * Gets the name of the statistics.
+	 *
+	 * @return The name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(Locale.ROOT, "%-24s n=%-8d mean %7.3f ms  p50 %7.3f ms  p95 %7.3f ms  p99 %7.3f ms",
+				name, count, meanMillis(), percentileMillis(50), percentileMillis(95), percentileMillis(99));
+	}
+}
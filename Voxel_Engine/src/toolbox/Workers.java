@@ -0,0 +1,26 @@
+package toolbox;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * The Workers class holds the worker pool shared by the engine's background
+ * jobs (asset decoding, world work). It leaves one core for the render thread
+ * and uses daemon threads, so pending jobs never keep the game alive after the
+ * display closes.
+ */
+public final class Workers {
+
+	/** The shared worker pool. */
+	public static final ForkJoinPool POOL = new ForkJoinPool(
+			Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+			pool -> {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("juancraft-worker-" + thread.getPoolIndex());
+				thread.setDaemon(true);
+				return thread;
+			}, null, false);
+
+	private Workers() {
+	}
+}
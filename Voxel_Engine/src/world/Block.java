@@ -0,0 +1,116 @@
+package world;
+
+/**
+ * The Block class defines the block types of the world. Blocks are stored as
+ * short ids so chunk sections can keep them in primitive arrays; the
+ * properties of each id are looked up in the static tables below.
+ */
+public final class Block {
+
+	// Block ids.
+	public static final short AIR = 0;
+	public static final short GRASS = 1;
+	public static final short DIRT = 2;
+	public static final short STONE = 3;
+	public static final short LOG = 4;
+	public static final short LEAVES = 5;
+	public static final short WATER = 6;
+	public static final short GLASS = 7;
+	public static final short LAMP = 8;
+
+	/** Number of block ids. */
+	public static final int COUNT = 9;
+
+	/** Highest light level. */
+	public static final int MAX_LIGHT = 15;
+
+	// Whether each block stops movement and rays.
+	private static final boolean[] SOLID = new boolean[COUNT];
+
+	// Whether each block hides the faces of its neighbours.
+	private static final boolean[] OPAQUE = new boolean[COUNT];
+
+	// Light lost when passing through each block, on top of the one level lost
+	// per block travelled; MAX_LIGHT stops light entirely.
+	private static final int[] LIGHT_OPACITY = new int[COUNT];
+
+	// Light level emitted by each block.
+	private static final int[] LIGHT_EMISSION = new int[COUNT];
+
+	// Material each block is drawn with, or -1 for blocks that are not drawn.
+	private static final int[] MATERIAL = new int[COUNT];
+
+	static {
+		MATERIAL[AIR] = -1;
+		setProperties(GRASS, true, true, MAX_LIGHT, 0, Material.GRASS);
+		setProperties(DIRT, true, true, MAX_LIGHT, 0, Material.DIRT);
+		setProperties(STONE, true, true, MAX_LIGHT, 0, Material.STONE);
+		setProperties(LOG, true, true, MAX_LIGHT, 0, Material.BARK);
+		setProperties(LEAVES, true, false, 1, 0, Material.LEAF);
+		setProperties(WATER, false, false, 2, 0, Material.WATER);
+		setProperties(GLASS, true, false, 0, 0, Material.GLASS);
+		setProperties(LAMP, true, true, MAX_LIGHT, 15, Material.LAMP);
+	}
+
+	private Block() {
+	}
+
+	/**
+	 * Checks whether a block stops movement and rays.
+	 *
+	 * @param id The block id.
+	 * @return true if the block is solid.
+	 */
+	public static boolean isSolid(int id) {
+		return SOLID[id];
+	}
+
+	/**
+	 * Checks whether a block hides the faces of its neighbours.
+	 *
+	 * @param id The block id.
+	 * @return true if the block is opaque.
+	 */
+	public static boolean isOpaque(int id) {
+		return OPAQUE[id];
+	}
+
+	/**
+	 * Gets the light a block absorbs on top of the one level lost per block.
+	 *
+	 * @param id The block id.
+	 * @return The light opacity, from 0 to MAX_LIGHT.
+	 */
+	public static int getLightOpacity(int id) {
+		return LIGHT_OPACITY[id];
+	}
+
+	/**
+	 * Gets the light level a block emits.
+	 *
+	 * @param id The block id.
+	 * @return The emitted level, from 0 to MAX_LIGHT.
+	 */
+	public static int getLightEmission(int id) {
+		return LIGHT_EMISSION[id];
+	}
+
+	/**
+	 * Gets the material a block is drawn with.
+	 *
+	 * @param id The block id.
+	 * @return The material, or -1 if the block is not drawn.
+	 */
+	public static int getMaterial(int id) {
+		return MATERIAL[id];
+	}
+
+	private static void setProperties(short id, boolean solid, boolean opaque, int lightOpacity, int lightEmission,
+			int material) {
+		SOLID[id] = solid;
+		OPAQUE[id] = opaque;
+		LIGHT_OPACITY[id] = lightOpacity;
+		LIGHT_EMISSION[id] = lightEmission;
+		MATERIAL[id] = material;
+	}
+}
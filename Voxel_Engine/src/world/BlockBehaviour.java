@@ -0,0 +1,37 @@
+package world;
+
+/**
+ * The BlockBehaviour interface is what a block type does when the BlockTicker
+ * ticks one of its blocks: randomly, a few blocks per section each game tick,
+ * for slow processes such as grass spreading, or when a tick scheduled for the
+ * block comes due. Both do nothing unless overridden.
+ *
+ * Behaviours run on the worker pool, one thread per region at a time, and must
+ * only touch the world through the context they are given.
+ */
+public interface BlockBehaviour {
+
+	/**
+	 * Called when a block is picked by the random ticks.
+	 *
+	 * @param context The context of the region being ticked.
+	 * @param x       The X coordinate of the block.
+	 * @param y       The Y coordinate of the block.
+	 * @param z       The Z coordinate of the block.
+	 * @param block   The block id.
+	 */
+	default void randomTick(BlockTicker.Context context, int x, int y, int z, short block) {
+	}
+
+	/**
+	 * Called when a tick scheduled for a block comes due.
+	 *
+	 * @param context The context of the region being ticked.
+	 * @param x       The X coordinate of the block.
+	 * @param y       The Y coordinate of the block.
+	 * @param z       The Z coordinate of the block.
+	 * @param block   The block id now at that position.
+	 */
+	default void scheduledTick(BlockTicker.Context context, int x, int y, int z, short block) {
+	}
+}
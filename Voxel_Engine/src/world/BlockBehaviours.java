@@ -0,0 +1,48 @@
+package world;
+
+/**
+ * The BlockBehaviours class holds the tick behaviours of the game's blocks.
+ * Grass slowly spreads to uncovered dirt next to it and dies back to dirt
+ * under an opaque block, both on random ticks, like the grass of most block
+ * games.
+ */
+public final class BlockBehaviours {
+
+	/** Grass: turns to dirt when covered by an opaque block. */
+	public static final BlockBehaviour GRASS = new BlockBehaviour() {
+		@Override
+		public void randomTick(BlockTicker.Context context, int x, int y, int z, short block) {
+			if (Block.isOpaque(context.getBlock(x, y + 1, z))) {
+				context.setBlock(x, y, z, Block.DIRT);
+			}
+		}
+	};
+
+	/** Dirt: turns to grass when uncovered and next to grass, one level up or down at most. */
+	public static final BlockBehaviour DIRT = new BlockBehaviour() {
+		@Override
+		public void randomTick(BlockTicker.Context context, int x, int y, int z, short block) {
+			if (Block.isOpaque(context.getBlock(x, y + 1, z))) {
+				return;
+			}
+			// Look at one random neighbour per tick, so grass spreads slowly.
+			int dx = context.nextInt(3) - 1, dy = context.nextInt(3) - 1, dz = context.nextInt(3) - 1;
+			if (context.getBlock(x + dx, y + dy, z + dz) == Block.GRASS) {
+				context.setBlock(x, y, z, Block.GRASS);
+			}
+		}
+	};
+
+	private BlockBehaviours() {
+	}
+
+	/**
+	 * Registers the behaviours of the game's blocks with a ticker.
+	 *
+	 * @param ticker The ticker.
+	 */
+	public static void registerDefaults(BlockTicker ticker) {
+		ticker.setBehaviour(Block.GRASS, GRASS);
+		ticker.setBehaviour(Block.DIRT, DIRT);
+	}
+}
@@ -0,0 +1,20 @@
+package world;
+
+/**
+ * The BlockChangeListener interface is told about blocks changed by the world
+ * simulation, so the light and meshes around them can be updated. Its
+ * signature matches LightEngine.blockChanged.
+ */
+public interface BlockChangeListener {
+
+	/**
+	 * Called after a block changed; the new block is already set in the world.
+	 *
+	 * @param x        The X coordinate of the block.
+	 * @param y        The Y coordinate of the block.
+	 * @param z        The Z coordinate of the block.
+	 * @param oldBlock The block id before the change.
+	 * @param newBlock The block id after the change.
+	 */
+	void blockChanged(int x, int y, int z, short oldBlock, short newBlock);
+}
@@ -0,0 +1,433 @@
+package world;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import toolbox.Instrumentation;
+import toolbox.IntList;
+import toolbox.TimingStats;
+
+/**
+ * The BlockTicker class runs the block ticks of the loaded world, once per
+ * game tick: the scheduled ticks that came due, kept per section in a
+ * primitive TickQueue, and a configurable number of random ticks per section.
+ * What a tick does is up to the BlockBehaviour registered for the block.
+ *
+ * The loaded sections are partitioned into regions of 4x4 section columns
+ * (see RegionPartition), and the regions are ticked in parallel on a
+ * fork-join pool, in four checkerboard phases so that no two adjacent regions
+ * tick at once. A behaviour may read the blocks of its region and of the eight
+ * around it, which are idle while it ticks; its writes and scheduled ticks
+ * take effect at once inside its own region, and those aimed at another
+ * region are deferred until every region has finished, then applied in region
+ * order. Sections are ticked in coordinate order and each region draws its
+ * random ticks from its own generator, seeded by the world seed, the region
+ * and the game tick, so a world ticks the same however the regions are spread
+ * over the threads.
+ *
+ * Sections loaded while a tick runs are ticked from the next one. Changed
+ * blocks are reported to the listener once a tick is over.
+ *
+ * Not thread-safe: tick and schedule are called by one thread (the
+ * simulation).
+ */
+public class BlockTicker {
+
+	// Random ticks per section and game tick unless configured otherwise.
+	private static final int DEFAULT_RANDOM_TICKS = 3;
+
+	/**
+	 * What the behaviours of a region see of the world while it is ticked.
+	 * Each region has its own context, used by one thread at a time.
+	 */
+	public static final class Context {
+		private final BlockTicker ticker;
+		private final RegionPartition.Region region;
+
+		// State of the region's random generator.
+		private long random;
+
+		// Blocks changed in the region: x, y, z, old id, new id per change.
+		final IntList changes = new IntList(64);
+
+		// Writes and schedules aimed at other regions: x, y, z, id or delay per entry.
+		final IntList deferredWrites = new IntList(16);
+		final IntList deferredSchedules = new IntList(16);
+
+		// Ticks run during the current game tick.
+		long scheduledTicks, randomTicks;
+
+		Context(BlockTicker ticker, RegionPartition.Region region) {
+			this.ticker = ticker;
+			this.region = region;
+		}
+
+		/**
+		 * Gets the game tick being run.
+		 *
+		 * @return The game tick.
+		 */
+		public long getTick() {
+			return ticker.tick;
+		}
+
+		/**
+		 * Gets a block anywhere in the world. The blocks of this region and of
+		 * the eight around it are stable while it ticks, except for its own
+		 * writes; blocks further away may be changing.
+		 *
+		 * @param x The X block coordinate.
+		 * @param y The Y block coordinate.
+		 * @param z The Z block coordinate.
+		 * @return The block id.
+		 */
+		public short getBlock(int x, int y, int z) {
+			return ticker.world.getBlock(x, y, z);
+		}
+
+		/**
+		 * Sets a block of a loaded section. The write takes effect at once inside
+		 * this region, and at the end of the game tick elsewhere. Sections are
+		 * never loaded by a tick: writes to unloaded sections are dropped.
+		 *
+		 * @param x  The X block coordinate.
+		 * @param y  The Y block coordinate.
+		 * @param z  The Z block coordinate.
+		 * @param id The block id.
+		 */
+		public void setBlock(int x, int y, int z, short id) {
+			if (region.contains(x, z)) {
+				ticker.write(this, x, y, z, id);
+			} else {
+				deferredWrites.add(x);
+				deferredWrites.add(y);
+				deferredWrites.add(z);
+				deferredWrites.add(id);
+			}
+		}
+
+		/**
+		 * Schedules a tick of a block of a loaded section. Inside this region the
+		 * tick is queued at once, elsewhere at the end of the game tick.
+		 *
+		 * @param x     The X block coordinate.
+		 * @param y     The Y block coordinate.
+		 * @param z     The Z block coordinate.
+		 * @param delay The number of game ticks until the tick, at least 1.
+		 */
+		public void schedule(int x, int y, int z, int delay) {
+			if (delay < 1) {
+				throw new IllegalArgumentException("Ticks are scheduled at least one game tick ahead");
+			}
+			if (region.contains(x, z)) {
+				ticker.schedule(x, y, z, delay);
+			} else {
+				deferredSchedules.add(x);
+				deferredSchedules.add(y);
+				deferredSchedules.add(z);
+				deferredSchedules.add(delay);
+			}
+		}
+
+		/**
+		 * Draws a random number from the region's generator.
+		 *
+		 * @param bound The upper bound (exclusive); positive.
+		 * @return A number from 0 to bound - 1.
+		 */
+		public int nextInt(int bound) {
+			return (int) ((nextLong() >>> 33) % bound);
+		}
+
+		/**
+		 * Draws the next number of the SplitMix64 sequence.
+		 */
+		private long nextLong() {
+			long z = random += 0x9E3779B97F4A7C15L;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
+		}
+
+		/**
+		 * Runs the due scheduled ticks and the random ticks of the region.
+		 */
+		void tickRegion() {
+			long tick = ticker.tick;
+			random = ticker.seed ^ (region.getRegionX() * 0x632BE59BD9B4E019L
+					+ region.getRegionZ() * 0x8CB92BA72F3D8DD7L) ^ tick * 0xD1B54A32D192ED03L;
+			BlockBehaviour[] behaviours = ticker.behaviours;
+			int randomTicksPerSection = ticker.randomTicksPerSection;
+
+			for (int i = 0; i < region.getSectionCount(); i++) {
+				ChunkSection section = region.getSection(i);
+				int originX = section.getSectionX() << ChunkSection.SHIFT;
+				int originY = section.getSectionY() << ChunkSection.SHIFT;
+				int originZ = section.getSectionZ() << ChunkSection.SHIFT;
+
+				TickQueue queue = section.ticks;
+				if (queue != null) {
+					int index;
+					while ((index = queue.pollDue(tick)) >= 0) {
+						short block = section.getBlock(index);
+						BlockBehaviour behaviour = behaviours[block];
+						if (behaviour != null) {
+							behaviour.scheduledTick(this, originX + (index & ChunkSection.MASK), originY + (index >>> 8),
+									originZ + (index >>> 4 & ChunkSection.MASK), block);
+						}
+						scheduledTicks++;
+					}
+				}
+
+				if (section.isEmpty()) {
+					continue; // Air does nothing when ticked
+				}
+				for (int n = 0; n < randomTicksPerSection; n++) {
+					int index = (int) (nextLong() >>> 52);
+					short block = section.getBlock(index);
+					BlockBehaviour behaviour = behaviours[block];
+					if (behaviour != null) {
+						behaviour.randomTick(this, originX + (index & ChunkSection.MASK), originY + (index >>> 8),
+								originZ + (index >>> 4 & ChunkSection.MASK), block);
+					}
+					randomTicks++;
+				}
+			}
+		}
+	}
+
+	// The world whose blocks are ticked.
+	private final World world;
+
+	// Where the regions are ticked.
+	private final ForkJoinPool pool;
+
+	// Seed of the random ticks.
+	private final long seed;
+
+	// Behaviour of each block id, or null for blocks that do nothing.
+	private final BlockBehaviour[] behaviours = new BlockBehaviour[Block.COUNT];
+
+	// Random ticks per section and game tick.
+	private volatile int randomTicksPerSection = DEFAULT_RANDOM_TICKS;
+
+	// Told about the blocks changed by each tick.
+	private volatile BlockChangeListener listener;
+
+	// The regions the sections are ticked in, and the context of each, by region id.
+	private final RegionPartition partition;
+	private Context[] contexts = new Context[64];
+
+	// The game tick being run, or the last one run.
+	private long tick;
+
+	// Ticks run and blocks changed so far.
+	private long scheduledTicks, randomTicks, changes;
+
+	// Duration of the game ticks.
+	private final TimingStats tickTime = Instrumentation.timing("world.blockTicks");
+
+	/**
+	 * Creates a ticker.
+	 *
+	 * @param world The world whose blocks are ticked.
+	 * @param seed  The seed of the random ticks.
+	 * @param pool  The pool the regions are ticked on.
+	 */
+	public BlockTicker(World world, long seed, ForkJoinPool pool) {
+		this.world = world;
+		this.seed = seed;
+		this.pool = pool;
+		this.partition = new RegionPartition(world.getRegistry());
+	}
+
+	/**
+	 * Sets what a block type does when ticked.
+	 *
+	 * @param id        The block id.
+	 * @param behaviour The behaviour, or null for blocks that do nothing.
+	 */
+	public void setBehaviour(short id, BlockBehaviour behaviour) {
+		behaviours[id] = behaviour;
+	}
+
+	/**
+	 * Sets the number of blocks picked at random in each section every game
+	 * tick.
+	 *
+	 * @param randomTicksPerSection The number of random ticks; 0 turns them off.
+	 */
+	public void setRandomTicksPerSection(int randomTicksPerSection) {
+		if (randomTicksPerSection < 0) {
+			throw new IllegalArgumentException("Negative random tick count: " + randomTicksPerSection);
+		}
+		this.randomTicksPerSection = randomTicksPerSection;
+	}
+
+	/**
+	 * Sets the listener told about the blocks changed by each tick. It is called
+	 * on the thread running tick, once all regions are done.
+	 *
+	 * @param listener The listener, or null.
+	 */
+	public void setListener(BlockChangeListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Schedules a tick of a block of a loaded section. Must not be called while
+	 * a tick runs, except by the context of the block's region; behaviours
+	 * schedule through their context.
+	 *
+	 * @param x     The X block coordinate.
+	 * @param y     The Y block coordinate.
+	 * @param z     The Z block coordinate.
+	 * @param delay The number of game ticks until the tick, at least 1.
+	 * @return true if the tick was added or moved earlier, false if the section
+	 *         is not loaded or the block already had a pending tick at or
+	 *         before it.
+	 */
+	public boolean schedule(int x, int y, int z, int delay) {
+		if (delay < 1) {
+			throw new IllegalArgumentException("Ticks are scheduled at least one game tick ahead");
+		}
+		ChunkSection section = world.getSection(x >> ChunkSection.SHIFT, y >> ChunkSection.SHIFT,
+				z >> ChunkSection.SHIFT);
+		if (section == null) {
+			return false;
+		}
+		if (section.ticks == null) {
+			section.ticks = new TickQueue();
+		}
+		return section.ticks.schedule(ChunkSection.index(x & ChunkSection.MASK, y & ChunkSection.MASK,
+				z & ChunkSection.MASK), tick + delay);
+	}
+
+	/**
+	 * Runs the next game tick: the regions phase by phase, those of a phase in
+	 * parallel, then the writes and schedules deferred across regions, then the
+	 * listener.
+	 */
+	public void tick() {
+		long start = System.nanoTime();
+		tick++;
+		if (partition.update()) {
+			createContexts();
+		}
+		partition.forEachPhased(pool, region -> contexts[region.getId()].tickRegion());
+
+		// Apply what crossed the region borders, in region order.
+		for (int r = 0; r < partition.size(); r++) {
+			Context context = contexts[partition.get(r).getId()];
+			IntList writes = context.deferredWrites;
+			for (int i = 0; i < writes.size(); i += 4) {
+				write(context, writes.get(i), writes.get(i + 1), writes.get(i + 2), (short) writes.get(i + 3));
+			}
+			IntList schedules = context.deferredSchedules;
+			for (int i = 0; i < schedules.size(); i += 4) {
+				schedule(schedules.get(i), schedules.get(i + 1), schedules.get(i + 2), schedules.get(i + 3));
+			}
+			writes.clear();
+			schedules.clear();
+			scheduledTicks += context.scheduledTicks;
+			randomTicks += context.randomTicks;
+			context.scheduledTicks = 0;
+			context.randomTicks = 0;
+		}
+
+		// Report the changes once every region is done.
+		BlockChangeListener target = listener;
+		for (int r = 0; r < partition.size(); r++) {
+			IntList list = contexts[partition.get(r).getId()].changes;
+			changes += list.size() / 5;
+			if (target != null) {
+				for (int i = 0; i < list.size(); i += 5) {
+					target.blockChanged(list.get(i), list.get(i + 1), list.get(i + 2), (short) list.get(i + 3),
+							(short) list.get(i + 4));
+				}
+			}
+			list.clear();
+		}
+		tickTime.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Gets the last game tick run.
+	 *
+	 * @return The game tick, 0 before the first.
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Gets the number of scheduled ticks run so far.
+	 *
+	 * @return The scheduled tick count.
+	 */
+	public long getScheduledTicks() {
+		return scheduledTicks;
+	}
+
+	/**
+	 * Gets the number of random ticks run so far.
+	 *
+	 * @return The random tick count.
+	 */
+	public long getRandomTicks() {
+		return randomTicks;
+	}
+
+	/**
+	 * Gets the number of blocks changed by ticks so far.
+	 *
+	 * @return The change count.
+	 */
+	public long getChanges() {
+		return changes;
+	}
+
+	/**
+	 * Gets the number of regions holding loaded sections.
+	 *
+	 * @return The region count.
+	 */
+	public int getRegionCount() {
+		return partition.size();
+	}
+
+	/**
+	 * Sets a block of a loaded section and records the change in a context.
+	 */
+	private void write(Context context, int x, int y, int z, short id) {
+		ChunkSection section = world.getSection(x >> ChunkSection.SHIFT, y >> ChunkSection.SHIFT,
+				z >> ChunkSection.SHIFT);
+		if (section == null) {
+			return;
+		}
+		short previous = section.setBlock(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK, id);
+		if (previous != id) {
+			IntList list = context.changes;
+			list.add(x);
+			list.add(y);
+			list.add(z);
+			list.add(previous);
+			list.add(id);
+		}
+	}
+
+	/**
+	 * Creates the contexts of the regions the partition added.
+	 */
+	private void createContexts() {
+		if (contexts.length < partition.getIdCount()) {
+			contexts = Arrays.copyOf(contexts, Math.max(partition.getIdCount(), contexts.length * 2));
+		}
+		for (int r = 0; r < partition.size(); r++) {
+			RegionPartition.Region region = partition.get(r);
+			if (contexts[region.getId()] == null) {
+				contexts[region.getId()] = new Context(this, region);
+			}
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package world;
+
+import toolbox.FloatList;
+import toolbox.IntList;
+
+/**
+ * The ChunkMesher class turns the blocks of a chunk section into meshes, one
+ * per material, containing only the block faces that can be seen: faces
+ * touching an opaque block, or a block of the same kind, are skipped. Each
+ * vertex carries the block and sky light of the block in front of its face, so
+ * the shader can light the mesh without any per-pixel light lookups.
+ *
+ * Each vertex also carries its ambient occlusion: the classic count of the
+ * opaque blocks among the two sides and the corner touching the vertex in
+ * front of the face. Quads are split along the diagonal joining their two
+ * brighter corners, so occlusion is interpolated the same way whatever the
+ * orientation of the face.
+ *
+ * The parts of translucent materials also record the centre of every face, so
+ * their faces can be sorted back to front without reading the vertices.
+ *
+ * Before meshing, the blocks and light of the section and of the layer of
+ * blocks around it are copied into a padded 18x18x18 cache, so faces and
+ * occlusion on the border of the section read their neighbours with the same
+ * array lookup as inside it. Blocks of unloaded sections count as air under
+ * open sky.
+ *
+ * Blocks are cubes centred on their coordinates, like the cube entities, so a
+ * block spans half a unit on each side of its position.
+ *
+ * An instance reuses its scratch lists between sections and is not
+ * thread-safe; use one per thread.
+ */
+public class ChunkMesher {
+
+	// Corners of each face, counter-clockwise seen from outside, as offsets from
+	// the block's minimum corner. The first two corners are the bottom edge of
+	// the side faces.
+	private static final int[][] CORNERS = {
+			{ 0, 0, 0, 1, 0, 0, 1, 0, 1, 0, 0, 1 }, // DOWN
+			{ 0, 1, 0, 0, 1, 1, 1, 1, 1, 1, 1, 0 }, // UP
+			{ 1, 0, 0, 0, 0, 0, 0, 1, 0, 1, 1, 0 }, // NORTH
+			{ 0, 0, 1, 1, 0, 1, 1, 1, 1, 0, 1, 1 }, // SOUTH
+			{ 0, 0, 0, 0, 0, 1, 0, 1, 1, 0, 1, 0 }, // WEST
+			{ 1, 0, 1, 1, 0, 0, 1, 1, 0, 1, 1, 1 }, // EAST
+	};
+
+	// Texture rectangle (u0, v0, u1, v1) of each face in a cube atlas, inset
+	// slightly so that filtering never samples the neighbouring cell.
+	private static final float[][] ATLAS_CELLS = {
+			{ 0.01f, 1.01f / 3f, 0.99f / 3f, 1.99f / 3f }, // DOWN: left cell
+			{ 1.01f / 3f, 2.01f / 3f, 1.99f / 3f, 0.99f }, // UP: top cell
+			{ 1.01f / 3f, 1.01f / 3f, 1.99f / 3f, 1.99f / 3f }, // Sides: middle cell
+	};
+
+	// Texture rectangle of every face in a plain texture.
+	private static final float[] FULL_TEXTURE = { 0f, 0f, 1f, 1f };
+
+	// Size of the padded cache: the section plus one block on each side.
+	private static final int PADDED = ChunkSection.SIZE + 2;
+
+	// Distance between neighbouring cells of the padded cache along X, Y and Z.
+	private static final int[] STRIDES = { 1, PADDED * PADDED, PADDED };
+
+	// Offset in the padded cache from a block to the block in front of each face.
+	private static final int[] FACE_OFFSETS = new int[Face.COUNT];
+
+	// Offsets in the padded cache from the block in front of a face to the two
+	// sides and the corner touching each of its corners, three per corner.
+	private static final int[][] OCCLUSION_OFFSETS = new int[Face.COUNT][12];
+
+	static {
+		for (int face = 0; face < Face.COUNT; face++) {
+			FACE_OFFSETS[face] = Face.DX[face] * STRIDES[0] + Face.DY[face] * STRIDES[1] + Face.DZ[face] * STRIDES[2];
+
+			// Faces come in pairs along Y, Z and X; the other two axes span the face.
+			int normal = face < 2 ? 1 : face < 4 ? 2 : 0;
+			int first = normal == 0 ? 1 : 0, second = normal == 2 ? 1 : 2;
+			for (int corner = 0; corner < 4; corner++) {
+				int[] position = { CORNERS[face][corner * 3], CORNERS[face][corner * 3 + 1], CORNERS[face][corner * 3 + 2] };
+				int side1 = (position[first] == 1 ? 1 : -1) * STRIDES[first];
+				int side2 = (position[second] == 1 ? 1 : -1) * STRIDES[second];
+				OCCLUSION_OFFSETS[face][corner * 3] = side1;
+				OCCLUSION_OFFSETS[face][corner * 3 + 1] = side2;
+				OCCLUSION_OFFSETS[face][corner * 3 + 2] = side1 + side2;
+			}
+		}
+	}
+
+	// Scratch geometry of each material.
+	private final FloatList[] positions = new FloatList[Material.COUNT];
+	private final FloatList[] textureCoords = new FloatList[Material.COUNT];
+	private final FloatList[] light = new FloatList[Material.COUNT];
+	private final IntList[] indices = new IntList[Material.COUNT];
+	private final FloatList[] faceCentres = new FloatList[Material.COUNT]; // Translucent materials only
+
+	// Blocks and light of the section and the layer around it.
+	private final short[] blocks = new short[PADDED * PADDED * PADDED];
+	private final byte[] lightLevels = new byte[blocks.length]; // Block light << 4 | sky light
+
+	// The blocks of the section being meshed, decoded in one pass.
+	private final short[] sectionBlocks = new short[ChunkSection.VOLUME];
+
+	// Ambient occlusion of the corners of the face being added, from 0 to 3.
+	private final int[] occlusion = new int[4];
+
+	// Whether ambient occlusion is computed; without it every corner is unoccluded.
+	private boolean ambientOcclusion = true;
+
+	// Recently built meshes by content, shared between meshers; may be null.
+	private final MeshCache cache;
+
+	/**
+	 * Creates a mesher that builds every mesh.
+	 */
+	public ChunkMesher() {
+		this(null);
+	}
+
+	/**
+	 * Creates a mesher reusing the meshes of identical sections.
+	 *
+	 * @param cache The cache of recently built meshes, or null.
+	 */
+	public ChunkMesher(MeshCache cache) {
+		this.cache = cache;
+		for (int material = 0; material < Material.COUNT; material++) {
+			positions[material] = new FloatList(1024);
+			textureCoords[material] = new FloatList(1024);
+			light[material] = new FloatList(1024);
+			indices[material] = new IntList(1024);
+			faceCentres[material] = new FloatList(256);
+		}
+	}
+
+	/**
+	 * Sets whether ambient occlusion is computed. It is on by default; turning
+	 * it off is meant for measuring its cost.
+	 *
+	 * @param ambientOcclusion Whether to compute ambient occlusion.
+	 */
+	public void setAmbientOcclusion(boolean ambientOcclusion) {
+		this.ambientOcclusion = ambientOcclusion;
+	}
+
+	/**
+	 * Builds the meshes of a section.
+	 *
+	 * @param world   The world the section belongs to, for the blocks around it.
+	 * @param section The section to mesh.
+	 * @return The mesh data, with vertex positions relative to the section origin.
+	 */
+	public MeshData mesh(World world, ChunkSection section) {
+		int sx = section.getSectionX(), sy = section.getSectionY(), sz = section.getSectionZ();
+		MeshData.Part[] parts = new MeshData.Part[Material.COUNT];
+		if (section.isEmpty()) {
+			return new MeshData(sx, sy, sz, parts, null);
+		}
+
+		// Sections identical to one meshed recently, around them too, reuse its mesh.
+		fillCache(world, sx, sy, sz);
+		MeshKey key = contentKey();
+		if (cache != null) {
+			MeshData.Part[] cached = cache.get(key);
+			if (cached != null) {
+				return new MeshData(sx, sy, sz, cached, key);
+			}
+		}
+
+		for (int material = 0; material < Material.COUNT; material++) {
+			positions[material].clear();
+			textureCoords[material].clear();
+			light[material].clear();
+			indices[material].clear();
+			faceCentres[material].clear();
+		}
+		for (int y = 0; y < ChunkSection.SIZE; y++) {
+			for (int z = 0; z < ChunkSection.SIZE; z++) {
+				int index = paddedIndex(0, y, z);
+				for (int x = 0; x < ChunkSection.SIZE; x++, index++) {
+					short block = blocks[index];
+					int material = Block.getMaterial(block);
+					if (material < 0) {
+						continue;
+					}
+					for (int face = 0; face < Face.COUNT; face++) {
+						int front = index + FACE_OFFSETS[face];
+						short neighbour = blocks[front];
+						if (!Block.isOpaque(neighbour) && neighbour != block) {
+							addFace(material, x, y, z, face, front);
+						}
+					}
+				}
+			}
+		}
+
+		for (int material = 0; material < Material.COUNT; material++) {
+			if (indices[material].size() > 0) {
+				parts[material] = new MeshData.Part(material, positions[material].toArray(),
+						textureCoords[material].toArray(), light[material].toArray(), indices[material].toArray(),
+						Material.isTranslucent(material) ? faceCentres[material].toArray() : null);
+			}
+		}
+		if (cache != null) {
+			cache.put(key, parts);
+		}
+		return new MeshData(sx, sy, sz, parts, key);
+	}
+
+	/**
+	 * Hashes the padded cache, and whether ambient occlusion is on, into the
+	 * key of the mesh. Two cells are packed per long and the longs alternate
+	 * between two independent 64-bit mixes, which run in parallel.
+	 */
+	private MeshKey contentKey() {
+		long high = ambientOcclusion ? 0x9E3779B97F4A7C15L : 0x632BE59BD9B4E019L, low = 0xD1B54A32D192ED03L;
+		for (int index = 0; index < blocks.length; index += 4) {
+			high = (high ^ (cell(index) | cell(index + 1) << 24)) * 0xBF58476D1CE4E5B9L;
+			high ^= high >>> 29;
+			low = (low ^ (cell(index + 2) | cell(index + 3) << 24)) * 0x94D049BB133111EBL;
+			low ^= low >>> 32;
+		}
+		return new MeshKey(high, low);
+	}
+
+	/**
+	 * Packs the block and light of a cell of the padded cache into 24 bits.
+	 */
+	private long cell(int index) {
+		return (blocks[index] & 0xFFFFL) << 8 | (lightLevels[index] & 0xFFL);
+	}
+
+	/**
+	 * Copies the blocks and light of a section and of the layer around it into
+	 * the padded cache, one neighbouring section at a time.
+	 */
+	private void fillCache(World world, int sx, int sy, int sz) {
+		for (int dy = -1; dy <= 1; dy++) {
+			for (int dz = -1; dz <= 1; dz++) {
+				for (int dx = -1; dx <= 1; dx++) {
+					ChunkSection source = world.getSection(sx + dx, sy + dy, sz + dz);
+					if (source != null && (dx | dy | dz) == 0) {
+						copySection(source);
+						continue;
+					}
+					// The part of the neighbour inside the cache: its far layer, or all of it.
+					int minX = dx < 0 ? ChunkSection.MASK : 0, maxX = dx > 0 ? 0 : ChunkSection.MASK;
+					int minY = dy < 0 ? ChunkSection.MASK : 0, maxY = dy > 0 ? 0 : ChunkSection.MASK;
+					int minZ = dz < 0 ? ChunkSection.MASK : 0, maxZ = dz > 0 ? 0 : ChunkSection.MASK;
+					for (int y = minY; y <= maxY; y++) {
+						for (int z = minZ; z <= maxZ; z++) {
+							int index = paddedIndex(minX + dx * ChunkSection.SIZE, y + dy * ChunkSection.SIZE,
+									z + dz * ChunkSection.SIZE);
+							for (int x = minX; x <= maxX; x++, index++) {
+								if (source == null) {
+									blocks[index] = Block.AIR;
+									lightLevels[index] = Block.MAX_LIGHT;
+								} else {
+									int local = ChunkSection.index(x, y, z);
+									blocks[index] = source.getBlock(local);
+									lightLevels[index] = (byte) (source.getBlockLight().get(local) << 4
+											| source.getSkyLight().get(local));
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies the section being meshed into the middle of the padded cache, a row
+	 * of blocks at a time.
+	 */
+	private void copySection(ChunkSection section) {
+		section.copyBlocks(sectionBlocks);
+		NibbleArray sectionBlockLight = section.getBlockLight(), sectionSkyLight = section.getSkyLight();
+		for (int y = 0; y < ChunkSection.SIZE; y++) {
+			for (int z = 0; z < ChunkSection.SIZE; z++) {
+				int local = ChunkSection.index(0, y, z), index = paddedIndex(0, y, z);
+				System.arraycopy(sectionBlocks, local, blocks, index, ChunkSection.SIZE);
+				for (int x = 0; x < ChunkSection.SIZE; x++) {
+					lightLevels[index + x] = (byte) (sectionBlockLight.get(local + x) << 4
+							| sectionSkyLight.get(local + x));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the index in the padded cache of a block given in section coordinates,
+	 * from -1 to 16.
+	 */
+	private static int paddedIndex(int x, int y, int z) {
+		return ((y + 1) * PADDED + z + 1) * PADDED + x + 1;
+	}
+
+	/**
+	 * Computes the ambient occlusion of the corners of a face, from 0 (fully
+	 * occluded) to 3, given the index of the block in front of it.
+	 */
+	private void computeOcclusion(int face, int front) {
+		int[] offsets = OCCLUSION_OFFSETS[face];
+		for (int corner = 0; corner < 4; corner++) {
+			boolean side1 = Block.isOpaque(blocks[front + offsets[corner * 3]]);
+			boolean side2 = Block.isOpaque(blocks[front + offsets[corner * 3 + 1]]);
+			if (side1 && side2) {
+				occlusion[corner] = 0; // The corner block cannot be seen
+			} else {
+				boolean diagonal = Block.isOpaque(blocks[front + offsets[corner * 3 + 2]]);
+				occlusion[corner] = 3 - (side1 ? 1 : 0) - (side2 ? 1 : 0) - (diagonal ? 1 : 0);
+			}
+		}
+	}
+
+	/**
+	 * Appends the two triangles of a face, lit by the block in front of it.
+	 */
+	private void addFace(int material, int x, int y, int z, int face, int front) {
+		FloatList positions = this.positions[material];
+		FloatList textureCoords = this.textureCoords[material];
+		FloatList light = this.light[material];
+		IntList indices = this.indices[material];
+
+		float blockLevel = ((lightLevels[front] >> 4) & 0xF) / (float) Block.MAX_LIGHT;
+		float skyLevel = (lightLevels[front] & 0xF) / (float) Block.MAX_LIGHT;
+		if (ambientOcclusion) {
+			computeOcclusion(face, front);
+		} else {
+			occlusion[0] = occlusion[1] = occlusion[2] = occlusion[3] = 3;
+		}
+
+		float[] cell = Material.isCubeAtlas(material) ? ATLAS_CELLS[Math.min(face, 2)] : FULL_TEXTURE;
+		int[] corners = CORNERS[face];
+		int first = positions.size() / 3;
+		for (int corner = 0; corner < 4; corner++) {
+			positions.add(x - 0.5f + corners[corner * 3]);
+			positions.add(y - 0.5f + corners[corner * 3 + 1]);
+			positions.add(z - 0.5f + corners[corner * 3 + 2]);
+
+			// Corners 0 and 1 take the bottom of the texture, 1 and 2 its right side.
+			textureCoords.add(corner == 1 || corner == 2 ? cell[2] : cell[0]);
+			textureCoords.add(corner < 2 ? cell[3] : cell[1]);
+
+			light.add(blockLevel);
+			light.add(skyLevel);
+			light.add(occlusion[corner] / 3f);
+		}
+
+		// Split along the diagonal whose corners are brighter, so a dark corner
+		// only darkens its own triangle.
+		int start = occlusion[1] + occlusion[3] > occlusion[0] + occlusion[2] ? 1 : 0;
+		indices.add(first + start);
+		indices.add(first + start + 1);
+		indices.add(first + start + 2);
+		indices.add(first + start);
+		indices.add(first + start + 2);
+		indices.add(first + (start + 3) % 4);
+
+		// Translucent faces are sorted by their centre.
+		if (Material.isTranslucent(material)) {
+			FloatList centres = faceCentres[material];
+			centres.add(x + Face.DX[face] * 0.5f);
+			centres.add(y + Face.DY[face] * 0.5f);
+			centres.add(z + Face.DZ[face] * 0.5f);
+		}
+	}
+}
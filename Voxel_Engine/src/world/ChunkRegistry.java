@@ -0,0 +1,256 @@
+package world;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+import toolbox.LongIntHashMap;
+
+/**
+ * The ChunkRegistry class maps section coordinates to the loaded chunk
+ * sections. Lookups are the hot path (every raycast, mesher and light update
+ * crosses sections), so they probe a primitive open-addressed table under an
+ * optimistic StampedLock read: no lock is taken and nothing is allocated unless
+ * a writer interfered, in which case the lookup is retried under the read lock.
+ *
+ * Loading and unloading sections take the write lock; they are rare compared to
+ * lookups.
+ */
+public class ChunkRegistry {
+
+	// Bits per packed section coordinate, and the offset making coordinates positive.
+	private static final int KEY_BITS = 21;
+	private static final int KEY_OFFSET = 1 << (KEY_BITS - 1);
+	private static final long KEY_MASK = (1L << KEY_BITS) - 1;
+
+	// Key of the empty slots; no packed key can take this value.
+	private static final long EMPTY = LongIntHashMap.EMPTY_KEY;
+
+	/**
+	 * The arrays of the table. A rehash replaces the whole Table, so a reader
+	 * always probes keys and sections of the same size.
+	 */
+	private static final class Table {
+		final long[] keys;
+		final ChunkSection[] sections;
+		final int mask;
+
+		Table(int capacity) {
+			keys = new long[capacity];
+			Arrays.fill(keys, EMPTY);
+			sections = new ChunkSection[capacity];
+			mask = capacity - 1;
+		}
+	}
+
+	private final StampedLock lock = new StampedLock();
+
+	// The current table; replaced on rehash.
+	private volatile Table table = new Table(1024);
+
+	// Number of loaded sections.
+	private int size;
+
+	// Incremented whenever a section is loaded or unloaded.
+	private volatile int version;
+
+	/**
+	 * Packs section coordinates into a registry key. Each coordinate keeps 21
+	 * bits, enough for worlds 16 million blocks across.
+	 *
+	 * @param sx The X section coordinate.
+	 * @param sy The Y section coordinate.
+	 * @param sz The Z section coordinate.
+	 * @return The packed key.
+	 */
+	public static long key(int sx, int sy, int sz) {
+		return ((sx + KEY_OFFSET) & KEY_MASK) << (2 * KEY_BITS)
+				| ((sy + KEY_OFFSET) & KEY_MASK) << KEY_BITS
+				| ((sz + KEY_OFFSET) & KEY_MASK);
+	}
+
+	/**
+	 * Gets a loaded section. Safe to call from any thread.
+	 *
+	 * @param sx The X section coordinate.
+	 * @param sy The Y section coordinate.
+	 * @param sz The Z section coordinate.
+	 * @return The section, or null if it is not loaded.
+	 */
+	public ChunkSection get(int sx, int sy, int sz) {
+		long key = key(sx, sy, sz);
+		long stamp = lock.tryOptimisticRead();
+		ChunkSection section = find(table, key);
+		if (!lock.validate(stamp)) {
+			// A writer ran during the probe; repeat it while holding the read lock.
+			stamp = lock.readLock();
+			try {
+				section = find(table, key);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return section;
+	}
+
+	/**
+	 * Adds a section unless one is already loaded at its coordinates.
+	 *
+	 * @param section The section to add.
+	 * @return The section now loaded at those coordinates.
+	 */
+	public ChunkSection putIfAbsent(ChunkSection section) {
+		long key = key(section.getSectionX(), section.getSectionY(), section.getSectionZ());
+		long stamp = lock.writeLock();
+		try {
+			Table t = table;
+			int slot = LongIntHashMap.hash(key) & t.mask;
+			while (t.keys[slot] != EMPTY) {
+				if (t.keys[slot] == key) {
+					return t.sections[slot];
+				}
+				slot = (slot + 1) & t.mask;
+			}
+			t.sections[slot] = section;
+			t.keys[slot] = key;
+			version++;
+			if (++size * 4 > t.keys.length * 3) {
+				rehash(t.keys.length * 2); // Keep the load factor under 75%
+			}
+			return section;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Removes a section.
+	 *
+	 * @param sx The X section coordinate.
+	 * @param sy The Y section coordinate.
+	 * @param sz The Z section coordinate.
+	 * @return The removed section, or null if none was loaded.
+	 */
+	public ChunkSection remove(int sx, int sy, int sz) {
+		long key = key(sx, sy, sz);
+		long stamp = lock.writeLock();
+		try {
+			Table t = table;
+			int slot = LongIntHashMap.hash(key) & t.mask;
+			while (t.keys[slot] != key) {
+				if (t.keys[slot] == EMPTY) {
+					return null;
+				}
+				slot = (slot + 1) & t.mask;
+			}
+			ChunkSection removed = t.sections[slot];
+			// Backward-shift deletion keeps every probe chain unbroken.
+			int gap = slot;
+			int next = (gap + 1) & t.mask;
+			while (t.keys[next] != EMPTY) {
+				int home = LongIntHashMap.hash(t.keys[next]) & t.mask;
+				if (((next - home) & t.mask) >= ((next - gap) & t.mask)) {
+					t.keys[gap] = t.keys[next];
+					t.sections[gap] = t.sections[next];
+					gap = next;
+				}
+				next = (next + 1) & t.mask;
+			}
+			t.keys[gap] = EMPTY;
+			t.sections[gap] = null;
+			size--;
+			version++;
+			return removed;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Gets the number of loaded sections.
+	 *
+	 * @return The section count.
+	 */
+	public int size() {
+		long stamp = lock.readLock();
+		try {
+			return size;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Gets a number that changes whenever a section is loaded or unloaded, so
+	 * callers can tell whether a list of the sections they built is still up
+	 * to date.
+	 *
+	 * @return The version of the set of loaded sections.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Runs an action for every loaded section while holding the read lock. The
+	 * action must not load or unload sections.
+	 *
+	 * @param action The action to run.
+	 */
+	public void forEach(Consumer<ChunkSection> action) {
+		long stamp = lock.readLock();
+		try {
+			Table t = table;
+			for (int i = 0; i < t.sections.length; i++) {
+				if (t.sections[i] != null) {
+					action.accept(t.sections[i]);
+				}
+			}
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Probes a table for a key. May run concurrently with a writer, so the probe
+	 * is bounded by the table size and its result is only trusted once the
+	 * optimistic stamp validates.
+	 */
+	private static ChunkSection find(Table t, long key) {
+		long[] keys = t.keys;
+		int mask = t.mask;
+		int slot = LongIntHashMap.hash(key) & mask;
+		for (int probes = 0; probes <= mask; probes++) {
+			long k = keys[slot];
+			if (k == key) {
+				return t.sections[slot];
+			}
+			if (k == EMPTY) {
+				return null;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Moves every section into a new table of the given capacity. Called with
+	 * the write lock held.
+	 */
+	private void rehash(int capacity) {
+		Table old = table;
+		Table t = new Table(capacity);
+		for (int i = 0; i < old.keys.length; i++) {
+			long key = old.keys[i];
+			if (key != EMPTY) {
+				int slot = LongIntHashMap.hash(key) & t.mask;
+				while (t.keys[slot] != EMPTY) {
+					slot = (slot + 1) & t.mask;
+				}
+				t.keys[slot] = key;
+				t.sections[slot] = old.sections[i];
+			}
+		}
+		table = t;
+	}
+}
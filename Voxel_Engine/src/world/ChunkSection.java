@@ -0,0 +1,250 @@
+package world;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ChunkSection class stores the blocks of a 16x16x16 cube of the world in
+ * palette-compressed storage (see PalettedBlocks). Sections are addressed by
+ * section coordinates: the section (sx, sy, sz) holds the blocks from
+ * (sx * 16, sy * 16, sz * 16) up to 15 blocks further along each axis.
+ *
+ * Sections with identical blocks may share one storage (see SectionInterner);
+ * a section copies a shared storage before its first change.
+ *
+ * Each section also keeps the block light and sky light of its blocks in two
+ * nibble arrays, maintained by the LightEngine.
+ *
+ * Writes are not synchronised; readers on other threads may briefly see a mix
+ * of old and new blocks, which is harmless for rendering and ray queries.
+ */
+public class ChunkSection {
+
+	/** Number of blocks along each edge of a section. */
+	public static final int SIZE = 16;
+
+	/** Number of bits of a block coordinate that address a section. */
+	public static final int SHIFT = 4;
+
+	/** Mask selecting the local part of a block coordinate. */
+	public static final int MASK = SIZE - 1;
+
+	/** Number of blocks in a section. */
+	public static final int VOLUME = SIZE * SIZE * SIZE;
+
+	// Section coordinates.
+	private final int sectionX, sectionY, sectionZ;
+
+	// Number of shared storages copied by a section changing them.
+	private static final AtomicLong copiesOnWrite = new AtomicLong();
+
+	// Block ids, indexed by index(x, y, z); replaced when copied on write.
+	private volatile PalettedBlocks blocks = new PalettedBlocks();
+
+	// Number of blocks that are not air.
+	private int blockCount;
+
+	// Light levels from light-emitting blocks and from the sky.
+	private final NibbleArray blockLight = new NibbleArray();
+	private final NibbleArray skyLight = new NibbleArray();
+
+	// Set by the LightEngine while the section is in its list of changed sections.
+	boolean lightChanged;
+
+	// Set by the LightEngine while it clears the section's light to relight it;
+	// no light spreads into it meanwhile.
+	boolean relighting;
+
+	// Scheduled ticks of the section's blocks, created by the BlockTicker on the first one.
+	TickQueue ticks;
+
+	// Fluid levels and active cells of the section, created by the FluidEngine on the first active cell.
+	FluidCells fluid;
+
+	/**
+	 * Creates a section filled with air.
+	 *
+	 * @param sectionX The X section coordinate.
+	 * @param sectionY The Y section coordinate.
+	 * @param sectionZ The Z section coordinate.
+	 */
+	public ChunkSection(int sectionX, int sectionY, int sectionZ) {
+		this.sectionX = sectionX;
+		this.sectionY = sectionY;
+		this.sectionZ = sectionZ;
+	}
+
+	/**
+	 * Gets the array index of a block from its local coordinates.
+	 *
+	 * @param x The local X coordinate, from 0 to 15.
+	 * @param y The local Y coordinate, from 0 to 15.
+	 * @param z The local Z coordinate, from 0 to 15.
+	 * @return The index of the block.
+	 */
+	public static int index(int x, int y, int z) {
+		return (y << 8) | (z << 4) | x;
+	}
+
+	/**
+	 * Gets a block.
+	 *
+	 * @param x The local X coordinate, from 0 to 15.
+	 * @param y The local Y coordinate, from 0 to 15.
+	 * @param z The local Z coordinate, from 0 to 15.
+	 * @return The block id.
+	 */
+	public short getBlock(int x, int y, int z) {
+		return blocks.get(index(x, y, z));
+	}
+
+	/**
+	 * Gets a block by its array index.
+	 *
+	 * @param index The index of the block.
+	 * @return The block id.
+	 */
+	public short getBlock(int index) {
+		return blocks.get(index);
+	}
+
+	/**
+	 * Sets a block.
+	 *
+	 * @param x  The local X coordinate, from 0 to 15.
+	 * @param y  The local Y coordinate, from 0 to 15.
+	 * @param z  The local Z coordinate, from 0 to 15.
+	 * @param id The block id.
+	 * @return The previous block id.
+	 */
+	public short setBlock(int x, int y, int z, short id) {
+		int index = index(x, y, z);
+		PalettedBlocks blocks = this.blocks;
+		if (blocks.isShared()) {
+			if (blocks.get(index) == id) {
+				return id; // Nothing changes, so keep sharing
+			}
+			blocks = blocks.copy();
+			this.blocks = blocks;
+			copiesOnWrite.incrementAndGet();
+		}
+		short previous = blocks.set(index, id);
+		if (previous == Block.AIR && id != Block.AIR) {
+			blockCount++;
+		} else if (previous != Block.AIR && id == Block.AIR) {
+			blockCount--;
+		}
+		return previous;
+	}
+
+	/**
+	 * Sets every block of the section to the same id, in a new storage (a
+	 * shared storage is left alone) of a single palette entry.
+	 *
+	 * @param id The block id.
+	 */
+	public void fill(short id) {
+		PalettedBlocks filled = new PalettedBlocks();
+		filled.fill(id);
+		blockCount = id == Block.AIR ? 0 : VOLUME;
+		blocks = filled;
+	}
+
+	/**
+	 * Sets every block of the section from an array in one pass, in a new
+	 * storage (a shared storage is left alone). Readers on other threads see
+	 * either the old blocks or the new ones.
+	 *
+	 * @param src The ids, indexed by index(x, y, z); at least 4096 long.
+	 */
+	public void setBlocks(short[] src) {
+		PalettedBlocks encoded = new PalettedBlocks();
+		encoded.encode(src);
+		int count = 0;
+		for (int index = 0; index < VOLUME; index++) {
+			if (src[index] != Block.AIR) {
+				count++;
+			}
+		}
+		blockCount = count;
+		blocks = encoded;
+	}
+
+	/**
+	 * Decodes every block of the section into an array, for passes that read
+	 * the whole section.
+	 *
+	 * @param dest The array receiving the ids, indexed by index(x, y, z); at
+	 *             least 4096 long.
+	 */
+	public void copyBlocks(short[] dest) {
+		blocks.decode(dest);
+	}
+
+	/**
+	 * Makes the section share its storage with the identical sections already
+	 * interned.
+	 *
+	 * @param interner The interner holding the shared storages.
+	 */
+	public void intern(SectionInterner interner) {
+		blocks = interner.intern(blocks);
+	}
+
+	/**
+	 * Gets the number of shared storages that sections have copied so far
+	 * before changing them.
+	 *
+	 * @return The number of copies on write.
+	 */
+	public static long getCopiesOnWrite() {
+		return copiesOnWrite.get();
+	}
+
+	/**
+	 * Gets the compressed block storage of the section, to inspect its layout.
+	 *
+	 * @return The block storage.
+	 */
+	public PalettedBlocks getBlocks() {
+		return blocks;
+	}
+
+	/**
+	 * Checks whether the section only holds air.
+	 *
+	 * @return true if every block is air.
+	 */
+	public boolean isEmpty() {
+		return blockCount == 0;
+	}
+
+	/**
+	 * Gets the block light levels of the section, indexed like the blocks.
+	 *
+	 * @return The block light array.
+	 */
+	public NibbleArray getBlockLight() {
+		return blockLight;
+	}
+
+	/**
+	 * Gets the sky light levels of the section, indexed like the blocks.
+	 *
+	 * @return The sky light array.
+	 */
+	public NibbleArray getSkyLight() {
+		return skyLight;
+	}
+
+	public int getSectionX() {
+		return sectionX;
+	}
+
+	public int getSectionY() {
+		return sectionY;
+	}
+
+	public int getSectionZ() {
+		return sectionZ;
+	}
+}
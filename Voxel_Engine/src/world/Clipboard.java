@@ -0,0 +1,98 @@
+package world;
+
+/**
+ * The Clipboard class holds a box of blocks copied out of the world by a
+ * RegionEditor, to be pasted elsewhere. The box is cut into tiles of 16x16x16
+ * blocks aligned to its own corner rather than to the world's sections, each
+ * stored like a section's blocks (see PalettedBlocks), so a copy of plain
+ * terrain takes a few bits per block, and a tile of a single block next to
+ * nothing.
+ *
+ * Immutable once copied; it may be pasted from any number of threads.
+ */
+public final class Clipboard {
+
+	// Size of the box, in blocks.
+	private final int sizeX, sizeY, sizeZ;
+
+	// Number of tiles along each axis.
+	private final int tilesX, tilesY, tilesZ;
+
+	// The tiles, indexed by tileIndex; the blocks past the box are air.
+	private final PalettedBlocks[] tiles;
+
+	Clipboard(int sizeX, int sizeY, int sizeZ) {
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+		this.tilesX = (sizeX + ChunkSection.MASK) >> ChunkSection.SHIFT;
+		this.tilesY = (sizeY + ChunkSection.MASK) >> ChunkSection.SHIFT;
+		this.tilesZ = (sizeZ + ChunkSection.MASK) >> ChunkSection.SHIFT;
+		this.tiles = new PalettedBlocks[tilesX * tilesY * tilesZ];
+	}
+
+	public int getSizeX() {
+		return sizeX;
+	}
+
+	public int getSizeY() {
+		return sizeY;
+	}
+
+	public int getSizeZ() {
+		return sizeZ;
+	}
+
+	/**
+	 * Gets a block of the clipboard.
+	 *
+	 * @param x The X coordinate, relative to the corner of the box.
+	 * @param y The Y coordinate, relative to the corner of the box.
+	 * @param z The Z coordinate, relative to the corner of the box.
+	 * @return The block id.
+	 */
+	public short getBlock(int x, int y, int z) {
+		if (x < 0 || y < 0 || z < 0 || x >= sizeX || y >= sizeY || z >= sizeZ) {
+			throw new IllegalArgumentException("Outside the clipboard: " + x + ", " + y + ", " + z);
+		}
+		PalettedBlocks tile = tiles[tileIndex(x >> ChunkSection.SHIFT, y >> ChunkSection.SHIFT, z >> ChunkSection.SHIFT)];
+		return tile.get(ChunkSection.index(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK));
+	}
+
+	/**
+	 * Estimates the heap used by the tiles.
+	 *
+	 * @return The size in bytes.
+	 */
+	public long getMemoryBytes() {
+		long bytes = 16 + 4L * tiles.length;
+		for (PalettedBlocks tile : tiles) {
+			bytes += tile.getMemoryBytes();
+		}
+		return bytes;
+	}
+
+	int getTileCount() {
+		return tiles.length;
+	}
+
+	int getTilesX() {
+		return tilesX;
+	}
+
+	int getTilesZ() {
+		return tilesZ;
+	}
+
+	PalettedBlocks getTile(int tile) {
+		return tiles[tile];
+	}
+
+	void setTile(int tile, PalettedBlocks blocks) {
+		tiles[tile] = blocks;
+	}
+
+	int tileIndex(int tx, int ty, int tz) {
+		return (ty * tilesZ + tz) * tilesX + tx;
+	}
+}
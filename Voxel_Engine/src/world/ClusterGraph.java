@@ -0,0 +1,251 @@
+package world;
+
+import java.util.Arrays;
+
+/**
+ * The ClusterGraph class is the abstract graph of one chunk section, used by
+ * the PathFinder to plan paths section by section instead of block by block.
+ *
+ * The moves crossing the section's border are its transitions. Those leading
+ * into the same neighbour, whose blocks on both sides touch, form an entrance
+ * (a stretch of open border); one transition of each entrance, the middle
+ * one, is its portal. The nodes of the graph are the blocks of the section on
+ * the inside end of a portal, leaving or entering; its edges are the costs of
+ * the shortest paths between them inside the section, and the portal moves
+ * leaving it. A neighbour works out the same entrances from the other side,
+ * so the block a portal leads to is a node of the neighbour's graph.
+ *
+ * Immutable once built.
+ */
+final class ClusterGraph {
+
+	/** A graph without nodes, for sections that are not loaded. */
+	static final ClusterGraph EMPTY = new ClusterGraph(new long[0], new int[0], new int[0], new long[0], new int[0]);
+
+	// The packed blocks of the nodes.
+	final long[] nodes;
+
+	// Cost of the shortest path inside the section from node i to node j, at
+	// i * nodes.length + j, or -1 if there is none.
+	final int[] costs;
+
+	// Portals leaving the section: the node they start from, the packed block
+	// they lead to, and the cost of the move.
+	final int[] exitNodes;
+	final long[] exitCells;
+	final int[] exitCosts;
+
+	private ClusterGraph(long[] nodes, int[] costs, int[] exitNodes, long[] exitCells, int[] exitCosts) {
+		this.nodes = nodes;
+		this.costs = costs;
+		this.exitNodes = exitNodes;
+		this.exitCells = exitCells;
+		this.exitCosts = exitCosts;
+	}
+
+	/**
+	 * Gets the index of a node.
+	 *
+	 * @param cell The packed block.
+	 * @return The node's index, or -1 if the block is not a node.
+	 */
+	int indexOf(long cell) {
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] == cell) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Estimates the heap used by the graph: the object and its arrays.
+	 *
+	 * @return The size in bytes.
+	 */
+	int getMemoryBytes() {
+		return 32 + 5 * 16 + nodes.length * 8 + costs.length * 4 + exitNodes.length * (4 + 8 + 4);
+	}
+
+	/**
+	 * Builds the graph of a section from a snapshot of its blocks.
+	 *
+	 * @param sx     The section's X coordinate.
+	 * @param sy     The section's Y coordinate.
+	 * @param sz     The section's Z coordinate.
+	 * @param search The search whose snapshot and scratch arrays are used.
+	 * @return The graph.
+	 */
+	static ClusterGraph build(int sx, int sy, int sz, PathSearch search) {
+		NavGrid.Snapshot grid = search.loadSnapshot(sx, sy, sz);
+		int ox = grid.originX, oy = grid.originY, oz = grid.originZ;
+
+		// Find the moves leaving and entering the section.
+		Transitions leaving = new Transitions(), entering = new Transitions();
+		for (int index = 0; index < ChunkSection.VOLUME; index++) {
+			int x = ox + (index & ChunkSection.MASK), y = oy + (index >> 8), z = oz + (index >> 4 & ChunkSection.MASK);
+			if (!grid.isStandable(x, y, z)) {
+				continue;
+			}
+			long cell = NavGrid.pack(x, y, z);
+			for (int dir = 0; dir < NavGrid.DX.length; dir++) {
+				for (int dy : NavGrid.DY) {
+					int tx = x + NavGrid.DX[dir], ty = y + dy, tz = z + NavGrid.DZ[dir];
+					if (!inside(tx - ox, ty - oy, tz - oz)) {
+						int cost = grid.moveCost(x, y, z, dir, dy);
+						if (cost >= 0) {
+							leaving.add(cell, NavGrid.pack(tx, ty, tz), cost);
+						}
+					}
+					int px = x - NavGrid.DX[dir], py = y - dy, pz = z - NavGrid.DZ[dir];
+					if (!inside(px - ox, py - oy, pz - oz) && grid.isStandable(px, py, pz)) {
+						int cost = grid.moveCost(px, py, pz, dir, dy);
+						if (cost >= 0) {
+							entering.add(NavGrid.pack(px, py, pz), cell, cost);
+						}
+					}
+				}
+			}
+		}
+
+		// One node per portal, on its inside end.
+		int[] leavingPortals = leaving.portals(true), enteringPortals = entering.portals(false);
+		long[] nodes = new long[leavingPortals.length + enteringPortals.length];
+		int nodeCount = 0;
+		int[] exitNodes = new int[leavingPortals.length];
+		long[] exitCells = new long[leavingPortals.length];
+		int[] exitCosts = new int[leavingPortals.length];
+		for (int i = 0; i < leavingPortals.length; i++) {
+			int t = leavingPortals[i];
+			int node = indexOf(nodes, nodeCount, leaving.from[t]);
+			if (node < 0) {
+				node = nodeCount;
+				nodes[nodeCount++] = leaving.from[t];
+			}
+			exitNodes[i] = node;
+			exitCells[i] = leaving.to[t];
+			exitCosts[i] = leaving.costs[t];
+		}
+		for (int t : enteringPortals) {
+			if (indexOf(nodes, nodeCount, entering.to[t]) < 0) {
+				nodes[nodeCount++] = entering.to[t];
+			}
+		}
+		nodes = Arrays.copyOf(nodes, nodeCount);
+
+		// Shortest paths inside the section from each node to the others.
+		int[] costs = new int[nodeCount * nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			search.searchSection(nodes[i], PathSearch.NO_CELL, false);
+			for (int j = 0; j < nodeCount; j++) {
+				costs[i * nodeCount + j] = search.getSectionCost(nodes[j]);
+			}
+		}
+		return new ClusterGraph(nodes, costs, exitNodes, exitCells, exitCosts);
+	}
+
+	private static boolean inside(int lx, int ly, int lz) {
+		return ((lx | ly | lz) & ~ChunkSection.MASK) == 0;
+	}
+
+	private static int indexOf(long[] cells, int count, long cell) {
+		for (int i = 0; i < count; i++) {
+			if (cells[i] == cell) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The moves crossing a section's border one way.
+	 */
+	private static final class Transitions {
+		long[] from = new long[64], to = new long[64];
+		int[] costs = new int[64];
+		int count;
+
+		void add(long fromCell, long toCell, int cost) {
+			if (count == from.length) {
+				from = Arrays.copyOf(from, count * 2);
+				to = Arrays.copyOf(to, count * 2);
+				costs = Arrays.copyOf(costs, count * 2);
+			}
+			from[count] = fromCell;
+			to[count] = toCell;
+			costs[count++] = cost;
+		}
+
+		/**
+		 * Groups the transitions into entrances and picks the portal of each:
+		 * the middle one in the order of their packed blocks. Depends only on
+		 * the set of transitions between the two sections, so both sections
+		 * pick the same portals.
+		 *
+		 * @param leaving Whether the transitions leave the section, so their
+		 *                outside end is the block moved to.
+		 * @return The indices of the portals.
+		 */
+		int[] portals(boolean leaving) {
+			int[] parents = new int[count];
+			for (int i = 0; i < count; i++) {
+				parents[i] = i;
+				long outside = NavGrid.sectionKey(leaving ? to[i] : from[i]);
+				for (int j = 0; j < i; j++) {
+					if (NavGrid.sectionKey(leaving ? to[j] : from[j]) == outside && touching(from[i], from[j])
+							&& touching(to[i], to[j])) {
+						parents[root(parents, i)] = root(parents, j);
+					}
+				}
+			}
+
+			// Sort by entrance, then by blocks; the middle of each run is its portal.
+			Integer[] order = new Integer[count];
+			for (int i = 0; i < count; i++) {
+				order[i] = i;
+			}
+			int[] roots = new int[count];
+			for (int i = 0; i < count; i++) {
+				roots[i] = root(parents, i);
+			}
+			Arrays.sort(order, (a, b) -> {
+				int byEntrance = Integer.compare(roots[a], roots[b]);
+				if (byEntrance != 0) {
+					return byEntrance;
+				}
+				int byFrom = Long.compare(from[a], from[b]);
+				return byFrom != 0 ? byFrom : Long.compare(to[a], to[b]);
+			});
+			int[] portals = new int[count];
+			int portalCount = 0;
+			int start = 0;
+			while (start < count) {
+				int end = start + 1;
+				while (end < count && roots[order[end]] == roots[order[start]]) {
+					end++;
+				}
+				portals[portalCount++] = order[(start + end - 1) >>> 1];
+				start = end;
+			}
+			return Arrays.copyOf(portals, portalCount);
+		}
+
+		private static int root(int[] parents, int i) {
+			while (parents[i] != i) {
+				parents[i] = parents[parents[i]];
+				i = parents[i];
+			}
+			return i;
+		}
+
+		/**
+		 * Checks whether two blocks are the same or touch, edges and corners
+		 * included.
+		 */
+		private static boolean touching(long a, long b) {
+			return Math.abs(NavGrid.unpackX(a) - NavGrid.unpackX(b)) <= 1
+					&& Math.abs(NavGrid.unpackY(a) - NavGrid.unpackY(b)) <= 1
+					&& Math.abs(NavGrid.unpackZ(a) - NavGrid.unpackZ(b)) <= 1;
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package world;
+
+/**
+ * The Face class names the six faces of a block and the offset to the
+ * neighbouring block across each of them. Faces are plain ints so they can be
+ * stored in primitive arrays and returned without allocating.
+ */
+public final class Face {
+
+	// Faces, by the direction they point to.
+	public static final int DOWN = 0; // -Y
+	public static final int UP = 1; // +Y
+	public static final int NORTH = 2; // -Z
+	public static final int SOUTH = 3; // +Z
+	public static final int WEST = 4; // -X
+	public static final int EAST = 5; // +X
+
+	/** Value used where no face applies. */
+	public static final int NONE = -1;
+
+	/** Number of faces. */
+	public static final int COUNT = 6;
+
+	// Offset to the neighbouring block across each face.
+	public static final int[] DX = { 0, 0, 0, 0, -1, 1 };
+	public static final int[] DY = { -1, 1, 0, 0, 0, 0 };
+	public static final int[] DZ = { 0, 0, -1, 1, 0, 0 };
+
+	private Face() {
+	}
+
+	/**
+	 * Gets the face pointing the other way.
+	 *
+	 * @param face The face.
+	 * @return The opposite face.
+	 */
+	public static int opposite(int face) {
+		return face ^ 1;
+	}
+}
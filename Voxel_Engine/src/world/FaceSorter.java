@@ -0,0 +1,52 @@
+package world;
+
+import java.util.Arrays;
+
+/**
+ * The FaceSorter class orders the faces of a translucent mesh part back to
+ * front as seen from an eye position, so they blend correctly when drawn in
+ * index order. Only the index buffer changes: the six indices of each face are
+ * moved as a block, keeping the face's triangle split, and the vertices stay
+ * where they are.
+ *
+ * Faces are ranked by the squared distance from the eye to their centre,
+ * packed with the face number into longs so a single primitive sort orders
+ * them. An instance reuses its scratch array and is not thread-safe; use one
+ * per thread.
+ */
+public class FaceSorter {
+
+	// Packed (inverted distance bits << 32 | face), sorted to order the faces.
+	private long[] keys = new long[256];
+
+	/**
+	 * Orders the faces of a part from the farthest to the nearest.
+	 *
+	 * @param part    The translucent part; it must have face centres.
+	 * @param eyeX    The X coordinate of the eye, relative to the section origin.
+	 * @param eyeY    The Y coordinate of the eye, relative to the section origin.
+	 * @param eyeZ    The Z coordinate of the eye, relative to the section origin.
+	 * @param indices Receives the sorted indices; as long as the part's indices.
+	 */
+	public void sortBackToFront(MeshData.Part part, float eyeX, float eyeY, float eyeZ, int[] indices) {
+		float[] centres = part.faceCentres;
+		int faces = part.getFaceCount();
+		if (keys.length < faces) {
+			keys = new long[Math.max(faces, keys.length * 2)];
+		}
+
+		// Non-negative floats order like their bits; subtracting the bits from the
+		// largest int turns the ascending sort into farthest first.
+		for (int face = 0; face < faces; face++) {
+			float dx = centres[face * 3] - eyeX, dy = centres[face * 3 + 1] - eyeY, dz = centres[face * 3 + 2] - eyeZ;
+			int bits = Float.floatToRawIntBits(dx * dx + dy * dy + dz * dz);
+			keys[face] = (Integer.MAX_VALUE - (long) bits) << 32 | face;
+		}
+		Arrays.sort(keys, 0, faces);
+
+		int[] source = part.indices;
+		for (int i = 0; i < faces; i++) {
+			System.arraycopy(source, (int) keys[i] * 6, indices, i * 6, 6);
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package world;
+
+/**
+ * The FlatTerrain class generates a flat world: a single layer of grass at
+ * Y = 0, with air above it.
+ */
+public class FlatTerrain implements TerrainSource {
+
+	@Override
+	public int getHeight(int x, int z) {
+		return 0;
+	}
+
+	@Override
+	public ChunkSection generateSection(int sx, int sy, int sz) {
+		ChunkSection section = new ChunkSection(sx, sy, sz);
+		if (sy == 0) {
+			for (int x = 0; x < ChunkSection.SIZE; x++) {
+				for (int z = 0; z < ChunkSection.SIZE; z++) {
+					section.setBlock(x, 0, z, Block.GRASS);
+				}
+			}
+		}
+		return section;
+	}
+}
@@ -0,0 +1,48 @@
+package world;
+
+import toolbox.IntList;
+
+/**
+ * The FluidCells class holds the fluid state of one chunk section for the
+ * FluidEngine: the stored level of each water block, and the set of active
+ * cells whose level may change at the next step, kept as a list of block
+ * indices with a bitmap to keep each cell in the list once.
+ *
+ * Only touched by the thread processing the section's region.
+ */
+final class FluidCells {
+
+	// Stored level of each water block: 0 for a source, else its flowing level.
+	final NibbleArray levels = new NibbleArray();
+
+	// The active cells, and one bit per block set while it is in the list.
+	final IntList active = new IntList(64);
+	private final long[] activeBits = new long[ChunkSection.VOLUME / 64];
+
+	// Step in which the section's blocks last changed, to count each changed section once.
+	long changedStep = -1;
+
+	/**
+	 * Adds a cell to the active cells, unless it is already there.
+	 *
+	 * @param index The index of the block in its section.
+	 */
+	void activate(int index) {
+		long bit = 1L << index;
+		if ((activeBits[index >>> 6] & bit) == 0) {
+			activeBits[index >>> 6] |= bit;
+			active.add(index);
+		}
+	}
+
+	/**
+	 * Empties the active cells, once they were taken for processing.
+	 */
+	void clearActive() {
+		for (int i = 0; i < active.size(); i++) {
+			int index = active.get(i);
+			activeBits[index >>> 6] &= ~(1L << index);
+		}
+		active.clear();
+	}
+}
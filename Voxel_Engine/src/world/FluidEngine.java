@@ -0,0 +1,426 @@
+package world;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import toolbox.Instrumentation;
+import toolbox.IntList;
+import toolbox.TimingStats;
+
+/**
+ * The FluidEngine class simulates flowing water as a cellular automaton over
+ * the chunk sections. Every water block has a level, stored per section in a
+ * nibble array: a water block with no stored level is a source, which water
+ * placed by generation or edits is; flowing water has a level from 1 to 7, or
+ * is falling. Each step, a cell takes a level from its neighbours: falling if
+ * there is water above it, else one less than the strongest horizontal
+ * neighbour that cannot fall itself (sources and falling water count as 8).
+ * Air that gets a level turns to water and water that loses it turns to air,
+ * so water spreads up to seven blocks from a source and recedes when the
+ * source is removed.
+ *
+ * Only active cells are evaluated: those next to a cell whose level or block
+ * changed. Each section keeps its active cells as a list with a bitmap (see
+ * FluidCells), so a step costs nothing where the water has settled.
+ *
+ * A step runs the regions of a RegionPartition in parallel, twice: first
+ * every region computes the new levels of its active cells, reading any
+ * section, including its neighbours' across section and region borders;
+ * then, once all are done, every region writes the levels of its own cells
+ * and activates their neighbours. Since nothing is written while levels are
+ * read, a step gives the same result whatever the threads. Neighbours in
+ * another region are activated after the second pass. The blocks that changed
+ * are then reported to the listener, which relights and remeshes their
+ * sections; level changes alone do not change the mesh and are not reported.
+ *
+ * Water only flows within loaded sections: cells of unloaded sections are
+ * neither read as water nor filled.
+ *
+ * Not thread-safe: step, blockChanged and addSource are called by one thread
+ * (the simulation).
+ */
+public class FluidEngine {
+
+	/** Highest level of flowing water on the ground. */
+	public static final int MAX_FLOW = 7;
+
+	/** Level of water falling from the block above. */
+	public static final int FALLING = 8;
+
+	/** Level of a source. */
+	public static final int SOURCE = 9;
+
+	/**
+	 * The per-region work of a step.
+	 */
+	private static final class RegionWork {
+
+		// New levels computed by the first pass: (position in region << 12 | block index), level.
+		final IntList updates = new IntList(64);
+
+		// Cells of other regions to activate: x, y, z per cell.
+		final IntList deferred = new IntList(16);
+
+		// Blocks changed by the second pass: x, y, z, old id, new id per change.
+		final IntList changes = new IntList(64);
+
+		// Cells evaluated, and sections whose blocks changed, during the step.
+		long cellsProcessed, sectionsChanged;
+	}
+
+	// The world the water flows in.
+	private final World world;
+
+	// Where the regions are processed.
+	private final ForkJoinPool pool;
+
+	// The regions the sections are processed in, and the work of each, by region id.
+	private final RegionPartition partition;
+	private RegionWork[] work = new RegionWork[64];
+
+	// Told about the blocks changed by each step.
+	private volatile BlockChangeListener listener;
+
+	// Number of steps run.
+	private long step;
+
+	// Totals: cells evaluated, levels changed, blocks changed and changed sections counted once per step.
+	private long cellsProcessed, cellsChanged, blocksChanged, sectionsChanged;
+
+	// Duration of the steps.
+	private final TimingStats stepTime = Instrumentation.timing("world.fluidStep");
+
+	/**
+	 * Creates a fluid engine.
+	 *
+	 * @param world The world the water flows in.
+	 * @param pool  The pool the regions are processed on.
+	 */
+	public FluidEngine(World world, ForkJoinPool pool) {
+		this.world = world;
+		this.pool = pool;
+		this.partition = new RegionPartition(world.getRegistry());
+	}
+
+	/**
+	 * Sets the listener told about the blocks changed by each step. It is
+	 * called on the thread running step, once all regions are done.
+	 *
+	 * @param listener The listener, or null.
+	 */
+	public void setListener(BlockChangeListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Places a water source and activates the cells around it.
+	 *
+	 * @param x The X block coordinate.
+	 * @param y The Y block coordinate.
+	 * @param z The Z block coordinate.
+	 */
+	public void addSource(int x, int y, int z) {
+		short previous = world.setBlock(x, y, z, Block.WATER);
+		blockChanged(x, y, z, previous, Block.WATER);
+	}
+
+	/**
+	 * Tells the engine that a block was changed by something else than the
+	 * water, so the water around it flows again. A water block set this way
+	 * becomes a source. Must not be called while a step runs.
+	 *
+	 * @param x        The X coordinate of the block.
+	 * @param y        The Y coordinate of the block.
+	 * @param z        The Z coordinate of the block.
+	 * @param oldBlock The block id before the change.
+	 * @param newBlock The block id after the change.
+	 */
+	public void blockChanged(int x, int y, int z, short oldBlock, short newBlock) {
+		ChunkSection section = section(x, y, z);
+		if (section != null && section.fluid != null) {
+			section.fluid.levels.set(index(x, y, z), 0); // A source, or no water at all
+		}
+		activate(x, y, z);
+		activateNeighbours(x, y, z, null, null);
+	}
+
+	/**
+	 * Runs one step of the automaton.
+	 */
+	public void step() {
+		long start = System.nanoTime();
+		step++;
+		if (partition.update() && work.length < partition.getIdCount()) {
+			work = Arrays.copyOf(work, Math.max(partition.getIdCount(), work.length * 2));
+		}
+		for (int r = 0; r < partition.size(); r++) {
+			int id = partition.get(r).getId();
+			if (work[id] == null) {
+				work[id] = new RegionWork();
+			}
+		}
+
+		// Compute every new level before writing any.
+		partition.forEachParallel(pool, this::computeLevels);
+		partition.forEachParallel(pool, this::applyLevels);
+
+		// Activate the cells across region borders, then report the changed blocks, in region order.
+		BlockChangeListener target = listener;
+		for (int r = 0; r < partition.size(); r++) {
+			RegionWork regionWork = work[partition.get(r).getId()];
+			IntList deferred = regionWork.deferred;
+			for (int i = 0; i < deferred.size(); i += 3) {
+				activate(deferred.get(i), deferred.get(i + 1), deferred.get(i + 2));
+			}
+			deferred.clear();
+
+			IntList changes = regionWork.changes;
+			if (target != null) {
+				for (int i = 0; i < changes.size(); i += 5) {
+					target.blockChanged(changes.get(i), changes.get(i + 1), changes.get(i + 2),
+							(short) changes.get(i + 3), (short) changes.get(i + 4));
+				}
+			}
+			cellsProcessed += regionWork.cellsProcessed;
+			cellsChanged += regionWork.updates.size() / 2;
+			blocksChanged += changes.size() / 5;
+			sectionsChanged += regionWork.sectionsChanged;
+			regionWork.cellsProcessed = 0;
+			regionWork.sectionsChanged = 0;
+			regionWork.updates.clear();
+			changes.clear();
+		}
+		stepTime.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Gets the effective level of the water in a block.
+	 *
+	 * @param x The X block coordinate.
+	 * @param y The Y block coordinate.
+	 * @param z The Z block coordinate.
+	 * @return 0 for no water, 1 to MAX_FLOW for flowing water, FALLING or SOURCE.
+	 */
+	public int getLevel(int x, int y, int z) {
+		return level(section(x, y, z), x, y, z);
+	}
+
+	/**
+	 * Gets the number of steps run.
+	 *
+	 * @return The step count.
+	 */
+	public long getSteps() {
+		return step;
+	}
+
+	/**
+	 * Gets the number of active cells evaluated so far.
+	 *
+	 * @return The cell count.
+	 */
+	public long getCellsProcessed() {
+		return cellsProcessed;
+	}
+
+	/**
+	 * Gets the number of level changes so far.
+	 *
+	 * @return The change count.
+	 */
+	public long getCellsChanged() {
+		return cellsChanged;
+	}
+
+	/**
+	 * Gets the number of blocks turned to water or air so far.
+	 *
+	 * @return The block change count.
+	 */
+	public long getBlocksChanged() {
+		return blocksChanged;
+	}
+
+	/**
+	 * Gets the number of sections whose blocks changed, counting each section
+	 * once per step: the sections to mesh again.
+	 *
+	 * @return The changed section count.
+	 */
+	public long getSectionsChanged() {
+		return sectionsChanged;
+	}
+
+	/**
+	 * First pass: computes the new level of every active cell of a region,
+	 * reading but writing nothing.
+	 */
+	private void computeLevels(RegionPartition.Region region) {
+		RegionWork regionWork = work[region.getId()];
+		IntList updates = regionWork.updates;
+		for (int s = 0; s < region.getSectionCount(); s++) {
+			ChunkSection section = region.getSection(s);
+			FluidCells fluid = section.fluid;
+			if (fluid == null || fluid.active.size() == 0) {
+				continue;
+			}
+			int originX = section.getSectionX() << ChunkSection.SHIFT;
+			int originY = section.getSectionY() << ChunkSection.SHIFT;
+			int originZ = section.getSectionZ() << ChunkSection.SHIFT;
+			IntList active = fluid.active;
+			for (int i = 0; i < active.size(); i++) {
+				int index = active.get(i);
+				int x = originX + (index & ChunkSection.MASK);
+				int y = originY + (index >>> 8);
+				int z = originZ + (index >>> 4 & ChunkSection.MASK);
+				int current = level(section, x, y, z);
+				int next = nextLevel(section, index, x, y, z, current);
+				if (next != current) {
+					updates.add(s << 12 | index);
+					updates.add(next);
+				}
+			}
+			regionWork.cellsProcessed += active.size();
+			fluid.clearActive();
+		}
+	}
+
+	/**
+	 * Second pass: writes the new levels of a region's cells, turning blocks to
+	 * water or air, and activates their neighbours.
+	 */
+	private void applyLevels(RegionPartition.Region region) {
+		RegionWork regionWork = work[region.getId()];
+		IntList updates = regionWork.updates;
+		for (int i = 0; i < updates.size(); i += 2) {
+			int packed = updates.get(i);
+			int level = updates.get(i + 1);
+			ChunkSection section = region.getSection(packed >>> 12);
+			int index = packed & 0xFFF;
+			int x = (section.getSectionX() << ChunkSection.SHIFT) + (index & ChunkSection.MASK);
+			int y = (section.getSectionY() << ChunkSection.SHIFT) + (index >>> 8);
+			int z = (section.getSectionZ() << ChunkSection.SHIFT) + (index >>> 4 & ChunkSection.MASK);
+
+			if (section.fluid == null) {
+				section.fluid = new FluidCells();
+			}
+			section.fluid.levels.set(index, level);
+			short block = level > 0 ? Block.WATER : Block.AIR;
+			short previous = section.setBlock(index & ChunkSection.MASK, index >>> 8, index >>> 4 & ChunkSection.MASK,
+					block);
+			if (previous != block) {
+				IntList changes = regionWork.changes;
+				changes.add(x);
+				changes.add(y);
+				changes.add(z);
+				changes.add(previous);
+				changes.add(block);
+				if (section.fluid.changedStep != step) {
+					section.fluid.changedStep = step;
+					regionWork.sectionsChanged++;
+				}
+			}
+			activateNeighbours(x, y, z, region, regionWork.deferred);
+		}
+	}
+
+	/**
+	 * Computes the level a cell takes from its neighbours.
+	 */
+	private int nextLevel(ChunkSection section, int index, int x, int y, int z, int current) {
+		if (current == SOURCE) {
+			return SOURCE;
+		}
+		short block = section.getBlock(index);
+		if (block != Block.AIR && block != Block.WATER) {
+			return 0; // Solid blocks hold no water; the block was set since the cell was activated
+		}
+		if (getLevel(x, y + 1, z) > 0) {
+			return FALLING;
+		}
+		int best = Math.max(0, spread(x - 1, y, z));
+		best = Math.max(best, spread(x + 1, y, z));
+		best = Math.max(best, spread(x, y, z - 1));
+		return Math.max(best, spread(x, y, z + 1));
+	}
+
+	/**
+	 * Gets the level a horizontal neighbour passes on: one less than its own,
+	 * unless it has no water or falls instead of spreading.
+	 */
+	private int spread(int x, int y, int z) {
+		int level = getLevel(x, y, z);
+		if (level == 0) {
+			return 0;
+		}
+		ChunkSection below = section(x, y - 1, z);
+		if (below != null && below.getBlock(index(x, y - 1, z)) == Block.AIR) {
+			return 0; // It falls
+		}
+		return Math.min(level, MAX_FLOW + 1) - 1;
+	}
+
+	/**
+	 * Gets the effective level of a block of a section.
+	 */
+	private static int level(ChunkSection section, int x, int y, int z) {
+		if (section == null) {
+			return 0;
+		}
+		int index = index(x, y, z);
+		if (section.getBlock(index) != Block.WATER) {
+			return 0;
+		}
+		int stored = section.fluid != null ? section.fluid.levels.get(index) : 0;
+		return stored == 0 ? SOURCE : stored;
+	}
+
+	/**
+	 * Activates the six neighbours of a cell: at once inside the region being
+	 * processed (or everywhere without one), else through the deferred list.
+	 */
+	private void activateNeighbours(int x, int y, int z, RegionPartition.Region region, IntList deferred) {
+		activate(x - 1, y, z, region, deferred);
+		activate(x + 1, y, z, region, deferred);
+		activate(x, y - 1, z, region, deferred);
+		activate(x, y + 1, z, region, deferred);
+		activate(x, y, z - 1, region, deferred);
+		activate(x, y, z + 1, region, deferred);
+	}
+
+	private void activate(int x, int y, int z, RegionPartition.Region region, IntList deferred) {
+		if (region == null || region.contains(x, z)) {
+			activate(x, y, z);
+		} else {
+			deferred.add(x);
+			deferred.add(y);
+			deferred.add(z);
+		}
+	}
+
+	/**
+	 * Activates a cell of a loaded section, unless a solid block fills it.
+	 */
+	private void activate(int x, int y, int z) {
+		ChunkSection section = section(x, y, z);
+		if (section == null) {
+			return;
+		}
+		short block = section.getBlock(index(x, y, z));
+		if (block != Block.AIR && block != Block.WATER) {
+			return;
+		}
+		if (section.fluid == null) {
+			section.fluid = new FluidCells();
+		}
+		section.fluid.activate(index(x, y, z));
+	}
+
+	private ChunkSection section(int x, int y, int z) {
+		return world.getSection(x >> ChunkSection.SHIFT, y >> ChunkSection.SHIFT, z >> ChunkSection.SHIFT);
+	}
+
+	private static int index(int x, int y, int z) {
+		return ChunkSection.index(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK);
+	}
+}
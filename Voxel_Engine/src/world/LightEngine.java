@@ -0,0 +1,689 @@
+package world;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import toolbox.Instrumentation;
+import toolbox.IntQueue;
+import toolbox.TimingStats;
+import toolbox.Workers;
+
+/**
+ * The LightEngine class computes the block light (from light-emitting blocks)
+ * and sky light of the loaded sections by breadth-first flood fill, and keeps
+ * them up to date incrementally when sections are added or blocks change.
+ *
+ * Light spreads to the six neighbours of a block, losing one level per block
+ * plus the light opacity of the block it enters. Sky light is the exception
+ * going down: full sky light falls through transparent blocks without loss, so
+ * open columns are fully lit. The top of a section with no loaded section
+ * above it is open sky.
+ *
+ * Darkening uses the usual two-queue scheme: a removal pass clears every block
+ * whose light depended on the removed light and collects the brighter blocks
+ * bordering the cleared area, then an increase pass spreads light back from
+ * them. Both queues hold positions packed into ints relative to the position
+ * the update started from, so no node objects are allocated; positions that
+ * do not fit (further than 63 blocks sideways or 511 blocks vertically) are
+ * not updated.
+ *
+ * Updates submitted through sectionAdded, blockChanged and sectionsChanged run
+ * one at a time on the worker pool; the listener is then told which sections
+ * changed, so they can be meshed again. The synchronous methods are for callers
+ * that already own the world, such as benchmarks, and must not run while
+ * asynchronous updates are pending.
+ */
+public class LightEngine {
+
+	// Layout of a packed queue entry: x (7 bits) | y (10 bits) | z (7 bits) | level (4 bits).
+	private static final int XZ_OFFSET = 64, Y_OFFSET = 512;
+	private static final int Z_SHIFT = 4, Y_SHIFT = 11, X_SHIFT = 21;
+	private static final int XZ_MASK = 0x7F, Y_MASK = 0x3FF;
+
+	// The world whose light is computed.
+	private final World world;
+
+	// Queues of the increase and removal passes.
+	private final IntQueue increaseQueue = new IntQueue(4096);
+	private final IntQueue removalQueue = new IntQueue(4096);
+
+	// Position the packed entries are relative to.
+	private int baseX, baseY, baseZ;
+
+	// Last section looked up, to avoid a registry lookup per block.
+	private ChunkSection cachedSection;
+	private int cachedX, cachedY, cachedZ;
+	private boolean cacheValid;
+
+	// The blocks of the section being lit, decoded in one pass.
+	private final short[] sectionBlocks = new short[ChunkSection.VOLUME];
+
+	// Sections whose light changed during the current update.
+	private final List<ChunkSection> changedSections = new ArrayList<ChunkSection>();
+
+	// Told about every section whose light changed, after each update.
+	private volatile Consumer<ChunkSection> listener;
+
+	// Pending asynchronous updates, and whether a worker is draining them.
+	private final ConcurrentLinkedQueue<Update> updates = new ConcurrentLinkedQueue<Update>();
+	private final AtomicBoolean draining = new AtomicBoolean();
+
+	// Duration of the updates.
+	private final TimingStats updateTime = Instrumentation.timing("light.update");
+
+	/**
+	 * Creates a light engine for a world.
+	 *
+	 * @param world The world to light.
+	 */
+	public LightEngine(World world) {
+		this.world = world;
+	}
+
+	/**
+	 * Sets the listener told about every section whose light or blocks changed,
+	 * and so needs to be meshed again. It is called on a worker thread.
+	 *
+	 * @param listener The listener, or null.
+	 */
+	public void setListener(Consumer<ChunkSection> listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Schedules the lighting of a section that was just added to the world.
+	 *
+	 * @param section The new section.
+	 */
+	public void sectionAdded(ChunkSection section) {
+		submit(new Update(section, 0, 0, 0, Block.AIR, Block.AIR));
+	}
+
+	/**
+	 * Schedules the light update following a block change. The block must
+	 * already be set in the world.
+	 *
+	 * @param x        The X coordinate of the block.
+	 * @param y        The Y coordinate of the block.
+	 * @param z        The Z coordinate of the block.
+	 * @param oldBlock The block id before the change.
+	 * @param newBlock The block id after the change.
+	 */
+	public void blockChanged(int x, int y, int z, short oldBlock, short newBlock) {
+		submit(new Update(null, x, y, z, oldBlock, newBlock));
+	}
+
+	/**
+	 * Schedules the relighting of sections whose blocks were rewritten in bulk,
+	 * as a single update: each section is meshed again once, however many of
+	 * them changed. Matches RegionEditor's listener.
+	 *
+	 * @param sections The sections.
+	 */
+	public void sectionsChanged(List<ChunkSection> sections) {
+		submit(new Update(sections));
+	}
+
+	/**
+	 * Lights a section that was just added to the world, along with the light it
+	 * lets into or takes from its neighbours. Not thread-safe.
+	 *
+	 * @param section The new section.
+	 */
+	public void initSection(ChunkSection section) {
+		beginSection(section);
+
+		// Sky light: open sky above the top layer, and whatever the neighbours let in.
+		seedOpenSky(section);
+		seedFromNeighbours(section, true);
+		propagateIncrease(true);
+		darkenBelow(section);
+
+		// Block light: every emitter of the section, and whatever the neighbours let in.
+		seedEmitters(section);
+		seedFromNeighbours(section, false);
+		propagateIncrease(false);
+
+		// The faces bordering the new section may have to be meshed differently.
+		markNeighbours(section);
+	}
+
+	/**
+	 * Relights sections whose blocks were all rewritten at once (see
+	 * RegionEditor), along with the light they let into or take from the rest
+	 * of the world. The light of every section is cleared first, with the
+	 * light elsewhere that depended on it, while no light spreads into them;
+	 * only then is it spread again from their own blocks and their neighbours.
+	 * Relighting them one at a time instead would spread light through the
+	 * sections not relit yet, only to clear it again: sky light falling into
+	 * a deep column of air would be cleared and spread once per section
+	 * below. The sections and their neighbours are published once, after the
+	 * last one. Not thread-safe.
+	 *
+	 * @param sections The sections, already in the world.
+	 */
+	public void relightSections(List<ChunkSection> sections) {
+		// From the top down, so sky light is cleared, then spread, once per column.
+		List<ChunkSection> order = new ArrayList<ChunkSection>(sections);
+		order.sort((a, b) -> Integer.compare(b.getSectionY(), a.getSectionY()));
+		for (ChunkSection section : order) {
+			section.relighting = true;
+		}
+
+		// Clear the light of the sections, and the light that depended on it.
+		// The flags are reset even if this fails, or light would never spread
+		// into the sections again.
+		try {
+			for (ChunkSection section : order) {
+				beginSection(section);
+				for (boolean sky : new boolean[] { true, false }) {
+					clearSection(section, sky);
+					propagateDecrease(sky);
+					propagateIncrease(sky);
+				}
+			}
+		} finally {
+			for (ChunkSection section : order) {
+				section.relighting = false;
+			}
+		}
+
+		// Spread the light back from the sections' blocks and neighbours.
+		for (ChunkSection section : order) {
+			beginSection(section);
+			seedOpenSky(section);
+			seedFromNeighbours(section, true);
+			propagateIncrease(true);
+			darkenBelow(section); // The sections above are done: its sky light is final
+			seedEmitters(section);
+			seedFromNeighbours(section, false);
+			propagateIncrease(false);
+			markNeighbours(section);
+		}
+	}
+
+	/**
+	 * Prepares an update starting from a section, which is marked changed.
+	 */
+	private void beginSection(ChunkSection section) {
+		beginUpdate(section.getSectionX() << ChunkSection.SHIFT, section.getSectionY() << ChunkSection.SHIFT,
+				section.getSectionZ() << ChunkSection.SHIFT);
+		markChanged(section);
+	}
+
+	/**
+	 * Clears one kind of light of a whole section, queueing every block that
+	 * was lit for the removal pass.
+	 */
+	private void clearSection(ChunkSection section, boolean sky) {
+		NibbleArray light = sky ? section.getSkyLight() : section.getBlockLight();
+		for (int index = 0; index < ChunkSection.VOLUME; index++) {
+			int level = light.get(index);
+			if (level > 0) {
+				light.set(index, 0);
+				removalQueue.add(pack(baseX + (index & ChunkSection.MASK), baseY + (index >> 8),
+						baseZ + ((index >> 4) & ChunkSection.MASK), level));
+			}
+		}
+	}
+
+	/**
+	 * Queues the top layer of a section with no loaded section above it, lit
+	 * by the open sky.
+	 */
+	private void seedOpenSky(ChunkSection section) {
+		if (world.getSection(section.getSectionX(), section.getSectionY() + 1, section.getSectionZ()) != null) {
+			return;
+		}
+		NibbleArray sky = section.getSkyLight();
+		for (int x = 0; x < ChunkSection.SIZE; x++) {
+			for (int z = 0; z < ChunkSection.SIZE; z++) {
+				int index = ChunkSection.index(x, ChunkSection.MASK, z);
+				int level = skyEntering(section.getBlock(index));
+				if (level > 0) {
+					sky.set(index, level);
+					increaseQueue.add(pack(baseX + x, baseY + ChunkSection.MASK, baseZ + z, level));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Darkens the columns of the section below a section that were open sky
+	 * until the section was added, or still lit as if they were.
+	 */
+	private void darkenBelow(ChunkSection section) {
+		ChunkSection below = world.getSection(section.getSectionX(), section.getSectionY() - 1, section.getSectionZ());
+		if (below == null) {
+			return;
+		}
+		NibbleArray sky = section.getSkyLight();
+		for (int x = 0; x < ChunkSection.SIZE; x++) {
+			for (int z = 0; z < ChunkSection.SIZE; z++) {
+				int index = ChunkSection.index(x, ChunkSection.MASK, z);
+				if (below.getSkyLight().get(index) == Block.MAX_LIGHT
+						&& sky.get(ChunkSection.index(x, 0, z)) != Block.MAX_LIGHT) {
+					below.getSkyLight().set(index, 0);
+					markChanged(below);
+					removalQueue.add(pack(baseX + x, baseY - 1, baseZ + z, Block.MAX_LIGHT));
+				}
+			}
+		}
+		propagateDecrease(true);
+		propagateIncrease(true);
+	}
+
+	/**
+	 * Lights every block of a section that emits light, and queues it.
+	 */
+	private void seedEmitters(ChunkSection section) {
+		NibbleArray light = section.getBlockLight();
+		section.copyBlocks(sectionBlocks);
+		for (int index = 0; index < ChunkSection.VOLUME; index++) {
+			int emission = Block.getLightEmission(sectionBlocks[index]);
+			if (emission > 0) {
+				light.set(index, emission);
+				increaseQueue.add(pack(baseX + (index & ChunkSection.MASK), baseY + (index >> 8),
+						baseZ + ((index >> 4) & ChunkSection.MASK), emission));
+			}
+		}
+	}
+
+	/**
+	 * Marks the loaded sections sharing a face with a section as changed.
+	 */
+	private void markNeighbours(ChunkSection section) {
+		for (int face = 0; face < Face.COUNT; face++) {
+			ChunkSection neighbour = world.getSection(section.getSectionX() + Face.DX[face],
+					section.getSectionY() + Face.DY[face], section.getSectionZ() + Face.DZ[face]);
+			if (neighbour != null) {
+				markChanged(neighbour);
+			}
+		}
+	}
+
+	/**
+	 * Updates the light after a block change. The block must already be set in
+	 * the world. Not thread-safe.
+	 *
+	 * @param x        The X coordinate of the block.
+	 * @param y        The Y coordinate of the block.
+	 * @param z        The Z coordinate of the block.
+	 * @param oldBlock The block id before the change.
+	 * @param newBlock The block id after the change.
+	 */
+	public void updateBlock(int x, int y, int z, short oldBlock, short newBlock) {
+		beginUpdate(x, y, z);
+		ChunkSection section = section(x, y, z);
+		if (section == null) {
+			return;
+		}
+
+		// The section, and a neighbour sharing the changed face, must be meshed again.
+		markChanged(section);
+		for (int face = 0; face < Face.COUNT; face++) {
+			ChunkSection neighbour = section(x + Face.DX[face], y + Face.DY[face], z + Face.DZ[face]);
+			if (neighbour != null && neighbour != section) {
+				markChanged(neighbour);
+			}
+		}
+
+		// Blocks that treat light the same way need no light update.
+		if (Block.getLightOpacity(oldBlock) == Block.getLightOpacity(newBlock)
+				&& Block.getLightEmission(oldBlock) == Block.getLightEmission(newBlock)) {
+			return;
+		}
+		updateBlock(section, x, y, z, newBlock, true);
+		updateBlock(section, x, y, z, newBlock, false);
+	}
+
+	/**
+	 * Tells the listener about the sections changed by the synchronous updates
+	 * run since the last call.
+	 */
+	public void flushChanges() {
+		publishChanges();
+	}
+
+	/**
+	 * Updates one kind of light after a block change.
+	 */
+	private void updateBlock(ChunkSection section, int x, int y, int z, short block, boolean sky) {
+		NibbleArray light = sky ? section.getSkyLight() : section.getBlockLight();
+		int index = localIndex(x, y, z);
+
+		// Clear the light of the block and everything that depended on it.
+		int old = light.get(index);
+		if (old > 0) {
+			light.set(index, 0);
+			removalQueue.add(pack(x, y, z, old));
+			propagateDecrease(sky);
+		}
+
+		// Spread the light the block now emits or lets through.
+		if (!sky && Block.getLightEmission(block) > 0) {
+			light.set(index, Block.getLightEmission(block));
+			increaseQueue.add(pack(x, y, z, Block.getLightEmission(block)));
+		}
+		if (Block.getLightOpacity(block) < Block.MAX_LIGHT) {
+			if (sky && isOpenSky(x, y, z)) {
+				int level = skyEntering(block);
+				if (level > light.get(index)) {
+					light.set(index, level);
+					increaseQueue.add(pack(x, y, z, level));
+				}
+			}
+			for (int face = 0; face < Face.COUNT; face++) {
+				int level = getLight(x + Face.DX[face], y + Face.DY[face], z + Face.DZ[face], sky);
+				if (level > 0) {
+					increaseQueue.add(pack(x + Face.DX[face], y + Face.DY[face], z + Face.DZ[face], level));
+				}
+			}
+		}
+		propagateIncrease(sky);
+	}
+
+	/**
+	 * Spreads the light of the queued blocks until no block gets brighter.
+	 */
+	private void propagateIncrease(boolean sky) {
+		IntQueue queue = increaseQueue;
+		while (!queue.isEmpty()) {
+			int entry = queue.poll();
+			int level = entry & 0xF;
+			int x = unpackX(entry), y = unpackY(entry), z = unpackZ(entry);
+			if (getLight(x, y, z, sky) != level) {
+				continue; // Changed since it was queued; a newer entry covers it
+			}
+			for (int face = 0; face < Face.COUNT; face++) {
+				int nx = x + Face.DX[face], ny = y + Face.DY[face], nz = z + Face.DZ[face];
+				ChunkSection neighbour = section(nx, ny, nz);
+				if (neighbour == null || neighbour.relighting) {
+					continue;
+				}
+				int index = localIndex(nx, ny, nz);
+				int opacity = Block.getLightOpacity(neighbour.getBlock(index));
+				int next = sky && face == Face.DOWN && level == Block.MAX_LIGHT && opacity == 0 ? Block.MAX_LIGHT
+						: level - 1 - opacity;
+				if (next <= 0) {
+					continue;
+				}
+				NibbleArray light = sky ? neighbour.getSkyLight() : neighbour.getBlockLight();
+				if (light.get(index) < next) {
+					int packed = pack(nx, ny, nz, next);
+					if (packed >= 0) {
+						light.set(index, next);
+						markChanged(neighbour);
+						queue.add(packed);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Clears the light that depended on the queued blocks, queueing the
+	 * brighter blocks around the cleared area for the increase pass.
+	 */
+	private void propagateDecrease(boolean sky) {
+		IntQueue queue = removalQueue;
+		while (!queue.isEmpty()) {
+			int entry = queue.poll();
+			int level = entry & 0xF;
+			int x = unpackX(entry), y = unpackY(entry), z = unpackZ(entry);
+			for (int face = 0; face < Face.COUNT; face++) {
+				int nx = x + Face.DX[face], ny = y + Face.DY[face], nz = z + Face.DZ[face];
+				ChunkSection neighbour = section(nx, ny, nz);
+				if (neighbour == null) {
+					continue;
+				}
+				int index = localIndex(nx, ny, nz);
+				NibbleArray light = sky ? neighbour.getSkyLight() : neighbour.getBlockLight();
+				int current = light.get(index);
+				if (current == 0) {
+					continue;
+				}
+				int packed = pack(nx, ny, nz, current);
+				if (packed < 0) {
+					continue;
+				}
+				boolean dependent = current < level || neighbour.relighting // Cleared anyway
+						|| (sky && face == Face.DOWN && level == Block.MAX_LIGHT && current == Block.MAX_LIGHT);
+				if (!dependent) {
+					increaseQueue.add(packed); // Lit from elsewhere; spreads back into the cleared area
+					continue;
+				}
+				light.set(index, 0);
+				markChanged(neighbour);
+				queue.add(packed);
+
+				// Blocks that produce light themselves get it back straight away.
+				if (neighbour.relighting) {
+					continue;
+				}
+				short block = neighbour.getBlock(index);
+				int own = sky ? (isOpenSky(nx, ny, nz) ? skyEntering(block) : 0) : Block.getLightEmission(block);
+				if (own > 0) {
+					light.set(index, own);
+					increaseQueue.add(pack(nx, ny, nz, own));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Queues the blocks of the neighbouring sections that touch a section, so
+	 * their light spreads into it.
+	 */
+	private void seedFromNeighbours(ChunkSection section, boolean sky) {
+		int ox = baseX, oy = baseY, oz = baseZ;
+		for (int face = 0; face < Face.COUNT; face++) {
+			int dx = Face.DX[face], dy = Face.DY[face], dz = Face.DZ[face];
+			ChunkSection neighbour = world.getSection(section.getSectionX() + dx, section.getSectionY() + dy,
+					section.getSectionZ() + dz);
+			if (neighbour == null) {
+				continue;
+			}
+			NibbleArray light = sky ? neighbour.getSkyLight() : neighbour.getBlockLight();
+			for (int a = 0; a < ChunkSection.SIZE; a++) {
+				for (int b = 0; b < ChunkSection.SIZE; b++) {
+					// Local coordinates of the touching layer, in the neighbour and in the world.
+					int x = dx == 0 ? a : dx > 0 ? 0 : ChunkSection.MASK;
+					int y = dy == 0 ? (dx == 0 ? b : a) : dy > 0 ? 0 : ChunkSection.MASK;
+					int z = dz == 0 ? b : dz > 0 ? 0 : ChunkSection.MASK;
+					int level = light.get(ChunkSection.index(x, y, z));
+					if (level > 1) {
+						int wx = ox + dx * ChunkSection.SIZE + x;
+						int wy = oy + dy * ChunkSection.SIZE + y;
+						int wz = oz + dz * ChunkSection.SIZE + z;
+						increaseQueue.add(pack(wx, wy, wz, level));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the sky light a block receives from open sky directly above it.
+	 */
+	private static int skyEntering(short block) {
+		int opacity = Block.getLightOpacity(block);
+		return opacity == 0 ? Block.MAX_LIGHT : Math.max(0, Block.MAX_LIGHT - 1 - opacity);
+	}
+
+	/**
+	 * Checks whether a block is in the top layer of a section with no loaded
+	 * section above it.
+	 */
+	private boolean isOpenSky(int x, int y, int z) {
+		return (y & ChunkSection.MASK) == ChunkSection.MASK && section(x, y + 1, z) == null;
+	}
+
+	/**
+	 * Gets the light of a block, 0 if its section is not loaded.
+	 */
+	private int getLight(int x, int y, int z, boolean sky) {
+		ChunkSection section = section(x, y, z);
+		if (section == null) {
+			return 0;
+		}
+		return (sky ? section.getSkyLight() : section.getBlockLight()).get(localIndex(x, y, z));
+	}
+
+	/**
+	 * Gets the section containing a block through the one-entry cache.
+	 */
+	private ChunkSection section(int x, int y, int z) {
+		int sx = x >> ChunkSection.SHIFT, sy = y >> ChunkSection.SHIFT, sz = z >> ChunkSection.SHIFT;
+		if (!cacheValid || sx != cachedX || sy != cachedY || sz != cachedZ) {
+			cachedSection = world.getSection(sx, sy, sz);
+			cachedX = sx;
+			cachedY = sy;
+			cachedZ = sz;
+			cacheValid = true;
+		}
+		return cachedSection;
+	}
+
+	private static int localIndex(int x, int y, int z) {
+		return ChunkSection.index(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK);
+	}
+
+	/**
+	 * Packs a position and a light level into a queue entry.
+	 *
+	 * @return The entry, or -1 if the position is too far from the base.
+	 */
+	private int pack(int x, int y, int z, int level) {
+		int px = x - baseX + XZ_OFFSET, py = y - baseY + Y_OFFSET, pz = z - baseZ + XZ_OFFSET;
+		if ((px & ~XZ_MASK) != 0 || (py & ~Y_MASK) != 0 || (pz & ~XZ_MASK) != 0) {
+			return -1;
+		}
+		return px << X_SHIFT | py << Y_SHIFT | pz << Z_SHIFT | level;
+	}
+
+	private int unpackX(int entry) {
+		return baseX + ((entry >>> X_SHIFT) & XZ_MASK) - XZ_OFFSET;
+	}
+
+	private int unpackY(int entry) {
+		return baseY + ((entry >>> Y_SHIFT) & Y_MASK) - Y_OFFSET;
+	}
+
+	private int unpackZ(int entry) {
+		return baseZ + ((entry >>> Z_SHIFT) & XZ_MASK) - XZ_OFFSET;
+	}
+
+	/**
+	 * Prepares the queues and the cache for an update around a position.
+	 */
+	private void beginUpdate(int x, int y, int z) {
+		baseX = x;
+		baseY = y;
+		baseZ = z;
+		increaseQueue.clear();
+		removalQueue.clear();
+		cacheValid = false; // Sections may have been added or removed since the last update
+	}
+
+	private void markChanged(ChunkSection section) {
+		if (!section.lightChanged) {
+			section.lightChanged = true;
+			changedSections.add(section);
+		}
+	}
+
+	/**
+	 * Tells the listener about the sections changed by the last update, and
+	 * forgets them.
+	 */
+	private void publishChanges() {
+		Consumer<ChunkSection> target = listener;
+		for (int i = 0; i < changedSections.size(); i++) {
+			ChunkSection section = changedSections.get(i);
+			section.lightChanged = false;
+			if (target != null) {
+				target.accept(section);
+			}
+		}
+		changedSections.clear();
+	}
+
+	/**
+	 * Queues an asynchronous update and makes sure a worker drains the queue.
+	 */
+	private void submit(Update update) {
+		updates.add(update);
+		if (draining.compareAndSet(false, true)) {
+			Workers.POOL.execute(this::drain);
+		}
+	}
+
+	/**
+	 * Runs the queued updates one after another on a worker thread.
+	 */
+	private void drain() {
+		try {
+			Update update;
+			while ((update = updates.poll()) != null) {
+				long start = System.nanoTime();
+				try {
+					if (update.sections != null) {
+						relightSections(update.sections);
+					} else if (update.section != null) {
+						initSection(update.section);
+					} else {
+						updateBlock(update.x, update.y, update.z, update.oldBlock, update.newBlock);
+					}
+				} catch (RuntimeException e) {
+					Instrumentation.log("light", "Light update failed: " + e);
+				} finally {
+					// A failed update leaves its queues half drained; they must not
+					// leak into the next one, and what it changed is meshed anyway.
+					increaseQueue.clear();
+					removalQueue.clear();
+					publishChanges();
+				}
+				updateTime.record(System.nanoTime() - start);
+			}
+		} finally {
+			draining.set(false);
+		}
+		// An update queued after the last poll but before the flag was cleared
+		// would otherwise wait for the next submission.
+		if (!updates.isEmpty() && draining.compareAndSet(false, true)) {
+			Workers.POOL.execute(this::drain);
+		}
+	}
+
+	/**
+	 * A queued asynchronous update: a new section, a block change, or sections
+	 * rewritten in bulk.
+	 */
+	private static final class Update {
+		final ChunkSection section;
+		final List<ChunkSection> sections;
+		final int x, y, z;
+		final short oldBlock, newBlock;
+
+		Update(ChunkSection section, int x, int y, int z, short oldBlock, short newBlock) {
+			this.section = section;
+			this.sections = null;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.oldBlock = oldBlock;
+			this.newBlock = newBlock;
+		}
+
+		Update(List<ChunkSection> sections) {
+			this.section = null;
+			this.sections = sections;
+			this.x = this.y = this.z = 0;
+			this.oldBlock = this.newBlock = Block.AIR;
+		}
+	}
+}
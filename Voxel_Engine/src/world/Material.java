@@ -0,0 +1,81 @@
+package world;
+
+/**
+ * The Material class lists the surfaces blocks are drawn with. The mesher
+ * builds one mesh per material and section, and the renderer draws each with
+ * the material's texture: either a texture file of the resources folder, or a
+ * plain colour for the blocks that have no texture yet.
+ */
+public final class Material {
+
+	// Materials.
+	public static final int GRASS = 0;
+	public static final int DIRT = 1;
+	public static final int BARK = 2;
+	public static final int LEAF = 3;
+	public static final int STONE = 4;
+	public static final int WATER = 5;
+	public static final int GLASS = 6;
+	public static final int LAMP = 7;
+
+	/** Number of materials. */
+	public static final int COUNT = 8;
+
+	// Texture file of each material, or null for a plain colour.
+	private static final String[] TEXTURES = { "grassTex", "dirtTex", "TreeBark", "Leaf", null, null, null, null };
+
+	// Colour of the materials without a texture, as 0xRRGGBBAA.
+	private static final int[] COLOURS = { 0, 0, 0, 0, 0x7F7F7FFF, 0x3060D0A0, 0xD8ECF060, 0xFFE080FF };
+
+	// Whether each material is blended with what is behind it, and so drawn after
+	// the opaque materials, back to front.
+	private static final boolean[] TRANSLUCENT = { false, false, false, true, false, true, true, false };
+
+	// Whether each texture is a cube atlas: a 3x3 grid with the sides in the
+	// middle cell, the top above it and the bottom to its left (see AtlasCubeModel).
+	private static final boolean[] CUBE_ATLAS = { true, false, false, false, false, false, false, false };
+
+	private Material() {
+	}
+
+	/**
+	 * Gets the texture file of a material.
+	 *
+	 * @param material The material.
+	 * @return The texture name (without extension), or null for a plain colour.
+	 */
+	public static String getTexture(int material) {
+		return TEXTURES[material];
+	}
+
+	/**
+	 * Gets the colour of a material without a texture.
+	 *
+	 * @param material The material.
+	 * @return The colour as 0xRRGGBBAA.
+	 */
+	public static int getColour(int material) {
+		return COLOURS[material];
+	}
+
+	/**
+	 * Checks whether a material is blended with what is behind it. Its faces
+	 * must be drawn after the opaque ones, back to front.
+	 *
+	 * @param material The material.
+	 * @return true if the material is translucent.
+	 */
+	public static boolean isTranslucent(int material) {
+		return TRANSLUCENT[material];
+	}
+
+	/**
+	 * Checks whether the texture of a material is a cube atlas.
+	 *
+	 * @param material The material.
+	 * @return true if the faces use different cells of the texture.
+	 */
+	public static boolean isCubeAtlas(int material) {
+		return CUBE_ATLAS[material];
+	}
+}
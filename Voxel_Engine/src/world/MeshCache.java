@@ -0,0 +1,71 @@
+package world;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The MeshCache class remembers the most recently built section meshes by
+ * content (see MeshKey), so a ChunkMesher meeting a section identical to one
+ * it has already meshed, such as the endless copies of a flat world, reuses
+ * the mesh instead of building it again. The least recently used meshes are
+ * dropped once the cache is full.
+ *
+ * Thread-safe; the meshers of every worker share one cache.
+ */
+public class MeshCache {
+
+	// The meshes' parts by content, in least recently used order.
+	private final Map<MeshKey, MeshData.Part[]> meshes;
+
+	// Number of lookups, and of lookups that found a mesh.
+	private long lookups, hits;
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param capacity The number of meshes kept.
+	 */
+	public MeshCache(final int capacity) {
+		meshes = new LinkedHashMap<MeshKey, MeshData.Part[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<MeshKey, MeshData.Part[]> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Gets the parts of a mesh.
+	 *
+	 * @param key The content of the section.
+	 * @return The parts, indexed by material, or null if the mesh is not cached.
+	 */
+	public synchronized MeshData.Part[] get(MeshKey key) {
+		lookups++;
+		MeshData.Part[] parts = meshes.get(key);
+		if (parts != null) {
+			hits++;
+		}
+		return parts;
+	}
+
+	/**
+	 * Adds the parts of a mesh. They must not be changed afterwards.
+	 *
+	 * @param key   The content of the section.
+	 * @param parts The parts, indexed by material.
+	 */
+	public synchronized void put(MeshKey key, MeshData.Part[] parts) {
+		meshes.put(key, parts);
+	}
+
+	public synchronized long getLookups() {
+		return lookups;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+}
@@ -0,0 +1,132 @@
+package world;
+
+/**
+ * The MeshData class holds the mesh of a chunk section built by the
+ * ChunkMesher, ready to be uploaded to OpenGL: one part per material drawn in
+ * the section, each with vertex positions relative to the section origin,
+ * texture coordinates, light values and triangle indices.
+ */
+public class MeshData {
+
+	/**
+	 * The geometry of one material.
+	 */
+	public static final class Part {
+
+		// The material of the part.
+		public final int material;
+
+		// Three floats per vertex: position relative to the section origin.
+		public final float[] positions;
+
+		// Two floats per vertex: texture coordinates.
+		public final float[] textureCoords;
+
+		// Three floats per vertex: block light, sky light and ambient occlusion,
+		// from 0 (dark) to 1.
+		public final float[] light;
+
+		// Three indices per triangle; the six indices of each face are consecutive.
+		public final int[] indices;
+
+		// Three floats per face: the centre of the face relative to the section
+		// origin, by which translucent faces are sorted; null for opaque materials.
+		public final float[] faceCentres;
+
+		public Part(int material, float[] positions, float[] textureCoords, float[] light, int[] indices) {
+			this(material, positions, textureCoords, light, indices, null);
+		}
+
+		public Part(int material, float[] positions, float[] textureCoords, float[] light, int[] indices,
+				float[] faceCentres) {
+			this.material = material;
+			this.positions = positions;
+			this.textureCoords = textureCoords;
+			this.light = light;
+			this.indices = indices;
+			this.faceCentres = faceCentres;
+		}
+
+		/**
+		 * Gets the number of faces of the part.
+		 *
+		 * @return The face count.
+		 */
+		public int getFaceCount() {
+			return indices.length / 6;
+		}
+	}
+
+	// Coordinates of the meshed section.
+	private final int sectionX, sectionY, sectionZ;
+
+	// The parts of the mesh, indexed by material; null for absent materials.
+	private final Part[] parts;
+
+	// The content the mesh was built from, or null for an empty section.
+	private final MeshKey key;
+
+	/**
+	 * Creates the mesh data of a section.
+	 *
+	 * @param sectionX The X section coordinate.
+	 * @param sectionY The Y section coordinate.
+	 * @param sectionZ The Z section coordinate.
+	 * @param parts    The parts, indexed by material; possibly shared with
+	 *                 other meshes of the same content.
+	 * @param key      The content the mesh was built from, or null.
+	 */
+	public MeshData(int sectionX, int sectionY, int sectionZ, Part[] parts, MeshKey key) {
+		this.sectionX = sectionX;
+		this.sectionY = sectionY;
+		this.sectionZ = sectionZ;
+		this.parts = parts;
+		this.key = key;
+	}
+
+	/**
+	 * Gets the part of a material.
+	 *
+	 * @param material The material.
+	 * @return The part, or null if the section draws nothing with the material.
+	 */
+	public Part getPart(int material) {
+		return parts[material];
+	}
+
+	/**
+	 * Gets the content the mesh was built from. Meshes with equal keys are
+	 * identical.
+	 *
+	 * @return The key, or null for the mesh of an empty section.
+	 */
+	public MeshKey getKey() {
+		return key;
+	}
+
+	/**
+	 * Checks whether the mesh has no geometry at all.
+	 *
+	 * @return true if no part is present.
+	 */
+	public boolean isEmpty() {
+		for (Part part : parts) {
+			if (part != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getSectionX() {
+		return sectionX;
+	}
+
+	public int getSectionY() {
+		return sectionY;
+	}
+
+	public int getSectionZ() {
+		return sectionZ;
+	}
+}
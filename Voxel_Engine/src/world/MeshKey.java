@@ -0,0 +1,40 @@
+package world;
+
+/**
+ * The MeshKey class identifies the content a section mesh was built from: a
+ * 128-bit hash of the blocks and light of the section and of the layer of
+ * blocks around it. Sections with equal keys have identical meshes, relative
+ * to their origins, so they can share one mesh on the CPU and the GPU.
+ */
+public final class MeshKey {
+
+	// The two halves of the hash.
+	private final long high, low;
+
+	public MeshKey(long high, long low) {
+		this.high = high;
+		this.low = low;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof MeshKey)) {
+			return false;
+		}
+		MeshKey key = (MeshKey) other;
+		return high == key.high && low == key.low;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (low ^ (low >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%016x%016x", high, low);
+	}
+}
@@ -0,0 +1,183 @@
+package world;
+
+/**
+ * The NavGrid class holds the movement rules of walkers two blocks tall, such
+ * as mobs. A walker stands in a block when it is neither solid nor water, nor
+ * is the block above it, and the block below it is solid. From there it moves
+ * to one of the four horizontal neighbours: at the same height, one block up
+ * if there is headroom above it, or one or two blocks down if the blocks it
+ * falls past are clear. At most one of these moves is possible per direction.
+ * Every move costs at least COST_FLAT and changes X or Z by one, so
+ * COST_FLAT times the horizontal Manhattan distance never overestimates the
+ * cost of a path.
+ *
+ * The rules read blocks through flags, from a snapshot of the blocks around a
+ * section (Snapshot) or from the live world (Live).
+ */
+abstract class NavGrid {
+
+	// Flags of a block: it stops a walker's body, and it holds a walker up.
+	static final int BLOCKED = 1, FLOOR = 2;
+
+	// Costs of the moves: at the same height, one block up, one down, two down.
+	static final int COST_FLAT = 10, COST_UP = 15, COST_DOWN = 12, COST_DROP = 14;
+
+	// Horizontal directions: +X, -X, +Z, -Z.
+	static final int[] DX = { 1, -1, 0, 0 };
+	static final int[] DZ = { 0, 0, 1, -1 };
+
+	// Height changes of the moves in each direction.
+	static final int[] DY = { 0, 1, -1, -2 };
+
+	// Bits per coordinate of a packed cell: 24 for X and Z, 16 for Y.
+	private static final int XZ_BITS = 24, Y_BITS = 16;
+
+	/**
+	 * Gets the flags of a block.
+	 *
+	 * @return BLOCKED and FLOOR, or'ed.
+	 */
+	abstract int flags(int x, int y, int z);
+
+	/**
+	 * Checks whether a walker can stand in a block.
+	 */
+	final boolean isStandable(int x, int y, int z) {
+		return (flags(x, y - 1, z) & FLOOR) != 0 && (flags(x, y, z) & BLOCKED) == 0
+				&& (flags(x, y + 1, z) & BLOCKED) == 0;
+	}
+
+	/**
+	 * Gets the cost of a move from a block a walker stands in.
+	 *
+	 * @param dir The direction, an index into DX and DZ.
+	 * @param dy  The height change, one of DY.
+	 * @return The cost, or -1 if the move is not possible.
+	 */
+	final int moveCost(int x, int y, int z, int dir, int dy) {
+		int tx = x + DX[dir], tz = z + DZ[dir];
+		if (!isStandable(tx, y + dy, tz)) {
+			return -1;
+		}
+		switch (dy) {
+		case 0:
+			return COST_FLAT;
+		case 1:
+			return (flags(x, y + 2, z) & BLOCKED) == 0 ? COST_UP : -1;
+		case -1:
+			return (flags(tx, y + 1, tz) & BLOCKED) == 0 ? COST_DOWN : -1;
+		default:
+			return ((flags(tx, y + 1, tz) | flags(tx, y, tz)) & BLOCKED) == 0 ? COST_DROP : -1;
+		}
+	}
+
+	/**
+	 * Gets a lower bound of the cost of a path between two blocks.
+	 */
+	static int estimate(long from, long to) {
+		return COST_FLAT * (Math.abs(unpackX(from) - unpackX(to)) + Math.abs(unpackZ(from) - unpackZ(to)));
+	}
+
+	static int flagsOf(short block) {
+		return (Block.isSolid(block) ? BLOCKED | FLOOR : 0) | (block == Block.WATER ? BLOCKED : 0);
+	}
+
+	/**
+	 * Packs block coordinates into a long; X and Z keep 24 bits, Y 16.
+	 */
+	static long pack(int x, int y, int z) {
+		return ((long) x & (1L << XZ_BITS) - 1) << (XZ_BITS + Y_BITS) | ((long) y & (1L << Y_BITS) - 1) << XZ_BITS
+				| ((long) z & (1L << XZ_BITS) - 1);
+	}
+
+	static int unpackX(long cell) {
+		return (int) (cell >>> (XZ_BITS + Y_BITS)) << (32 - XZ_BITS) >> (32 - XZ_BITS);
+	}
+
+	static int unpackY(long cell) {
+		return (short) (cell >>> XZ_BITS);
+	}
+
+	static int unpackZ(long cell) {
+		return (int) cell << (32 - XZ_BITS) >> (32 - XZ_BITS);
+	}
+
+	/**
+	 * Gets the registry key of the section holding a packed block.
+	 */
+	static long sectionKey(long cell) {
+		return ChunkRegistry.key(unpackX(cell) >> ChunkSection.SHIFT, unpackY(cell) >> ChunkSection.SHIFT,
+				unpackZ(cell) >> ChunkSection.SHIFT);
+	}
+
+	/**
+	 * A copy of the flags of the blocks a section's moves read: the section
+	 * and a margin around it, one block wide along X and Z, three below and
+	 * three above. Every move starting or ending in the section reads only
+	 * blocks of the margin, so a section graph built from a snapshot depends
+	 * on nothing else, and an edit outside it leaves the graph valid.
+	 */
+	static final class Snapshot extends NavGrid {
+
+		// Margins below and above the section along Y.
+		static final int BELOW = 3, ABOVE = 3;
+
+		// Size of the snapshot along X and Z, and along Y.
+		private static final int WIDTH = ChunkSection.SIZE + 2, HEIGHT = ChunkSection.SIZE + BELOW + ABOVE;
+
+		private final byte[] flags = new byte[WIDTH * WIDTH * HEIGHT];
+
+		// Coordinates of the section's lowest block.
+		int originX, originY, originZ;
+
+		/**
+		 * Copies the flags around a section.
+		 */
+		void load(World world, int sx, int sy, int sz) {
+			originX = sx << ChunkSection.SHIFT;
+			originY = sy << ChunkSection.SHIFT;
+			originZ = sz << ChunkSection.SHIFT;
+			int i = 0;
+			for (int y = originY - BELOW; y < originY + ChunkSection.SIZE + ABOVE; y++) {
+				for (int z = originZ - 1; z <= originZ + ChunkSection.SIZE; z++) {
+					// The rows cross the section and its two neighbours along X.
+					ChunkSection west = world.getSection(sx - 1, y >> ChunkSection.SHIFT, z >> ChunkSection.SHIFT);
+					ChunkSection middle = world.getSection(sx, y >> ChunkSection.SHIFT, z >> ChunkSection.SHIFT);
+					ChunkSection east = world.getSection(sx + 1, y >> ChunkSection.SHIFT, z >> ChunkSection.SHIFT);
+					int ly = y & ChunkSection.MASK, lz = z & ChunkSection.MASK;
+					flags[i++] = (byte) flagsOf(west == null ? Block.AIR : west.getBlock(ChunkSection.MASK, ly, lz));
+					for (int x = 0; x < ChunkSection.SIZE; x++) {
+						flags[i++] = (byte) flagsOf(middle == null ? Block.AIR : middle.getBlock(x, ly, lz));
+					}
+					flags[i++] = (byte) flagsOf(east == null ? Block.AIR : east.getBlock(0, ly, lz));
+				}
+			}
+		}
+
+		@Override
+		int flags(int x, int y, int z) {
+			int lx = x - originX + 1, ly = y - originY + BELOW, lz = z - originZ + 1;
+			if (lx < 0 || lx >= WIDTH || ly < 0 || ly >= HEIGHT || lz < 0 || lz >= WIDTH) {
+				return BLOCKED; // Never read by the moves of the section
+			}
+			return flags[(ly * WIDTH + lz) * WIDTH + lx];
+		}
+	}
+
+	/**
+	 * The flags of the live world's blocks, read as they are.
+	 */
+	static final class Live extends NavGrid {
+
+		private final World world;
+
+		Live(World world) {
+			this.world = world;
+		}
+
+		@Override
+		int flags(int x, int y, int z) {
+			return flagsOf(world.getBlock(x, y, z));
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package world;
+
+/**
+ * The NavPath class is a path found by the PathFinder. It runs through
+ * waypoints: the start, the portals crossed between sections, and the goal.
+ * Between two waypoints is a leg, either a single move across a section
+ * border or a path inside one section. The first and last legs come refined
+ * into blocks; the legs in between are refined on demand with
+ * PathFinder.refine, as the walker reaches them, so a long path costs no
+ * block-level search for the stretches it never walks, such as when it is
+ * replanned.
+ *
+ * Not thread-safe: refine a path on one thread at a time.
+ */
+public final class NavPath {
+
+	// Waypoints, three coordinates each.
+	private final int[] waypoints;
+
+	// Blocks of each leg, three coordinates each, from one waypoint to the next; null until refined.
+	private final int[][] legs;
+
+	// Total cost of the moves, and nodes the search expanded to find it.
+	private final int cost;
+	private final int expanded;
+
+	NavPath(int[] waypoints, int cost, int expanded) {
+		this.waypoints = waypoints;
+		this.legs = new int[waypoints.length / 3 - 1][];
+		this.cost = cost;
+		this.expanded = expanded;
+	}
+
+	/**
+	 * Gets the total cost of the path's moves: 10 per block walked on level
+	 * ground, more to climb or fall (see NavGrid).
+	 *
+	 * @return The cost.
+	 */
+	public int getCost() {
+		return cost;
+	}
+
+	/**
+	 * Gets the number of nodes the search expanded to find the path, in the
+	 * section graphs and inside the sections.
+	 *
+	 * @return The node count.
+	 */
+	public int getExpanded() {
+		return expanded;
+	}
+
+	public int getWaypointCount() {
+		return waypoints.length / 3;
+	}
+
+	public int getWaypointX(int waypoint) {
+		return waypoints[waypoint * 3];
+	}
+
+	public int getWaypointY(int waypoint) {
+		return waypoints[waypoint * 3 + 1];
+	}
+
+	public int getWaypointZ(int waypoint) {
+		return waypoints[waypoint * 3 + 2];
+	}
+
+	public int getLegCount() {
+		return legs.length;
+	}
+
+	/**
+	 * Gets the blocks of a leg, if it was refined.
+	 *
+	 * @param leg The index of the leg, from waypoint leg to waypoint leg + 1.
+	 * @return The blocks from one waypoint to the next, both included, three
+	 *         coordinates each, or null if the leg was not refined yet.
+	 */
+	public int[] getLeg(int leg) {
+		return legs[leg];
+	}
+
+	void setLeg(int leg, int[] cells) {
+		legs[leg] = cells;
+	}
+}
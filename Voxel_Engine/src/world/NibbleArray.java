@@ -0,0 +1,45 @@
+package world;
+
+import java.util.Arrays;
+
+/**
+ * The NibbleArray class stores one 4-bit value (0 to 15) per block of a
+ * section, two values per byte, halving the memory of a byte per block. Light
+ * levels are kept in nibble arrays.
+ */
+public class NibbleArray {
+
+	// Two values per byte; even indices in the low nibble.
+	private final byte[] data = new byte[ChunkSection.VOLUME / 2];
+
+	/**
+	 * Gets a value.
+	 *
+	 * @param index The block index (see ChunkSection.index).
+	 * @return The value, from 0 to 15.
+	 */
+	public int get(int index) {
+		return (data[index >> 1] >> ((index & 1) << 2)) & 0xF;
+	}
+
+	/**
+	 * Sets a value.
+	 *
+	 * @param index The block index (see ChunkSection.index).
+	 * @param value The value, from 0 to 15.
+	 */
+	public void set(int index, int value) {
+		int shift = (index & 1) << 2;
+		int i = index >> 1;
+		data[i] = (byte) ((data[i] & ~(0xF << shift)) | ((value & 0xF) << shift));
+	}
+
+	/**
+	 * Sets every value.
+	 *
+	 * @param value The value, from 0 to 15.
+	 */
+	public void fill(int value) {
+		Arrays.fill(data, (byte) ((value & 0xF) * 0x11));
+	}
+}
@@ -0,0 +1,413 @@
+package world;
+
+import java.util.Arrays;
+
+/**
+ * The PalettedBlocks class stores the 4096 block ids of a section compactly.
+ * Most sections hold only a handful of distinct blocks, so each section keeps
+ * a local palette of the ids it contains and stores, per block, an index into
+ * the palette packed into just enough bits: none while the section holds a
+ * single kind of block, then 1 to 8 bits, growing by one bit each time the
+ * palette fills up. Past 256 distinct ids, the palette is dropped and ids are
+ * stored directly as shorts.
+ *
+ * Packed indices are laid out back to back in an array of longs, so an index
+ * may straddle two longs. The palette only ever grows: ids that are no longer
+ * used keep their entry until the section is filled again.
+ *
+ * The palette, the packed indices and their width live together in one
+ * immutable-sized storage object that a resize replaces as a whole, so a
+ * reader on another thread racing a write sees either the old or the new
+ * layout, never a mix, and never indexes outside the palette; like the flat
+ * array it replaces, it may briefly see a stale block. Writes must come from
+ * one thread at a time.
+ *
+ * A storage shared by identical sections is marked shared and never changes;
+ * the section copies it before its first change.
+ */
+public class PalettedBlocks {
+
+	// Widest palette index; wider palettes switch to direct storage.
+	private static final int MAX_PALETTE_BITS = 8;
+
+	// Narrowest palette index whose palette is searched through a hash table
+	// rather than scanned.
+	private static final int HASHED_PALETTE_BITS = 4;
+
+	// The current layout.
+	private volatile Storage storage = new Storage(0, Block.AIR);
+
+	// Whether several sections share the storage, which then must not change.
+	private volatile boolean shared;
+
+	/**
+	 * Gets a block.
+	 *
+	 * @param index The block index (see ChunkSection.index).
+	 * @return The block id.
+	 */
+	public short get(int index) {
+		Storage storage = this.storage;
+		if (storage.direct != null) {
+			return storage.direct[index];
+		}
+		return storage.palette[storage.read(index)];
+	}
+
+	/**
+	 * Sets a block, widening the storage if its id is new to the section.
+	 *
+	 * @param index The block index (see ChunkSection.index).
+	 * @param id    The block id.
+	 * @return The previous block id.
+	 */
+	public short set(int index, short id) {
+		Storage storage = this.storage;
+		if (storage.direct != null) {
+			short previous = storage.direct[index];
+			storage.direct[index] = id;
+			return previous;
+		}
+
+		int paletteIndex = storage.find(id);
+		if (paletteIndex < 0) {
+			if (storage.paletteSize == storage.palette.length) {
+				storage = resize(storage, storage.bits + 1);
+				this.storage = storage;
+				if (storage.direct != null) {
+					return set(index, id);
+				}
+			}
+			paletteIndex = storage.add(id);
+		}
+		int previous = storage.read(index);
+		storage.write(index, paletteIndex);
+		return storage.palette[previous];
+	}
+
+	/**
+	 * Sets every block to the same id, dropping the palette.
+	 *
+	 * @param id The block id.
+	 */
+	public void fill(short id) {
+		storage = new Storage(0, id);
+	}
+
+	/**
+	 * Sets every block at once from an array, in the narrowest layout holding
+	 * its ids, much faster than setting them one at a time.
+	 *
+	 * @param src The ids, indexed like the blocks; at least 4096 long.
+	 */
+	public void encode(short[] src) {
+		// Collect the distinct ids, skipping the runs of the same one.
+		short[] ids = new short[(1 << MAX_PALETTE_BITS) + 1];
+		int count = 0;
+		short last = src[0];
+		ids[count++] = last;
+		for (int index = 1; index < ChunkSection.VOLUME && count < ids.length; index++) {
+			short id = src[index];
+			if (id != last) {
+				last = id;
+				int i = 0;
+				while (i < count && ids[i] != id) {
+					i++;
+				}
+				if (i == count) {
+					ids[count++] = id;
+				}
+			}
+		}
+		if (count > 1 << MAX_PALETTE_BITS) {
+			storage = new Storage(Arrays.copyOf(src, ChunkSection.VOLUME));
+			return;
+		}
+
+		Storage encoded = new Storage(32 - Integer.numberOfLeadingZeros(count - 1), ids[0]);
+		for (int i = 1; i < count; i++) {
+			encoded.add(ids[i]);
+		}
+		if (encoded.bits > 0) {
+			last = src[0];
+			int paletteIndex = 0;
+			for (int index = 0; index < ChunkSection.VOLUME; index++) {
+				if (src[index] != last) {
+					last = src[index];
+					paletteIndex = encoded.find(last);
+				}
+				encoded.write(index, paletteIndex);
+			}
+		}
+		storage = encoded;
+	}
+
+	/**
+	 * Decodes every block into an array, much faster than getting them one at a
+	 * time.
+	 *
+	 * @param dest The array receiving the ids, indexed like the blocks; at least
+	 *             4096 long.
+	 */
+	public void decode(short[] dest) {
+		Storage storage = this.storage;
+		if (storage.direct != null) {
+			System.arraycopy(storage.direct, 0, dest, 0, ChunkSection.VOLUME);
+			return;
+		}
+		short[] palette = storage.palette;
+		int bits = storage.bits;
+		if (bits == 0) {
+			Arrays.fill(dest, 0, ChunkSection.VOLUME, palette[0]);
+			return;
+		}
+
+		// Walk the packed indices in order, keeping the current long in a register.
+		long[] data = storage.data;
+		long mask = storage.mask;
+		int word = 0, offset = 0;
+		long current = data[0];
+		for (int index = 0; index < ChunkSection.VOLUME; index++) {
+			long value = current >>> offset;
+			offset += bits;
+			if (offset >= 64) {
+				offset -= 64;
+				current = ++word < data.length ? data[word] : 0L;
+				if (offset > 0) {
+					value |= current << (bits - offset);
+				}
+			}
+			dest[index] = palette[(int) (value & mask)];
+		}
+	}
+
+	/**
+	 * Creates an unshared copy of the storage, for a section about to change a
+	 * shared one.
+	 *
+	 * @return The copy.
+	 */
+	public PalettedBlocks copy() {
+		PalettedBlocks copy = new PalettedBlocks();
+		copy.storage = new Storage(storage);
+		return copy;
+	}
+
+	/**
+	 * Checks whether the storage is shared by several sections, in which case it
+	 * must be copied before any change (see SectionInterner).
+	 *
+	 * @return true if the storage is shared.
+	 */
+	public boolean isShared() {
+		return shared;
+	}
+
+	/**
+	 * Marks the storage as shared; it must not change from then on.
+	 */
+	void markShared() {
+		shared = true;
+	}
+
+	/**
+	 * Gets the number of bits stored per block: 0 to 8 with a palette, 16
+	 * without.
+	 *
+	 * @return The bits per block.
+	 */
+	public int getBitsPerBlock() {
+		return storage.bits;
+	}
+
+	/**
+	 * Gets the approximate heap size of the storage, counting its arrays and
+	 * object headers.
+	 *
+	 * @return The size in bytes.
+	 */
+	public long getMemoryBytes() {
+		Storage storage = this.storage;
+		long bytes = 16 + 32; // This object and the storage object
+		if (storage.palette != null) {
+			bytes += 16 + 2L * storage.palette.length;
+		}
+		if (storage.lookup != null) {
+			bytes += 16 + 4L * storage.lookup.length;
+		}
+		if (storage.data != null) {
+			bytes += 16 + 8L * storage.data.length;
+		}
+		if (storage.direct != null) {
+			bytes += 16 + 2L * storage.direct.length;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Copies the blocks of a storage into a wider one.
+	 */
+	private static Storage resize(Storage storage, int bits) {
+		if (bits > MAX_PALETTE_BITS) {
+			Storage direct = new Storage(new short[ChunkSection.VOLUME]);
+			for (int index = 0; index < ChunkSection.VOLUME; index++) {
+				direct.direct[index] = storage.palette[storage.read(index)];
+			}
+			return direct;
+		}
+		Storage wider = new Storage(bits, storage.palette[0]);
+		for (int i = 1; i < storage.paletteSize; i++) {
+			wider.add(storage.palette[i]);
+		}
+		if (storage.bits > 0) {
+			// Palette indices are unchanged, only their width.
+			for (int index = 0; index < ChunkSection.VOLUME; index++) {
+				wider.write(index, storage.read(index));
+			}
+		}
+		return wider;
+	}
+
+	/**
+	 * A layout of the blocks: a palette with packed indices, or direct ids.
+	 */
+	private static final class Storage {
+
+		// Bits per packed index, or 16 for direct storage.
+		final int bits;
+		final long mask;
+
+		// The palette, with room for every index of the width; null for direct storage.
+		final short[] palette;
+		int paletteSize;
+
+		// Open-addressing table from id to palette index for wide palettes, each
+		// slot holding (id + 1) << 8 | index, or 0 when free; null for narrow
+		// palettes, which are scanned.
+		final int[] lookup;
+
+		// The packed indices; null without a palette or with a single entry.
+		final long[] data;
+
+		// Block ids of direct storage; null with a palette.
+		final short[] direct;
+
+		/**
+		 * Creates a paletted storage whose blocks are all the first entry.
+		 */
+		Storage(int bits, short first) {
+			this.bits = bits;
+			this.mask = (1L << bits) - 1;
+			this.palette = new short[1 << bits];
+			this.lookup = bits >= HASHED_PALETTE_BITS ? new int[2 << bits] : null;
+			this.data = bits == 0 ? null : new long[ChunkSection.VOLUME * bits / 64];
+			this.direct = null;
+			add(first);
+		}
+
+		/**
+		 * Creates a copy of a storage.
+		 */
+		Storage(Storage other) {
+			this.bits = other.bits;
+			this.mask = other.mask;
+			this.palette = other.palette == null ? null : other.palette.clone();
+			this.paletteSize = other.paletteSize;
+			this.lookup = other.lookup == null ? null : other.lookup.clone();
+			this.data = other.data == null ? null : other.data.clone();
+			this.direct = other.direct == null ? null : other.direct.clone();
+		}
+
+		/**
+		 * Creates a direct storage.
+		 */
+		Storage(short[] direct) {
+			this.bits = 16;
+			this.mask = 0xFFFF;
+			this.palette = null;
+			this.lookup = null;
+			this.data = null;
+			this.direct = direct;
+		}
+
+		/**
+		 * Finds the palette index of an id, or -1.
+		 */
+		int find(short id) {
+			if (lookup == null) {
+				for (int i = 0; i < paletteSize; i++) {
+					if (palette[i] == id) {
+						return i;
+					}
+				}
+				return -1;
+			}
+			int key = (id & 0xFFFF) + 1;
+			for (int slot = hash(key);; slot = (slot + 1) & (lookup.length - 1)) {
+				int entry = lookup[slot];
+				if (entry == 0) {
+					return -1;
+				}
+				if (entry >>> 8 == key) {
+					return entry & 0xFF;
+				}
+			}
+		}
+
+		/**
+		 * Appends an id to the palette, which must have room for it.
+		 *
+		 * @return The palette index of the id.
+		 */
+		int add(short id) {
+			int index = paletteSize;
+			palette[index] = id;
+			if (lookup != null) {
+				int key = (id & 0xFFFF) + 1;
+				int slot = hash(key);
+				while (lookup[slot] != 0) {
+					slot = (slot + 1) & (lookup.length - 1);
+				}
+				lookup[slot] = key << 8 | index;
+			}
+			paletteSize++;
+			return index;
+		}
+
+		private int hash(int key) {
+			return (key * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(lookup.length));
+		}
+
+		/**
+		 * Reads the packed palette index of a block.
+		 */
+		int read(int index) {
+			if (bits == 0) {
+				return 0;
+			}
+			int bit = index * bits;
+			int word = bit >>> 6, offset = bit & 63;
+			long value = data[word] >>> offset;
+			if (offset + bits > 64) {
+				value |= data[word + 1] << (64 - offset);
+			}
+			return (int) (value & mask);
+		}
+
+		/**
+		 * Writes the packed palette index of a block.
+		 */
+		void write(int index, int value) {
+			if (bits == 0) {
+				return; // Every block is the only entry
+			}
+			int bit = index * bits;
+			int word = bit >>> 6, offset = bit & 63;
+			data[word] = (data[word] & ~(mask << offset)) | ((long) value << offset);
+			if (offset + bits > 64) {
+				int shift = 64 - offset;
+				data[word + 1] = (data[word + 1] & ~(mask >>> shift)) | ((long) value >>> shift);
+			}
+		}
+	}
+}
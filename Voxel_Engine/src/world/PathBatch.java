@@ -0,0 +1,140 @@
+package world;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The PathBatch class finds many paths at once, such as those requested by
+ * every mob in a tick, asynchronously on a fork-join pool: the requests are
+ * split into ranges handled in parallel, each on the path finder's scratch
+ * state of the worker running it, while the thread that queued them carries
+ * on and collects the paths when the batch completes. Requests are kept in a
+ * primitive array reused between batches.
+ *
+ * Not thread-safe: do not add to or read a batch while it runs.
+ */
+public class PathBatch {
+
+	// Number of paths found by one task.
+	private static final int PATHS_PER_TASK = 8;
+
+	// Ints per request: start xyz, goal xyz.
+	private static final int REQUEST_STRIDE = 6;
+
+	// The requests of the batch.
+	private int[] requests;
+
+	// The paths found, null where there is none.
+	private NavPath[] paths;
+
+	// Number of requests in the batch.
+	private int count;
+
+	/**
+	 * Creates a batch with room for the given number of requests. The batch
+	 * grows on demand.
+	 *
+	 * @param capacity The initial number of requests.
+	 */
+	public PathBatch(int capacity) {
+		capacity = Math.max(capacity, 16);
+		requests = new int[capacity * REQUEST_STRIDE];
+		paths = new NavPath[capacity];
+	}
+
+	/**
+	 * Adds a request to the batch. The parameters are those of PathFinder.find.
+	 *
+	 * @return The index of the request, used to read its path.
+	 */
+	public int add(int x, int y, int z, int goalX, int goalY, int goalZ) {
+		if (count == paths.length) {
+			requests = Arrays.copyOf(requests, count * 2 * REQUEST_STRIDE);
+			paths = Arrays.copyOf(paths, count * 2);
+		}
+		int offset = count * REQUEST_STRIDE;
+		requests[offset] = x;
+		requests[offset + 1] = y;
+		requests[offset + 2] = z;
+		requests[offset + 3] = goalX;
+		requests[offset + 4] = goalY;
+		requests[offset + 5] = goalZ;
+		paths[count] = null;
+		return count++;
+	}
+
+	/**
+	 * Starts finding the paths of every request of the batch.
+	 *
+	 * @param finder The path finder.
+	 * @param pool   The pool finding the paths.
+	 * @return A future completed with this batch once every path is found.
+	 */
+	public CompletableFuture<PathBatch> find(PathFinder finder, ForkJoinPool pool) {
+		FindTask task = new FindTask(finder, 0, count);
+		return CompletableFuture.runAsync(task::invoke, pool).thenApply(done -> this);
+	}
+
+	/**
+	 * Removes every request, keeping the allocated arrays.
+	 */
+	public void clear() {
+		Arrays.fill(paths, 0, count, null);
+		count = 0;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Gets the path found for a request.
+	 *
+	 * @param request The index of the request.
+	 * @return The path, or null if there is none.
+	 */
+	public NavPath getPath(int request) {
+		return paths[request];
+	}
+
+	/**
+	 * Finds the paths of a range of requests on the current thread.
+	 */
+	private void findRange(PathFinder finder, int from, int to) {
+		for (int i = from; i < to; i++) {
+			int offset = i * REQUEST_STRIDE;
+			paths[i] = finder.find(requests[offset], requests[offset + 1], requests[offset + 2], requests[offset + 3],
+					requests[offset + 4], requests[offset + 5]);
+		}
+	}
+
+	/**
+	 * Fork-join task finding the paths of a range of requests, split in halves
+	 * until the range is small enough to run directly.
+	 */
+	private final class FindTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final PathFinder finder;
+		private final int from, to;
+
+		FindTask(PathFinder finder, int from, int to) {
+			this.finder = finder;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PATHS_PER_TASK) {
+				findRange(finder, from, to);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new FindTask(finder, from, middle), new FindTask(finder, middle, to));
+			}
+		}
+	}
+}
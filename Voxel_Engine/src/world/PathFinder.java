@@ -0,0 +1,264 @@
+package world;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The PathFinder class finds paths for walkers two blocks tall (see NavGrid)
+ * with hierarchical A*: rather than searching block by block, which expands
+ * every block of open ground within reach of the goal, it searches a graph
+ * per chunk section whose nodes are the portals between sections (see
+ * ClusterGraph), then refines into blocks only the legs inside the start and
+ * goal sections. A path crossing N sections thus expands a few nodes per
+ * section plus two sections' worth of blocks, instead of a circle of blocks
+ * N sections wide; the price is paths a little longer than the shortest, as
+ * they pass through the portals.
+ *
+ * The section graphs are built on demand and cached. An edit drops the graphs
+ * of the sections whose snapshot holds the block edited (as a listener of
+ * block changes), and loading or unloading a section drops those of the
+ * sections around it (invalidateSection); they are built again the next time
+ * a search reaches them. A graph built while the world changed is used by the
+ * search that built it but not cached.
+ *
+ * Thread-safe: searches may run on any number of threads (see PathBatch),
+ * each with its own scratch state, while the thread owning the world edits
+ * it. A path found while the world changes may cross blocks changed since;
+ * the walker finds out when it refines the leg, and plans again.
+ */
+public class PathFinder implements BlockChangeListener {
+
+	private final World world;
+
+	// Movement rules over the live world's blocks.
+	private final NavGrid live;
+
+	// Cached section graphs, keyed by ChunkRegistry.key.
+	private final ConcurrentHashMap<Long, ClusterGraph> graphs = new ConcurrentHashMap<Long, ClusterGraph>();
+
+	// Bumped by every change that may drop graphs, before they are dropped.
+	private final AtomicLong epoch = new AtomicLong();
+
+	// Scratch state of the searches of each thread.
+	private final ThreadLocal<PathSearch> searches = ThreadLocal.withInitial(() -> new PathSearch(this));
+
+	// Statistics.
+	private final AtomicLong graphsBuilt = new AtomicLong(), graphsDropped = new AtomicLong();
+
+	/**
+	 * Creates a path finder with no cached graphs.
+	 *
+	 * @param world The world to find paths in.
+	 */
+	public PathFinder(World world) {
+		this.world = world;
+		this.live = new NavGrid.Live(world);
+	}
+
+	/**
+	 * Finds a path between two blocks a walker can stand in.
+	 *
+	 * @param x     The start's X block coordinate.
+	 * @param y     The start's Y block coordinate.
+	 * @param z     The start's Z block coordinate.
+	 * @param goalX The goal's X block coordinate.
+	 * @param goalY The goal's Y block coordinate.
+	 * @param goalZ The goal's Z block coordinate.
+	 * @return The path, its first and last legs refined, or null if there is
+	 *         none or a walker cannot stand at either end.
+	 */
+	public NavPath find(int x, int y, int z, int goalX, int goalY, int goalZ) {
+		return searches.get().find(x, y, z, goalX, goalY, goalZ);
+	}
+
+	/**
+	 * Finds a path with plain A* over blocks, without the section graphs: the
+	 * shortest path, at a much higher cost over long distances. Used as a
+	 * reference.
+	 *
+	 * @param maxExpanded The number of blocks expanded after which the search gives up.
+	 * @return The path, refined, or null if there is none within the budget.
+	 */
+	public NavPath findDirect(int x, int y, int z, int goalX, int goalY, int goalZ, int maxExpanded) {
+		return searches.get().findDirect(x, y, z, goalX, goalY, goalZ, maxExpanded);
+	}
+
+	/**
+	 * Refines a leg of a path into blocks, unless it already was.
+	 *
+	 * @param path The path.
+	 * @param leg  The index of the leg.
+	 * @return The blocks of the leg, three coordinates each, or null if the
+	 *         world changed and the leg is blocked: plan again.
+	 */
+	public int[] refine(NavPath path, int leg) {
+		int[] blocks = path.getLeg(leg);
+		if (blocks == null) {
+			int[] waypoints = new int[path.getWaypointCount() * 3];
+			for (int i = 0; i < path.getWaypointCount(); i++) {
+				waypoints[i * 3] = path.getWaypointX(i);
+				waypoints[i * 3 + 1] = path.getWaypointY(i);
+				waypoints[i * 3 + 2] = path.getWaypointZ(i);
+			}
+			blocks = searches.get().refine(waypoints, leg);
+			path.setLeg(leg, blocks);
+		}
+		return blocks;
+	}
+
+	/**
+	 * Checks whether a walker can stand in a block of the live world.
+	 *
+	 * @return true if the block is free, as is the one above, over a solid block.
+	 */
+	public boolean isStandable(int x, int y, int z) {
+		return live.isStandable(x, y, z);
+	}
+
+	/**
+	 * Gets the cost of a move between two blocks of the live world.
+	 *
+	 * @return The cost, or -1 if a walker standing in the first block cannot
+	 *         move to the second in one step.
+	 */
+	public int getMoveCost(int x, int y, int z, int toX, int toY, int toZ) {
+		int dx = toX - x, dy = toY - y, dz = toZ - z;
+		if (!live.isStandable(x, y, z) || Math.abs(dx) + Math.abs(dz) != 1 || dy < -2 || dy > 1) {
+			return -1;
+		}
+		int dir = dx == 1 ? 0 : dx == -1 ? 1 : dz == 1 ? 2 : 3;
+		return live.moveCost(x, y, z, dir, dy);
+	}
+
+	/**
+	 * Drops the graphs of the sections whose snapshot holds a changed block,
+	 * when the change matters to walkers.
+	 */
+	@Override
+	public void blockChanged(int x, int y, int z, short oldBlock, short newBlock) {
+		if (NavGrid.flagsOf(oldBlock) == NavGrid.flagsOf(newBlock)) {
+			return;
+		}
+		epoch.incrementAndGet();
+		for (int sx = (x - 1) >> ChunkSection.SHIFT; sx <= (x + 1) >> ChunkSection.SHIFT; sx++) {
+			for (int sy = (y - NavGrid.Snapshot.ABOVE) >> ChunkSection.SHIFT; sy <= (y
+					+ NavGrid.Snapshot.BELOW) >> ChunkSection.SHIFT; sy++) {
+				for (int sz = (z - 1) >> ChunkSection.SHIFT; sz <= (z + 1) >> ChunkSection.SHIFT; sz++) {
+					drop(sx, sy, sz);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops the graphs of a section and of the sections around it, whose
+	 * snapshots overlap it. Call when the section is loaded or unloaded.
+	 *
+	 * @param sx The section's X coordinate.
+	 * @param sy The section's Y coordinate.
+	 * @param sz The section's Z coordinate.
+	 */
+	public void invalidateSection(int sx, int sy, int sz) {
+		epoch.incrementAndGet();
+		for (int x = sx - 1; x <= sx + 1; x++) {
+			for (int y = sy - 1; y <= sy + 1; y++) {
+				for (int z = sz - 1; z <= sz + 1; z++) {
+					drop(x, y, z);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops every cached graph.
+	 */
+	public void clear() {
+		epoch.incrementAndGet();
+		graphsDropped.addAndGet(graphs.size());
+		graphs.clear();
+	}
+
+	private void drop(int sx, int sy, int sz) {
+		if (graphs.remove(ChunkRegistry.key(sx, sy, sz)) != null) {
+			graphsDropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Gets the graph of a section, building it if it is not cached.
+	 */
+	ClusterGraph graph(int sx, int sy, int sz, PathSearch search) {
+		long key = ChunkRegistry.key(sx, sy, sz);
+		ClusterGraph graph = graphs.get(key);
+		if (graph != null) {
+			return graph;
+		}
+		if (world.getSection(sx, sy, sz) == null) {
+			return ClusterGraph.EMPTY; // Nothing to stand in; not cached, as the section may load
+		}
+		long before = epoch.get();
+		ClusterGraph built = ClusterGraph.build(sx, sy, sz, search);
+		graphsBuilt.incrementAndGet();
+
+		// Dropping a graph bumps the epoch first, then removes it under the
+		// map's lock for the key; checking the epoch under that lock keeps a
+		// graph built from blocks changed meanwhile out of the cache.
+		ClusterGraph cached = graphs.compute(key, (k, old) -> old != null ? old : epoch.get() == before ? built : null);
+		return cached != null ? cached : built;
+	}
+
+	World getWorld() {
+		return world;
+	}
+
+	NavGrid getLiveGrid() {
+		return live;
+	}
+
+	long getEpoch() {
+		return epoch.get();
+	}
+
+	/**
+	 * Gets the number of section graphs cached.
+	 *
+	 * @return The graph count.
+	 */
+	public int getCachedGraphs() {
+		return graphs.size();
+	}
+
+	/**
+	 * Estimates the heap used by the cached graphs, their map entries included.
+	 *
+	 * @return The size in bytes.
+	 */
+	public long getCachedBytes() {
+		long bytes = 0;
+		for (ClusterGraph graph : graphs.values()) {
+			bytes += graph.getMemoryBytes() + 32 + 24; // Map node and boxed key
+		}
+		return bytes;
+	}
+
+	/**
+	 * Gets the number of portal nodes of the cached graphs.
+	 *
+	 * @return The node count.
+	 */
+	public long getCachedNodes() {
+		long nodes = 0;
+		for (ClusterGraph graph : graphs.values()) {
+			nodes += graph.nodes.length;
+		}
+		return nodes;
+	}
+
+	public long getGraphsBuilt() {
+		return graphsBuilt.get();
+	}
+
+	public long getGraphsDropped() {
+		return graphsDropped.get();
+	}
+}
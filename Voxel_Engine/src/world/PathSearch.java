@@ -0,0 +1,477 @@
+package world;
+
+import java.util.Arrays;
+
+import toolbox.LongHeap;
+import toolbox.LongIntHashMap;
+
+/**
+ * The PathSearch class holds the scratch state of the PathFinder's searches
+ * on one thread, reused from one search to the next so a search allocates
+ * little beyond its result. It runs three kinds of search:
+ *
+ * - inside one section, over a snapshot of its blocks, with dense arrays
+ * indexed like the section's blocks and stamped instead of cleared: A* between
+ * two blocks, or Dijkstra from one block (or towards it, following the moves
+ * backwards) to all the others;
+ *
+ * - over the section graphs, A* from the start to the goal through the
+ * portals, building the graphs of the sections it reaches on demand;
+ *
+ * - over the live world, plain A* from block to block, as the reference the
+ * hierarchical search is measured against.
+ *
+ * The open sets are heaps of primitive longs, the priority in the high half
+ * and the node in the low half; the closed sets are stamps or flags.
+ */
+final class PathSearch {
+
+	/** Marks the absence of a goal block: search the whole section. */
+	static final long NO_CELL = Long.MIN_VALUE;
+
+	// Nodes of the start and goal in the node table of the graph search.
+	private static final int START = 0, GOAL = 1;
+
+	private final PathFinder finder;
+
+	// Snapshots of the blocks around the last two sections searched, usually
+	// the start's and the goal's, which section and world epoch each holds,
+	// and the one in use.
+	private final NavGrid.Snapshot[] snapshots = { new NavGrid.Snapshot(), new NavGrid.Snapshot() };
+	private final long[] snapshotKeys = { NO_CELL, NO_CELL };
+	private final long[] snapshotEpochs = new long[2];
+	private int current;
+
+	// Search inside a section: cost and parent of each block, and stamps
+	// telling whether it was reached and expanded by the current search.
+	private final int[] sectionCosts = new int[ChunkSection.VOLUME];
+	private final int[] sectionParents = new int[ChunkSection.VOLUME];
+	private final int[] sectionReached = new int[ChunkSection.VOLUME];
+	private final int[] sectionClosed = new int[ChunkSection.VOLUME];
+	private final LongHeap sectionOpen = new LongHeap(256);
+	private int stamp;
+
+	// Node table of the graph and world searches: block, cost, parent,
+	// whether it was expanded, and for the graph search the section graph and
+	// node it stands for.
+	private long[] cells = new long[256];
+	private int[] costs = new int[256];
+	private int[] parents = new int[256];
+	private boolean[] closed = new boolean[256];
+	private ClusterGraph[] graphs = new ClusterGraph[256];
+	private int[] graphNodes = new int[256];
+	private int nodeCount;
+	private final LongHeap open = new LongHeap(256);
+
+	// Nodes of the graph search and of the world search by block; the world
+	// search gets its own table, as it grows much larger.
+	private final LongIntHashMap graphIndex = new LongIntHashMap(256, -1);
+	private LongIntHashMap worldIndex;
+
+	// Nodes expanded by the current search.
+	private int expanded;
+
+	PathSearch(PathFinder finder) {
+		this.finder = finder;
+	}
+
+	/**
+	 * Finds a path through the section graphs.
+	 *
+	 * @return The path, its first and last legs refined, or null if there is none.
+	 */
+	NavPath find(int x, int y, int z, int goalX, int goalY, int goalZ) {
+		expanded = 0;
+		long start = NavGrid.pack(x, y, z), goal = NavGrid.pack(goalX, goalY, goalZ);
+		int sx = x >> ChunkSection.SHIFT, sy = y >> ChunkSection.SHIFT, sz = z >> ChunkSection.SHIFT;
+		int gx = goalX >> ChunkSection.SHIFT, gy = goalY >> ChunkSection.SHIFT, gz = goalZ >> ChunkSection.SHIFT;
+		if (!loadSnapshot(sx, sy, sz).isStandable(x, y, z) || !loadSnapshot(gx, gy, gz).isStandable(goalX, goalY, goalZ)) {
+			return null;
+		}
+
+		// Within one section, a path that stays inside it will do.
+		if (sx == gx && sy == gy && sz == gz) {
+			int cost = searchSection(start, goal, false);
+			if (cost >= 0) {
+				NavPath path = new NavPath(new int[] { x, y, z, goalX, goalY, goalZ }, cost, expanded);
+				path.setLeg(0, sectionPath(start, goal));
+				return path;
+			}
+		}
+
+		// Link the start to the nodes of its section, and those of the goal's section to the goal.
+		ClusterGraph startGraph = graph(sx, sy, sz), goalGraph = graph(gx, gy, gz);
+		int[] startCosts = sectionCosts(sx, sy, sz, start, startGraph, false);
+		int[] goalCosts = sectionCosts(gx, gy, gz, goal, goalGraph, true);
+
+		// A* over the section graphs.
+		clearNodes(graphIndex);
+		addNode(start, null, -1);
+		addNode(goal, null, -1);
+		costs[START] = 0;
+		open.add((long) NavGrid.estimate(start, goal) << 32 | START);
+		while (!open.isEmpty()) {
+			int node = (int) open.poll();
+			if (closed[node]) {
+				continue;
+			}
+			closed[node] = true;
+			expanded++;
+			if (node == GOAL) {
+				break;
+			}
+			int cost = costs[node];
+			if (node == START) {
+				for (int j = 0; j < startCosts.length; j++) {
+					if (startCosts[j] >= 0) {
+						relax(startGraph, j, cost + startCosts[j], node, goal);
+					}
+				}
+				continue;
+			}
+			ClusterGraph graph = graphs[node];
+			int i = graphNodes[node], k = graph.nodes.length;
+			for (int j = 0; j < k; j++) {
+				int edge = graph.costs[i * k + j];
+				if (j != i && edge >= 0) {
+					relax(graph, j, cost + edge, node, goal);
+				}
+			}
+			for (int e = 0; e < graph.exitNodes.length; e++) {
+				if (graph.exitNodes[e] == i) {
+					long cell = graph.exitCells[e];
+					ClusterGraph next = graph(NavGrid.unpackX(cell) >> ChunkSection.SHIFT,
+							NavGrid.unpackY(cell) >> ChunkSection.SHIFT, NavGrid.unpackZ(cell) >> ChunkSection.SHIFT);
+					int j = next.indexOf(cell);
+					if (j >= 0) { // Otherwise the graphs were built around an edit; a dead end for now
+						relax(next, j, cost + graph.exitCosts[e], node, goal);
+					}
+				}
+			}
+			if (graph == goalGraph && goalCosts[i] >= 0 && cost + goalCosts[i] < costs[GOAL]) {
+				costs[GOAL] = cost + goalCosts[i];
+				parents[GOAL] = node;
+				open.add((long) costs[GOAL] << 32 | GOAL);
+			}
+		}
+		Arrays.fill(graphs, 0, nodeCount, null); // Let the graphs go, as the cache may drop them
+		if (!closed[GOAL]) {
+			return null;
+		}
+
+		// The waypoints are the nodes from the start to the goal.
+		int count = 1;
+		for (int node = GOAL; node != START; node = parents[node]) {
+			count++;
+		}
+		int[] waypoints = new int[count * 3];
+		for (int node = GOAL, w = count - 1; w >= 0; node = parents[node], w--) {
+			waypoints[w * 3] = NavGrid.unpackX(cells[node]);
+			waypoints[w * 3 + 1] = NavGrid.unpackY(cells[node]);
+			waypoints[w * 3 + 2] = NavGrid.unpackZ(cells[node]);
+		}
+		int goalCost = costs[GOAL];
+		int[] first = refine(waypoints, 0), last = refine(waypoints, count - 2);
+		NavPath path = new NavPath(waypoints, goalCost, expanded);
+		path.setLeg(0, first);
+		path.setLeg(count - 2, last);
+		return path;
+	}
+
+	/**
+	 * Refines a leg of a path into blocks.
+	 *
+	 * @param waypoints The waypoints of the path, three coordinates each.
+	 * @param leg       The index of the leg.
+	 * @return The blocks of the leg, or null if the world changed and the leg
+	 *         is blocked.
+	 */
+	int[] refine(int[] waypoints, int leg) {
+		int i = leg * 3;
+		int x = waypoints[i], y = waypoints[i + 1], z = waypoints[i + 2];
+		int toX = waypoints[i + 3], toY = waypoints[i + 4], toZ = waypoints[i + 5];
+		int sx = x >> ChunkSection.SHIFT, sy = y >> ChunkSection.SHIFT, sz = z >> ChunkSection.SHIFT;
+		if (sx != toX >> ChunkSection.SHIFT || sy != toY >> ChunkSection.SHIFT || sz != toZ >> ChunkSection.SHIFT) {
+			return new int[] { x, y, z, toX, toY, toZ }; // A portal move
+		}
+		long from = NavGrid.pack(x, y, z), to = NavGrid.pack(toX, toY, toZ);
+		loadSnapshot(sx, sy, sz);
+		return searchSection(from, to, false) >= 0 ? sectionPath(from, to) : null;
+	}
+
+	/**
+	 * Finds a path with plain A* over the blocks of the live world.
+	 *
+	 * @return The path, refined, or null if there is none within the given
+	 *         number of expanded blocks.
+	 */
+	NavPath findDirect(int x, int y, int z, int goalX, int goalY, int goalZ, int maxExpanded) {
+		expanded = 0;
+		NavGrid grid = finder.getLiveGrid();
+		if (!grid.isStandable(x, y, z) || !grid.isStandable(goalX, goalY, goalZ)) {
+			return null;
+		}
+		long start = NavGrid.pack(x, y, z), goal = NavGrid.pack(goalX, goalY, goalZ);
+		if (worldIndex == null) {
+			worldIndex = new LongIntHashMap(1 << 16, -1);
+		}
+		clearNodes(worldIndex);
+		worldIndex.put(start, addNode(start, null, -1));
+		costs[START] = 0;
+		open.add((long) NavGrid.estimate(start, goal) << 32 | START);
+		while (!open.isEmpty()) {
+			int node = (int) open.poll();
+			if (closed[node]) {
+				continue;
+			}
+			closed[node] = true;
+			if (cells[node] == goal) {
+				int count = 0;
+				for (int n = node; n >= 0; n = parents[n]) {
+					count++;
+				}
+				int[] blocks = new int[count * 3];
+				for (int n = node, b = count - 1; n >= 0; n = parents[n], b--) {
+					blocks[b * 3] = NavGrid.unpackX(cells[n]);
+					blocks[b * 3 + 1] = NavGrid.unpackY(cells[n]);
+					blocks[b * 3 + 2] = NavGrid.unpackZ(cells[n]);
+				}
+				NavPath path = new NavPath(new int[] { x, y, z, goalX, goalY, goalZ }, costs[node], expanded);
+				path.setLeg(0, blocks);
+				return path;
+			}
+			if (++expanded > maxExpanded) {
+				return null;
+			}
+			long cell = cells[node];
+			int cx = NavGrid.unpackX(cell), cy = NavGrid.unpackY(cell), cz = NavGrid.unpackZ(cell);
+			for (int dir = 0; dir < NavGrid.DX.length; dir++) {
+				for (int dy : NavGrid.DY) {
+					int move = grid.moveCost(cx, cy, cz, dir, dy);
+					if (move < 0) {
+						continue;
+					}
+					long next = NavGrid.pack(cx + NavGrid.DX[dir], cy + dy, cz + NavGrid.DZ[dir]);
+					int n = worldIndex.get(next);
+					if (n < 0) {
+						n = addNode(next, null, -1);
+						worldIndex.put(next, n);
+					}
+					int cost = costs[node] + move;
+					if (!closed[n] && cost < costs[n]) {
+						costs[n] = cost;
+						parents[n] = node;
+						open.add((long) (cost + NavGrid.estimate(next, goal)) << 32 | n);
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Makes the snapshot of a section's blocks the one in use, loading it
+	 * over the least recently used one unless it is held already and the
+	 * world has not changed since.
+	 *
+	 * @return The snapshot.
+	 */
+	NavGrid.Snapshot loadSnapshot(int sx, int sy, int sz) {
+		long key = ChunkRegistry.key(sx, sy, sz);
+		long epoch = finder.getEpoch();
+		current = snapshotKeys[0] == key ? 0 : snapshotKeys[1] == key ? 1 : current ^ 1;
+		if (snapshotKeys[current] != key || snapshotEpochs[current] != epoch) {
+			snapshotKeys[current] = NO_CELL; // In case the load fails
+			snapshots[current].load(finder.getWorld(), sx, sy, sz);
+			snapshotKeys[current] = key;
+			snapshotEpochs[current] = epoch;
+		}
+		return snapshots[current];
+	}
+
+	/**
+	 * Searches inside the section of the loaded snapshot.
+	 *
+	 * @param from     The packed block to start from, inside the section.
+	 * @param to       The packed block to reach, inside the section, or NO_CELL
+	 *                 to reach every block.
+	 * @param backward Whether to follow the moves backwards, finding the costs
+	 *                 of reaching the start block rather than of leaving it.
+	 * @return The cost of reaching the goal block, -1 if it cannot be reached,
+	 *         or 0 without a goal block.
+	 */
+	int searchSection(long from, long to, boolean backward) {
+		NavGrid.Snapshot grid = snapshots[current];
+		int ox = grid.originX, oy = grid.originY, oz = grid.originZ;
+		if (++stamp == 0) {
+			Arrays.fill(sectionReached, 0);
+			Arrays.fill(sectionClosed, 0);
+			stamp = 1;
+		}
+		int target = to == NO_CELL ? -1 : sectionIndex(to);
+		int first = sectionIndex(from);
+		sectionReached[first] = stamp;
+		sectionCosts[first] = 0;
+		sectionParents[first] = -1;
+		sectionOpen.clear();
+		sectionOpen.add(first);
+		while (!sectionOpen.isEmpty()) {
+			int index = (int) sectionOpen.poll();
+			if (sectionClosed[index] == stamp) {
+				continue;
+			}
+			sectionClosed[index] = stamp;
+			expanded++;
+			if (index == target) {
+				return sectionCosts[index];
+			}
+			int x = ox + (index & ChunkSection.MASK), y = oy + (index >> 8), z = oz + (index >> 4 & ChunkSection.MASK);
+			for (int dir = 0; dir < NavGrid.DX.length; dir++) {
+				for (int dy : NavGrid.DY) {
+					int nx, ny, nz, move;
+					if (backward) {
+						nx = x - NavGrid.DX[dir];
+						ny = y - dy;
+						nz = z - NavGrid.DZ[dir];
+						if (!inside(nx - ox, ny - oy, nz - oz) || !grid.isStandable(nx, ny, nz)) {
+							continue;
+						}
+						move = grid.moveCost(nx, ny, nz, dir, dy);
+					} else {
+						nx = x + NavGrid.DX[dir];
+						ny = y + dy;
+						nz = z + NavGrid.DZ[dir];
+						if (!inside(nx - ox, ny - oy, nz - oz)) {
+							continue;
+						}
+						move = grid.moveCost(x, y, z, dir, dy);
+					}
+					if (move < 0) {
+						continue;
+					}
+					int next = (ny - oy) << 8 | (nz - oz) << 4 | (nx - ox);
+					int cost = sectionCosts[index] + move;
+					if (sectionReached[next] != stamp || sectionClosed[next] != stamp && cost < sectionCosts[next]) {
+						sectionReached[next] = stamp;
+						sectionCosts[next] = cost;
+						sectionParents[next] = index;
+						int estimate = target < 0 ? 0
+								: NavGrid.COST_FLAT * (Math.abs(nx - NavGrid.unpackX(to)) + Math.abs(nz - NavGrid.unpackZ(to)));
+						sectionOpen.add((long) (cost + estimate) << 32 | next);
+					}
+				}
+			}
+		}
+		return target < 0 ? 0 : -1;
+	}
+
+	/**
+	 * Gets the cost of a block found by the last search inside a section.
+	 *
+	 * @return The cost, or -1 if the search did not reach the block.
+	 */
+	int getSectionCost(long cell) {
+		int index = sectionIndex(cell);
+		return sectionClosed[index] == stamp ? sectionCosts[index] : -1;
+	}
+
+	/**
+	 * Follows the parents of the last search inside a section back from its
+	 * goal block.
+	 *
+	 * @return The blocks from the start to the goal, three coordinates each.
+	 */
+	private int[] sectionPath(long from, long to) {
+		int first = sectionIndex(from), count = 1;
+		for (int index = sectionIndex(to); index != first; index = sectionParents[index]) {
+			count++;
+		}
+		int[] blocks = new int[count * 3];
+		NavGrid.Snapshot grid = snapshots[current];
+		int ox = grid.originX, oy = grid.originY, oz = grid.originZ;
+		for (int index = sectionIndex(to), b = count - 1; b >= 0; index = sectionParents[index], b--) {
+			blocks[b * 3] = ox + (index & ChunkSection.MASK);
+			blocks[b * 3 + 1] = oy + (index >> 8);
+			blocks[b * 3 + 2] = oz + (index >> 4 & ChunkSection.MASK);
+		}
+		return blocks;
+	}
+
+	/**
+	 * Gets the costs between a block and the nodes of its section's graph.
+	 *
+	 * @param backward Whether the costs are of reaching the block rather than leaving it.
+	 * @return The cost per node, -1 where there is no path inside the section.
+	 */
+	private int[] sectionCosts(int sx, int sy, int sz, long cell, ClusterGraph graph, boolean backward) {
+		loadSnapshot(sx, sy, sz);
+		searchSection(cell, NO_CELL, backward);
+		int[] nodeCosts = new int[graph.nodes.length];
+		for (int j = 0; j < nodeCosts.length; j++) {
+			nodeCosts[j] = getSectionCost(graph.nodes[j]);
+		}
+		return nodeCosts;
+	}
+
+	/**
+	 * Gets a section graph, without counting the nodes expanded to build it.
+	 */
+	private ClusterGraph graph(int sx, int sy, int sz) {
+		int before = expanded;
+		ClusterGraph graph = finder.graph(sx, sy, sz, this);
+		expanded = before;
+		return graph;
+	}
+
+	/**
+	 * Lowers the cost of a node of a section graph, adding it to the table
+	 * the first time it is reached.
+	 */
+	private void relax(ClusterGraph graph, int graphNode, int cost, int parent, long goal) {
+		long cell = graph.nodes[graphNode];
+		int node = graphIndex.get(cell);
+		if (node < 0) {
+			node = addNode(cell, graph, graphNode);
+			graphIndex.put(cell, node);
+		}
+		if (!closed[node] && cost < costs[node]) {
+			costs[node] = cost;
+			parents[node] = parent;
+			open.add((long) (cost + NavGrid.estimate(cell, goal)) << 32 | node);
+		}
+	}
+
+	private int addNode(long cell, ClusterGraph graph, int graphNode) {
+		if (nodeCount == cells.length) {
+			int capacity = nodeCount * 2;
+			cells = Arrays.copyOf(cells, capacity);
+			costs = Arrays.copyOf(costs, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			closed = Arrays.copyOf(closed, capacity);
+			graphs = Arrays.copyOf(graphs, capacity);
+			graphNodes = Arrays.copyOf(graphNodes, capacity);
+		}
+		cells[nodeCount] = cell;
+		costs[nodeCount] = Integer.MAX_VALUE;
+		parents[nodeCount] = -1;
+		closed[nodeCount] = false;
+		graphs[nodeCount] = graph;
+		graphNodes[nodeCount] = graphNode;
+		return nodeCount++;
+	}
+
+	private void clearNodes(LongIntHashMap index) {
+		nodeCount = 0;
+		index.clear();
+		open.clear();
+	}
+
+	private int sectionIndex(long cell) {
+		return (NavGrid.unpackY(cell) & ChunkSection.MASK) << 8 | (NavGrid.unpackZ(cell) & ChunkSection.MASK) << 4
+				| (NavGrid.unpackX(cell) & ChunkSection.MASK);
+	}
+
+	private static boolean inside(int lx, int ly, int lz) {
+		return ((lx | ly | lz) & ~ChunkSection.MASK) == 0;
+	}
+}
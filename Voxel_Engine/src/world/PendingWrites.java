@@ -0,0 +1,274 @@
+package world;
+
+import java.util.Arrays;
+
+import toolbox.IntList;
+import toolbox.LongIntHashMap;
+
+/**
+ * The PendingWrites class lets the decoration stage of world generation place
+ * structures across section borders without waiting for the neighbours. A
+ * block placed in a section that is not generated yet is buffered under the
+ * section's key and written when the section is published: after its terrain
+ * and its own decorations, just before it joins the world. A block placed in
+ * a section already published is queued as a late write, applied to the live
+ * world by the thread that owns it.
+ *
+ * Placed blocks only replace air and placed blocks of a lower priority (leaves
+ * give way to logs), never terrain. That rule is commutative, so the blocks of
+ * a world come out the same whatever order its sections are generated in and
+ * whichever of the three paths a placed block takes.
+ *
+ * Thread-safe: the sections are spread over lock stripes, so generator threads
+ * rarely contend.
+ */
+public class PendingWrites {
+
+	// Number of lock stripes; a power of two.
+	private static final int STRIPES = 64;
+
+	// Slot value of the sections already published (the map's missing value is -1).
+	private static final int PUBLISHED = -2;
+
+	/**
+	 * The buffers of the sections hashed to one stripe.
+	 */
+	private static final class Stripe {
+
+		// Buffer slot of each section with pending writes, or PUBLISHED.
+		final LongIntHashMap slots = new LongIntHashMap(64, -1);
+
+		// Buffered writes per slot, packed as (block index << 16 | block id), and the free slots.
+		IntList[] buffers = new IntList[8];
+		int[] freeSlots = new int[8];
+		int slotCount, freeCount;
+
+		// Late writes: x, y, z, block id per write.
+		final IntList late = new IntList(16);
+
+		// Number of buffered writes.
+		long buffered;
+	}
+
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	/**
+	 * Creates an empty buffer.
+	 */
+	public PendingWrites() {
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * Places a block in a section that is not the one being generated: it is
+	 * buffered until the section is published, or queued as a late write if it
+	 * already was.
+	 *
+	 * @param x  The X block coordinate.
+	 * @param y  The Y block coordinate.
+	 * @param z  The Z block coordinate.
+	 * @param id The placed block id.
+	 */
+	public void write(int x, int y, int z, short id) {
+		long key = ChunkRegistry.key(x >> ChunkSection.SHIFT, y >> ChunkSection.SHIFT, z >> ChunkSection.SHIFT);
+		Stripe stripe = stripe(key);
+		synchronized (stripe) {
+			int slot = stripe.slots.get(key);
+			if (slot == PUBLISHED) {
+				stripe.late.add(x);
+				stripe.late.add(y);
+				stripe.late.add(z);
+				stripe.late.add(id);
+				return;
+			}
+			if (slot < 0) {
+				slot = allocate(stripe);
+				stripe.slots.put(key, slot);
+			}
+			int index = ChunkSection.index(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK);
+			stripe.buffers[slot].add(index << 16 | id);
+			stripe.buffered++;
+		}
+	}
+
+	/**
+	 * Applies the writes buffered for a generated section, adds it to the world
+	 * and marks it published, so later writes become late writes. Writes that
+	 * arrive while the buffer is applied are applied too: the section is only
+	 * added once its buffer is empty, under the stripe's lock.
+	 *
+	 * @param section The generated section, not in the world yet.
+	 * @param world   The world to add it to.
+	 * @return The section now loaded at its coordinates.
+	 */
+	public ChunkSection publish(ChunkSection section, World world) {
+		long key = ChunkRegistry.key(section.getSectionX(), section.getSectionY(), section.getSectionZ());
+		Stripe stripe = stripe(key);
+		IntList writes = null;
+		while (true) {
+			synchronized (stripe) {
+				int slot = stripe.slots.get(key);
+				if (slot == PUBLISHED) {
+					throw new IllegalStateException("Section published twice: " + section.getSectionX() + ", "
+							+ section.getSectionY() + ", " + section.getSectionZ());
+				}
+				if (slot < 0 || stripe.buffers[slot].size() == 0) {
+					if (slot >= 0) {
+						stripe.freeSlots[stripe.freeCount++] = slot;
+					}
+					stripe.slots.put(key, PUBLISHED);
+					return world.addSection(section);
+				}
+
+				// Take the buffer and apply it outside the lock.
+				IntList buffer = stripe.buffers[slot];
+				if (writes == null) {
+					writes = new IntList(buffer.size());
+				}
+				writes.clear();
+				for (int i = 0; i < buffer.size(); i++) {
+					writes.add(buffer.get(i));
+				}
+				buffer.clear();
+			}
+			for (int i = 0; i < writes.size(); i++) {
+				int write = writes.get(i);
+				place(section, write >>> 16, (short) write);
+			}
+		}
+	}
+
+	/**
+	 * Forgets that a section was published, once it is unloaded: writes to it
+	 * are buffered again until it is generated and published anew.
+	 *
+	 * @param sx The section's X coordinate.
+	 * @param sy The section's Y coordinate.
+	 * @param sz The section's Z coordinate.
+	 */
+	public void unpublish(int sx, int sy, int sz) {
+		long key = ChunkRegistry.key(sx, sy, sz);
+		Stripe stripe = stripe(key);
+		synchronized (stripe) {
+			if (stripe.slots.get(key) == PUBLISHED) {
+				stripe.slots.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Applies the late writes queued so far to the world. Must be called by the
+	 * thread that owns the live sections.
+	 *
+	 * @param world    The world the sections were published to.
+	 * @param listener Told about every block changed, or null.
+	 * @return The number of blocks changed.
+	 */
+	public int applyLateWrites(World world, BlockChangeListener listener) {
+		int changed = 0;
+		IntList writes = null;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				if (stripe.late.size() == 0) {
+					continue;
+				}
+				if (writes == null) {
+					writes = new IntList(stripe.late.size());
+				}
+				writes.clear();
+				for (int i = 0; i < stripe.late.size(); i++) {
+					writes.add(stripe.late.get(i));
+				}
+				stripe.late.clear();
+			}
+			for (int i = 0; i < writes.size(); i += 4) {
+				int x = writes.get(i), y = writes.get(i + 1), z = writes.get(i + 2);
+				ChunkSection section = world.getSection(x >> ChunkSection.SHIFT, y >> ChunkSection.SHIFT,
+						z >> ChunkSection.SHIFT);
+				if (section == null) {
+					continue; // Unloaded since
+				}
+				int index = ChunkSection.index(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK);
+				short previous = section.getBlock(index);
+				short placed = (short) writes.get(i + 3);
+				if (place(section, index, placed)) {
+					changed++;
+					if (listener != null) {
+						listener.blockChanged(x, y, z, previous, placed);
+					}
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Gets the number of writes buffered for sections not generated yet so far.
+	 *
+	 * @return The buffered write count.
+	 */
+	public long getBuffered() {
+		long buffered = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				buffered += stripe.buffered;
+			}
+		}
+		return buffered;
+	}
+
+	/**
+	 * Places a block in a section, unless the block there takes precedence.
+	 *
+	 * @param section The section.
+	 * @param index   The index of the block in the section.
+	 * @param id      The placed block id.
+	 * @return true if the block changed.
+	 */
+	public static boolean place(ChunkSection section, int index, short id) {
+		short existing = section.getBlock(index);
+		if (existing == id || priority(existing) >= priority(id)) {
+			return false;
+		}
+		section.setBlock(index & ChunkSection.MASK, index >>> 8, index >>> 4 & ChunkSection.MASK, id);
+		return true;
+	}
+
+	/**
+	 * Gets the precedence of a block over placed blocks: air gives way to
+	 * everything, leaves to logs, and terrain to nothing.
+	 */
+	private static int priority(short id) {
+		switch (id) {
+		case Block.AIR:
+			return 0;
+		case Block.LEAVES:
+			return 1;
+		case Block.LOG:
+			return 2;
+		default:
+			return 3;
+		}
+	}
+
+	/**
+	 * Takes a free buffer slot of a stripe, growing its buffers if needed.
+	 */
+	private static int allocate(Stripe stripe) {
+		if (stripe.freeCount > 0) {
+			return stripe.freeSlots[--stripe.freeCount];
+		}
+		if (stripe.slotCount == stripe.buffers.length) {
+			stripe.buffers = Arrays.copyOf(stripe.buffers, stripe.slotCount * 2);
+			stripe.freeSlots = Arrays.copyOf(stripe.freeSlots, stripe.slotCount * 2);
+		}
+		stripe.buffers[stripe.slotCount] = new IntList(64);
+		return stripe.slotCount++;
+	}
+
+	private Stripe stripe(long key) {
+		return stripes[LongIntHashMap.hash(key) & (STRIPES - 1)];
+	}
+}
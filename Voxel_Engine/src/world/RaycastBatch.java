@@ -0,0 +1,183 @@
+package world;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The RaycastBatch class casts many rays at once, such as the line-of-sight
+ * checks of every mob in a tick, by splitting them into ranges handled in
+ * parallel on a fork-join pool. Rays and results are kept in primitive arrays
+ * that are reused between batches; each task uses its own VoxelRaycast, so
+ * the only allocations are per task, not per ray.
+ */
+public class RaycastBatch {
+
+	// Number of rays cast by one task.
+	private static final int RAYS_PER_TASK = 256;
+
+	// Floats per ray: origin xyz, direction xyz, length.
+	private static final int RAY_STRIDE = 7;
+
+	// The rays of the batch.
+	private float[] rays;
+
+	// Results: whether each ray hit, the hit block, its face and the distance.
+	private boolean[] hits;
+	private int[] hitBlocks; // Three ints per ray
+	private byte[] hitFaces;
+	private float[] hitDistances;
+
+	// Number of rays in the batch.
+	private int count;
+
+	/**
+	 * Creates a batch with room for the given number of rays. The batch grows on
+	 * demand.
+	 *
+	 * @param capacity The initial number of rays.
+	 */
+	public RaycastBatch(int capacity) {
+		allocate(Math.max(capacity, 16));
+	}
+
+	/**
+	 * Adds a ray to the batch. The parameters are those of VoxelRaycast.cast.
+	 *
+	 * @return The index of the ray, used to read its result.
+	 */
+	public int add(float originX, float originY, float originZ, float directionX, float directionY, float directionZ,
+			float maxDistance) {
+		if (count == hits.length) {
+			int capacity = count * 2;
+			rays = Arrays.copyOf(rays, capacity * RAY_STRIDE);
+			allocateResults(capacity);
+		}
+		int offset = count * RAY_STRIDE;
+		rays[offset] = originX;
+		rays[offset + 1] = originY;
+		rays[offset + 2] = originZ;
+		rays[offset + 3] = directionX;
+		rays[offset + 4] = directionY;
+		rays[offset + 5] = directionZ;
+		rays[offset + 6] = maxDistance;
+		return count++;
+	}
+
+	/**
+	 * Adds a line-of-sight check to the batch. Its result reports no hit when
+	 * the end point is visible from the start point.
+	 *
+	 * @return The index of the ray, used to read its result.
+	 */
+	public int addLineOfSight(float fromX, float fromY, float fromZ, float toX, float toY, float toZ) {
+		float dx = toX - fromX, dy = toY - fromY, dz = toZ - fromZ;
+		return add(fromX, fromY, fromZ, dx, dy, dz, (float) Math.sqrt(dx * dx + dy * dy + dz * dz));
+	}
+
+	/**
+	 * Casts every ray of the batch.
+	 *
+	 * @param world The world to cast the rays in.
+	 * @param pool  The pool running the casts.
+	 */
+	public void cast(World world, ForkJoinPool pool) {
+		pool.invoke(new CastTask(world, 0, count));
+	}
+
+	/**
+	 * Removes every ray, keeping the allocated arrays.
+	 */
+	public void clear() {
+		count = 0;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public boolean isHit(int ray) {
+		return hits[ray];
+	}
+
+	public int getHitX(int ray) {
+		return hitBlocks[ray * 3];
+	}
+
+	public int getHitY(int ray) {
+		return hitBlocks[ray * 3 + 1];
+	}
+
+	public int getHitZ(int ray) {
+		return hitBlocks[ray * 3 + 2];
+	}
+
+	public int getHitFace(int ray) {
+		return hitFaces[ray];
+	}
+
+	public float getHitDistance(int ray) {
+		return hitDistances[ray];
+	}
+
+	/**
+	 * Casts a range of rays with one raycaster.
+	 */
+	private void castRange(World world, int from, int to) {
+		VoxelRaycast raycast = new VoxelRaycast(world);
+		RaycastHit hit = new RaycastHit();
+		for (int i = from; i < to; i++) {
+			int offset = i * RAY_STRIDE;
+			boolean found = raycast.cast(rays[offset], rays[offset + 1], rays[offset + 2], rays[offset + 3],
+					rays[offset + 4], rays[offset + 5], rays[offset + 6], hit);
+			hits[i] = found;
+			if (found) {
+				hitBlocks[i * 3] = hit.x;
+				hitBlocks[i * 3 + 1] = hit.y;
+				hitBlocks[i * 3 + 2] = hit.z;
+				hitFaces[i] = (byte) hit.face;
+				hitDistances[i] = hit.distance;
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		rays = new float[capacity * RAY_STRIDE];
+		allocateResults(capacity);
+	}
+
+	private void allocateResults(int capacity) {
+		hits = new boolean[capacity];
+		hitBlocks = new int[capacity * 3];
+		hitFaces = new byte[capacity];
+		hitDistances = new float[capacity];
+	}
+
+	/**
+	 * Fork-join task casting a range of rays, split in halves until the range is
+	 * small enough to run directly.
+	 */
+	private final class CastTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final World world;
+		private final int from, to;
+
+		CastTask(World world, int from, int to) {
+			this.world = world;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= RAYS_PER_TASK) {
+				castRange(world, from, to);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new CastTask(world, from, middle), new CastTask(world, middle, to));
+			}
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package world;
+
+/**
+ * The RaycastHit class receives the result of a VoxelRaycast. It is mutable
+ * so that callers casting many rays can reuse one instance and avoid
+ * allocating per ray.
+ */
+public final class RaycastHit {
+
+	// Coordinates of the block that was hit.
+	public int x, y, z;
+
+	// The face of the block the ray entered through, or Face.NONE if the ray
+	// started inside the block.
+	public int face;
+
+	// Distance from the ray origin to the entry point.
+	public float distance;
+
+	// The id of the block that was hit.
+	public short block;
+
+	/**
+	 * Copies another result into this one.
+	 *
+	 * @param other The result to copy.
+	 */
+	public void set(RaycastHit other) {
+		x = other.x;
+		y = other.y;
+		z = other.z;
+		face = other.face;
+		distance = other.distance;
+		block = other.block;
+	}
+
+	@Override
+	public String toString() {
+		return "RaycastHit[" + x + ", " + y + ", " + z + " face " + face + " at " + distance + "]";
+	}
+}
@@ -0,0 +1,389 @@
+package world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * The RegionEditor class edits boxes of blocks at once: fill, replace, and
+ * copy to and paste from a Clipboard. Setting blocks one by one through the
+ * World would run a light update and queue a mesh per block; an editor
+ * instead rewrites each section the box overlaps in one pass, in parallel on
+ * a fork-join pool: the section's blocks are decoded into an array, edited,
+ * and encoded into a new storage swapped in at once (see
+ * ChunkSection.setBlocks), while a section entirely covered by a fill just
+ * gets a single-entry storage, interned so identical ones share it. Sections
+ * with nothing to change are left alone, and a section that is not loaded is
+ * only created when the edit leaves something other than air in it.
+ *
+ * Once every section is written, the listener is told about the changed ones
+ * in a single call, on the calling thread, in coordinate order; passing them
+ * to LightEngine.sectionsChanged relights them, and the world around them, in
+ * one update, after which each is meshed once. Bulk edits tell no
+ * BlockChangeListener about single blocks, and wake neither fluids nor block
+ * ticks; a PathFinder should be told with invalidateSection.
+ *
+ * Not thread-safe: run one edit at a time, on the thread owning the world.
+ */
+public class RegionEditor {
+
+	// The world edited.
+	private final World world;
+
+	// The pool the sections are edited on.
+	private final ForkJoinPool pool;
+
+	// Blocks of the section being edited, and of the source being copied, per thread.
+	private final ThreadLocal<short[]> sectionBlocks = ThreadLocal.withInitial(() -> new short[ChunkSection.VOLUME]);
+	private final ThreadLocal<short[]> sourceBlocks = ThreadLocal.withInitial(() -> new short[ChunkSection.VOLUME]);
+
+	// Told about the sections changed by each edit.
+	private Consumer<List<ChunkSection>> listener;
+
+	// Statistics.
+	private long blocksChanged, sectionsChanged;
+
+	/**
+	 * Creates an editor for a world.
+	 *
+	 * @param world The world to edit.
+	 * @param pool  The pool editing the sections in parallel.
+	 */
+	public RegionEditor(World world, ForkJoinPool pool) {
+		this.world = world;
+		this.pool = pool;
+	}
+
+	/**
+	 * Sets the listener told about the sections changed by each edit, such as
+	 * LightEngine.sectionsChanged.
+	 *
+	 * @param listener The listener, or null.
+	 */
+	public void setListener(Consumer<List<ChunkSection>> listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Sets every block of a box to the same id. The corners are included and
+	 * may be given in any order.
+	 *
+	 * @param id The block id.
+	 * @return The number of blocks changed.
+	 */
+	public long fill(int x0, int y0, int z0, int x1, int y1, int z1, short id) {
+		Kernel fill = (blocks, ox, oy, oz, minX, minY, minZ, maxX, maxY, maxZ) -> {
+			int changed = 0;
+			for (int y = minY; y <= maxY; y++) {
+				for (int z = minZ; z <= maxZ; z++) {
+					for (int index = ChunkSection.index(minX, y, z), end = index + maxX - minX; index <= end; index++) {
+						if (blocks[index] != id) {
+							blocks[index] = id;
+							changed++;
+						}
+					}
+				}
+			}
+			return changed;
+		};
+		return edit(new Edit(x0, y0, z0, x1, y1, z1, id != Block.AIR, id, fill));
+	}
+
+	/**
+	 * Replaces every block of a box with a given id by another. Replacing air
+	 * also fills the sections of the box that are not loaded.
+	 *
+	 * @param from The block id to replace.
+	 * @param to   The block id to replace it with.
+	 * @return The number of blocks changed.
+	 */
+	public long replace(int x0, int y0, int z0, int x1, int y1, int z1, short from, short to) {
+		if (from == to) {
+			return 0;
+		}
+		Kernel replace = (blocks, ox, oy, oz, minX, minY, minZ, maxX, maxY, maxZ) -> {
+			int changed = 0;
+			for (int y = minY; y <= maxY; y++) {
+				for (int z = minZ; z <= maxZ; z++) {
+					for (int index = ChunkSection.index(minX, y, z), end = index + maxX - minX; index <= end; index++) {
+						if (blocks[index] == from) {
+							blocks[index] = to;
+							changed++;
+						}
+					}
+				}
+			}
+			return changed;
+		};
+		return edit(new Edit(x0, y0, z0, x1, y1, z1, from == Block.AIR, -1, replace));
+	}
+
+	/**
+	 * Copies the blocks of a box to a clipboard, one tile per task. The blocks
+	 * of sections that are not loaded are copied as air.
+	 *
+	 * @return The clipboard, whose corner is the box's lowest corner.
+	 */
+	public Clipboard copy(int x0, int y0, int z0, int x1, int y1, int z1) {
+		int minX = Math.min(x0, x1), minY = Math.min(y0, y1), minZ = Math.min(z0, z1);
+		Clipboard clipboard = new Clipboard(Math.abs(x1 - x0) + 1, Math.abs(y1 - y0) + 1, Math.abs(z1 - z0) + 1);
+		int tilesX = clipboard.getTilesX(), tilesZ = clipboard.getTilesZ();
+		pool.submit(() -> IntStream.range(0, clipboard.getTileCount()).parallel().forEach(tile -> {
+			int tx = tile % tilesX, tz = tile / tilesX % tilesZ, ty = tile / (tilesX * tilesZ);
+			short[] blocks = sectionBlocks.get(), source = sourceBlocks.get();
+			Arrays.fill(blocks, Block.AIR);
+
+			// The part of the box in the tile, relative to the box's corner.
+			int rx0 = tx << ChunkSection.SHIFT, ry0 = ty << ChunkSection.SHIFT, rz0 = tz << ChunkSection.SHIFT;
+			int rx1 = Math.min(rx0 + ChunkSection.MASK, clipboard.getSizeX() - 1);
+			int ry1 = Math.min(ry0 + ChunkSection.MASK, clipboard.getSizeY() - 1);
+			int rz1 = Math.min(rz0 + ChunkSection.MASK, clipboard.getSizeZ() - 1);
+
+			// Gathered from the up to eight world sections it overlaps.
+			for (int sy = (minY + ry0) >> ChunkSection.SHIFT; sy <= (minY + ry1) >> ChunkSection.SHIFT; sy++) {
+				for (int sz = (minZ + rz0) >> ChunkSection.SHIFT; sz <= (minZ + rz1) >> ChunkSection.SHIFT; sz++) {
+					for (int sx = (minX + rx0) >> ChunkSection.SHIFT; sx <= (minX + rx1) >> ChunkSection.SHIFT; sx++) {
+						ChunkSection section = world.getSection(sx, sy, sz);
+						if (section == null) {
+							continue; // Air, as the tile already is
+						}
+						section.copyBlocks(source);
+						int ox = sx << ChunkSection.SHIFT, oy = sy << ChunkSection.SHIFT, oz = sz << ChunkSection.SHIFT;
+						int lowX = Math.max(minX + rx0, ox), lowY = Math.max(minY + ry0, oy), lowZ = Math.max(minZ + rz0, oz);
+						int highX = Math.min(minX + rx1, ox + ChunkSection.MASK);
+						int highY = Math.min(minY + ry1, oy + ChunkSection.MASK);
+						int highZ = Math.min(minZ + rz1, oz + ChunkSection.MASK);
+						copyBox(source, lowX - ox, lowY - oy, lowZ - oz, blocks, lowX - minX - rx0, lowY - minY - ry0,
+								lowZ - minZ - rz0, highX - lowX + 1, highY - lowY + 1, highZ - lowZ + 1, false);
+					}
+				}
+			}
+			PalettedBlocks encoded = new PalettedBlocks();
+			encoded.encode(blocks);
+			clipboard.setTile(tile, encoded);
+		})).join();
+		return clipboard;
+	}
+
+	/**
+	 * Pastes a clipboard into the world.
+	 *
+	 * @param clipboard The clipboard.
+	 * @param x         The X coordinate the clipboard's corner goes to.
+	 * @param y         The Y coordinate the clipboard's corner goes to.
+	 * @param z         The Z coordinate the clipboard's corner goes to.
+	 * @param skipAir   Whether the air of the clipboard leaves the world's
+	 *                  blocks as they are, rather than clearing them.
+	 * @return The number of blocks changed.
+	 */
+	public long paste(Clipboard clipboard, int x, int y, int z, boolean skipAir) {
+		Kernel paste = (blocks, ox, oy, oz, minX, minY, minZ, maxX, maxY, maxZ) -> {
+			short[] source = sourceBlocks.get();
+			int changed = 0;
+
+			// The part of the section in the box, relative to the clipboard's corner.
+			int rx0 = ox + minX - x, ry0 = oy + minY - y, rz0 = oz + minZ - z;
+			int rx1 = ox + maxX - x, ry1 = oy + maxY - y, rz1 = oz + maxZ - z;
+
+			// Scattered from the up to eight tiles it overlaps.
+			for (int ty = ry0 >> ChunkSection.SHIFT; ty <= ry1 >> ChunkSection.SHIFT; ty++) {
+				for (int tz = rz0 >> ChunkSection.SHIFT; tz <= rz1 >> ChunkSection.SHIFT; tz++) {
+					for (int tx = rx0 >> ChunkSection.SHIFT; tx <= rx1 >> ChunkSection.SHIFT; tx++) {
+						clipboard.getTile(clipboard.tileIndex(tx, ty, tz)).decode(source);
+						int tileX = tx << ChunkSection.SHIFT, tileY = ty << ChunkSection.SHIFT, tileZ = tz << ChunkSection.SHIFT;
+						int lowX = Math.max(rx0, tileX), lowY = Math.max(ry0, tileY), lowZ = Math.max(rz0, tileZ);
+						int highX = Math.min(rx1, tileX + ChunkSection.MASK);
+						int highY = Math.min(ry1, tileY + ChunkSection.MASK);
+						int highZ = Math.min(rz1, tileZ + ChunkSection.MASK);
+						changed += copyBox(source, lowX - tileX, lowY - tileY, lowZ - tileZ, blocks, lowX + x - ox,
+								lowY + y - oy, lowZ + z - oz, highX - lowX + 1, highY - lowY + 1, highZ - lowZ + 1, skipAir);
+					}
+				}
+			}
+			return changed;
+		};
+		return edit(new Edit(x, y, z, x + clipboard.getSizeX() - 1, y + clipboard.getSizeY() - 1,
+				z + clipboard.getSizeZ() - 1, true, -1, paste));
+	}
+
+	/**
+	 * Gets the number of blocks changed by the edits so far.
+	 *
+	 * @return The block count.
+	 */
+	public long getBlocksChanged() {
+		return blocksChanged;
+	}
+
+	/**
+	 * Gets the number of sections rewritten by the edits so far, counting a
+	 * section once per edit that changed it.
+	 *
+	 * @return The section count.
+	 */
+	public long getSectionsChanged() {
+		return sectionsChanged;
+	}
+
+	/**
+	 * Runs an edit over every section its box overlaps, then tells the
+	 * listener about the changed ones.
+	 */
+	private long edit(Edit edit) {
+		pool.submit(() -> IntStream.range(0, edit.changed.length).parallel().forEach(edit::editSection)).join();
+
+		List<ChunkSection> changed = new ArrayList<ChunkSection>();
+		long blocks = 0;
+		for (int i = 0; i < edit.changed.length; i++) {
+			if (edit.changed[i] != null) {
+				changed.add(edit.changed[i]);
+				blocks += edit.counts[i];
+			}
+		}
+		blocksChanged += blocks;
+		sectionsChanged += changed.size();
+		Consumer<List<ChunkSection>> target = listener;
+		if (target != null && !changed.isEmpty()) {
+			target.accept(changed);
+		}
+		return blocks;
+	}
+
+	/**
+	 * Copies a box of blocks from one decoded section-sized array to another.
+	 *
+	 * @param skipAir Whether air leaves the destination block as it is.
+	 * @return The number of destination blocks changed.
+	 */
+	private static int copyBox(short[] from, int fromX, int fromY, int fromZ, short[] to, int toX, int toY, int toZ,
+			int sizeX, int sizeY, int sizeZ, boolean skipAir) {
+		int changed = 0;
+		for (int y = 0; y < sizeY; y++) {
+			for (int z = 0; z < sizeZ; z++) {
+				int source = ChunkSection.index(fromX, fromY + y, fromZ + z);
+				int target = ChunkSection.index(toX, toY + y, toZ + z);
+				for (int x = 0; x < sizeX; x++) {
+					short block = from[source + x];
+					if (block != to[target + x] && !(skipAir && block == Block.AIR)) {
+						to[target + x] = block;
+						changed++;
+					}
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Edits the blocks of a section inside a box.
+	 */
+	@FunctionalInterface
+	private interface Kernel {
+
+		/**
+		 * @param blocks The decoded blocks of the section, edited in place.
+		 * @param ox     The X block coordinate of the section's origin.
+		 * @param oy     The Y block coordinate of the section's origin.
+		 * @param oz     The Z block coordinate of the section's origin.
+		 * @return The number of blocks changed.
+		 */
+		int apply(short[] blocks, int ox, int oy, int oz, int minX, int minY, int minZ, int maxX, int maxY, int maxZ);
+	}
+
+	/**
+	 * An edit of a box, and the sections it changed.
+	 */
+	private final class Edit {
+		final int x0, y0, z0, x1, y1, z1;
+
+		// The sections overlapped: lowest coordinates, and counts along each axis.
+		final int sx0, sy0, sz0, nx, nz;
+
+		// Whether the edit may leave blocks in sections that are not loaded.
+		final boolean creates;
+
+		// The id a section entirely in the box is filled with, or -1.
+		final int fillId;
+
+		final Kernel kernel;
+
+		// Changed sections, and blocks changed in each, by index in the box.
+		final ChunkSection[] changed;
+		final int[] counts;
+
+		Edit(int x0, int y0, int z0, int x1, int y1, int z1, boolean creates, int fillId, Kernel kernel) {
+			this.x0 = Math.min(x0, x1);
+			this.y0 = Math.min(y0, y1);
+			this.z0 = Math.min(z0, z1);
+			this.x1 = Math.max(x0, x1);
+			this.y1 = Math.max(y0, y1);
+			this.z1 = Math.max(z0, z1);
+			this.sx0 = this.x0 >> ChunkSection.SHIFT;
+			this.sy0 = this.y0 >> ChunkSection.SHIFT;
+			this.sz0 = this.z0 >> ChunkSection.SHIFT;
+			this.nx = (this.x1 >> ChunkSection.SHIFT) - sx0 + 1;
+			this.nz = (this.z1 >> ChunkSection.SHIFT) - sz0 + 1;
+			long count = (long) nx * nz * ((this.y1 >> ChunkSection.SHIFT) - sy0 + 1);
+			if (count > 1 << 24) {
+				throw new IllegalArgumentException("Box too large: " + count + " sections");
+			}
+			this.creates = creates;
+			this.fillId = fillId;
+			this.kernel = kernel;
+			this.changed = new ChunkSection[(int) count];
+			this.counts = new int[(int) count];
+		}
+
+		/**
+		 * Edits one of the sections overlapped by the box.
+		 */
+		void editSection(int i) {
+			int sx = sx0 + i % nx, sz = sz0 + i / nx % nz, sy = sy0 + i / (nx * nz);
+			int ox = sx << ChunkSection.SHIFT, oy = sy << ChunkSection.SHIFT, oz = sz << ChunkSection.SHIFT;
+			int minX = Math.max(x0 - ox, 0), minY = Math.max(y0 - oy, 0), minZ = Math.max(z0 - oz, 0);
+			int maxX = Math.min(x1 - ox, ChunkSection.MASK), maxY = Math.min(y1 - oy, ChunkSection.MASK),
+					maxZ = Math.min(z1 - oz, ChunkSection.MASK);
+			short[] blocks = sectionBlocks.get();
+
+			ChunkSection section = world.getSection(sx, sy, sz);
+			if (section == null) {
+				if (!creates) {
+					return;
+				}
+				Arrays.fill(blocks, Block.AIR);
+				if (kernel.apply(blocks, ox, oy, oz, minX, minY, minZ, maxX, maxY, maxZ) == 0) {
+					return; // Still nothing but air
+				}
+				section = world.getRegistry().putIfAbsent(new ChunkSection(sx, sy, sz));
+			}
+			section.copyBlocks(blocks);
+
+			boolean whole = (minX | minY | minZ) == 0 && (maxX & maxY & maxZ) == ChunkSection.MASK;
+			if (whole && fillId >= 0) {
+				int count = 0;
+				for (int index = 0; index < ChunkSection.VOLUME; index++) {
+					if (blocks[index] != fillId) {
+						count++;
+					}
+				}
+				if (count > 0) {
+					section.fill((short) fillId);
+					section.intern(world.getInterner());
+					changed[i] = section;
+					counts[i] = count;
+				}
+				return;
+			}
+
+			int count = kernel.apply(blocks, ox, oy, oz, minX, minY, minZ, maxX, maxY, maxZ);
+			if (count > 0) {
+				section.setBlocks(blocks);
+				changed[i] = section;
+				counts[i] = count;
+			}
+		}
+	}
+}
@@ -0,0 +1,332 @@
+package world;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import toolbox.LongIntHashMap;
+
+/**
+ * The RegionPartition class sorts the loaded sections into regions of 4x4
+ * section columns, so the world simulations (BlockTicker, FluidEngine) can
+ * process the regions in parallel on a fork-join pool. Regions are listed in
+ * coordinate order and so are the sections of each region, so a simulation
+ * that keeps the effects of each region to itself gives the same result
+ * however the regions are spread over the threads.
+ *
+ * The regions may also be run in four checkerboard phases, one after the
+ * other, by the parity of their coordinates: the regions of a phase are never
+ * adjacent, not even diagonally, so while a region runs its eight neighbours
+ * are idle, and it may read their blocks without racing their writes. As the
+ * phases run in a fixed order, what such a read sees does not depend on the
+ * threads either.
+ *
+ * The partition is rebuilt when the registry's version shows that sections
+ * were loaded or unloaded. A region keeps its id, and its storage, for as long
+ * as the partition lives, even while it holds no section, so simulations can
+ * keep their per-region state in arrays indexed by id.
+ *
+ * Not thread-safe; updated by the thread driving the simulation.
+ */
+public class RegionPartition {
+
+	/** Number of section columns along each edge of a region, as a shift. */
+	public static final int REGION_SHIFT = 2;
+
+	/** Shift from a block coordinate to a region coordinate. */
+	public static final int BLOCK_SHIFT = ChunkSection.SHIFT + REGION_SHIFT;
+
+	/** Number of checkerboard phases. */
+	public static final int PHASES = 4;
+
+	/**
+	 * The sections of a region.
+	 */
+	public static final class Region {
+		private final int id;
+		private final int regionX, regionZ;
+
+		// The sections of the region, in coordinate order.
+		private ChunkSection[] sections = new ChunkSection[16];
+		private int sectionCount;
+
+		Region(int id, int regionX, int regionZ) {
+			this.id = id;
+			this.regionX = regionX;
+			this.regionZ = regionZ;
+		}
+
+		/**
+		 * Gets the id of the region, from 0 to the partition's id count - 1.
+		 *
+		 * @return The id.
+		 */
+		public int getId() {
+			return id;
+		}
+
+		public int getRegionX() {
+			return regionX;
+		}
+
+		public int getRegionZ() {
+			return regionZ;
+		}
+
+		/**
+		 * Gets the checkerboard phase of the region, from the parity of its
+		 * coordinates.
+		 *
+		 * @return The phase, from 0 to PHASES - 1.
+		 */
+		public int getPhase() {
+			return (regionX & 1) | (regionZ & 1) << 1;
+		}
+
+		/**
+		 * Checks whether a block lies in the region.
+		 *
+		 * @param x The X block coordinate.
+		 * @param z The Z block coordinate.
+		 * @return true if the block's column belongs to the region.
+		 */
+		public boolean contains(int x, int z) {
+			return x >> BLOCK_SHIFT == regionX && z >> BLOCK_SHIFT == regionZ;
+		}
+
+		/**
+		 * Gets the number of loaded sections in the region.
+		 *
+		 * @return The section count.
+		 */
+		public int getSectionCount() {
+			return sectionCount;
+		}
+
+		/**
+		 * Gets a section of the region.
+		 *
+		 * @param i The position of the section in coordinate order.
+		 * @return The section.
+		 */
+		public ChunkSection getSection(int i) {
+			return sections[i];
+		}
+	}
+
+	/**
+	 * Runs an action on a range of the regions, splitting it in halves down to
+	 * single regions.
+	 */
+	private static final class RegionTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Region[] regions;
+		private final int from, to;
+		private final Consumer<Region> action;
+
+		RegionTask(Region[] regions, int from, int to, Consumer<Region> action) {
+			this.regions = regions;
+			this.from = from;
+			this.to = to;
+			this.action = action;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				action.accept(regions[from]);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new RegionTask(regions, from, middle, action), new RegionTask(regions, middle, to, action));
+		}
+	}
+
+	// The registry whose sections are partitioned.
+	private final ChunkRegistry registry;
+
+	// Every region created, indexed by id, and the id of each keyed by region coordinates.
+	private Region[] all = new Region[64];
+	private int idCount;
+	private final LongIntHashMap ids = new LongIntHashMap(64, -1);
+
+	// The regions holding sections, in coordinate order.
+	private Region[] regions = new Region[0];
+	private int size;
+
+	// The same regions by phase, in coordinate order within each, and where each phase starts.
+	private Region[] phased = new Region[0];
+	private final int[] phaseStart = new int[PHASES + 1];
+
+	// Registry version the partition was built for.
+	private int version;
+	private boolean built;
+
+	/**
+	 * Creates a partition; it is built by the first update.
+	 *
+	 * @param registry The registry whose sections are partitioned.
+	 */
+	public RegionPartition(ChunkRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * Rebuilds the partition if sections were loaded or unloaded since it was
+	 * built.
+	 *
+	 * @return true if the partition was rebuilt.
+	 */
+	public boolean update() {
+		if (built && version == registry.getVersion()) {
+			return false;
+		}
+		version = registry.getVersion();
+		built = true;
+		for (int i = 0; i < idCount; i++) {
+			Region region = all[i];
+			Arrays.fill(region.sections, 0, region.sectionCount, null);
+			region.sectionCount = 0;
+		}
+
+		registry.forEach(section -> {
+			int regionX = section.getSectionX() >> REGION_SHIFT;
+			int regionZ = section.getSectionZ() >> REGION_SHIFT;
+			long key = ChunkRegistry.key(regionX, 0, regionZ);
+			int id = ids.get(key);
+			if (id < 0) {
+				if (idCount == all.length) {
+					all = Arrays.copyOf(all, idCount * 2);
+				}
+				id = idCount++;
+				all[id] = new Region(id, regionX, regionZ);
+				ids.put(key, id);
+			}
+			Region region = all[id];
+			if (region.sectionCount == region.sections.length) {
+				region.sections = Arrays.copyOf(region.sections, region.sectionCount * 2);
+			}
+			region.sections[region.sectionCount++] = section;
+		});
+
+		// List the regions in coordinate order, and their sections too.
+		if (regions.length < idCount) {
+			regions = new Region[all.length];
+		}
+		size = 0;
+		for (int i = 0; i < idCount; i++) {
+			Region region = all[i];
+			if (region.sectionCount > 0) {
+				sortSections(region);
+				regions[size++] = region;
+			}
+		}
+		Arrays.sort(regions, 0, size, (a, b) -> a.regionX != b.regionX ? Integer.compare(a.regionX, b.regionX)
+				: Integer.compare(a.regionZ, b.regionZ));
+
+		// Spread them over the phases, keeping their order.
+		if (phased.length < regions.length) {
+			phased = new Region[regions.length];
+		}
+		Arrays.fill(phaseStart, 0);
+		for (int i = 0; i < size; i++) {
+			phaseStart[regions[i].getPhase() + 1]++;
+		}
+		for (int phase = 0; phase < PHASES; phase++) {
+			phaseStart[phase + 1] += phaseStart[phase];
+		}
+		int[] next = Arrays.copyOf(phaseStart, PHASES);
+		for (int i = 0; i < size; i++) {
+			phased[next[regions[i].getPhase()]++] = regions[i];
+		}
+		return true;
+	}
+
+	/**
+	 * Runs an action on every region holding sections, in parallel, and waits
+	 * for all of them.
+	 *
+	 * @param pool   The pool to run on.
+	 * @param action The action, called once per region.
+	 */
+	public void forEachParallel(ForkJoinPool pool, Consumer<Region> action) {
+		if (size > 0) {
+			pool.invoke(new RegionTask(regions, 0, size, action));
+		}
+	}
+
+	/**
+	 * Runs an action on every region holding sections, phase by phase: the
+	 * regions of a phase in parallel, and the next phase once they are all done.
+	 * While a region runs, none of its neighbours does.
+	 *
+	 * @param pool   The pool to run on.
+	 * @param action The action, called once per region.
+	 */
+	public void forEachPhased(ForkJoinPool pool, Consumer<Region> action) {
+		for (int phase = 0; phase < PHASES; phase++) {
+			if (phaseStart[phase + 1] > phaseStart[phase]) {
+				pool.invoke(new RegionTask(phased, phaseStart[phase], phaseStart[phase + 1], action));
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of regions of a checkerboard phase.
+	 *
+	 * @param phase The phase, from 0 to PHASES - 1.
+	 * @return The region count.
+	 */
+	public int getPhaseSize(int phase) {
+		return phaseStart[phase + 1] - phaseStart[phase];
+	}
+
+	/**
+	 * Gets the number of regions holding sections.
+	 *
+	 * @return The region count.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets a region holding sections.
+	 *
+	 * @param i The position of the region in coordinate order.
+	 * @return The region.
+	 */
+	public Region get(int i) {
+		return regions[i];
+	}
+
+	/**
+	 * Gets the number of region ids handed out, an upper bound of every id.
+	 *
+	 * @return The id count.
+	 */
+	public int getIdCount() {
+		return idCount;
+	}
+
+	/**
+	 * Sorts the sections of a region by their coordinates; an insertion sort,
+	 * as the registry mostly yields them in a stable order.
+	 */
+	private static void sortSections(Region region) {
+		ChunkSection[] sections = region.sections;
+		for (int i = 1; i < region.sectionCount; i++) {
+			ChunkSection section = sections[i];
+			long key = ChunkRegistry.key(section.getSectionX(), section.getSectionY(), section.getSectionZ());
+			int j = i - 1;
+			while (j >= 0 && ChunkRegistry.key(sections[j].getSectionX(), sections[j].getSectionY(),
+					sections[j].getSectionZ()) > key) {
+				sections[j + 1] = sections[j];
+				j--;
+			}
+			sections[j + 1] = section;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package world;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The SectionInterner class makes sections with identical blocks share one
+ * block storage. Generated terrain repeats itself a lot (a flat world is the
+ * same section over and over), so interning every new section collapses the
+ * memory of repetitive terrain to a single copy per distinct content.
+ *
+ * Storages are looked up by a hash of their decoded blocks and compared block
+ * by block, so a hash collision never merges different sections. An interned
+ * storage is marked shared and never changes again: a section copies it before
+ * its first edit (copy-on-write). The interner only holds storages weakly, so
+ * content no section uses any more is forgotten.
+ *
+ * Thread-safe.
+ */
+public class SectionInterner {
+
+	// Interned storages by content hash.
+	private final Map<Long, Entry> entries = new HashMap<Long, Entry>();
+
+	// Entries whose storage was collected.
+	private final ReferenceQueue<PalettedBlocks> collected = new ReferenceQueue<PalettedBlocks>();
+
+	// Scratch arrays holding the decoded blocks being compared.
+	private final short[] decoded = new short[ChunkSection.VOLUME];
+	private final short[] candidate = new short[ChunkSection.VOLUME];
+
+	// Number of lookups, and of lookups that found an identical storage.
+	private long lookups, hits;
+
+	/**
+	 * Gets the shared storage with the same blocks as the given one, interning
+	 * the given one if no such storage exists yet.
+	 *
+	 * @param blocks The storage of a new section.
+	 * @return The shared storage the section should use.
+	 */
+	public synchronized PalettedBlocks intern(PalettedBlocks blocks) {
+		if (blocks.isShared()) {
+			return blocks; // Already interned
+		}
+		expungeCollected();
+		lookups++;
+
+		blocks.decode(decoded);
+		long hash = hash(decoded);
+		Entry entry = entries.get(hash);
+		PalettedBlocks canonical = entry == null ? null : entry.get();
+		if (canonical != null) {
+			canonical.decode(candidate);
+			for (int index = 0; index < ChunkSection.VOLUME; index++) {
+				if (candidate[index] != decoded[index]) {
+					canonical = null; // Different blocks with the same hash
+					break;
+				}
+			}
+			if (canonical != null) {
+				hits++;
+				return canonical;
+			}
+		}
+
+		blocks.markShared();
+		entries.put(hash, new Entry(blocks, hash, collected));
+		return blocks;
+	}
+
+	/**
+	 * Gets the number of intern calls so far.
+	 *
+	 * @return The number of lookups.
+	 */
+	public synchronized long getLookups() {
+		return lookups;
+	}
+
+	/**
+	 * Gets the number of intern calls that found an identical storage.
+	 *
+	 * @return The number of hits.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Gets the number of distinct storages currently interned.
+	 *
+	 * @return The number of interned storages.
+	 */
+	public synchronized int size() {
+		expungeCollected();
+		return entries.size();
+	}
+
+	/**
+	 * Removes the entries of collected storages.
+	 */
+	private void expungeCollected() {
+		Entry entry;
+		while ((entry = (Entry) collected.poll()) != null) {
+			if (entries.get(entry.hash) == entry) {
+				entries.remove(entry.hash);
+			}
+		}
+	}
+
+	/**
+	 * Hashes decoded blocks with a 64-bit multiply-xorshift mix.
+	 */
+	private static long hash(short[] blocks) {
+		long hash = 0x9E3779B97F4A7C15L;
+		for (int index = 0; index < ChunkSection.VOLUME; index += 4) {
+			long packed = (blocks[index] & 0xFFFFL) | (blocks[index + 1] & 0xFFFFL) << 16
+					| (blocks[index + 2] & 0xFFFFL) << 32 | (blocks[index + 3] & 0xFFFFL) << 48;
+			hash = (hash ^ packed) * 0xBF58476D1CE4E5B9L;
+			hash ^= hash >>> 31;
+		}
+		return hash;
+	}
+
+	/**
+	 * A weak reference to an interned storage, remembering its hash.
+	 */
+	private static final class Entry extends WeakReference<PalettedBlocks> {
+		final long hash;
+
+		Entry(PalettedBlocks blocks, long hash, ReferenceQueue<PalettedBlocks> queue) {
+			super(blocks, queue);
+			this.hash = hash;
+		}
+	}
+}
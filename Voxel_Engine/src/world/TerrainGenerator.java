@@ -0,0 +1,71 @@
+package world;
+
+import java.util.Random;
+
+/**
+ * The TerrainGenerator class generates rolling hills of stone and dirt with
+ * grass on top. The terrain is a pure function of the seed and the section
+ * coordinates, so sections can be generated in any order, on any thread, and a
+ * world generated twice from the same seed is identical.
+ */
+public class TerrainGenerator implements TerrainSource {
+
+	// Phase of the hills along X and Z, chosen by the seed.
+	private final double phaseX, phaseZ;
+
+	// Highest block the hills may reach.
+	private final int top;
+
+	/**
+	 * Creates a generator.
+	 *
+	 * @param seed      The seed of the hills' phase.
+	 * @param sectionsY The number of sections of a column; the hills are cut off
+	 *                  below the top of the column.
+	 */
+	public TerrainGenerator(long seed, int sectionsY) {
+		Random random = new Random(seed);
+		phaseX = random.nextDouble() * Math.PI;
+		phaseZ = random.nextDouble() * Math.PI;
+		top = sectionsY * ChunkSection.SIZE - 1;
+	}
+
+	/**
+	 * Gets the height of the terrain.
+	 *
+	 * @param x The world X coordinate.
+	 * @param z The world Z coordinate.
+	 * @return The Y coordinate of the grass block of the column.
+	 */
+	@Override
+	public int getHeight(int x, int z) {
+		int height = (int) (24 + 10 * Math.sin(x * 0.05 + phaseX) + 10 * Math.cos(z * 0.04 + phaseZ));
+		return Math.min(height, top);
+	}
+
+	/**
+	 * Generates the blocks of a section. The section is not added to a world.
+	 *
+	 * @param sx The section's X coordinate.
+	 * @param sy The section's Y coordinate.
+	 * @param sz The section's Z coordinate.
+	 * @return The new section.
+	 */
+	@Override
+	public ChunkSection generateSection(int sx, int sy, int sz) {
+		ChunkSection section = new ChunkSection(sx, sy, sz);
+		for (int x = 0; x < ChunkSection.SIZE; x++) {
+			for (int z = 0; z < ChunkSection.SIZE; z++) {
+				int height = getHeight(sx * ChunkSection.SIZE + x, sz * ChunkSection.SIZE + z);
+				for (int y = 0; y < ChunkSection.SIZE; y++) {
+					int worldY = sy * ChunkSection.SIZE + y;
+					if (worldY <= height) {
+						section.setBlock(x, y, z,
+								worldY == height ? Block.GRASS : worldY > height - 3 ? Block.DIRT : Block.STONE);
+					}
+				}
+			}
+		}
+		return section;
+	}
+}
@@ -0,0 +1,31 @@
+package world;
+
+/**
+ * The TerrainSource interface is the terrain stage of world generation: the
+ * blocks of each section and the ground height of each column, as pure
+ * functions of the coordinates, so sections can be generated in any order and
+ * on any thread, and decorations can find the ground of columns that are not
+ * generated yet.
+ */
+public interface TerrainSource {
+
+	/**
+	 * Gets the height of the ground.
+	 *
+	 * @param x The world X coordinate.
+	 * @param z The world Z coordinate.
+	 * @return The Y coordinate of the top block of the column.
+	 */
+	int getHeight(int x, int z);
+
+	/**
+	 * Generates the terrain blocks of a section. The section is not added to a
+	 * world.
+	 *
+	 * @param sx The section's X coordinate.
+	 * @param sy The section's Y coordinate.
+	 * @param sz The section's Z coordinate.
+	 * @return The new section.
+	 */
+	ChunkSection generateSection(int sx, int sy, int sz);
+}
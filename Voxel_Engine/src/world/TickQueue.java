@@ -0,0 +1,135 @@
+package world;
+
+import java.util.Arrays;
+
+/**
+ * The TickQueue class holds the scheduled block ticks of one chunk section: a
+ * binary min-heap of longs, each packing the game tick a block is due at with
+ * the block's index in the section (tick << 12 | index), so the heap orders by
+ * due tick and then by position without allocating an object per tick.
+ *
+ * A block has at most one pending tick: scheduling a block that is already
+ * scheduled keeps the earlier of the two. The heap slot of each block's tick
+ * is kept in a table of the section's 4096 blocks, so a later tick is rejected
+ * without a search, and a sooner one replaces the pending entry in place.
+ *
+ * Not thread-safe; a section's queue is only touched by the thread ticking the
+ * section's region.
+ */
+public class TickQueue {
+
+	// Bits of a heap entry holding the block index.
+	private static final int INDEX_BITS = 12;
+	private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+	// The heap of packed entries, and its size.
+	private long[] heap = new long[16];
+	private int size;
+
+	// Heap slot of each block's pending tick, -1 for blocks without one.
+	private final short[] slots = new short[ChunkSection.VOLUME];
+
+	/**
+	 * Creates an empty queue.
+	 */
+	public TickQueue() {
+		Arrays.fill(slots, (short) -1);
+	}
+
+	/**
+	 * Schedules a tick of a block.
+	 *
+	 * @param index The index of the block in its section.
+	 * @param tick  The game tick the block is due at; not negative.
+	 * @return true if the tick was added or moved earlier, false if the block
+	 *         already had a pending tick at or before it.
+	 */
+	public boolean schedule(int index, long tick) {
+		long entry = tick << INDEX_BITS | index;
+		int child = slots[index];
+		if (child >= 0) {
+			if (heap[child] <= entry) {
+				return false;
+			}
+		} else {
+			if (size == heap.length) {
+				heap = Arrays.copyOf(heap, size * 2);
+			}
+			child = size++;
+		}
+
+		// Sift the entry up from its slot: the last leaf, or that of the later tick it replaces.
+		while (child > 0) {
+			int parent = (child - 1) >>> 1;
+			if (heap[parent] <= entry) {
+				break;
+			}
+			place(child, heap[parent]);
+			child = parent;
+		}
+		place(child, entry);
+		return true;
+	}
+
+	/**
+	 * Removes the next tick due at or before a game tick.
+	 *
+	 * @param tick The current game tick.
+	 * @return The index of the block, or -1 if no tick is due.
+	 */
+	public int pollDue(long tick) {
+		if (size == 0 || heap[0] >>> INDEX_BITS > tick) {
+			return -1;
+		}
+		int index = (int) (heap[0] & INDEX_MASK);
+		slots[index] = -1;
+		if (--size == 0) {
+			return index;
+		}
+
+		// Sift the last entry down from the root.
+		long entry = heap[size];
+		int parent = 0;
+		int half = size >>> 1;
+		while (parent < half) {
+			int child = 2 * parent + 1;
+			if (child + 1 < size && heap[child + 1] < heap[child]) {
+				child++;
+			}
+			if (entry <= heap[child]) {
+				break;
+			}
+			place(parent, heap[child]);
+			parent = child;
+		}
+		place(parent, entry);
+		return index;
+	}
+
+	/**
+	 * Stores an entry in a heap slot, and the slot in the table of its block.
+	 */
+	private void place(int slot, long entry) {
+		heap[slot] = entry;
+		slots[(int) (entry & INDEX_MASK)] = (short) slot;
+	}
+
+	/**
+	 * Checks whether a block has a pending tick.
+	 *
+	 * @param index The index of the block in its section.
+	 * @return true if the block is scheduled.
+	 */
+	public boolean isScheduled(int index) {
+		return slots[index] >= 0;
+	}
+
+	/**
+	 * Gets the number of pending ticks.
+	 *
+	 * @return The queue size.
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,164 @@
+package world;
+
+/**
+ * The TreeDecorator class grows trees of logs and leaves on the ground of the
+ * generated sections: a trunk four to six blocks high, crowned by two wide
+ * layers of leaves and two narrow ones above. Whether a column grows a tree,
+ * and how high, is a hash of the seed and the column, and the ground is found
+ * through the terrain source, so a section places its trees without looking
+ * at any other section.
+ *
+ * A section decorates the trees rooted in it (whose trunk starts in it). Their
+ * blocks inside the section are placed at once; the crowns reaching into
+ * neighbouring sections go through PendingWrites.
+ *
+ * Thread-safe: decorating holds no state.
+ */
+public class TreeDecorator {
+
+	// One ground column in this many grows a tree.
+	private static final int TREE_CHANCE = 64;
+
+	// Shortest trunk, and the number of heights above it.
+	private static final int MIN_TRUNK = 4, TRUNK_VARIATION = 3;
+
+	// Half-width of the wide layers of the crown.
+	private static final int CROWN_RADIUS = 2;
+
+	// Seed of the tree placement.
+	private final long seed;
+
+	// Where the ground is.
+	private final TerrainSource terrain;
+
+	/**
+	 * Creates a decorator.
+	 *
+	 * @param seed    The seed of the tree placement.
+	 * @param terrain The terrain the trees grow on.
+	 */
+	public TreeDecorator(long seed, TerrainSource terrain) {
+		this.seed = seed;
+		this.terrain = terrain;
+	}
+
+	/**
+	 * Grows the trees rooted in a section.
+	 *
+	 * @param section The generated section, not published yet.
+	 * @param pending Where the blocks placed in other sections go.
+	 * @return The number of trees grown.
+	 */
+	public int decorate(ChunkSection section, PendingWrites pending) {
+		int originX = section.getSectionX() << ChunkSection.SHIFT;
+		int originY = section.getSectionY() << ChunkSection.SHIFT;
+		int originZ = section.getSectionZ() << ChunkSection.SHIFT;
+		int trees = 0;
+		for (int x = originX; x < originX + ChunkSection.SIZE; x++) {
+			for (int z = originZ; z < originZ + ChunkSection.SIZE; z++) {
+				long hash = hash(x, z);
+				if (Long.remainderUnsigned(hash, TREE_CHANCE) != 0) {
+					continue;
+				}
+				int base = terrain.getHeight(x, z) + 1;
+				if (base >> ChunkSection.SHIFT != section.getSectionY()) {
+					continue; // Rooted in another section of the column
+				}
+				int trunk = MIN_TRUNK + (int) ((hash >>> 32) % TRUNK_VARIATION);
+				grow(section, pending, x, base, z, trunk);
+				trees++;
+			}
+		}
+		return trees;
+	}
+
+	/**
+	 * Grows into a section the trees rooted in other sections that reach into
+	 * it: the trees of the columns around it, and of the sections below it.
+	 * Only the blocks inside the section are placed. A section generated again
+	 * after it was unloaded needs them, since its neighbours do not place them
+	 * a second time.
+	 *
+	 * @param section The generated section, not published yet.
+	 * @return The number of trees that reached into the section.
+	 */
+	public int regrowNeighbours(ChunkSection section) {
+		int originX = section.getSectionX() << ChunkSection.SHIFT;
+		int originY = section.getSectionY() << ChunkSection.SHIFT;
+		int originZ = section.getSectionZ() << ChunkSection.SHIFT;
+		int trees = 0;
+		for (int x = originX - CROWN_RADIUS; x < originX + ChunkSection.SIZE + CROWN_RADIUS; x++) {
+			for (int z = originZ - CROWN_RADIUS; z < originZ + ChunkSection.SIZE + CROWN_RADIUS; z++) {
+				long hash = hash(x, z);
+				if (Long.remainderUnsigned(hash, TREE_CHANCE) != 0) {
+					continue;
+				}
+				int base = terrain.getHeight(x, z) + 1;
+				int trunk = MIN_TRUNK + (int) ((hash >>> 32) % TRUNK_VARIATION);
+				boolean inside = x >> ChunkSection.SHIFT == section.getSectionX()
+						&& z >> ChunkSection.SHIFT == section.getSectionZ();
+				if (inside && base >> ChunkSection.SHIFT == section.getSectionY()) {
+					continue; // Rooted in the section: decorate grows it
+				}
+				if (base > originY + ChunkSection.MASK || base + trunk + 1 < originY) {
+					continue; // Entirely above or below the section
+				}
+				grow(section, null, x, base, z, trunk);
+				trees++;
+			}
+		}
+		return trees;
+	}
+
+	/**
+	 * Places the blocks of a tree; those outside the section go through the
+	 * pending writes, or are dropped if there are none.
+	 */
+	private void grow(ChunkSection section, PendingWrites pending, int x, int base, int z, int trunk) {
+		int top = base + trunk - 1;
+		for (int y = base; y <= top; y++) {
+			place(section, pending, x, y, z, Block.LOG);
+		}
+
+		// Two wide layers around the top of the trunk, without their corners,
+		// then two narrow ones capping it.
+		for (int y = top - 1; y <= top + 2; y++) {
+			int radius = y <= top ? CROWN_RADIUS : 1;
+			for (int dx = -radius; dx <= radius; dx++) {
+				for (int dz = -radius; dz <= radius; dz++) {
+					if (radius == CROWN_RADIUS && Math.abs(dx) == radius && Math.abs(dz) == radius) {
+						continue;
+					}
+					if (y == top + 2 && dx != 0 && dz != 0) {
+						continue; // The top layer is a plus
+					}
+					place(section, pending, x + dx, y, z + dz, Block.LEAVES);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Places a block in the section being decorated, or through the pending
+	 * writes if it lies in another section (if any).
+	 */
+	private static void place(ChunkSection section, PendingWrites pending, int x, int y, int z, short id) {
+		if (x >> ChunkSection.SHIFT == section.getSectionX() && y >> ChunkSection.SHIFT == section.getSectionY()
+				&& z >> ChunkSection.SHIFT == section.getSectionZ()) {
+			PendingWrites.place(section,
+					ChunkSection.index(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK), id);
+		} else if (pending != null) {
+			pending.write(x, y, z, id);
+		}
+	}
+
+	/**
+	 * Hashes a column with the seed (a SplitMix64 finaliser).
+	 */
+	private long hash(int x, int z) {
+		long h = seed ^ (x * 0x9E3779B97F4A7C15L + z * 0xC2B2AE3D27D4EB4FL);
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 31);
+	}
+}
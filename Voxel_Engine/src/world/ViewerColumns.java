@@ -0,0 +1,369 @@
+package world;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import toolbox.TimingStats;
+
+/**
+ * The ViewerColumns class keeps loaded the section columns that any of several
+ * viewers can see, so viewers looking at the same area share its sections
+ * rather than each loading their own. Every column within a viewer's radius
+ * holds a reference; the first reference queues the column for generation on
+ * a fork-join pool, nearest to the viewer first, and the last one released
+ * unloads it, or cancels its generation if it has not started yet.
+ *
+ * The time from a column being queued to its sections joining the world is
+ * recorded, as the latency of the generation queue.
+ *
+ * Not thread-safe: the viewers are moved, and update is called, by the thread
+ * owning the world; only the generation runs on the pool.
+ */
+public class ViewerColumns {
+
+	// Where a column is: neither loaded nor queued, queued (or being generated), or loaded.
+	private static final int IDLE = 0, QUEUED = 1, LOADED = 2;
+
+	// Number of queue latencies kept.
+	private static final int LATENCY_SAMPLES = 1 << 16;
+
+	/**
+	 * A column some viewer can see.
+	 */
+	private static final class Column {
+		final int x, z;
+
+		// Number of viewers seeing the column, and where it is; owned by the world's thread.
+		int refs;
+		int state;
+
+		// Set to skip the generation of a column no viewer sees any more.
+		volatile boolean cancelled;
+
+		// Set by the generation before the column is handed back: whether it generated the column.
+		boolean generated;
+
+		// When the column was queued.
+		long queuedAt;
+
+		Column(int x, int z) {
+			this.x = x;
+			this.z = z;
+		}
+	}
+
+	/**
+	 * A viewer and the column at the centre of what it sees.
+	 */
+	private static final class Viewer {
+		final int radius;
+		int centreX, centreZ;
+		boolean placed;
+
+		Viewer(int radius) {
+			this.radius = radius;
+		}
+	}
+
+	private final WorldGenerator generator;
+	private final ForkJoinPool pool;
+
+	// Section layers of a column, from Y = 0.
+	private final int sectionsY;
+
+	// Columns seen by a viewer, queued or loaded, keyed by ChunkRegistry.key(x, 0, z).
+	private final Map<Long, Column> columns = new HashMap<Long, Column>();
+
+	// Viewers by id; null once removed.
+	private final List<Viewer> viewers = new ArrayList<Viewer>();
+
+	// Column offsets within each radius used, nearest first: dx, dz per column.
+	private final Map<Integer, int[]> offsets = new HashMap<Integer, int[]>();
+
+	// Columns handed back by the generation.
+	private final ConcurrentLinkedQueue<Column> finished = new ConcurrentLinkedQueue<Column>();
+
+	// Time from queueing to loading of the columns.
+	private final TimingStats queueLatency = new TimingStats("world.columnQueueLatency", LATENCY_SAMPLES);
+
+	// Columns queued and not handed back yet, and the most there were at once.
+	private int queued, maxQueued;
+
+	// Statistics.
+	private long references, columnsGenerated, columnsUnloaded, columnsCancelled;
+
+	/**
+	 * Creates an empty set of viewers.
+	 *
+	 * @param generator The generator of the world's sections.
+	 * @param sectionsY The number of section layers of a column, from Y = 0.
+	 * @param pool      The pool the columns are generated on.
+	 */
+	public ViewerColumns(WorldGenerator generator, int sectionsY, ForkJoinPool pool) {
+		this.generator = generator;
+		this.sectionsY = sectionsY;
+		this.pool = pool;
+	}
+
+	/**
+	 * Adds a viewer; it sees nothing until it is first moved.
+	 *
+	 * @param radius The radius of what it sees, in section columns.
+	 * @return The viewer's id.
+	 */
+	public int addViewer(int radius) {
+		if (radius < 0) {
+			throw new IllegalArgumentException("Negative view radius: " + radius);
+		}
+		offsets.computeIfAbsent(radius, ViewerColumns::nearestFirst);
+		viewers.add(new Viewer(radius));
+		return viewers.size() - 1;
+	}
+
+	/**
+	 * Moves a viewer: the columns it now sees gain a reference, nearest first,
+	 * and those it no longer sees lose theirs.
+	 *
+	 * @param id The viewer's id.
+	 * @param x  The viewer's X block coordinate.
+	 * @param z  The viewer's Z block coordinate.
+	 */
+	public void moveViewer(int id, float x, float z) {
+		Viewer viewer = viewers.get(id);
+		int centreX = (int) Math.floor(x) >> ChunkSection.SHIFT;
+		int centreZ = (int) Math.floor(z) >> ChunkSection.SHIFT;
+		if (viewer.placed && centreX == viewer.centreX && centreZ == viewer.centreZ) {
+			return;
+		}
+		int[] area = offsets.get(viewer.radius);
+		int radiusSquared = viewer.radius * viewer.radius;
+		for (int i = 0; i < area.length; i += 2) {
+			int cx = centreX + area[i], cz = centreZ + area[i + 1];
+			if (!viewer.placed || !within(cx - viewer.centreX, cz - viewer.centreZ, radiusSquared)) {
+				acquire(cx, cz);
+			}
+		}
+		if (viewer.placed) {
+			for (int i = 0; i < area.length; i += 2) {
+				int cx = viewer.centreX + area[i], cz = viewer.centreZ + area[i + 1];
+				if (!within(cx - centreX, cz - centreZ, radiusSquared)) {
+					release(cx, cz);
+				}
+			}
+		}
+		viewer.placed = true;
+		viewer.centreX = centreX;
+		viewer.centreZ = centreZ;
+	}
+
+	/**
+	 * Removes a viewer, releasing the columns it saw.
+	 *
+	 * @param id The viewer's id.
+	 */
+	public void removeViewer(int id) {
+		Viewer viewer = viewers.get(id);
+		if (viewer.placed) {
+			int[] area = offsets.get(viewer.radius);
+			for (int i = 0; i < area.length; i += 2) {
+				release(viewer.centreX + area[i], viewer.centreZ + area[i + 1]);
+			}
+		}
+		viewers.set(id, null);
+	}
+
+	/**
+	 * Takes in the columns generated since the last update, unloading those no
+	 * viewer sees any more and queueing again those whose generation was
+	 * cancelled too early, and applies the blocks they placed in loaded
+	 * sections.
+	 */
+	public void update() {
+		Column column;
+		while ((column = finished.poll()) != null) {
+			queued--;
+			if (column.generated) {
+				columnsGenerated++;
+				column.state = LOADED;
+				if (column.refs == 0) {
+					unload(column);
+				}
+			} else {
+				columnsCancelled++;
+				column.state = IDLE;
+				if (column.refs > 0) {
+					queue(column);
+				} else {
+					columns.remove(ChunkRegistry.key(column.x, 0, column.z));
+				}
+			}
+		}
+		generator.applyLateWrites();
+	}
+
+	/**
+	 * Adds a reference to a column, queueing it if it is the first.
+	 */
+	private void acquire(int x, int z) {
+		references++;
+		long key = ChunkRegistry.key(x, 0, z);
+		Column column = columns.get(key);
+		if (column == null) {
+			column = new Column(x, z);
+			columns.put(key, column);
+		}
+		if (column.refs++ > 0) {
+			return;
+		}
+		if (column.state == IDLE) {
+			queue(column);
+		} else if (column.state == QUEUED) {
+			column.cancelled = false; // Wanted again before it was skipped, or after; update sorts it out
+		}
+	}
+
+	/**
+	 * Removes a reference from a column, unloading it or cancelling its
+	 * generation if it was the last.
+	 */
+	private void release(int x, int z) {
+		references--;
+		long key = ChunkRegistry.key(x, 0, z);
+		Column column = columns.get(key);
+		if (--column.refs > 0) {
+			return;
+		}
+		if (column.state == LOADED) {
+			unload(column);
+		} else if (column.state == QUEUED) {
+			column.cancelled = true;
+		}
+	}
+
+	/**
+	 * Queues the generation of a column on the pool.
+	 */
+	private void queue(Column column) {
+		column.state = QUEUED;
+		column.cancelled = false;
+		column.queuedAt = System.nanoTime();
+		if (++queued > maxQueued) {
+			maxQueued = queued;
+		}
+		pool.execute(() -> {
+			column.generated = !column.cancelled;
+			if (column.generated) {
+				for (int sy = 0; sy < sectionsY; sy++) {
+					generator.generate(column.x, sy, column.z);
+				}
+				queueLatency.record(System.nanoTime() - column.queuedAt);
+			}
+			finished.add(column);
+		});
+	}
+
+	/**
+	 * Unloads the sections of a loaded column no viewer sees.
+	 */
+	private void unload(Column column) {
+		for (int sy = 0; sy < sectionsY; sy++) {
+			generator.unload(column.x, sy, column.z);
+		}
+		column.state = IDLE;
+		columns.remove(ChunkRegistry.key(column.x, 0, column.z));
+		columnsUnloaded++;
+	}
+
+	/**
+	 * Gets the number of columns loaded or queued.
+	 *
+	 * @return The column count.
+	 */
+	public int getColumnCount() {
+		return columns.size();
+	}
+
+	/**
+	 * Gets the number of references the viewers hold, the sum of the columns
+	 * each sees; with getColumnCount, tells how much they share.
+	 *
+	 * @return The reference count.
+	 */
+	public long getReferences() {
+		return references;
+	}
+
+	/**
+	 * Gets the number of columns queued and not generated yet.
+	 *
+	 * @return The queued column count.
+	 */
+	public int getQueued() {
+		return queued;
+	}
+
+	/**
+	 * Gets the largest number of columns queued at once so far.
+	 *
+	 * @return The largest queued column count.
+	 */
+	public int getMaxQueued() {
+		return maxQueued;
+	}
+
+	public long getColumnsGenerated() {
+		return columnsGenerated;
+	}
+
+	public long getColumnsUnloaded() {
+		return columnsUnloaded;
+	}
+
+	/**
+	 * Gets the number of queued columns whose generation was skipped because
+	 * no viewer saw them any more.
+	 *
+	 * @return The cancelled column count.
+	 */
+	public long getColumnsCancelled() {
+		return columnsCancelled;
+	}
+
+	/**
+	 * Gets the time from queueing to loading of the columns.
+	 *
+	 * @return The queue latency.
+	 */
+	public TimingStats getQueueLatency() {
+		return queueLatency;
+	}
+
+	private static boolean within(int dx, int dz, int radiusSquared) {
+		return dx * dx + dz * dz <= radiusSquared;
+	}
+
+	/**
+	 * Lists the column offsets within a radius, nearest first.
+	 */
+	private static int[] nearestFirst(int radius) {
+		List<int[]> area = new ArrayList<int[]>();
+		for (int dx = -radius; dx <= radius; dx++) {
+			for (int dz = -radius; dz <= radius; dz++) {
+				if (within(dx, dz, radius * radius)) {
+					area.add(new int[] { dx, dz });
+				}
+			}
+		}
+		area.sort((a, b) -> Integer.compare(a[0] * a[0] + a[1] * a[1], b[0] * b[0] + b[1] * b[1]));
+		int[] offsets = new int[area.size() * 2];
+		for (int i = 0; i < area.size(); i++) {
+			offsets[i * 2] = area.get(i)[0];
+			offsets[i * 2 + 1] = area.get(i)[1];
+		}
+		return offsets;
+	}
+}
@@ -0,0 +1,153 @@
+package world;
+
+/**
+ * The VoxelRaycast class walks a ray through the block grid with the
+ * Amanatides-Woo DDA algorithm: it visits exactly the blocks the ray passes
+ * through, in order, stepping to whichever block boundary is nearest along the
+ * ray. The first solid block ends the walk.
+ *
+ * An instance caches the section the ray is in, so the chunk registry is only
+ * consulted when the ray crosses into another section, and casting does not
+ * allocate. Instances are not thread-safe; use one per thread.
+ */
+public class VoxelRaycast {
+
+	// The world the rays are cast in.
+	private final World world;
+
+	// The section containing the block being visited, and its coordinates.
+	private ChunkSection section;
+	private int sectionX, sectionY, sectionZ;
+	private boolean sectionValid;
+
+	/**
+	 * Creates a raycaster for a world.
+	 *
+	 * @param world The world to cast rays in.
+	 */
+	public VoxelRaycast(World world) {
+		this.world = world;
+	}
+
+	/**
+	 * Casts a ray and finds the first solid block it hits.
+	 *
+	 * @param originX     The X coordinate of the ray origin.
+	 * @param originY     The Y coordinate of the ray origin.
+	 * @param originZ     The Z coordinate of the ray origin.
+	 * @param directionX  The X component of the direction; need not be normalised.
+	 * @param directionY  The Y component of the direction.
+	 * @param directionZ  The Z component of the direction.
+	 * @param maxDistance The length of the ray.
+	 * @param hit         Receives the result when a block is hit.
+	 * @return true if a solid block was hit within maxDistance.
+	 */
+	public boolean cast(float originX, float originY, float originZ, float directionX, float directionY,
+			float directionZ, float maxDistance, RaycastHit hit) {
+		float length = (float) Math.sqrt(directionX * directionX + directionY * directionY + directionZ * directionZ);
+		if (length == 0) {
+			return false;
+		}
+		float dx = directionX / length, dy = directionY / length, dz = directionZ / length;
+
+		// Block (x, y, z) is centred on that point, so shift by half a block to
+		// work in a grid where the block spans [x, x + 1).
+		float ox = originX + 0.5f, oy = originY + 0.5f, oz = originZ + 0.5f;
+		int x = (int) Math.floor(ox), y = (int) Math.floor(oy), z = (int) Math.floor(oz);
+
+		int stepX = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+		int stepY = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+		int stepZ = dz > 0 ? 1 : dz < 0 ? -1 : 0;
+
+		// Distance along the ray between two boundaries of each axis.
+		float deltaX = stepX != 0 ? Math.abs(1f / dx) : Float.POSITIVE_INFINITY;
+		float deltaY = stepY != 0 ? Math.abs(1f / dy) : Float.POSITIVE_INFINITY;
+		float deltaZ = stepZ != 0 ? Math.abs(1f / dz) : Float.POSITIVE_INFINITY;
+
+		// Distance along the ray to the first boundary of each axis.
+		float maxX = stepX > 0 ? (x + 1 - ox) * deltaX : stepX < 0 ? (ox - x) * deltaX : Float.POSITIVE_INFINITY;
+		float maxY = stepY > 0 ? (y + 1 - oy) * deltaY : stepY < 0 ? (oy - y) * deltaY : Float.POSITIVE_INFINITY;
+		float maxZ = stepZ > 0 ? (z + 1 - oz) * deltaZ : stepZ < 0 ? (oz - z) * deltaZ : Float.POSITIVE_INFINITY;
+
+		// Faces entered when stepping along each axis.
+		int faceX = stepX > 0 ? Face.WEST : Face.EAST;
+		int faceY = stepY > 0 ? Face.DOWN : Face.UP;
+		int faceZ = stepZ > 0 ? Face.NORTH : Face.SOUTH;
+
+		sectionValid = false;
+		int face = Face.NONE;
+		float distance = 0;
+		while (true) {
+			short block = blockAt(x, y, z);
+			if (Block.isSolid(block)) {
+				hit.x = x;
+				hit.y = y;
+				hit.z = z;
+				hit.face = face;
+				hit.distance = distance;
+				hit.block = block;
+				return true;
+			}
+
+			// Step to the nearest boundary.
+			if (maxX < maxY && maxX < maxZ) {
+				distance = maxX;
+				maxX += deltaX;
+				x += stepX;
+				face = faceX;
+			} else if (maxY < maxZ) {
+				distance = maxY;
+				maxY += deltaY;
+				y += stepY;
+				face = faceY;
+			} else {
+				distance = maxZ;
+				maxZ += deltaZ;
+				z += stepZ;
+				face = faceZ;
+			}
+			if (distance > maxDistance) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the straight segment between two points crosses no solid
+	 * block. A start point inside a solid block sees nothing.
+	 *
+	 * @param fromX The X coordinate of the start.
+	 * @param fromY The Y coordinate of the start.
+	 * @param fromZ The Z coordinate of the start.
+	 * @param toX   The X coordinate of the end.
+	 * @param toY   The Y coordinate of the end.
+	 * @param toZ   The Z coordinate of the end.
+	 * @param hit   Scratch result, overwritten.
+	 * @return true if the end is visible from the start.
+	 */
+	public boolean hasLineOfSight(float fromX, float fromY, float fromZ, float toX, float toY, float toZ,
+			RaycastHit hit) {
+		float dx = toX - fromX, dy = toY - fromY, dz = toZ - fromZ;
+		float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+		return !cast(fromX, fromY, fromZ, dx, dy, dz, distance, hit);
+	}
+
+	/**
+	 * Gets a block through the cached section, looking the section up only when
+	 * the coordinates leave it.
+	 */
+	private short blockAt(int x, int y, int z) {
+		int sx = x >> ChunkSection.SHIFT, sy = y >> ChunkSection.SHIFT, sz = z >> ChunkSection.SHIFT;
+		if (!sectionValid || sx != sectionX || sy != sectionY || sz != sectionZ) {
+			section = world.getSection(sx, sy, sz);
+			sectionX = sx;
+			sectionY = sy;
+			sectionZ = sz;
+			sectionValid = true;
+		}
+		if (section == null) {
+			return Block.AIR;
+		}
+		return section.getBlock(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK);
+	}
+}
@@ -0,0 +1,96 @@
+package world;
+
+/**
+ * The World class gives block-level access to the chunk sections held in its
+ * ChunkRegistry. Block coordinates are world coordinates: the block (x, y, z)
+ * is the unit cube centred on that point, like the cube entities the renderer
+ * draws.
+ */
+public class World {
+
+	// The loaded sections.
+	private final ChunkRegistry registry = new ChunkRegistry();
+
+	// Shares the storage of identical sections.
+	private final SectionInterner interner = new SectionInterner();
+
+	/**
+	 * Gets the registry holding the loaded sections.
+	 *
+	 * @return The chunk registry.
+	 */
+	public ChunkRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Gets the interner sharing the storage of identical sections.
+	 *
+	 * @return The section interner.
+	 */
+	public SectionInterner getInterner() {
+		return interner;
+	}
+
+	/**
+	 * Gets a block. Blocks of sections that are not loaded are air.
+	 *
+	 * @param x The X block coordinate.
+	 * @param y The Y block coordinate.
+	 * @param z The Z block coordinate.
+	 * @return The block id.
+	 */
+	public short getBlock(int x, int y, int z) {
+		ChunkSection section = registry.get(x >> ChunkSection.SHIFT, y >> ChunkSection.SHIFT, z >> ChunkSection.SHIFT);
+		if (section == null) {
+			return Block.AIR;
+		}
+		return section.getBlock(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK);
+	}
+
+	/**
+	 * Sets a block, loading an empty section if needed.
+	 *
+	 * @param x  The X block coordinate.
+	 * @param y  The Y block coordinate.
+	 * @param z  The Z block coordinate.
+	 * @param id The block id.
+	 * @return The previous block id.
+	 */
+	public short setBlock(int x, int y, int z, short id) {
+		int sx = x >> ChunkSection.SHIFT, sy = y >> ChunkSection.SHIFT, sz = z >> ChunkSection.SHIFT;
+		ChunkSection section = registry.get(sx, sy, sz);
+		if (section == null) {
+			if (id == Block.AIR) {
+				return Block.AIR; // Nothing to clear
+			}
+			section = registry.putIfAbsent(new ChunkSection(sx, sy, sz));
+		}
+		return section.setBlock(x & ChunkSection.MASK, y & ChunkSection.MASK, z & ChunkSection.MASK, id);
+	}
+
+	/**
+	 * Gets a loaded section.
+	 *
+	 * @param sx The X section coordinate.
+	 * @param sy The Y section coordinate.
+	 * @param sz The Z section coordinate.
+	 * @return The section, or null if it is not loaded.
+	 */
+	public ChunkSection getSection(int sx, int sy, int sz) {
+		return registry.get(sx, sy, sz);
+	}
+
+	/**
+	 * Adds a generated section to the world, unless one is already loaded at its
+	 * coordinates. Its blocks are interned first, so it shares its storage with
+	 * any identical section.
+	 *
+	 * @param section The section to add.
+	 * @return The section now loaded at those coordinates.
+	 */
+	public ChunkSection addSection(ChunkSection section) {
+		section.intern(interner);
+		return registry.putIfAbsent(section);
+	}
+}
@@ -0,0 +1,160 @@
+package world;
+
+import toolbox.LongIntHashMap;
+
+/**
+ * The WorldGenerator class generates the sections of a world in two stages:
+ * the terrain, then the decorations (trees) grown on it, whose blocks may
+ * reach into neighbouring sections. A section never waits for its neighbours:
+ * the blocks it places in them are buffered until they are generated, or
+ * queued as late writes if they already joined the world (see PendingWrites).
+ * The blocks of the world come out the same whatever order, and on however
+ * many threads, its sections are generated. A section may be unloaded and
+ * generated again later; it then grows the parts of its neighbours' trees
+ * reaching into it itself, as they were placed only once.
+ *
+ * Thread-safe: any number of threads may generate sections at once, while the
+ * thread owning the live world applies the late writes.
+ */
+public class WorldGenerator {
+
+	// The world the sections join.
+	private final World world;
+
+	// The terrain stage.
+	private final TerrainSource terrain;
+
+	// The decoration stage.
+	private final TreeDecorator trees;
+
+	// Blocks placed in sections other than the one generated.
+	private final PendingWrites pending = new PendingWrites();
+
+	// Sections unloaded, to be generated again with their neighbours' trees; guarded by itself.
+	private final LongIntHashMap unloaded = new LongIntHashMap(64, 0);
+
+	// Told about the blocks changed by late writes.
+	private BlockChangeListener listener;
+
+	// Number of sections generated, trees grown, and blocks changed by late writes.
+	private volatile long sectionsGenerated, treesGrown;
+	private long lateWrites;
+
+	/**
+	 * Creates a generator.
+	 *
+	 * @param world   The world the sections join.
+	 * @param terrain The terrain stage.
+	 * @param trees   The decoration stage.
+	 */
+	public WorldGenerator(World world, TerrainSource terrain, TreeDecorator trees) {
+		this.world = world;
+		this.terrain = terrain;
+		this.trees = trees;
+	}
+
+	/**
+	 * Sets the listener told about the blocks changed by late writes, so the
+	 * light and meshes of live sections follow them.
+	 *
+	 * @param listener The listener, or null.
+	 */
+	public void setListener(BlockChangeListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Generates a section and adds it to the world: its terrain, the trees
+	 * rooted in it, and the blocks other sections placed in it so far.
+	 *
+	 * @param sx The section's X coordinate.
+	 * @param sy The section's Y coordinate.
+	 * @param sz The section's Z coordinate.
+	 * @return The section now loaded at these coordinates.
+	 */
+	public ChunkSection generate(int sx, int sy, int sz) {
+		ChunkSection section = terrain.generateSection(sx, sy, sz);
+		int grown = trees.decorate(section, pending);
+		boolean again;
+		synchronized (unloaded) {
+			again = unloaded.remove(ChunkRegistry.key(sx, sy, sz)) != 0;
+		}
+		if (again) {
+			trees.regrowNeighbours(section);
+		}
+		synchronized (this) {
+			sectionsGenerated++;
+			treesGrown += grown;
+		}
+		return pending.publish(section, world);
+	}
+
+	/**
+	 * Unloads a generated section from the world; it may be generated again
+	 * later. Must be called by the thread owning the live world, and not while
+	 * the section is being generated.
+	 *
+	 * @param sx The section's X coordinate.
+	 * @param sy The section's Y coordinate.
+	 * @param sz The section's Z coordinate.
+	 * @return The section unloaded, or null if it was not loaded.
+	 */
+	public ChunkSection unload(int sx, int sy, int sz) {
+		ChunkSection section = world.getRegistry().remove(sx, sy, sz);
+		if (section != null) {
+			synchronized (unloaded) {
+				unloaded.put(ChunkRegistry.key(sx, sy, sz), 1);
+			}
+			pending.unpublish(sx, sy, sz);
+		}
+		return section;
+	}
+
+	/**
+	 * Applies the blocks placed in sections after they joined the world. Must
+	 * be called by the thread owning the live world, such as the simulation.
+	 *
+	 * @return The number of blocks changed.
+	 */
+	public int applyLateWrites() {
+		int changed = pending.applyLateWrites(world, listener);
+		lateWrites += changed;
+		return changed;
+	}
+
+	/**
+	 * Gets the number of sections generated so far.
+	 *
+	 * @return The section count.
+	 */
+	public long getSectionsGenerated() {
+		return sectionsGenerated;
+	}
+
+	/**
+	 * Gets the number of trees grown so far.
+	 *
+	 * @return The tree count.
+	 */
+	public long getTreesGrown() {
+		return treesGrown;
+	}
+
+	/**
+	 * Gets the number of blocks placed in sections not generated yet so far.
+	 *
+	 * @return The buffered write count.
+	 */
+	public long getBufferedWrites() {
+		return pending.getBuffered();
+	}
+
+	/**
+	 * Gets the number of blocks changed by late writes so far.
+	 *
+	 * @return The late write count.
+	 */
+	public long getLateWrites() {
+		return lateWrites;
+	}
+}